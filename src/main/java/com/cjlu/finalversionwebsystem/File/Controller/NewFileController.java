@@ -2,8 +2,11 @@ package com.cjlu.finalversionwebsystem.File.Controller;
 
 import com.cjlu.finalversionwebsystem.File.service.FileStorageService;
 import com.cjlu.finalversionwebsystem.File.model.FileInfo;
+import com.cjlu.finalversionwebsystem.entity.IngestJob;
+import com.cjlu.finalversionwebsystem.service.Interface.IngestJobService;
+import com.cjlu.finalversionwebsystem.utils.FileETag;
+import org.springframework.core.io.FileSystemResource;
 import org.springframework.core.io.Resource;
-import org.springframework.core.io.UrlResource;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -11,7 +14,6 @@ import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
-import java.net.MalformedURLException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -24,8 +26,11 @@ public class NewFileController {
 
     private final FileStorageService fileStorageService;
 
-    public NewFileController(FileStorageService fileStorageService) {
+    private final IngestJobService ingestJobService;
+
+    public NewFileController(FileStorageService fileStorageService, IngestJobService ingestJobService) {
         this.fileStorageService = fileStorageService;
+        this.ingestJobService = ingestJobService;
     }
 
     // 上传文件
@@ -37,11 +42,14 @@ public class NewFileController {
             }
 
             String fileName = fileStorageService.storeFile(file);
+            // 格式转换在后台执行，进度通过 /file/ingest/status 查询
+            ingestJobService.enqueue(IngestJob.TYPE_CONVERT, fileName);
             return ResponseEntity.ok(Map.of(
                     "message", "文件上传成功",
                     "filename", fileName,
                     "originalname", file.getOriginalFilename(),
-                    "size", file.getSize()
+                    "size", file.getSize(),
+                    "ingestState", IngestJob.STATE_QUEUED
             ));
         } catch (IOException e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -62,7 +70,7 @@ public class NewFileController {
         }
     }
 
-    // 下载文件
+    // 下载文件，Range请求和If-None-Match/If-Modified-Since由Spring按ETag和修改时间处理，ETag与 /file/download 相同
     @GetMapping("/download/{fileName:.+}")
     public ResponseEntity<Resource> downloadFile(@PathVariable String fileName) {
         try {
@@ -72,15 +80,19 @@ public class NewFileController {
             }
 
             Path filePath = fileStorageService.getFilePath(fileName);
-            Resource resource = new UrlResource(filePath.toUri());
+            // 基于文件通道读取，不经过URL连接
+            Resource resource = new FileSystemResource(filePath);
+            long lastModified = resource.lastModified();
 
             // 设置响应头，触发文件下载
             return ResponseEntity.ok()
                     .header(HttpHeaders.CONTENT_DISPOSITION,
                             "attachment; filename=\"" + resource.getFilename() + "\"")
+                    .eTag(FileETag.of(filePath))
+                    .lastModified(lastModified)
                     .body(resource);
-        } catch (MalformedURLException e) {
-            return ResponseEntity.badRequest().build();
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
         }
     }
 
@@ -1,6 +1,8 @@
 package com.cjlu.finalversionwebsystem.File.service;
 
 
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.crypto.digest.DigestUtil;
 import com.cjlu.finalversionwebsystem.File.model.FileInfo;
 import com.cjlu.finalversionwebsystem.File.util.*;
 import com.cjlu.finalversionwebsystem.entity.Result;
@@ -8,20 +10,31 @@ import com.cjlu.finalversionwebsystem.mapper.NewKLBMapper;
 import com.rometools.utils.IO;
 import net.sourceforge.tess4j.TesseractException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 public class FileStorageService {
@@ -29,9 +42,21 @@ public class FileStorageService {
     @Autowired
     NewKLBMapper klbMapper;
 
+    // 转换结果缓存目录的容量上限，超出后按最近使用时间淘汰
+    @Value("${klb.conversion-cache.max-mb:512}")
+    private long conversionCacheMaxMb;
 
     private static String uploadDir = "D:\\基于大模型的企业级知识管理系统\\知识库";
 
+    // 转换结果缓存目录，文件名为 源文件SHA-256-扩展名-转换器版本.md，图片在同名的_images目录中
+    private static final String CONVERSION_CACHE_DIR = ".conversion-cache";
+
+    // 转换器的输出格式变化时递增，旧的缓存结果随之失效
+    private static final int CONVERTER_VERSION = 2;
+
+    private static final Set<String> CONVERTIBLE_EXTENSIONS = Set.of(
+            ".pdf", ".doc", ".docx", ".txt", ".xls", ".xlsx", ".html", ".htm", ".jpg", ".jpeg", ".png", ".gif");
+
     // 初始化上传目录的方法
     private void initUploadDirectory() {
         File directory = new File(uploadDir);
@@ -40,9 +65,9 @@ public class FileStorageService {
         }
     }
 
-    // 存储文件
+    // 存储文件，Markdown副本由摄取任务在后台生成
     public String storeFile(MultipartFile file) throws Exception {
-        return storeFileToLocation(file, uploadDir);
+        return storeFileToLocationWithoutMd(file, uploadDir);
     }
 
     public String storeFileToLocation(MultipartFile file, String destinationDir) throws Exception {
@@ -67,17 +92,118 @@ public class FileStorageService {
         // 保存文件
         file.transferTo(targetLocation);
 
+        convertToMarkdown(destinationDir, uniqueFileName);
+
+        return uniqueFileName;
+    }
+
+    public String storeFileToLocationWithoutMd(MultipartFile file, String destinationDir) throws Exception {
+        String originalFileName = file.getOriginalFilename();
+        String fileExtension = "";
+
+        if (originalFileName != null && originalFileName.contains(".")) {
+            fileExtension = originalFileName.substring(originalFileName.lastIndexOf("."));
+        }
+
+        String baseFileName = originalFileName.substring(0, originalFileName.length() - fileExtension.length());
+        String uniqueFileName = originalFileName;
+        int counter = 1;
+
+        while (fileExists(destinationDir, uniqueFileName)) {
+            uniqueFileName = baseFileName + "(" + counter + ")" + fileExtension;
+            counter++;
+        }
+
+        Path targetLocation = Paths.get(destinationDir).resolve(uniqueFileName);
+
+        // 保存文件
+        file.transferTo(targetLocation);
+
+        return uniqueFileName;
+    }
+
+    // 为上传目录中的文件创建md格式的副本
+    public void convertToMarkdown(String fileName) throws Exception {
+        convertToMarkdown(uploadDir, fileName);
+    }
+
+    // 内容相同的文件（重名上传的"name(1).pdf"、复制到其他知识库的文件）只转换一次，之后直接复制缓存的结果
+    public void convertToMarkdown(String destinationDir, String fileName) throws Exception {
+        String fileExtension = "";
+        if (fileName.contains(".")) {
+            fileExtension = fileName.substring(fileName.lastIndexOf("."));
+        }
+        String baseFileName = fileName.substring(0, fileName.length() - fileExtension.length());
+        Path targetLocation = Paths.get(destinationDir).resolve(fileName);
+
         // 创建一个md格式的副本
         String markdownFileName = baseFileName + ".md";
         Path markdownTargetLocation = Paths.get(destinationDir).resolve(markdownFileName);
 
-        switch (fileExtension.toLowerCase()) {
+        String extension = fileExtension.toLowerCase();
+        if (!CONVERTIBLE_EXTENSIONS.contains(extension)) {
+            // 不支持的文件类型，不创建md副本
+            return;
+        }
+
+        String cacheKey = DigestUtil.sha256Hex(targetLocation.toFile()) + "-" + extension.substring(1) + "-v" + CONVERTER_VERSION;
+        Path cacheDir = Paths.get(uploadDir).resolve(CONVERSION_CACHE_DIR);
+        Path cachedMarkdown = cacheDir.resolve(cacheKey + ".md");
+        if (Files.exists(cachedMarkdown)) {
+            try {
+                copyConversion(cachedMarkdown, markdownTargetLocation);
+                // 修改时间作为最近使用时间，淘汰时参考
+                Files.setLastModifiedTime(cachedMarkdown, FileTime.fromMillis(System.currentTimeMillis()));
+                return;
+            } catch (IOException e) {
+                // 缓存条目刚好被淘汰时重新转换
+            }
+        }
+
+        // 先转换到临时文件和临时图片目录再替换md副本，转换失败或进行中时不会留下半个文件；
+        // 图片链接按最终的图片目录名生成
+        Path temp = markdownTargetLocation.resolveSibling(markdownFileName + "." + UUID.randomUUID() + ".tmp");
+        Path imageDir = MarkdownImages.dirFor(markdownTargetLocation);
+        Path tempImageDir = imageDir.resolveSibling(imageDir.getFileName() + "." + UUID.randomUUID() + ".tmp");
+        try {
+            convertByExtension(extension, targetLocation, temp, tempImageDir, imageDir.getFileName() + "/");
+            if (!Files.exists(temp)) {
+                return;
+            }
+            // 先替换图片目录再替换md副本，新的md副本中的链接都指向已存在的图片
+            replaceImageDir(tempImageDir, imageDir);
+            Files.move(temp, markdownTargetLocation, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+            FileUtil.del(tempImageDir.toFile());
+        }
+
+        publishToCache(markdownTargetLocation, cacheDir, cachedMarkdown);
+    }
+
+    // 删除旧的图片目录，转换出图片时把临时目录改名为图片目录
+    private void replaceImageDir(Path tempImageDir, Path imageDir) throws IOException {
+        FileUtil.del(imageDir.toFile());
+        if (!Files.isDirectory(tempImageDir)) {
+            return;
+        }
+        try (Stream<Path> images = Files.list(tempImageDir)) {
+            if (!images.findAny().isPresent()) {
+                return;
+            }
+        }
+        Files.move(tempImageDir, imageDir, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void convertByExtension(String extension, Path targetLocation, Path markdownTargetLocation,
+                                    Path imageDir, String imageLinkPrefix) throws Exception {
+        switch (extension) {
             case ".pdf":
-                convertPDFToMarkdown(targetLocation.toString(), markdownTargetLocation.toString());
+                convertPDFToMarkdown(targetLocation.toString(), markdownTargetLocation.toString(), imageDir, imageLinkPrefix);
                 break;
             case ".doc":
             case ".docx":
-                convertDOCToMarkdown(targetLocation.toString(), markdownTargetLocation.toString());
+                convertDOCToMarkdown(targetLocation.toString(), markdownTargetLocation.toString(), imageDir, imageLinkPrefix);
                 break;
             case ".txt":
                 convertTxtToMarkdown(targetLocation.toString(), markdownTargetLocation.toString());
@@ -100,33 +226,128 @@ public class FileStorageService {
                 // 不支持的文件类型，不创建md副本
                 break;
         }
-
-        return uniqueFileName;
     }
 
-    public String storeFileToLocationWithoutMd(MultipartFile file, String destinationDir) throws Exception {
-        String originalFileName = file.getOriginalFilename();
-        String fileExtension = "";
-
-        if (originalFileName != null && originalFileName.contains(".")) {
-            fileExtension = originalFileName.substring(originalFileName.lastIndexOf("."));
+    // 复制md文件及其图片目录，先复制到同目录的临时文件后原子改名；md副本和缓存条目各自独立，之后的转换不会改写对方。
+    // 图片用硬链接共享，md中的图片链接改为指向目标的图片目录；先放好图片目录再替换md，替换后的链接都指向已存在的图片
+    private void copyConversion(Path sourceMarkdown, Path targetMarkdown) throws IOException {
+        Path sourceImageDir = MarkdownImages.dirFor(sourceMarkdown);
+        Path targetImageDir = MarkdownImages.dirFor(targetMarkdown);
+        String suffix = "." + UUID.randomUUID() + ".tmp";
+        Path temp = targetMarkdown.resolveSibling(targetMarkdown.getFileName() + suffix);
+        Path tempImageDir = targetImageDir.resolveSibling(targetImageDir.getFileName() + suffix);
+        try {
+            if (Files.isDirectory(sourceImageDir)) {
+                copyRelinking(sourceMarkdown, temp, sourceImageDir.getFileName() + "/", targetImageDir.getFileName() + "/");
+                linkImages(sourceImageDir, tempImageDir);
+            } else {
+                Files.copy(sourceMarkdown, temp);
+            }
+            replaceImageDir(tempImageDir, targetImageDir);
+            Files.move(temp, targetMarkdown, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+            FileUtil.del(tempImageDir.toFile());
         }
+    }
 
-        String baseFileName = originalFileName.substring(0, originalFileName.length() - fileExtension.length());
-        String uniqueFileName = originalFileName;
-        int counter = 1;
+    // 逐行复制md文件，保留原有的换行符，把图片链接的目录前缀替换为目标图片目录
+    private void copyRelinking(Path source, Path target, String fromPrefix, String toPrefix) throws IOException {
+        String from = MarkdownImages.LINK_START + fromPrefix;
+        String to = MarkdownImages.LINK_START + toPrefix;
+        try (Reader reader = Files.newBufferedReader(source, StandardCharsets.UTF_8);
+             Writer writer = Files.newBufferedWriter(target, StandardCharsets.UTF_8)) {
+            StringBuilder line = new StringBuilder();
+            int c;
+            do {
+                c = reader.read();
+                if (c != -1) {
+                    line.append((char) c);
+                }
+                if ((c == '\n' || c == -1) && line.length() > 0) {
+                    writer.write(line.toString().replace(from, to));
+                    line.setLength(0);
+                }
+            } while (c != -1);
+        }
+    }
 
-        while (fileExists(destinationDir, uniqueFileName)) {
-            uniqueFileName = baseFileName + "(" + counter + ")" + fileExtension;
-            counter++;
+    // 图片写入后不会原地修改，用硬链接共享同一份数据；不支持硬链接时复制
+    private void linkImages(Path sourceImageDir, Path targetImageDir) throws IOException {
+        Files.createDirectories(targetImageDir);
+        try (Stream<Path> images = Files.list(sourceImageDir)) {
+            for (Path image : (Iterable<Path>) images::iterator) {
+                Path target = targetImageDir.resolve(image.getFileName().toString());
+                try {
+                    Files.createLink(target, image);
+                } catch (UnsupportedOperationException | IOException e) {
+                    Files.copy(image, target);
+                }
+            }
         }
+    }
 
-        Path targetLocation = Paths.get(destinationDir).resolve(uniqueFileName);
+    // 并发转换相同内容时缓存中不会出现半个文件；写入后超出容量上限则淘汰最久未使用的条目
+    private void publishToCache(Path markdown, Path cacheDir, Path cachedMarkdown) {
+        try {
+            Files.createDirectories(cacheDir);
+            copyConversion(markdown, cachedMarkdown);
+            evictConversionCache(cacheDir);
+        } catch (IOException e) {
+            // 缓存写入失败不影响本次转换结果
+        }
+    }
 
-        // 保存文件
-        file.transferTo(targetLocation);
+    // 修改时间即最近使用时间，从最久未使用的条目开始删除，直到md文件和图片的总大小不超过上限
+    private synchronized void evictConversionCache(Path cacheDir) throws IOException {
+        Map<Path, BasicFileAttributes> entries = new HashMap<>();
+        Map<Path, Long> entrySizes = new HashMap<>();
+        long totalBytes = 0;
+        try (Stream<Path> files = Files.list(cacheDir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                if (!file.getFileName().toString().endsWith(".md")) {
+                    continue;
+                }
+                try {
+                    BasicFileAttributes attr = Files.readAttributes(file, BasicFileAttributes.class);
+                    long size = attr.size() + imageDirSize(MarkdownImages.dirFor(file));
+                    entries.put(file, attr);
+                    entrySizes.put(file, size);
+                    totalBytes += size;
+                } catch (IOException e) {
+                    // 条目已被删除
+                }
+            }
+        }
+        long maxBytes = conversionCacheMaxMb * 1024 * 1024;
+        if (totalBytes <= maxBytes) {
+            return;
+        }
+        List<Path> eldestFirst = new ArrayList<>(entries.keySet());
+        eldestFirst.sort(Comparator.comparing(file -> entries.get(file).lastModifiedTime()));
+        for (Path file : eldestFirst) {
+            if (totalBytes <= maxBytes) {
+                break;
+            }
+            // 先删md文件，命中时找不到md就不会再读取它的图片目录
+            if (Files.deleteIfExists(file)) {
+                FileUtil.del(MarkdownImages.dirFor(file).toFile());
+                totalBytes -= entrySizes.get(file);
+            }
+        }
+    }
 
-        return uniqueFileName;
+    private long imageDirSize(Path imageDir) throws IOException {
+        if (!Files.isDirectory(imageDir)) {
+            return 0;
+        }
+        long size = 0;
+        try (Stream<Path> images = Files.list(imageDir)) {
+            for (Path image : (Iterable<Path>) images::iterator) {
+                size += Files.size(image);
+            }
+        }
+        return size;
     }
 
     // 获取文件列表
@@ -177,12 +398,12 @@ public class FileStorageService {
         return Files.exists(filePath) && Files.isRegularFile(filePath);
     }
 
-    private void convertPDFToMarkdown(String pdf_file_path,String markdown_file_path) throws IOException {
-        PdfToMarkdownConverter.convert(pdf_file_path,markdown_file_path);
+    private void convertPDFToMarkdown(String pdf_file_path,String markdown_file_path,Path imageDir,String imageLinkPrefix) throws IOException {
+        PdfToMarkdownConverter.convert(pdf_file_path,markdown_file_path,imageDir,imageLinkPrefix);
     }
 
-    private void convertDOCToMarkdown(String doc_file_path,String markdown_file_path) throws Exception {
-        DocToMarkdownConverter.convert(doc_file_path,markdown_file_path);
+    private void convertDOCToMarkdown(String doc_file_path,String markdown_file_path,Path imageDir,String imageLinkPrefix) throws Exception {
+        DocToMarkdownConverter.convert(doc_file_path,markdown_file_path,imageDir,imageLinkPrefix);
     }
 
     private void convertTxtToMarkdown(String txt_file_path,String markdown_file_path) throws Exception {
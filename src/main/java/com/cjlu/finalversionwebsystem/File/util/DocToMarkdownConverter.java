@@ -10,7 +10,9 @@ import org.apache.poi.xwpf.usermodel.*;
 import java.io.*;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -19,24 +21,37 @@ import java.util.List;
  */
 public class DocToMarkdownConverter {
 
-    // 图片保存目录
-    private static final String IMAGE_DIR = "images/";
     // 图形保存目录
     private static final String DRAWING_DIR = "drawings/";
     // 公式保存目录
     private static final String EQUATION_DIR = "equations/";
 
     /**
-     * 将DOC或DOCX文件转换为Markdown
+     * 将DOC或DOCX文件转换为Markdown，图片保存在Markdown文件旁的图片目录中
      * @param docFilePath DOC/DOCX文件路径
      * @param mdFilePath 输出的Markdown文件路径
      * @throws Exception 处理过程中可能抛出的异常
      */
     public static void convert(String docFilePath, String mdFilePath) throws Exception {
+        Path imageDir = MarkdownImages.dirFor(Paths.get(mdFilePath));
+        convert(docFilePath, mdFilePath, imageDir, imageDir.getFileName() + "/");
+    }
+
+    /**
+     * 将DOC或DOCX文件转换为Markdown
+     * @param docFilePath DOC/DOCX文件路径
+     * @param mdFilePath 输出的Markdown文件路径
+     * @param imageDir 图片保存目录，转换前清空
+     * @param imageLinkPrefix Markdown中图片链接的路径前缀，以"/"结尾
+     * @throws Exception 处理过程中可能抛出的异常
+     */
+    public static void convert(String docFilePath, String mdFilePath, Path imageDir, String imageLinkPrefix) throws Exception {
         // 创建必要的目录
-        FileUtil.mkdir(IMAGE_DIR);
         FileUtil.mkdir(DRAWING_DIR);
         FileUtil.mkdir(EQUATION_DIR);
+        // 重新转换时不残留上一版文档的图片
+        FileUtil.del(imageDir.toFile());
+        Files.createDirectories(imageDir);
 
         try (Writer writer = new OutputStreamWriter(
                 Files.newOutputStream(Paths.get(mdFilePath)),
@@ -44,10 +59,10 @@ public class DocToMarkdownConverter {
 
             if (docFilePath.toLowerCase().endsWith(".docx")) {
                 // 处理DOCX文件
-                convertDocx(docFilePath, writer);
+                convertDocx(docFilePath, writer, imageDir, imageLinkPrefix);
             } else {
                 // 处理DOC文件
-                convertDoc(docFilePath, writer);
+                convertDoc(docFilePath, writer, imageDir, imageLinkPrefix);
             }
         }
     }
@@ -55,7 +70,7 @@ public class DocToMarkdownConverter {
     /**
      * 处理DOCX文件
      */
-    private static void convertDocx(String docxFilePath, Writer writer) throws Exception {
+    private static void convertDocx(String docxFilePath, Writer writer, Path imageDir, String imageLinkPrefix) throws Exception {
         try (XWPFDocument document = new XWPFDocument(Files.newInputStream(Paths.get(docxFilePath)))) {
             // 处理段落
             for (XWPFParagraph paragraph : document.getParagraphs()) {
@@ -68,11 +83,12 @@ public class DocToMarkdownConverter {
             }
 
             // 处理图片
+            List<Path> imageFiles = new ArrayList<>();
             int imageIndex = 0;
             for (XWPFPictureData pictureData : document.getAllPictures()) {
-                String imageFileName = saveImage(pictureData, imageIndex++);
-                writer.write("![图片][" + imageFileName + "]\n\n");
+                imageFiles.add(saveImage(pictureData, imageDir, imageIndex++));
             }
+            writeImages(imageFiles, imageLinkPrefix, writer);
 
             // 处理图形
             processDrawings(document, writer);
@@ -85,7 +101,7 @@ public class DocToMarkdownConverter {
     /**
      * 处理DOC文件
      */
-    private static void convertDoc(String docFilePath, Writer writer) throws Exception {
+    private static void convertDoc(String docFilePath, Writer writer, Path imageDir, String imageLinkPrefix) throws Exception {
         try (HWPFDocument document = new HWPFDocument(Files.newInputStream(Paths.get(docFilePath)))) {
             Range range = document.getRange();
 
@@ -103,7 +119,7 @@ public class DocToMarkdownConverter {
             }
 
             // 处理图片
-            processDocImages(document, writer);
+            processDocImages(document, writer, imageDir, imageLinkPrefix);
 
             // 处理图形和公式
             processDocDrawingsAndEquations(document, writer);
@@ -258,15 +274,15 @@ public class DocToMarkdownConverter {
     }
 
     /**
-     * 保存图片并返回文件名
+     * 保存图片并返回文件路径
      */
-    private static String saveImage(XWPFPictureData pictureData, int index) throws Exception {
+    private static Path saveImage(XWPFPictureData pictureData, Path imageDir, int index) throws Exception {
         byte[] imageBytes = pictureData.getData();
         String fileExtension = pictureData.suggestFileExtension();
-        String fileName = IMAGE_DIR + "image_" + index + "." + fileExtension;
+        Path imageFile = imageDir.resolve("image_" + index + "." + fileExtension);
 
-        FileUtil.writeBytes(imageBytes, fileName);
-        return fileName;
+        FileUtil.writeBytes(imageBytes, imageFile.toFile());
+        return imageFile;
     }
 
     /**
@@ -299,18 +315,42 @@ public class DocToMarkdownConverter {
     /**
      * 处理DOC中的图片
      */
-    private static void processDocImages(HWPFDocument document, Writer writer) throws Exception {
+    private static void processDocImages(HWPFDocument document, Writer writer, Path imageDir,
+                                         String imageLinkPrefix) throws Exception {
+        List<Path> imageFiles = new ArrayList<>();
         int imageIndex = 0;
         PicturesTable picturesTable = document.getPicturesTable();
         if (picturesTable != null) {
             for (Picture picture : picturesTable.getAllPictures()) {
                 String fileExtension = picture.suggestFileExtension();
-                String fileName = IMAGE_DIR + "image_" + imageIndex++ + "." + fileExtension;
+                Path imageFile = imageDir.resolve("image_" + imageIndex++ + "." + fileExtension);
 
-                try (OutputStream out = new FileOutputStream(fileName)) {
+                try (OutputStream out = Files.newOutputStream(imageFile)) {
                     picture.writeImageContent(out);
                 }
-                writer.write("![图片][" + fileName + "]\n\n");
+                imageFiles.add(imageFile);
+            }
+        }
+        writeImages(imageFiles, imageLinkPrefix, writer);
+    }
+
+    /**
+     * 写入图片链接，并把批量OCR识别出的文字写在对应图片之后
+     */
+    private static void writeImages(List<Path> imageFiles, String imageLinkPrefix, Writer writer) throws IOException {
+        if (imageFiles.isEmpty()) {
+            return;
+        }
+        List<String> paths = new ArrayList<>(imageFiles.size());
+        for (Path imageFile : imageFiles) {
+            paths.add(imageFile.toString());
+        }
+        List<String> texts = OcrWorkerPool.recognizeAll(paths);
+        for (int i = 0; i < imageFiles.size(); i++) {
+            writer.write(MarkdownImages.link(imageLinkPrefix, imageFiles.get(i)) + "\n\n");
+            String text = texts.get(i);
+            if (StrUtil.isNotBlank(text)) {
+                writer.write(text.trim() + "\n\n");
             }
         }
     }
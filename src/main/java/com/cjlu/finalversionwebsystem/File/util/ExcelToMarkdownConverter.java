@@ -1,25 +1,51 @@
 package com.cjlu.finalversionwebsystem.File.util;
 
+import com.cjlu.finalversionwebsystem.rag.TokenEstimator;
+import lombok.extern.slf4j.Slf4j;
 import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
 import org.apache.poi.ss.usermodel.*;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFComment;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
 
+import javax.xml.parsers.ParserConfigurationException;
 import java.io.BufferedWriter;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
 
 /**
  * Excel转Markdown格式工具类
  * 支持.xls和.xlsx格式的Excel文件转换为Markdown表格
+ * .xlsx按SAX事件流式读取，逐行写出，内存占用与行数无关；大工作表按token数分成多个小节，每节重复表头
  */
+@Slf4j
 public class ExcelToMarkdownConverter {
 
+    // 每个小节的token上限，略小于向量索引文本段的上限(500)，为标题路径留出空间
+    private static final int SECTION_MAX_TOKENS = 400;
+
     /**
      * 将Excel文件转换为Markdown文件
      * @param excelFilePath 源Excel文件路径
@@ -38,6 +64,12 @@ public class ExcelToMarkdownConverter {
      * @throws IOException 当文件操作发生错误时抛出
      */
     public static void convert(String excelFilePath, String mdFilePath, boolean includeSheetNames) throws IOException {
+        // 扩展名不区分大小写，REPORT.XLSX同样走流式读取
+        if (excelFilePath.toLowerCase(Locale.ROOT).endsWith(".xlsx")) {
+            convertXlsxStreaming(excelFilePath, mdFilePath, includeSheetNames);
+            return;
+        }
+
         // 读取Excel文件
         try (Workbook workbook = getWorkbook(excelFilePath);
              BufferedWriter writer = Files.newBufferedWriter(Paths.get(mdFilePath), StandardCharsets.UTF_8)) {
@@ -50,7 +82,7 @@ public class ExcelToMarkdownConverter {
                 }
 
                 String sheetName = sheet.getSheetName();
-                System.out.println("处理工作表: " + sheetName);
+                log.debug("处理工作表: {}", sheetName);
 
                 // 如果需要，添加工作表名称作为标题
                 if (includeSheetNames) {
@@ -64,17 +96,188 @@ public class ExcelToMarkdownConverter {
             }
         }
 
-        System.out.println("Excel转换完成: " + mdFilePath);
+        log.info("Excel转换完成: {}", mdFilePath);
+    }
+
+    /**
+     * 流式转换.xlsx文件，不把工作簿载入内存
+     * 共享字符串表和样式表常驻内存，单元格按SAX事件逐行处理
+     */
+    private static void convertXlsxStreaming(String excelFilePath, String mdFilePath, boolean includeSheetNames) throws IOException {
+        try (OPCPackage pkg = OPCPackage.open(new File(excelFilePath), PackageAccess.READ);
+             BufferedWriter writer = Files.newBufferedWriter(Paths.get(mdFilePath), StandardCharsets.UTF_8)) {
+            XSSFReader reader = new XSSFReader(pkg);
+            ReadOnlySharedStringsTable strings = new ReadOnlySharedStringsTable(pkg);
+            StylesTable styles = reader.getStylesTable();
+            DataFormatter formatter = new DataFormatter();
+
+            XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator) reader.getSheetsData();
+            while (sheets.hasNext()) {
+                try (InputStream sheetStream = sheets.next()) {
+                    String sheetName = sheets.getSheetName();
+                    log.debug("处理工作表: {}", sheetName);
+
+                    // 如果需要，添加工作表名称作为标题
+                    if (includeSheetNames) {
+                        writer.write("## " + sheetName + "\n\n");
+                    }
+
+                    StreamingSheetWriter sheetWriter = new StreamingSheetWriter(writer);
+                    XMLReader parser = XMLHelper.newXMLReader();
+                    parser.setContentHandler(new XSSFSheetXMLHandler(styles, null, strings, sheetWriter, formatter, false));
+                    try {
+                        parser.parse(new InputSource(sheetStream));
+                    } catch (UncheckedIOException e) {
+                        throw e.getCause();
+                    }
+                    sheetWriter.finish();
+                    writer.write("\n\n");
+                }
+            }
+        } catch (OpenXML4JException | SAXException | ParserConfigurationException e) {
+            throw new IOException("Excel文件解析失败: " + excelFilePath, e);
+        }
+
+        log.info("Excel转换完成: {}", mdFilePath);
+    }
+
+    /**
+     * 接收SAX解析出的单元格，逐行写出Markdown表格
+     * 第一个非空行作为表头，数据行补齐或收拢到表头的列数；行数据按token数累积成小节，小节写出后即释放，
+     * 工作表超过一个小节时每节前加上行号范围标题并重复表头
+     */
+    private static class StreamingSheetWriter implements XSSFSheetXMLHandler.SheetContentsHandler {
+        private final Writer writer;
+        private final List<String> row = new ArrayList<>();
+
+        private String headerLines;
+        private int headerWidth;
+        private int headerTokens;
+
+        private final StringBuilder section = new StringBuilder();
+        private int sectionTokens;
+        private int sectionFirstRow;
+        private int sectionLastRow;
+        private int sectionCount;
+
+        private StreamingSheetWriter(Writer writer) {
+            this.writer = writer;
+        }
+
+        @Override
+        public void startRow(int rowNum) {
+            row.clear();
+        }
+
+        @Override
+        public void cell(String cellReference, String formattedValue, XSSFComment comment) {
+            int column = cellReference == null ? row.size() : new CellReference(cellReference).getCol();
+            while (row.size() < column) {
+                row.add("");
+            }
+            row.add(formattedValue == null ? "" : formattedValue.trim());
+        }
+
+        @Override
+        public void endRow(int rowNum) {
+            if (row.stream().allMatch(String::isEmpty)) {
+                return;
+            }
+            if (headerLines == null) {
+                headerWidth = row.size();
+                StringBuilder header = new StringBuilder(formatRow(row));
+                // 添加分隔行
+                header.append("| ");
+                for (int j = 0; j < headerWidth; j++) {
+                    header.append("--- | ");
+                }
+                header.append("\n");
+                headerLines = header.toString();
+                headerTokens = TokenEstimator.estimate(headerLines);
+                return;
+            }
+            fitToHeader();
+            String line = formatRow(row);
+            int lineTokens = TokenEstimator.estimate(line);
+            if (section.length() > 0 && headerTokens + sectionTokens + lineTokens > SECTION_MAX_TOKENS) {
+                flushSection(false);
+            }
+            if (section.length() == 0) {
+                sectionFirstRow = rowNum + 1;
+            }
+            section.append(line);
+            sectionTokens += lineTokens;
+            sectionLastRow = rowNum + 1;
+        }
+
+        /**
+         * 使数据行与表头列数一致：不足的补空，超出部分去掉末尾的空单元格后并入最后一列，内容不丢失
+         */
+        private void fitToHeader() {
+            while (row.size() < headerWidth) {
+                row.add("");
+            }
+            while (row.size() > headerWidth && row.get(row.size() - 1).isEmpty()) {
+                row.remove(row.size() - 1);
+            }
+            if (row.size() > headerWidth) {
+                List<String> overflow = row.subList(headerWidth - 1, row.size());
+                String merged = overflow.stream().filter(cell -> !cell.isEmpty()).collect(Collectors.joining(" "));
+                overflow.clear();
+                row.add(merged);
+            }
+        }
+
+        @Override
+        public void headerFooter(String text, boolean isHeader, String tagName) {
+        }
+
+        private void finish() throws IOException {
+            if (headerLines == null) {
+                return;
+            }
+            try {
+                flushSection(true);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+
+        private void flushSection(boolean last) {
+            try {
+                // 整个工作表只有一个小节时不加行号标题
+                if (sectionCount > 0 || !last) {
+                    writer.write("### 第 " + sectionFirstRow + "-" + sectionLastRow + " 行\n\n");
+                }
+                writer.write(headerLines);
+                writer.write(section.toString());
+                writer.write("\n");
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            sectionCount++;
+            section.setLength(0);
+            sectionTokens = 0;
+        }
+
+        private static String formatRow(List<String> cells) {
+            StringBuilder line = new StringBuilder("| ");
+            for (String cellValue : cells) {
+                line.append(escapeSpecialCharacters(cellValue)).append(" | ");
+            }
+            return line.append("\n").toString();
+        }
     }
 
     /**
      * 根据文件扩展名获取相应的Workbook实例
      */
     private static Workbook getWorkbook(String filePath) throws IOException {
+        String lowerCasePath = filePath.toLowerCase(Locale.ROOT);
         try (InputStream inputStream = new FileInputStream(filePath)) {
-            if (filePath.endsWith(".xlsx")) {
+            if (lowerCasePath.endsWith(".xlsx")) {
                 return new XSSFWorkbook(inputStream);
-            } else if (filePath.endsWith(".xls")) {
+            } else if (lowerCasePath.endsWith(".xls")) {
                 return new HSSFWorkbook(inputStream);
             } else {
                 throw new IllegalArgumentException("不支持的文件格式: " + filePath +
@@ -2,14 +2,8 @@ package com.cjlu.finalversionwebsystem.File.util;
 
 import cn.hutool.core.io.FileUtil;
 import cn.hutool.core.util.StrUtil;
-import net.sourceforge.tess4j.ITesseract;
-import net.sourceforge.tess4j.Tesseract;
 import net.sourceforge.tess4j.TesseractException;
-import net.sourceforge.tess4j.util.LoadLibs;
 
-import javax.imageio.ImageIO;
-import java.awt.image.BufferedImage;
-import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
@@ -18,22 +12,10 @@ import java.util.List;
 /**
  * 图片文字提取与MD生成工具类
  * 将图片中的文字提取出来，并将图片和提取的文字写入Markdown文件
+ * OCR识别由 OcrWorkerPool 完成，可以被多个上传请求同时调用
  */
 public class ImageToMarkdownConverter {
 
-    // Tesseract OCR 实例
-    private static final ITesseract tesseract = new Tesseract();
-
-    // 初始化Tesseract，设置数据目录和语言
-    static {
-        // 设置Tesseract数据目录（包含语言包）
-        File tessDataFolder = LoadLibs.extractTessResources("tessdata");
-        tesseract.setDatapath(tessDataFolder.getAbsolutePath());
-
-        // 设置识别语言（中文+英文，需要对应的语言包）
-        tesseract.setLanguage("chi_sim+eng");
-    }
-
     /**
      * 处理单张图片：提取文字并生成MD文件
      * @param imagePath 图片路径
@@ -60,6 +42,9 @@ public class ImageToMarkdownConverter {
      * @throws TesseractException OCR识别异常
      */
     public static void processImages(List<String> imagePaths, String mdPath) throws IOException, TesseractException {
+        // 所有图片并行识别，识别失败的图片按未提取到文字处理
+        List<String> extractedTexts = OcrWorkerPool.recognizeAll(imagePaths);
+
         try (FileWriter writer = new FileWriter(mdPath, StandardCharsets.UTF_8)) {
             writer.write("# 图片文字提取结果\n\n");
 
@@ -71,9 +56,8 @@ public class ImageToMarkdownConverter {
                 String imageName = FileUtil.getName(imagePath);
                 writer.write("![图片 " + (i + 1) + "](" + imagePath + ")\n\n");
 
-                // 提取并写入文字
-                String extractedText = extractTextFromImage(imagePath);
-                String structuredText = structureText(extractedText);
+                // 写入提取的文字
+                String structuredText = structureText(extractedTexts.get(i));
                 writer.write("### 提取的文字：\n\n");
                 writer.write(structuredText + "\n\n");
                 writer.write("---\n\n");
@@ -89,18 +73,8 @@ public class ImageToMarkdownConverter {
      * @throws TesseractException OCR识别异常
      */
     private static String extractTextFromImage(String imagePath) throws IOException, TesseractException {
-        File imageFile = new File(imagePath);
-        if (!imageFile.exists()) {
-            throw new IOException("图片文件不存在: " + imagePath);
-        }
-
-        BufferedImage image = ImageIO.read(imageFile);
-        if (image == null) {
-            throw new IOException("无法读取图片文件: " + imagePath);
-        }
-
-        // 使用Tesseract进行OCR识别
-        return tesseract.doOCR(image);
+        // 使用OCR工作线程池进行识别
+        return OcrWorkerPool.recognize(OcrWorkerPool.readImage(imagePath));
     }
 
     /**
@@ -167,7 +141,7 @@ public class ImageToMarkdownConverter {
      * @param language 语言代码，如"chi_sim"（简体中文）、"eng"（英文）、"chi_sim+eng"（中英文）
      */
     public static void setTesseractLanguage(String language) {
-        tesseract.setLanguage(language);
+        OcrWorkerPool.setLanguage(language);
     }
 
     /**
@@ -175,6 +149,6 @@ public class ImageToMarkdownConverter {
      * @param dataPath 数据目录路径
      */
     public static void setTesseractDataPath(String dataPath) {
-        tesseract.setDatapath(dataPath);
+        OcrWorkerPool.setDataPath(dataPath);
     }
 }
@@ -0,0 +1,40 @@
+package com.cjlu.finalversionwebsystem.File.util;
+
+import java.nio.file.Path;
+
+/**
+ * 转换结果中图片的存放约定
+ * 图片保存在Markdown文件旁的 文件名_images 目录中，Markdown中用相对该文件的路径引用
+ */
+public final class MarkdownImages {
+
+    // 图片目录名的后缀
+    public static final String DIR_SUFFIX = "_images";
+
+    // 图片链接的开头，后接图片目录前缀和图片文件名
+    public static final String LINK_START = "![图片](";
+
+    private MarkdownImages() {
+    }
+
+    /**
+     * 获取Markdown文件对应的图片目录
+     * @param markdownFile Markdown文件路径
+     * @return 同目录下的 文件名_images 目录
+     */
+    public static Path dirFor(Path markdownFile) {
+        String fileName = markdownFile.getFileName().toString();
+        String baseName = fileName.toLowerCase().endsWith(".md") ? fileName.substring(0, fileName.length() - 3) : fileName;
+        return markdownFile.resolveSibling(baseName + DIR_SUFFIX);
+    }
+
+    /**
+     * 生成图片的Markdown链接
+     * @param linkPrefix 图片目录相对Markdown文件的路径前缀，以"/"结尾
+     * @param imageFile 图片文件
+     * @return Markdown图片链接
+     */
+    public static String link(String linkPrefix, Path imageFile) {
+        return LINK_START + linkPrefix + imageFile.getFileName() + ")";
+    }
+}
@@ -0,0 +1,315 @@
+package com.cjlu.finalversionwebsystem.File.util;
+
+import net.sourceforge.tess4j.ITesseract;
+import net.sourceforge.tess4j.Tesseract;
+import net.sourceforge.tess4j.TesseractException;
+import net.sourceforge.tess4j.util.LoadLibs;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * OCR工作线程池
+ * Tesseract实例不是线程安全的，每个工作线程持有自己的实例；线程数与CPU核数相同，
+ * 等待队列有界，队列满时立即拒绝，批量识别时每批最多同时提交线程数个任务；
+ * 每张图片的识别结果按超时时间等待。Tesseract的本地调用无法中断，超时的任务会继续占用工作线程，
+ * 这期间临时增加一个工作线程补位（最多增加CPU核数个），任务结束后撤回，并丢弃该线程的Tesseract实例
+ */
+public class OcrWorkerPool {
+
+    // 每个工作线程对应的排队图片数
+    private static final int QUEUE_CAPACITY_PER_THREAD = 8;
+
+    private static final int THREADS = Runtime.getRuntime().availableProcessors();
+
+    // 超时后仍在运行、已补位的任务数
+    private static int replacedWorkers;
+
+    private static volatile String language = "chi_sim+eng";
+    private static volatile String dataPath;
+    private static volatile long timeoutSeconds = 60;
+
+    // 语言或数据目录变更后递增，各线程的实例在下次使用前同步设置
+    private static final AtomicInteger configVersion = new AtomicInteger();
+
+    private static final ThreadLocal<Engine> engines = ThreadLocal.withInitial(Engine::new);
+
+    private static final ThreadPoolExecutor workers = createWorkers();
+
+    /**
+     * 工作线程持有的Tesseract实例及其设置版本
+     */
+    private static class Engine {
+        final ITesseract tesseract = new Tesseract();
+        int version = -1;
+    }
+
+    private static ThreadPoolExecutor createWorkers() {
+        AtomicInteger threadIndex = new AtomicInteger();
+        return new ThreadPoolExecutor(THREADS, THREADS, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(THREADS * QUEUE_CAPACITY_PER_THREAD),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "ocr-worker-" + threadIndex.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                // 队列满时不阻塞提交方，由调用方按失败处理
+                (runnable, executor) -> {
+                    throw new RejectedExecutionException("OCR队列已满");
+                });
+    }
+
+    /**
+     * 识别单张图片中的文字
+     * @param image 图片
+     * @return 识别出的文字
+     * @throws IOException 队列已满或识别超时
+     * @throws TesseractException OCR识别异常
+     */
+    public static String recognize(BufferedImage image) throws IOException, TesseractException {
+        OcrCall call = new OcrCall(() -> engine().doOCR(image));
+        return await(submit(call), call);
+    }
+
+    /**
+     * 并行识别多张图片中的文字，结果与图片顺序一致
+     * @param imagePaths 图片路径列表
+     * @return 识别出的文字，读取、排队或识别失败的图片对应null
+     */
+    public static List<String> recognizeAll(List<String> imagePaths) {
+        List<OcrTask> tasks = new ArrayList<>(imagePaths.size());
+        for (String imagePath : imagePaths) {
+            tasks.add(() -> engine().doOCR(readImage(imagePath)));
+        }
+        return runAll(tasks);
+    }
+
+    /**
+     * 批量执行识别任务，同时提交的任务数不超过线程数，一批图片不会占满等待队列
+     * @param tasks 识别任务
+     * @return 识别结果，顺序与任务一致，失败的任务对应null
+     */
+    static List<String> runAll(List<OcrTask> tasks) {
+        String[] texts = new String[tasks.size()];
+        Deque<Integer> pending = new ArrayDeque<>();
+        List<Future<String>> futures = new ArrayList<>(Collections.nCopies(tasks.size(), null));
+        List<OcrCall> calls = new ArrayList<>(Collections.nCopies(tasks.size(), null));
+        int next = 0;
+        while (next < tasks.size() || !pending.isEmpty()) {
+            while (next < tasks.size() && pending.size() < THREADS) {
+                OcrCall call = new OcrCall(tasks.get(next));
+                try {
+                    futures.set(next, submit(call));
+                    calls.set(next, call);
+                    pending.add(next);
+                } catch (IOException e) {
+                    // 其他转换占满了队列，这张图片不做识别
+                }
+                next++;
+            }
+            Integer index = pending.poll();
+            if (index == null) {
+                continue;
+            }
+            try {
+                texts[index] = await(futures.get(index), calls.get(index));
+            } catch (IOException | TesseractException e) {
+                texts[index] = null;
+            }
+        }
+        return Arrays.asList(texts);
+    }
+
+    /**
+     * 读取图片文件
+     * @param imagePath 图片路径
+     * @return 图片
+     * @throws IOException 文件不存在或无法解码
+     */
+    public static BufferedImage readImage(String imagePath) throws IOException {
+        File imageFile = new File(imagePath);
+        if (!imageFile.exists()) {
+            throw new IOException("图片文件不存在: " + imagePath);
+        }
+
+        BufferedImage image = ImageIO.read(imageFile);
+        if (image == null) {
+            throw new IOException("无法读取图片文件: " + imagePath);
+        }
+        return image;
+    }
+
+    /**
+     * 设置识别语言，对所有工作线程生效
+     * @param language 语言代码，如"chi_sim"（简体中文）、"eng"（英文）、"chi_sim+eng"（中英文）
+     */
+    public static void setLanguage(String language) {
+        OcrWorkerPool.language = language;
+        configVersion.incrementAndGet();
+    }
+
+    /**
+     * 设置数据目录（语言包所在目录），对所有工作线程生效
+     * @param dataPath 数据目录路径
+     */
+    public static void setDataPath(String dataPath) {
+        OcrWorkerPool.dataPath = dataPath;
+        configVersion.incrementAndGet();
+    }
+
+    /**
+     * 设置单张图片的超时时间
+     * @param timeoutSeconds 超时秒数
+     */
+    public static void setTimeoutSeconds(long timeoutSeconds) {
+        OcrWorkerPool.timeoutSeconds = timeoutSeconds;
+    }
+
+    interface OcrTask {
+        String run() throws Exception;
+    }
+
+    /**
+     * 在工作线程上执行的识别任务，记录是否已开始、是否已被提交方放弃
+     */
+    private static class OcrCall implements Callable<String> {
+        private final OcrTask task;
+        private boolean started;
+        private boolean abandoned;
+        private boolean replaced;
+
+        OcrCall(OcrTask task) {
+            this.task = task;
+        }
+
+        @Override
+        public String call() throws Exception {
+            synchronized (this) {
+                if (abandoned) {
+                    throw new CancellationException("OCR任务已超时");
+                }
+                started = true;
+            }
+            try {
+                return task.run();
+            } finally {
+                synchronized (this) {
+                    started = false;
+                    if (abandoned) {
+                        // 超时后才结束的调用，实例状态不可信，下次使用时重新创建
+                        engines.remove();
+                        if (replaced) {
+                            releaseWorker();
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * 提交方等待超时后放弃任务；任务已在运行时补充一个工作线程
+         */
+        synchronized void abandon() {
+            abandoned = true;
+            if (started) {
+                replaced = addWorker();
+            }
+        }
+    }
+
+    private static synchronized boolean addWorker() {
+        if (replacedWorkers >= THREADS) {
+            return false;
+        }
+        replacedWorkers++;
+        // 先调大最大线程数，核心线程数不能超过最大线程数
+        workers.setMaximumPoolSize(THREADS + replacedWorkers);
+        workers.setCorePoolSize(THREADS + replacedWorkers);
+        return true;
+    }
+
+    private static synchronized void releaseWorker() {
+        replacedWorkers--;
+        // 多出的线程空闲后退出
+        workers.setCorePoolSize(THREADS + replacedWorkers);
+        workers.setMaximumPoolSize(THREADS + replacedWorkers);
+    }
+
+    private static Future<String> submit(OcrCall call) throws IOException {
+        try {
+            return workers.submit(call);
+        } catch (RejectedExecutionException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    private static String await(Future<String> future, OcrCall call) throws IOException, TesseractException {
+        try {
+            return future.get(timeoutSeconds, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            // 排队中的任务直接取消；已在本地调用中的任务无法中断，补充工作线程
+            future.cancel(true);
+            call.abandon();
+            throw new IOException("OCR识别超时（" + timeoutSeconds + "秒）", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("OCR识别被中断", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof TesseractException) {
+                throw (TesseractException) cause;
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("OCR识别失败: " + cause.getMessage(), cause);
+        }
+    }
+
+    /**
+     * 获取当前工作线程的Tesseract实例，设置有变更时先同步
+     */
+    private static ITesseract engine() {
+        Engine engine = engines.get();
+        int version = configVersion.get();
+        if (engine.version != version) {
+            engine.tesseract.setDatapath(resolveDataPath());
+            engine.tesseract.setLanguage(language);
+            engine.version = version;
+        }
+        return engine.tesseract;
+    }
+
+    private static String resolveDataPath() {
+        String path = dataPath;
+        if (path == null) {
+            synchronized (OcrWorkerPool.class) {
+                if (dataPath == null) {
+                    // 解压内置的语言包，只执行一次
+                    File tessDataFolder = LoadLibs.extractTessResources("tessdata");
+                    dataPath = tessDataFolder.getAbsolutePath();
+                }
+                path = dataPath;
+            }
+        }
+        return path;
+    }
+}
@@ -17,24 +17,42 @@ import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
 import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 /**
  * PDF转Markdown工具类
  * 支持识别图片、表格、加粗文本、标题和代码块
+ * 逐页输出正文、该页的表格和图片，图片按页号命名；标题层级按全文字体大小确定
+ * 页数较多时按页分区并行转换，每个工作线程打开自己的PDDocument，按页序写出，结果与顺序转换相同
  */
 public class PdfToMarkdownConverter {
 
-    // 图片保存目录
-    private static final String IMAGE_DIR = "images/";
+    // 达到该页数且有多个CPU时使用分页并行转换
+    private static final int PARALLEL_MIN_PAGES = 8;
+
+    // 每个并行任务最多处理的页数
+    private static final int MAX_PAGES_PER_TASK = 16;
+
+    // 宽高都达到该像素数的图片才保存和OCR，跳过图标和装饰线
+    private static final int MIN_IMAGE_SIZE = 100;
 
     // 常见的代码字体（等宽字体）
     private static final Set<String> CODE_FONTS = Set.of(
@@ -98,38 +116,174 @@ public class PdfToMarkdownConverter {
     }
 
     /**
-     * 将PDF文件转换为Markdown文件
+     * 将PDF文件转换为Markdown文件，图片保存在Markdown文件旁的图片目录中
      * @param pdfFilePath PDF文件路径
      * @param mdFilePath  输出的Markdown文件路径
      * @throws IOException 处理过程中可能抛出的IO异常
      */
     public static void convert(String pdfFilePath, String mdFilePath) throws IOException {
-        // 创建图片保存目录
-        FileUtil.mkdir(IMAGE_DIR);
+        Path imageDir = MarkdownImages.dirFor(Paths.get(mdFilePath));
+        convert(pdfFilePath, mdFilePath, imageDir, imageDir.getFileName() + "/");
+    }
 
-        try (PDDocument document = PDDocument.load(new File(pdfFilePath));
-             Writer writer = new OutputStreamWriter(Files.newOutputStream(Paths.get(mdFilePath)), StandardCharsets.UTF_8)) {
+    /**
+     * 将PDF文件转换为Markdown文件
+     * @param pdfFilePath PDF文件路径
+     * @param mdFilePath  输出的Markdown文件路径
+     * @param imageDir    图片保存目录，转换前清空
+     * @param imageLinkPrefix Markdown中图片链接的路径前缀，以"/"结尾
+     * @throws IOException 处理过程中可能抛出的IO异常
+     */
+    public static void convert(String pdfFilePath, String mdFilePath, Path imageDir, String imageLinkPrefix) throws IOException {
+        resetImageDir(imageDir);
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        int pageCount;
+        try (PDDocument document = PDDocument.load(new File(pdfFilePath))) {
+            pageCount = document.getNumberOfPages();
+            if (parallelism <= 1 || pageCount < PARALLEL_MIN_PAGES) {
+                // 统计全文的字体大小，确定标题层级
+                Set<Float> fontSizes = new HashSet<>();
+                extractTextWithStyle(document, 1, pageCount, block -> fontSizes.add(block.getFontSize()));
+                try (Writer writer = new OutputStreamWriter(Files.newOutputStream(Paths.get(mdFilePath)), StandardCharsets.UTF_8)) {
+                    convertPages(document, 1, pageCount, sortedDescending(fontSizes), imageDir, imageLinkPrefix, writer);
+                }
+                return;
+            }
+        }
 
-            // 提取文本和样式信息
-            List<TextBlock> textBlocks = extractTextWithStyle(document);
+        convertParallel(pdfFilePath, mdFilePath, pageCount, parallelism, imageDir, imageLinkPrefix);
+    }
 
-            // 提取图片
-            extractImages(document);
+    /**
+     * 按页分区并行转换PDF
+     * 第一遍并行统计全文字体大小以确定标题层级，第二遍各任务把负责的页转换为Markdown，
+     * 按页序写出；表格跟在所在页的正文之后，图片按页号命名，保存在Markdown文件旁的图片目录中
+     * @param pdfFilePath PDF文件路径
+     * @param mdFilePath  输出的Markdown文件路径
+     * @param parallelism 并行度
+     * @throws IOException 处理过程中可能抛出的IO异常
+     */
+    public static void convertParallel(String pdfFilePath, String mdFilePath, int parallelism) throws IOException {
+        int pageCount;
+        try (PDDocument document = PDDocument.load(new File(pdfFilePath))) {
+            pageCount = document.getNumberOfPages();
+        }
+        Path imageDir = MarkdownImages.dirFor(Paths.get(mdFilePath));
+        resetImageDir(imageDir);
+        convertParallel(pdfFilePath, mdFilePath, pageCount, parallelism, imageDir, imageDir.getFileName() + "/");
+    }
 
-            // 提取表格
-            List<String> tableMarkdowns = extractTables(document, pdfFilePath);
+    private static void convertParallel(String pdfFilePath, String mdFilePath, int pageCount, int parallelism,
+                                        Path imageDir, String imageLinkPrefix) throws IOException {
+        int threads = Math.max(1, parallelism);
+        // 任务数约为线程数的4倍，页数不均时各线程负载更平衡
+        int pagesPerTask = Math.max(1, Math.min(MAX_PAGES_PER_TASK, pageCount / (threads * 4)));
+        List<int[]> ranges = new ArrayList<>();
+        for (int start = 1; start <= pageCount; start += pagesPerTask) {
+            ranges.add(new int[]{start, Math.min(pageCount, start + pagesPerTask - 1)});
+        }
 
-            // 处理文本块并转换为Markdown
-            processTextBlocks(textBlocks, tableMarkdowns, writer);
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            // 统计全文的字体大小，标题层级与顺序转换时一致
+            List<ForkJoinTask<Set<Float>>> sizeTasks = new ArrayList<>();
+            for (int[] range : ranges) {
+                sizeTasks.add(pool.submit(() -> collectFontSizes(pdfFilePath, range[0], range[1])));
+            }
+            Set<Float> fontSizes = new HashSet<>();
+            for (ForkJoinTask<Set<Float>> task : sizeTasks) {
+                fontSizes.addAll(join(task));
+            }
+            List<Float> sortedSizes = sortedDescending(fontSizes);
+
+            // 最多同时保留2倍线程数的已转换分区，按顺序写出后再提交后续分区
+            try (Writer writer = new OutputStreamWriter(Files.newOutputStream(Paths.get(mdFilePath)), StandardCharsets.UTF_8)) {
+                Deque<ForkJoinTask<String>> pending = new ArrayDeque<>();
+                int next = 0;
+                while (next < ranges.size() || !pending.isEmpty()) {
+                    while (next < ranges.size() && pending.size() < threads * 2) {
+                        int[] range = ranges.get(next++);
+                        pending.add(pool.submit(() -> convertPages(pdfFilePath, range[0], range[1], sortedSizes,
+                                imageDir, imageLinkPrefix)));
+                    }
+                    writer.write(join(pending.poll()));
+                }
+            }
+        } finally {
+            pool.shutdownNow();
         }
     }
 
     /**
-     * 提取文本及其样式信息
+     * 统计指定页范围内出现的字体大小
      */
-    private static List<TextBlock> extractTextWithStyle(PDDocument document) throws IOException {
-        List<TextBlock> textBlocks = new ArrayList<>();
+    private static Set<Float> collectFontSizes(String pdfFilePath, int startPage, int endPage) throws IOException {
+        Set<Float> fontSizes = new HashSet<>();
+        try (PDDocument document = PDDocument.load(new File(pdfFilePath))) {
+            extractTextWithStyle(document, startPage, endPage, block -> fontSizes.add(block.getFontSize()));
+        }
+        return fontSizes;
+    }
 
+    /**
+     * 在工作线程中打开PDF，把指定页范围转换为Markdown
+     */
+    private static String convertPages(String pdfFilePath, int startPage, int endPage, List<Float> sortedSizes,
+                                       Path imageDir, String imageLinkPrefix) throws IOException {
+        StringWriter writer = new StringWriter();
+        try (PDDocument document = PDDocument.load(new File(pdfFilePath))) {
+            convertPages(document, startPage, endPage, sortedSizes, imageDir, imageLinkPrefix, writer);
+        }
+        return writer.toString();
+    }
+
+    /**
+     * 把指定页范围转换为Markdown，每页依次写出正文、该页的表格和图片
+     */
+    private static void convertPages(PDDocument document, int startPage, int endPage, List<Float> sortedSizes,
+                                     Path imageDir, String imageLinkPrefix, Writer writer) throws IOException {
+        // 表格提取器与文档共用句柄，随文档一起关闭
+        ObjectExtractor extractor = new ObjectExtractor(document);
+        for (int pageNumber = startPage; pageNumber <= endPage; pageNumber++) {
+            List<TextBlock> textBlocks = new ArrayList<>();
+            extractTextWithStyle(document, pageNumber, pageNumber, textBlocks::add);
+            List<Path> imageFiles = extractPageImages(document.getPage(pageNumber - 1), imageDir, "image_p" + pageNumber + "_");
+            List<String> tableMarkdowns = extractPageTables(extractor, pageNumber);
+            processTextBlocks(textBlocks, tableMarkdowns, sortedSizes, writer);
+            writeImageTexts(imageFiles, imageLinkPrefix, writer);
+            writer.write("\n");
+        }
+    }
+
+    private static List<Float> sortedDescending(Set<Float> fontSizes) {
+        List<Float> sortedSizes = new ArrayList<>(fontSizes);
+        sortedSizes.sort(Collections.reverseOrder());
+        return sortedSizes;
+    }
+
+    private static <T> T join(ForkJoinTask<T> task) throws IOException {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("PDF转换被中断", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) cause).getCause();
+            }
+            throw new IOException("PDF转换失败: " + cause.getMessage(), cause);
+        }
+    }
+
+    /**
+     * 提取指定页范围的文本及其样式信息，逐个交给回调
+     */
+    private static void extractTextWithStyle(PDDocument document, int startPage, int endPage,
+                                             Consumer<TextBlock> sink) throws IOException {
         PDFTextStripper stripper = new PDFTextStripper() {
             @Override
             protected void writeString(String text, List<TextPosition> textPositions) throws IOException {
@@ -141,92 +295,120 @@ public class PdfToMarkdownConverter {
                     String fontName = firstPos.getFont().getName();
                     int pageNumber = getCurrentPageNo();
 
-                    textBlocks.add(new TextBlock(text, x, y, fontSize, fontName, pageNumber));
+                    sink.accept(new TextBlock(text, x, y, fontSize, fontName, pageNumber));
                 }
             }
         };
 
         stripper.setSortByPosition(true);
+        stripper.setStartPage(startPage);
+        stripper.setEndPage(endPage);
         stripper.getText(document);
-        return textBlocks;
     }
 
     /**
-     * 提取PDF中的图片
+     * 清空图片目录，重新转换时不残留上一版文档的图片
      */
-    private static void extractImages(PDDocument document) throws IOException {
-        int imageIndex = 0;
-
-        for (PDPage page : document.getPages()) {
-            PDResources resources = page.getResources();
-            Iterable<COSName> xObjectNames = resources.getXObjectNames();
-
-            if (xObjectNames != null) {
-                for (COSName name : xObjectNames) {
-                    if (resources.isImageXObject(name)) {
-                        PDImageXObject image = (PDImageXObject) resources.getXObject(name);
-                        String imageFileName = IMAGE_DIR + "image_" + (imageIndex++) + "." + image.getSuffix();
-                        BufferedImage bufferedImage = image.getImage();
-                        ImageIO.write(bufferedImage, image.getSuffix(), new File(imageFileName));
+    private static void resetImageDir(Path imageDir) throws IOException {
+        FileUtil.del(imageDir.toFile());
+        Files.createDirectories(imageDir);
+    }
 
+    /**
+     * 提取单页中足够大的图片并保存
+     * @return 保存的图片文件
+     */
+    private static List<Path> extractPageImages(PDPage page, Path imageDir, String namePrefix) throws IOException {
+        List<Path> imageFiles = new ArrayList<>();
+        int imageIndex = 0;
+        PDResources resources = page.getResources();
+        Iterable<COSName> xObjectNames = resources.getXObjectNames();
+
+        if (xObjectNames != null) {
+            for (COSName name : xObjectNames) {
+                if (resources.isImageXObject(name)) {
+                    PDImageXObject image = (PDImageXObject) resources.getXObject(name);
+                    if (image.getWidth() < MIN_IMAGE_SIZE || image.getHeight() < MIN_IMAGE_SIZE) {
+                        continue;
                     }
+                    Path imageFile = imageDir.resolve(namePrefix + (imageIndex++) + "." + image.getSuffix());
+                    BufferedImage bufferedImage = image.getImage();
+                    ImageIO.write(bufferedImage, image.getSuffix(), imageFile.toFile());
+                    imageFiles.add(imageFile);
                 }
             }
         }
+        return imageFiles;
     }
 
     /**
-     * 提取PDF中的表格并转换为Markdown格式
+     * 写入图片链接，批量识别图片中的文字写在链接之后；扫描件的正文只存在于图片中
      */
-    private static List<String> extractTables(PDDocument document, String pdfFilePath) throws IOException {
-        List<String> tableMarkdowns = new ArrayList<>();
-        ObjectExtractor extractor = new ObjectExtractor(document);
-
-        for (int i = 0; i < document.getNumberOfPages(); i++) {
-            Page page = extractor.extract(i + 1);
-            SpreadsheetExtractionAlgorithm sea = new SpreadsheetExtractionAlgorithm();
-            List<Table> tables = sea.extract(page);
-
-            for (Table table : tables) {
-                // 转换表格为Markdown格式
-                StringBuilder tableMd = new StringBuilder();
-
-                // 提取表头
-                List<List<RectangularTextContainer>> rows = table.getRows();
-                if (!rows.isEmpty()) {
-                    List<RectangularTextContainer> headerRow = rows.get(0);
-                    tableMd.append(headerRow.stream()
-                                    .map(cell -> "| " + cell.getText() + " ")
-                                    .collect(Collectors.joining()))
-                            .append("|\n");
-
-                    // 添加表头分隔线
-                    tableMd.append(headerRow.stream()
-                                    .map(cell -> "| --- ")
-                                    .collect(Collectors.joining()))
-                            .append("|\n");
-                }
+    private static void writeImageTexts(List<Path> imageFiles, String imageLinkPrefix, Writer writer) throws IOException {
+        if (imageFiles.isEmpty()) {
+            return;
+        }
+        List<String> paths = new ArrayList<>(imageFiles.size());
+        for (Path imageFile : imageFiles) {
+            paths.add(imageFile.toString());
+        }
+        List<String> texts = OcrWorkerPool.recognizeAll(paths);
+        for (int i = 0; i < imageFiles.size(); i++) {
+            writer.write("\n\n" + MarkdownImages.link(imageLinkPrefix, imageFiles.get(i)) + "\n\n");
+            String text = texts.get(i);
+            if (StrUtil.isNotBlank(text)) {
+                writer.write(text.trim() + "\n\n");
+            }
+        }
+    }
 
-                // 提取表格内容
-                for (List<RectangularTextContainer> row : table.getRows()) {
-                    tableMd.append(row.stream()
-                                    .map(cell -> "| " + cell.getText() + " ")
-                                    .collect(Collectors.joining()))
-                            .append("|\n");
-                }
+    /**
+     * 提取单页中的表格并转换为Markdown格式
+     */
+    private static List<String> extractPageTables(ObjectExtractor extractor, int pageNumber) {
+        List<String> tableMarkdowns = new ArrayList<>();
+        Page page = extractor.extract(pageNumber);
+        SpreadsheetExtractionAlgorithm sea = new SpreadsheetExtractionAlgorithm();
+        List<Table> tables = sea.extract(page);
+
+        for (Table table : tables) {
+            // 转换表格为Markdown格式
+            StringBuilder tableMd = new StringBuilder();
+
+            // 提取表头
+            List<List<RectangularTextContainer>> rows = table.getRows();
+            if (!rows.isEmpty()) {
+                List<RectangularTextContainer> headerRow = rows.get(0);
+                tableMd.append(headerRow.stream()
+                                .map(cell -> "| " + cell.getText() + " ")
+                                .collect(Collectors.joining()))
+                        .append("|\n");
+
+                // 添加表头分隔线
+                tableMd.append(headerRow.stream()
+                                .map(cell -> "| --- ")
+                                .collect(Collectors.joining()))
+                        .append("|\n");
+            }
 
-                tableMarkdowns.add(tableMd.toString());
+            // 提取表格内容
+            for (List<RectangularTextContainer> row : table.getRows()) {
+                tableMd.append(row.stream()
+                                .map(cell -> "| " + cell.getText() + " ")
+                                .collect(Collectors.joining()))
+                        .append("|\n");
             }
-        }
 
-        extractor.close();
+            tableMarkdowns.add(tableMd.toString());
+        }
         return tableMarkdowns;
     }
 
     /**
-     * 处理文本块并转换为Markdown格式，新增代码块处理
+     * 按给定的字体大小排序确定标题层级，处理文本块并转换为Markdown格式
      */
-    private static void processTextBlocks(List<TextBlock> textBlocks, List<String> tableMarkdowns, Writer writer) throws IOException {
+    private static void processTextBlocks(List<TextBlock> textBlocks, List<String> tableMarkdowns,
+                                          List<Float> sortedSizes, Writer writer) throws IOException {
         // 按页码和位置排序文本块
         textBlocks.sort((a, b) -> {
             if (a.getPageNumber() != b.getPageNumber()) {
@@ -237,13 +419,6 @@ public class PdfToMarkdownConverter {
             return yCompare != 0 ? yCompare : Float.compare(a.getX(), b.getX());
         });
 
-        // 分析字体大小，确定标题层级
-        Set<Float> fontSizes = textBlocks.stream()
-                .map(TextBlock::getFontSize)
-                .collect(Collectors.toSet());
-        List<Float> sortedSizes = new ArrayList<>(fontSizes);
-        sortedSizes.sort(Collections.reverseOrder());
-
         // 处理文本块
         Float prevFontSize = null;
         boolean newParagraph = false;
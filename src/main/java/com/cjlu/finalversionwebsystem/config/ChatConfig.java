@@ -1,10 +1,12 @@
 package com.cjlu.finalversionwebsystem.config;
 
-import dev.langchain4j.data.document.Document;
-import dev.langchain4j.data.document.DocumentSplitter;
-import dev.langchain4j.data.document.loader.FileSystemDocumentLoader;
-import dev.langchain4j.data.document.parser.apache.pdfbox.ApachePdfBoxDocumentParser;
-import dev.langchain4j.data.document.splitter.DocumentSplitters;
+import com.cjlu.finalversionwebsystem.rag.MmrReranker;
+import com.cjlu.finalversionwebsystem.rag.Reranker;
+import com.cjlu.finalversionwebsystem.rag.RerankingStage;
+import com.cjlu.finalversionwebsystem.rag.SemanticAnswerCache;
+import com.cjlu.finalversionwebsystem.service.Interface.ChatServiceInterface;
+import com.cjlu.finalversionwebsystem.service.Interface.KnowledgeBaseIndexService;
+import com.cjlu.finalversionwebsystem.utils.CookieService;
 import dev.langchain4j.memory.ChatMemory;
 import dev.langchain4j.memory.chat.ChatMemoryProvider;
 import dev.langchain4j.memory.chat.MessageWindowChatMemory;
@@ -12,19 +14,18 @@ import dev.langchain4j.model.embedding.EmbeddingModel;
 import dev.langchain4j.model.openai.OpenAiChatModel;
 import dev.langchain4j.model.openai.OpenAiStreamingChatModel;
 import dev.langchain4j.service.AiServices;
-import com.cjlu.finalversionwebsystem.service.Interface.ChatServiceInterface;
 import dev.langchain4j.rag.content.retriever.ContentRetriever;
-import dev.langchain4j.rag.content.retriever.EmbeddingStoreContentRetriever;
-import dev.langchain4j.store.embedding.EmbeddingStore;
-import dev.langchain4j.store.embedding.EmbeddingStoreIngestor;
-import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
 
-import java.io.File;
-import java.util.List;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
 
 @Slf4j
 @Configuration
@@ -89,53 +90,47 @@ public class ChatConfig {
         return chatMemoryProvider;
     }
 
-    // 注释掉全局的EmbeddingStore和ContentRetriever Bean
-    // 这些会导致不同文件之间的内容混合
-    // 现在每个文件都会创建独立的向量存储和检索器
-
-    /*
-    //存储（构建向量数据库操作对象）
+    // 全局检索器按知识库划分向量集合：每个知识库（klb表中的一行）一个集合，
+    // 只在当前请求用户有权限的知识库中检索，不同知识库之间的内容不会混合
     @Bean
-    public EmbeddingStore store(){//embeddingStore的对象，这个对象的名字不能重复，所以这里使用store
-        //创建一个空的向量数据库，用于默认的聊天功能
-        //如果需要默认加载某些文档，可以在这里添加
-        InMemoryEmbeddingStore store = new InMemoryEmbeddingStore<>();
-
-        // 可选：加载默认文档
-        // 如果files目录下有默认文档，可以在这里加载
-        try {
-            String defaultDocPath = System.getProperty("user.dir") + File.separator + "files" + File.separator + "default";
-            File defaultDir = new File(defaultDocPath);
-            if (defaultDir.exists() && defaultDir.isDirectory()) {
-                List<Document> documents = FileSystemDocumentLoader.loadDocuments(defaultDocPath, new ApachePdfBoxDocumentParser());
-                if (!documents.isEmpty()) {
-                    // 使用更大的分割大小以减少文本段数量，避免超过OpenAI API批处理限制
-                    DocumentSplitter ds = DocumentSplitters.recursive(1000, 200);
-                    EmbeddingStoreIngestor ingestor = EmbeddingStoreIngestor.builder()
-                            .embeddingStore(store)
-                            .documentSplitter(ds)
-                            .embeddingModel(embeddingModel)
-                            .build();
-                    ingestor.ingest(documents);
-                    log.info("加载了 {} 个默认文档", documents.size());
-                }
+    public ContentRetriever contentRetriever(KnowledgeBaseIndexService knowledgeBaseIndexService){
+        return query -> {
+            ServletRequestAttributes attributes = (ServletRequestAttributes) RequestContextHolder.getRequestAttributes();
+            if (attributes == null) {
+                return Collections.emptyList();
             }
-        } catch (Exception e) {
-            log.warn("加载默认文档失败，将使用空的向量数据库: {}", e.getMessage());
-        }
+            try {
+                String userName = CookieService.getUsernameFromCookie(attributes.getRequest());
+                return knowledgeBaseIndexService.retrieveForUser(userName, query.text());
+            } catch (Exception e) {
+                log.warn("知识库检索失败: {}", e.getMessage());
+                return Collections.emptyList();
+            }
+        };
+    }
 
-        return store;
+    //语义回答缓存，默认关闭，klb.rag.answer-cache.enabled=true时启用
+    @Bean
+    @ConditionalOnProperty(prefix = "klb.rag.answer-cache", name = "enabled", havingValue = "true")
+    public SemanticAnswerCache semanticAnswerCache(@Value("${klb.rag.answer-cache.max-entries:500}") int maxEntries,
+                                                   @Value("${klb.rag.answer-cache.min-similarity:0.95}") double minSimilarity,
+                                                   @Value("${klb.rag.answer-cache.ttl-minutes:60}") long ttlMinutes){
+        log.info("启用语义回答缓存，最大条目数: {}，相似度阈值: {}", maxEntries, minSimilarity);
+        return new SemanticAnswerCache(maxEntries, minSimilarity, ttlMinutes, TimeUnit.MINUTES);
     }
 
-    //检索（构建向量数据库检索对象）
+    //检索结果重排序，默认使用基于词重叠的MMR；替换此Bean即可接入其他实现（如本地交叉编码器）
     @Bean
-    public ContentRetriever contentRetriever(EmbeddingStore store){
-        return EmbeddingStoreContentRetriever.builder()
-                .embeddingStore(store)
-                .minScore(0.5)
-                .maxResults(3)
-                .embeddingModel(embeddingModel)
-                .build();
+    public Reranker reranker(@Value("${klb.rag.rerank.lambda:0.7}") double lambda){
+        return new MmrReranker(lambda);
+    }
+
+    //重排序阶段，超过延迟预算时退回检索顺序
+    @Bean(destroyMethod = "shutdown")
+    public RerankingStage rerankingStage(Reranker reranker,
+                                         @Value("${klb.rag.rerank.budget-ms:200}") long budgetMillis,
+                                         @Value("${klb.rag.rerank.concurrency:4}") int concurrency){
+        log.info("检索结果重排序: {}，延迟预算: {}ms", reranker.getClass().getSimpleName(), budgetMillis);
+        return new RerankingStage(reranker, budgetMillis, concurrency);
     }
-    */
 }
@@ -0,0 +1,72 @@
+package com.cjlu.finalversionwebsystem.config;
+
+import cn.hutool.crypto.digest.DigestUtil;
+import com.cjlu.finalversionwebsystem.rag.CachingEmbeddingModel;
+import com.cjlu.finalversionwebsystem.rag.EmbeddingCacheStore;
+import com.cjlu.finalversionwebsystem.rag.EmbeddingExecutor;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.openai.OpenAiEmbeddingModel;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Paths;
+
+@Slf4j
+@Configuration
+public class EmbeddingConfig {
+
+    private static final String CACHE_PATH = System.getProperty("user.dir") + File.separator + "index" + File.separator + "embedding-cache";
+
+    @Value("${langchain4j.open-ai.embedding-model.model-name:text-embedding-v3}")
+    private String embeddingModelName;
+
+    @Value("${klb.rag.embedding.concurrency:4}")
+    private int concurrency;
+
+    // DashScope text-embedding-v3 单次最多10条输入
+    @Value("${klb.rag.embedding.max-batch-size:10}")
+    private int maxBatchSize;
+
+    @Value("${klb.rag.embedding.requests-per-second:20}")
+    private double requestsPerSecond;
+
+    @Value("${klb.rag.embedding.tokens-per-minute:1000000}")
+    private double tokensPerMinute;
+
+    @Value("${klb.rag.embedding.max-retries:5}")
+    private int maxRetries;
+
+    @Value("${klb.rag.embedding.initial-backoff-ms:500}")
+    private long initialBackoffMs;
+
+    @Value("${klb.rag.embedding.query-cache-kb:4096}")
+    private long queryCacheKb;
+
+    //并行限流嵌入执行器，直接调用远程嵌入模型
+    @Bean(destroyMethod = "shutdown")
+    public EmbeddingExecutor embeddingExecutor(OpenAiEmbeddingModel openAiEmbeddingModel) {
+        log.info("创建嵌入执行器，并发数: {}，批次大小: {}，QPS: {}，TPM: {}", concurrency, maxBatchSize, requestsPerSecond, tokensPerMinute);
+        return new EmbeddingExecutor(openAiEmbeddingModel, concurrency, maxBatchSize, requestsPerSecond, tokensPerMinute, maxRetries, initialBackoffMs);
+    }
+
+    //嵌入缓存文件，不同嵌入模型的向量不能混用，按模型名区分文件
+    @Bean(destroyMethod = "close")
+    public EmbeddingCacheStore embeddingCacheStore() throws IOException {
+        String fileName = DigestUtil.sha256Hex(embeddingModelName).substring(0, 12) + ".bin";
+        EmbeddingCacheStore store = EmbeddingCacheStore.open(Paths.get(CACHE_PATH, fileName));
+        log.info("加载嵌入缓存，模型: {}，已缓存向量 {} 个", embeddingModelName, store.size());
+        return store;
+    }
+
+    //应用中注入的EmbeddingModel：先查缓存，未命中的文本段经执行器并行限流嵌入；查询向量另有内存LRU缓存
+    @Bean
+    @Primary
+    public EmbeddingModel embeddingModel(EmbeddingCacheStore embeddingCacheStore, EmbeddingExecutor embeddingExecutor) {
+        return new CachingEmbeddingModel(embeddingCacheStore, embeddingExecutor::embedAll, queryCacheKb * 1024);
+    }
+}
@@ -5,23 +5,37 @@ import com.cjlu.finalversionwebsystem.entity.ChatResponse;
 import com.cjlu.finalversionwebsystem.entity.FileSearchResult;
 import com.cjlu.finalversionwebsystem.entity.Result;
 import com.cjlu.finalversionwebsystem.mapper.NewKLBMapper;
+import com.cjlu.finalversionwebsystem.rag.CachingEmbeddingModel;
+import com.cjlu.finalversionwebsystem.rag.SemanticAnswerCache;
 import com.cjlu.finalversionwebsystem.service.Interface.ChatServiceInterface;
 import com.cjlu.finalversionwebsystem.service.Interface.DocumentService;
 import com.cjlu.finalversionwebsystem.service.Interface.EnhancedChatService;
 import com.cjlu.finalversionwebsystem.service.Interface.FileService;
 import com.cjlu.finalversionwebsystem.service.Interface.FileReferenceDetectionService;
+import com.cjlu.finalversionwebsystem.service.Interface.KnowledgeBaseIndexService;
 import com.cjlu.finalversionwebsystem.service.Interface.ModelManagementService;
 import com.cjlu.finalversionwebsystem.service.impl.ChatServiceImpl;
 import com.cjlu.finalversionwebsystem.service.impl.NewKLBServiceImpl;
+import com.cjlu.finalversionwebsystem.utils.CookieService;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.query.Query;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import reactor.core.publisher.Flux;
 
+import javax.servlet.http.HttpServletRequest;
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -53,13 +67,45 @@ public class ChatController {
     @Autowired
     private NewKLBServiceImpl newKLBService;
 
+    @Autowired
+    private KnowledgeBaseIndexService knowledgeBaseIndexService;
+
+    @Autowired
+    private EmbeddingModel embeddingModel;
+
+    @Autowired(required = false)
+    private SemanticAnswerCache semanticAnswerCache;
+
     /**
-     * 普通聊天接口（使用动态切换的模型配置，包含文件引用）
+     * 普通聊天接口（使用动态切换的模型配置，在用户有权限的知识库中检索相关内容后回答，包含文件引用）
      */
     @RequestMapping(value = "/ai/chat", produces = "text/html;charset=utf-8")
-    public Flux<String> chat(@RequestParam String message) {
+    public Flux<String> chat(@RequestParam String message, HttpServletRequest httpServletRequest) {
         try {
             log.info("普通聊天请求: {}", message);
+            List<String> klbNames = permittedKLBNames(httpServletRequest);
+
+            // 语义回答缓存：相近问题且知识库未变化时直接回放缓存的回答
+            final Embedding questionEmbedding;
+            final String kbVersion;
+            if (semanticAnswerCache != null) {
+                questionEmbedding = embeddingModel.embed(message).content();
+                kbVersion = knowledgeBaseIndexService.getCollectionVersion(klbNames);
+                SemanticAnswerCache.CachedAnswer cached = semanticAnswerCache.find(questionEmbedding, kbVersion);
+                if (cached != null) {
+                    log.info("命中语义回答缓存，直接返回缓存的回答");
+                    return replayAnswer(cached);
+                }
+            } else {
+                questionEmbedding = null;
+                kbVersion = null;
+            }
+
+            // 在用户有权限的知识库向量集合中检索，检索结果同时作为文件引用
+            List<Content> contents = retrieveKnowledge(klbNames, message);
+            String prompt = contents.isEmpty() ? message : buildKnowledgePrompt(message, contents);
+            String referenceInfo = buildReferenceInfo(contents);
+
             // 使用动态切换的聊天服务，并在最后添加文件引用
             return Flux.create(sink -> {
                 try {
@@ -74,7 +120,7 @@ public class ChatController {
                         dynamicChatService = chatService;
                     }
 
-                    dynamicChatService.chat(message)
+                    dynamicChatService.chat(prompt)
                             .onNext(token -> {
                                 hasReceivedTokens[0] = true;
                                 fullResponse.append(token);
@@ -83,27 +129,10 @@ public class ChatController {
                             .onComplete(response -> {
                                 if (!isCompleted[0]) {
                                     isCompleted[0] = true;
-                                    log.info("基础聊天完成，准备搜索相关文件");
-                                    // 基于用户输入搜索包含相关内容的文件
-                                    try {
-                                        List<String> matchingFiles = fileReferenceDetectionService.searchFilesContaining(message);
-
-                                        if (!matchingFiles.isEmpty()) {
-                                            // 找到相关文件，显示文件信息
-                                            StringBuilder fileInfo = new StringBuilder("\n\n📚 参考文件：\n");
-                                            for (String fileName : matchingFiles) {
-                                                String filePath = fileReferenceDetectionService.getFilePath(fileName);
-                                                fileInfo.append("文件名：").append(fileName).append("\n");
-                                                fileInfo.append("路径：").append(filePath).append("\n");
-                                            }
-                                            sink.next(fileInfo.toString());
-                                        } else {
-                                            // 没有找到相关文件
-                                            sink.next("\n\n📚 没参考任何文件");
-                                        }
-                                    } catch (Exception e) {
-                                        log.warn("搜索相关文件失败: {}", e.getMessage());
-                                        sink.next("\n\n📚 没参考任何文件");
+                                    log.info("基础聊天完成，参考片段数: {}", contents.size());
+                                    sink.next(referenceInfo);
+                                    if (semanticAnswerCache != null && fullResponse.length() > 0) {
+                                        semanticAnswerCache.put(questionEmbedding, kbVersion, fullResponse.toString(), referenceInfo);
                                     }
                                     sink.complete();
                                 }
@@ -114,25 +143,7 @@ public class ChatController {
                                     if (hasReceivedTokens[0]) {
                                         // 如果已经接收到token，说明AI响应成功，只是内部处理有问题
                                         log.warn("AI响应完成后出现内部错误（可能是token统计问题）: {}", error.getMessage());
-                                        // 尝试搜索相关文件
-                                        try {
-                                            List<String> matchingFiles = fileReferenceDetectionService.searchFilesContaining(message);
-
-                                            if (!matchingFiles.isEmpty()) {
-                                                StringBuilder fileInfo = new StringBuilder("\n\n📚 参考文件：\n");
-                                                for (String fileName : matchingFiles) {
-                                                    String filePath = fileReferenceDetectionService.getFilePath(fileName);
-                                                    fileInfo.append("文件名：").append(fileName).append("\n");
-                                                    fileInfo.append("路径：").append(filePath).append("\n");
-                                                }
-                                                sink.next(fileInfo.toString());
-                                            } else {
-                                                sink.next("\n\n📚 没参考任何文件");
-                                            }
-                                        } catch (Exception e) {
-                                            log.warn("搜索相关文件失败: {}", e.getMessage());
-                                            sink.next("\n\n📚 没参考任何文件");
-                                        }
+                                        sink.next(referenceInfo);
                                     } else {
                                         log.error("基础聊天失败: {}", error.getMessage(), error);
                                     }
@@ -573,6 +584,89 @@ public class ChatController {
         }
     }
 
+    /**
+     * 获取当前用户有权限的知识库，未登录时返回空列表
+     */
+    private List<String> permittedKLBNames(HttpServletRequest httpServletRequest) {
+        String userName;
+        try {
+            userName = CookieService.getUsernameFromCookie(httpServletRequest);
+        } catch (Exception e) {
+            log.debug("未能从Cookie中获取用户名，跳过知识库检索: {}", e.getMessage());
+            return Collections.emptyList();
+        }
+        try {
+            return knowledgeBaseIndexService.getPermittedKLBNames(userName);
+        } catch (Exception e) {
+            log.warn("查询用户知识库权限失败: {}", e.getMessage());
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * 在指定知识库中检索与问题相关的内容，检索失败时返回空列表
+     */
+    private List<Content> retrieveKnowledge(List<String> klbNames, String message) {
+        if (klbNames.isEmpty()) {
+            return Collections.emptyList();
+        }
+        try {
+            return knowledgeBaseIndexService.createRetriever(klbNames, null).retrieve(Query.from(message));
+        } catch (Exception e) {
+            log.warn("知识库检索失败，直接回答: {}", e.getMessage());
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * 分段回放缓存的回答，保持与流式回答相同的输出方式
+     */
+    private Flux<String> replayAnswer(SemanticAnswerCache.CachedAnswer cached) {
+        String answer = cached.getAnswer();
+        List<String> chunks = new ArrayList<>();
+        for (int i = 0; i < answer.length(); i += 32) {
+            chunks.add(answer.substring(i, Math.min(i + 32, answer.length())));
+        }
+        return Flux.fromIterable(chunks).concatWith(Flux.just(cached.getReferences()));
+    }
+
+    /**
+     * 将检索到的知识库内容拼接到问题前
+     */
+    private String buildKnowledgePrompt(String message, List<Content> contents) {
+        StringBuilder prompt = new StringBuilder("请参考以下知识库内容回答问题，如果内容与问题无关请忽略。\n\n");
+        for (int i = 0; i < contents.size(); i++) {
+            TextSegment segment = contents.get(i).textSegment();
+            prompt.append("【片段").append(i + 1).append("】来源：").append(segment.metadata().get("source_file")).append("\n");
+            prompt.append(segment.text()).append("\n\n");
+        }
+        prompt.append("问题：").append(message);
+        return prompt.toString();
+    }
+
+    /**
+     * 根据检索结果中的来源文件生成文件引用信息
+     */
+    private String buildReferenceInfo(List<Content> contents) {
+        Map<String, String> sources = new LinkedHashMap<>();
+        for (Content content : contents) {
+            Metadata metadata = content.textSegment().metadata();
+            String fileName = metadata.get("source_file");
+            if (fileName != null) {
+                sources.putIfAbsent(fileName, metadata.get("klb_name"));
+            }
+        }
+        if (sources.isEmpty()) {
+            return "\n\n📚 没参考任何文件";
+        }
+        StringBuilder fileInfo = new StringBuilder("\n\n📚 参考文件：\n");
+        for (Map.Entry<String, String> source : sources.entrySet()) {
+            fileInfo.append("文件名：").append(source.getKey()).append("\n");
+            fileInfo.append("知识库：").append(source.getValue()).append("\n");
+        }
+        return fileInfo.toString();
+    }
+
     /**
      * 多文件聊天接口（流式响应）
      * @param message 用户消息
@@ -815,6 +909,30 @@ public class ChatController {
         }
     }
 
+    /**
+     * 查看向量存储缓存统计信息
+     */
+    @GetMapping("/cache-stats")
+    public ResponseEntity<Map<String, Object>> getCacheStats() {
+        Map<String, Object> response = new HashMap<>();
+        if (documentService instanceof com.cjlu.finalversionwebsystem.service.impl.DocumentServiceImpl) {
+            com.cjlu.finalversionwebsystem.service.impl.DocumentServiceImpl impl =
+                    (com.cjlu.finalversionwebsystem.service.impl.DocumentServiceImpl) documentService;
+            response.put("success", true);
+            response.put("storeCache", impl.getCacheStats());
+            if (embeddingModel instanceof CachingEmbeddingModel) {
+                response.put("embeddingCache", ((CachingEmbeddingModel) embeddingModel).stats());
+            }
+            if (semanticAnswerCache != null) {
+                response.put("answerCache", semanticAnswerCache.stats());
+            }
+            return ResponseEntity.ok(response);
+        }
+        response.put("success", false);
+        response.put("message", "无法访问缓存统计功能");
+        return ResponseEntity.badRequest().body(response);
+    }
+
     /**
      * 清理所有缓存（包括内存中的向量存储）
      */
@@ -826,6 +944,9 @@ public class ChatController {
                         (com.cjlu.finalversionwebsystem.service.impl.DocumentServiceImpl) documentService;
                 int oldSize = impl.getCacheSize();
                 impl.clearAllCaches();
+                if (semanticAnswerCache != null) {
+                    semanticAnswerCache.clear();
+                }
 
                 Map<String, Object> response = new HashMap<>();
                 response.put("success", true);
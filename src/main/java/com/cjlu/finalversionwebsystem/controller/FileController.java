@@ -4,11 +4,15 @@ import cn.hutool.core.io.FileUtil;
 
 import com.cjlu.finalversionwebsystem.entity.Result;
 import com.cjlu.finalversionwebsystem.service.Interface.FileService;
+import com.cjlu.finalversionwebsystem.service.Interface.IngestJobService;
+import com.cjlu.finalversionwebsystem.utils.FileETag;
 import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
 import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
@@ -18,6 +22,7 @@ import java.io.IOException;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -44,6 +49,9 @@ public class FileController {
     @Autowired
     private FileService fileService;
 
+    @Autowired
+    private IngestJobService ingestJobService;
+
     @PostMapping("/upload") //文件上传
     public Result upload(@RequestParam("file") MultipartFile file) {
         try {
@@ -89,8 +97,38 @@ public class FileController {
         }
     }
 
+    @GetMapping("/ingest/status") //查询上传文件的转换和嵌入进度
+    public Result ingestStatus(@RequestParam(value = "fileName", required = false) String fileName) {
+        try {
+            return Result.success(ingestJobService.getStatus(fileName));
+        } catch (Exception e) {
+            log.error("查询摄取任务状态失败: {}", e.getMessage(), e);
+            return Result.error("查询摄取任务状态失败: " + e.getMessage());
+        }
+    }
+
+    @PostMapping("/encryption/migrate") //把旧的ECB加密文件转换为分块加密格式
+    public Result migrateEncryption() {
+        try {
+            return Result.success(fileService.migrateLegacyEncryptedFiles());
+        } catch (Exception e) {
+            log.error("加密格式迁移失败: {}", e.getMessage(), e);
+            return Result.error("加密格式迁移失败: " + e.getMessage());
+        }
+    }
+
+    @GetMapping("/cache-stats") //查看解密明文缓存的命中情况
+    public Result plaintextCacheStats() {
+        return Result.success(fileService.getPlaintextCacheStats());
+    }
+
+    /**
+     * 下载文件
+     * 明文边解密边写到响应，支持单个Range请求；ETag取自存储文件的长度、修改时间和加密文件头，
+     * 与 /FILE/download 使用同一种ETag，If-None-Match命中时返回304
+     */
     @GetMapping("/download/{fileName}")
-    public void download(@PathVariable String fileName, HttpServletResponse response) {
+    public void download(@PathVariable String fileName, HttpServletRequest request, HttpServletResponse response) {
         try {
             // 验证文件名
             if (fileName == null || fileName.trim().isEmpty()) {
@@ -106,8 +144,42 @@ public class FileController {
                 return;
             }
 
-            // 解密并读取文件
-            byte[] decryptedBytes = fileService.decryptAndReadFile(fileName);
+            // 不解密文件即可得到的强ETag，内容未变化时客户端可以直接使用缓存
+            String etag = FileETag.of(fileService.getStoredFile(fileName).toPath());
+            response.setHeader(HttpHeaders.ETAG, etag);
+            response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+            if (etagMatches(request.getHeader(HttpHeaders.IF_NONE_MATCH), etag)) {
+                response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                return;
+            }
+
+            long length = fileService.getPlainLength(fileName);
+            long start = 0;
+            long end = length - 1;
+            String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+            String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+            // If-Range与当前ETag不一致时忽略Range，返回完整文件
+            if (rangeHeader != null && (ifRange == null || ifRange.equals(etag))) {
+                List<HttpRange> ranges;
+                try {
+                    ranges = HttpRange.parseRanges(rangeHeader);
+                } catch (IllegalArgumentException e) {
+                    ranges = Collections.emptyList();
+                }
+                // 多个范围时按完整文件返回
+                if (ranges.size() == 1) {
+                    HttpRange range = ranges.get(0);
+                    if (length == 0 || range.getRangeStart(length) >= length) {
+                        response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                        response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+                        return;
+                    }
+                    start = range.getRangeStart(length);
+                    end = range.getRangeEnd(length);
+                    response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                    response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
+                }
+            }
 
             // 设置响应头
             String encodedFileName = URLEncoder.encode(fileName, StandardCharsets.UTF_8);
@@ -148,18 +220,24 @@ public class FileController {
                 response.setContentType(MediaType.APPLICATION_OCTET_STREAM_VALUE);
             }
 
-            response.setContentLength(decryptedBytes.length);
+            long contentLength = end - start + 1;
+            response.setContentLengthLong(contentLength);
 
-            // 写入响应
+            // 写入响应，只解密请求的范围
             ServletOutputStream outputStream = response.getOutputStream();
-            outputStream.write(decryptedBytes);
+            fileService.transferPlainRange(fileName, start, contentLength, outputStream);
             outputStream.flush();
 
             log.info("文件下载成功: {}", fileName);
 
         } catch (Exception e) {
             log.error("文件下载失败: {}", e.getMessage(), e);
+            if (response.isCommitted()) {
+                // 已经开始写入文件内容，无法再返回错误信息
+                return;
+            }
             try {
+                response.reset();
                 response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
                 response.getWriter().write("文件下载失败: " + e.getMessage());
             } catch (IOException ioException) {
@@ -168,6 +246,25 @@ public class FileController {
         }
     }
 
+    /**
+     * 判断If-None-Match是否包含当前ETag，弱比较
+     */
+    private boolean etagMatches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * 获取文件列表
      */
@@ -1,7 +1,9 @@
 package com.cjlu.finalversionwebsystem.controller;
 
 import com.cjlu.finalversionwebsystem.File.service.FileStorageService;
+import com.cjlu.finalversionwebsystem.entity.IngestJob;
 import com.cjlu.finalversionwebsystem.entity.Result;
+import com.cjlu.finalversionwebsystem.service.Interface.IngestJobService;
 import com.cjlu.finalversionwebsystem.service.Interface.NewKLBInterface;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -30,6 +32,9 @@ public class NewKLBController {
 
     @Autowired
     private FileStorageService fileStorageService;
+
+    @Autowired
+    private IngestJobService ingestJobService;
     
     @PostMapping("creat")
     public Result createKLB(@RequestBody Map<String, Object> request) {
@@ -48,6 +53,8 @@ public class NewKLBController {
 
             klbservice.insertKLB(KLBName, KLBCreator, primaryClassification, secondaryClassification, KLBReviseTime, supportedDataFormats, KLBSearchStrategy, description, creatTime, KLBStatus);
             log.info("KLB created successfully: {}", KLBName);
+            // 向量集合在后台同步，对话时直接使用
+            ingestJobService.enqueue(IngestJob.TYPE_SYNC, KLBName);
             return Result.success("知识库创建成功");
         } catch (Exception e) {
             log.error("Error during KLB creation: ", e);
@@ -99,6 +106,7 @@ public class NewKLBController {
 
             klbservice.updateKLBById(id, KLBName, KLBCreator, primaryClassification, secondaryClassification, KLBReviseTime, supportedDataFormats, KLBSearchStrategy, description, creatTime, KLBStatus);
             log.info("KLB updated successfully: {}", KLBName);
+            ingestJobService.enqueue(IngestJob.TYPE_SYNC, KLBName);
             return Result.success("知识库更新成功");
         } catch (Exception e) {
             log.error("Error during KLB update: ", e);
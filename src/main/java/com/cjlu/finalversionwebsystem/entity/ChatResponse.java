@@ -29,6 +29,11 @@ public class ChatResponse {
      * 是否为流式响应的最后一部分
      */
     private boolean isLast;
+
+    /**
+     * 提示词上下文占用的估算token数，只在最后一部分中设置
+     */
+    private Integer contextTokens;
     
     /**
      * 文件引用信息
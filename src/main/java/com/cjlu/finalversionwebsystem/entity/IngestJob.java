@@ -0,0 +1,42 @@
+package com.cjlu.finalversionwebsystem.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class IngestJob {
+    // 任务类型：转换为Markdown副本
+    public static final String TYPE_CONVERT = "convert";
+    // 任务类型：切分并嵌入，构建向量索引
+    public static final String TYPE_INDEX = "index";
+    // 任务类型：同步知识库的向量集合，fileName为知识库名
+    public static final String TYPE_SYNC = "sync";
+
+    public static final String STATE_QUEUED = "queued";
+    public static final String STATE_CONVERTING = "converting";
+    public static final String STATE_EMBEDDING = "embedding";
+    public static final String STATE_READY = "ready";
+    public static final String STATE_FAILED = "failed";
+
+    // 主键id
+    private Long id;
+    // 任务类型
+    private String jobType;
+    // 文件名
+    private String fileName;
+    // 状态：queued/converting/embedding/ready/failed
+    private String state;
+    // 已执行次数
+    private Integer attempts;
+    // 最近一次失败的原因
+    private String lastError;
+    // 最早可执行时间（毫秒时间戳），重试时按退避时间推后
+    private Long nextRunTime;
+    // 创建时间（毫秒时间戳）
+    private Long createTime;
+    // 最后更新时间（毫秒时间戳），执行中的任务以领取时间作为令牌
+    private Long updateTime;
+}
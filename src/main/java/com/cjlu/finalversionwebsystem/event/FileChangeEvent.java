@@ -0,0 +1,38 @@
+package com.cjlu.finalversionwebsystem.event;
+
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * 文件变更事件
+ * 文件被加密保存或删除后发布，用于通知索引等派生数据失效
+ */
+public class FileChangeEvent extends ApplicationEvent {
+
+    /**
+     * 变更类型
+     */
+    public enum Type {
+        /** 文件被新建或覆盖 */
+        SAVED,
+        /** 文件被删除 */
+        DELETED
+    }
+
+    private final String fileName;
+
+    private final Type type;
+
+    public FileChangeEvent(Object source, String fileName, Type type) {
+        super(source);
+        this.fileName = fileName;
+        this.type = type;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public Type getType() {
+        return type;
+    }
+}
@@ -0,0 +1,74 @@
+package com.cjlu.finalversionwebsystem.mapper;
+
+import com.cjlu.finalversionwebsystem.entity.IngestJob;
+import org.apache.ibatis.annotations.*;
+
+import java.util.List;
+
+@Mapper
+public interface IngestJobMapper {
+    //创建摄取任务表，同一文件的同类任务只保留一行
+    @Update("CREATE TABLE IF NOT EXISTS ingest_job (" +
+            "id BIGINT PRIMARY KEY AUTO_INCREMENT, " +
+            "job_type VARCHAR(16) NOT NULL, " +
+            "file_name VARCHAR(255) NOT NULL, " +
+            "state VARCHAR(16) NOT NULL, " +
+            "attempts INT NOT NULL DEFAULT 0, " +
+            "last_error VARCHAR(1000), " +
+            "next_run_time BIGINT NOT NULL, " +
+            "create_time BIGINT NOT NULL, " +
+            "update_time BIGINT NOT NULL, " +
+            "UNIQUE KEY uk_ingest_job_file (job_type, file_name), " +
+            "KEY idx_ingest_job_state (state, next_run_time)" +
+            ")")
+    void createTable();
+
+    //登记任务由以下三条语句依次尝试完成，每条语句的赋值只依赖参数或该列自身的原值，不依赖同一语句中各列的赋值顺序
+    //已有任务且不在执行时重新排队并清零执行次数
+    @Update("UPDATE ingest_job SET state = 'queued', attempts = 0, last_error = NULL, next_run_time = #{now}, update_time = #{now} " +
+            "WHERE job_type = #{jobType} AND file_name = #{fileName} AND state NOT IN ('converting', 'embedding')")
+    int requeue(@Param("jobType") String jobType, @Param("fileName") String fileName, @Param("now") long now);
+
+    //任务正在执行时保持执行状态，只推进更新时间，执行结束后按更新时间的变化重新排队，同一文件不会被两个工作线程同时处理
+    @Update("UPDATE ingest_job SET update_time = GREATEST(#{now}, update_time + 1) " +
+            "WHERE job_type = #{jobType} AND file_name = #{fileName} AND state IN ('converting', 'embedding')")
+    int touchRunning(@Param("jobType") String jobType, @Param("fileName") String fileName, @Param("now") long now);
+
+    //新建任务；其他线程已登记同一任务时不插入，返回0
+    @Insert("INSERT IGNORE INTO ingest_job (job_type, file_name, state, attempts, next_run_time, create_time, update_time) " +
+            "VALUES (#{jobType}, #{fileName}, 'queued', 0, #{now}, #{now}, #{now})")
+    int insertQueued(@Param("jobType") String jobType, @Param("fileName") String fileName, @Param("now") long now);
+
+    @Select("SELECT * FROM ingest_job WHERE state = 'queued' AND next_run_time <= #{now} ORDER BY next_run_time LIMIT #{limit}")
+    List<IngestJob> selectRunnable(@Param("now") long now, @Param("limit") int limit);
+
+    //领取任务，只有仍在排队的任务能被领取
+    @Update("UPDATE ingest_job SET state = #{state}, attempts = attempts + 1, update_time = #{now} " +
+            "WHERE id = #{id} AND state = 'queued'")
+    int claim(@Param("id") long id, @Param("state") String state, @Param("now") long now);
+
+    //结束任务；执行期间文件被重新上传时更新时间已变化，此时不覆盖
+    @Update("UPDATE ingest_job SET state = #{state}, last_error = #{lastError}, next_run_time = #{nextRunTime}, update_time = #{now} " +
+            "WHERE id = #{id} AND update_time = #{claimTime} AND state IN ('converting', 'embedding')")
+    int finish(@Param("id") long id, @Param("claimTime") long claimTime, @Param("state") String state,
+               @Param("lastError") String lastError, @Param("nextRunTime") long nextRunTime, @Param("now") long now);
+
+    //执行期间任务被重新登记（更新时间已变化），结束后立即重新排队
+    @Update("UPDATE ingest_job SET state = 'queued', attempts = 0, last_error = NULL, next_run_time = #{now}, update_time = #{now} " +
+            "WHERE id = #{id} AND update_time <> #{claimTime} AND state IN ('converting', 'embedding')")
+    int requeueUpdated(@Param("id") long id, @Param("claimTime") long claimTime, @Param("now") long now);
+
+    //服务重启前未执行完的任务重新排队
+    @Update("UPDATE ingest_job SET state = 'queued', next_run_time = #{now}, update_time = #{now} " +
+            "WHERE state IN ('converting', 'embedding')")
+    int requeueInterrupted(@Param("now") long now);
+
+    @Select("SELECT * FROM ingest_job WHERE file_name = #{fileName}")
+    List<IngestJob> selectByFileName(@Param("fileName") String fileName);
+
+    @Select("SELECT * FROM ingest_job ORDER BY update_time DESC LIMIT #{limit}")
+    List<IngestJob> selectRecent(@Param("limit") int limit);
+
+    @Delete("DELETE FROM ingest_job WHERE job_type = #{jobType} AND file_name = #{fileName}")
+    void delete(@Param("jobType") String jobType, @Param("fileName") String fileName);
+}
@@ -0,0 +1,217 @@
+package com.cjlu.finalversionwebsystem.rag;
+
+import dev.langchain4j.data.segment.TextSegment;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * 文本段的BM25倒排索引
+ * 中日韩文字按相邻两字切分（单字成段时保留单字），其他字母数字按词切分并转小写；
+ * 料号、合同编号等带连接符的词既保留整体也拆出各部分，便于精确匹配
+ */
+public class Bm25Index {
+
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    private static final String JOINERS = "-_./";
+
+    private final List<TextSegment> segments;
+    private final int[] lengths;
+    private final double averageLength;
+    // 词 -> [文本段序号, 词频, 文本段序号, 词频, ...]
+    private final Map<String, int[]> postings;
+
+    /**
+     * @param segments 参与检索的文本段
+     */
+    public Bm25Index(List<TextSegment> segments) {
+        this.segments = Collections.unmodifiableList(new ArrayList<>(segments));
+        this.lengths = new int[segments.size()];
+
+        Map<String, List<int[]>> building = new HashMap<>();
+        long totalLength = 0;
+        for (int i = 0; i < segments.size(); i++) {
+            List<String> tokens = tokenize(segments.get(i).text());
+            lengths[i] = tokens.size();
+            totalLength += tokens.size();
+
+            Map<String, Integer> frequencies = new HashMap<>();
+            for (String token : tokens) {
+                frequencies.merge(token, 1, Integer::sum);
+            }
+            for (Map.Entry<String, Integer> entry : frequencies.entrySet()) {
+                building.computeIfAbsent(entry.getKey(), k -> new ArrayList<>()).add(new int[]{i, entry.getValue()});
+            }
+        }
+        this.averageLength = segments.isEmpty() ? 0 : (double) totalLength / segments.size();
+
+        this.postings = new HashMap<>(building.size() * 2);
+        for (Map.Entry<String, List<int[]>> entry : building.entrySet()) {
+            List<int[]> list = entry.getValue();
+            int[] packed = new int[list.size() * 2];
+            for (int i = 0; i < list.size(); i++) {
+                packed[i * 2] = list.get(i)[0];
+                packed[i * 2 + 1] = list.get(i)[1];
+            }
+            postings.put(entry.getKey(), packed);
+        }
+    }
+
+    /**
+     * 按BM25分数检索
+     * @param query 查询文本
+     * @param maxResults 最大结果数
+     * @return 按分数从高到低排列的结果，不含零分文本段
+     */
+    public List<Match> search(String query, int maxResults) {
+        if (segments.isEmpty() || maxResults <= 0) {
+            return Collections.emptyList();
+        }
+        double[] scores = new double[segments.size()];
+        int documents = segments.size();
+        // 查询中重复的词只计一次
+        for (String term : new LinkedHashSet<>(tokenize(query))) {
+            int[] posting = postings.get(term);
+            if (posting == null) {
+                continue;
+            }
+            int documentFrequency = posting.length / 2;
+            double idf = Math.log(1 + (documents - documentFrequency + 0.5) / (documentFrequency + 0.5));
+            for (int i = 0; i < posting.length; i += 2) {
+                int segment = posting[i];
+                int frequency = posting[i + 1];
+                double norm = K1 * (1 - B + B * lengths[segment] / averageLength);
+                scores[segment] += idf * frequency * (K1 + 1) / (frequency + norm);
+            }
+        }
+
+        PriorityQueue<Match> top = new PriorityQueue<>(maxResults + 1, Comparator.comparingDouble(Match::getScore));
+        for (int i = 0; i < scores.length; i++) {
+            if (scores[i] <= 0) {
+                continue;
+            }
+            if (top.size() < maxResults) {
+                top.offer(new Match(segments.get(i), scores[i]));
+            } else if (scores[i] > top.peek().getScore()) {
+                top.poll();
+                top.offer(new Match(segments.get(i), scores[i]));
+            }
+        }
+        List<Match> matches = new ArrayList<>(top);
+        matches.sort(Comparator.comparingDouble(Match::getScore).reversed());
+        return matches;
+    }
+
+    public int size() {
+        return segments.size();
+    }
+
+    /**
+     * 估算索引占用的内存（字节），不含文本段本身
+     */
+    public long estimateBytes() {
+        long bytes = lengths.length * 4L;
+        for (Map.Entry<String, int[]> entry : postings.entrySet()) {
+            bytes += 64 + entry.getKey().length() * 2L + entry.getValue().length * 4L;
+        }
+        return bytes;
+    }
+
+    /**
+     * 分词
+     * @param text 文本
+     * @return 词序列
+     */
+    public static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null || text.isEmpty()) {
+            return tokens;
+        }
+        // 统一全角字母数字，便于与半角写法匹配
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFKC);
+        int length = normalized.length();
+        int i = 0;
+        while (i < length) {
+            char c = normalized.charAt(i);
+            if (isCjk(c)) {
+                int start = i;
+                while (i < length && isCjk(normalized.charAt(i))) {
+                    i++;
+                }
+                if (i - start == 1) {
+                    tokens.add(String.valueOf(c));
+                } else {
+                    for (int j = start; j < i - 1; j++) {
+                        tokens.add(normalized.substring(j, j + 2));
+                    }
+                }
+            } else if (isWordChar(c)) {
+                int start = i;
+                boolean compound = false;
+                while (i < length) {
+                    char d = normalized.charAt(i);
+                    if (isWordChar(d)) {
+                        i++;
+                    } else if (JOINERS.indexOf(d) >= 0 && i + 1 < length && isWordChar(normalized.charAt(i + 1))) {
+                        compound = true;
+                        i++;
+                    } else {
+                        break;
+                    }
+                }
+                String word = normalized.substring(start, i).toLowerCase(Locale.ROOT);
+                tokens.add(word);
+                if (compound) {
+                    for (String part : word.split("[-_./]")) {
+                        tokens.add(part);
+                    }
+                }
+            } else {
+                i++;
+            }
+        }
+        return tokens;
+    }
+
+    private static boolean isWordChar(char c) {
+        return Character.isLetterOrDigit(c) && !isCjk(c);
+    }
+
+    private static boolean isCjk(char c) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(c);
+        return script == Character.UnicodeScript.HAN
+                || script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA
+                || script == Character.UnicodeScript.HANGUL;
+    }
+
+    /**
+     * 检索结果
+     */
+    public static class Match {
+        private final TextSegment segment;
+        private final double score;
+
+        private Match(TextSegment segment, double score) {
+            this.segment = segment;
+            this.score = score;
+        }
+
+        public TextSegment getSegment() {
+            return segment;
+        }
+
+        public double getScore() {
+            return score;
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package com.cjlu.finalversionwebsystem.rag;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+/**
+ * 按估算字节数限容的缓存
+ * 超出容量时按最近最少使用（LRU）淘汰，超过空闲时间未访问的条目在下次读写时淘汰，
+ * 并记录命中、未命中、淘汰次数和当前占用字节数
+ */
+public class BoundedCache<K, V> {
+
+    private final long maxBytes;
+    private final long idleTtlMillis;
+
+    // accessOrder=true，迭代顺序即从最久未访问到最近访问
+    private final LinkedHashMap<K, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private long currentBytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param maxBytes 容量上限（字节）
+     * @param idleTtl 空闲过期时间，小于等于0表示不过期
+     * @param unit 时间单位
+     */
+    public BoundedCache(long maxBytes, long idleTtl, TimeUnit unit) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("缓存容量必须大于0: " + maxBytes);
+        }
+        this.maxBytes = maxBytes;
+        this.idleTtlMillis = idleTtl > 0 ? unit.toMillis(idleTtl) : 0;
+    }
+
+    /**
+     * 读取缓存，过期条目视为未命中
+     */
+    public V get(K key) {
+        lock.lock();
+        try {
+            long now = System.currentTimeMillis();
+            Entry<V> entry = entries.get(key);
+            if (entry != null && isExpired(entry, now)) {
+                remove(key, entry);
+                evictions.incrementAndGet();
+                entry = null;
+            }
+            if (entry == null) {
+                misses.incrementAndGet();
+                return null;
+            }
+            entry.lastAccess = now;
+            hits.incrementAndGet();
+            return entry.value;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 写入缓存，单个条目超过容量上限时不缓存
+     * @param weightBytes 条目估算字节数
+     * @return 是否已缓存
+     */
+    public boolean put(K key, V value, long weightBytes) {
+        if (weightBytes > maxBytes) {
+            return false;
+        }
+        lock.lock();
+        try {
+            Entry<V> previous = entries.remove(key);
+            if (previous != null) {
+                currentBytes -= previous.weight;
+            }
+            entries.put(key, new Entry<>(value, weightBytes, System.currentTimeMillis()));
+            currentBytes += weightBytes;
+            evict();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 删除满足条件的条目，例如某个文件变更后删除所有包含该文件的组合
+     */
+    public int invalidateIf(Predicate<K> predicate) {
+        lock.lock();
+        try {
+            int removed = 0;
+            Iterator<Map.Entry<K, Entry<V>>> iterator = entries.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<K, Entry<V>> entry = iterator.next();
+                if (predicate.test(entry.getKey())) {
+                    currentBytes -= entry.getValue().weight;
+                    iterator.remove();
+                    removed++;
+                }
+            }
+            return removed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void clear() {
+        lock.lock();
+        try {
+            entries.clear();
+            currentBytes = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 缓存统计信息
+     */
+    public Map<String, Object> stats() {
+        lock.lock();
+        try {
+            evict();
+            long hitCount = hits.get();
+            long missCount = misses.get();
+            long requests = hitCount + missCount;
+
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("entries", entries.size());
+            stats.put("bytes", currentBytes);
+            stats.put("maxBytes", maxBytes);
+            stats.put("hits", hitCount);
+            stats.put("misses", missCount);
+            stats.put("hitRate", requests == 0 ? 0.0 : (double) hitCount / requests);
+            stats.put("evictions", evictions.get());
+            return stats;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 估算一组文本段及其向量占用的字节数：向量按 float 计 4 字节，文本按 char 计 2 字节
+     */
+    public static long estimateBytes(List<TextSegment> segments, List<Embedding> embeddings) {
+        long bytes = 0;
+        for (Embedding embedding : embeddings) {
+            bytes += (long) embedding.dimension() * Float.BYTES;
+        }
+        for (TextSegment segment : segments) {
+            bytes += (long) segment.text().length() * Character.BYTES;
+        }
+        return bytes;
+    }
+
+    /**
+     * 先淘汰过期条目，再按LRU淘汰直到不超过容量（调用方需持有锁）
+     */
+    private void evict() {
+        long now = System.currentTimeMillis();
+        Iterator<Map.Entry<K, Entry<V>>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Entry<V> entry = iterator.next().getValue();
+            if (currentBytes > maxBytes || isExpired(entry, now)) {
+                currentBytes -= entry.weight;
+                iterator.remove();
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    private boolean isExpired(Entry<V> entry, long now) {
+        return idleTtlMillis > 0 && now - entry.lastAccess > idleTtlMillis;
+    }
+
+    private void remove(K key, Entry<V> entry) {
+        entries.remove(key);
+        currentBytes -= entry.weight;
+    }
+
+    /**
+     * 缓存条目
+     */
+    private static class Entry<V> {
+        private final V value;
+        private final long weight;
+        private long lastAccess;
+
+        private Entry(V value, long weight, long lastAccess) {
+            this.value = value;
+            this.weight = weight;
+            this.lastAccess = lastAccess;
+        }
+    }
+}
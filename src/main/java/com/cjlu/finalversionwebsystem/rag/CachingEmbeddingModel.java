@@ -0,0 +1,184 @@
+package com.cjlu.finalversionwebsystem.rag;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+/**
+ * 带持久化缓存的嵌入模型
+ * 以规范化文本的SHA-256为键（缓存文件按嵌入模型区分），只把未见过的文本段交给远程模型；
+ * 同一批中重复的文本段也只嵌入一次。单条嵌入（检索时的查询）另有内存LRU缓存，热门问题无需读文件
+ */
+@Slf4j
+public class CachingEmbeddingModel implements EmbeddingModel {
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final EmbeddingCacheStore cacheStore;
+    private final Function<List<TextSegment>, List<Embedding>> remote;
+    private final BoundedCache<ByteBuffer, Embedding> queryCache;
+
+    private final AtomicLong requested = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong embedded = new AtomicLong();
+
+    /**
+     * @param cacheStore 当前嵌入模型对应的缓存文件
+     * @param remote 实际调用远程模型的嵌入函数，返回的向量与输入一一对应
+     */
+    public CachingEmbeddingModel(EmbeddingCacheStore cacheStore, Function<List<TextSegment>, List<Embedding>> remote) {
+        this(cacheStore, remote, 0);
+    }
+
+    /**
+     * @param cacheStore 当前嵌入模型对应的缓存文件
+     * @param remote 实际调用远程模型的嵌入函数，返回的向量与输入一一对应
+     * @param queryCacheBytes 单条嵌入LRU缓存的容量（字节），为0时不缓存
+     */
+    public CachingEmbeddingModel(EmbeddingCacheStore cacheStore, Function<List<TextSegment>, List<Embedding>> remote,
+                                 long queryCacheBytes) {
+        this.cacheStore = cacheStore;
+        this.remote = remote;
+        this.queryCache = queryCacheBytes > 0 ? new BoundedCache<>(queryCacheBytes, 0, TimeUnit.MINUTES) : null;
+    }
+
+    @Override
+    public Response<Embedding> embed(String text) {
+        return embed(TextSegment.from(text));
+    }
+
+    @Override
+    public Response<Embedding> embed(TextSegment segment) {
+        if (queryCache == null) {
+            return Response.from(embedAll(Collections.singletonList(segment)).content().get(0));
+        }
+        ByteBuffer key = ByteBuffer.wrap(key(segment.text()));
+        Embedding embedding = queryCache.get(key);
+        if (embedding == null) {
+            embedding = embedAll(Collections.singletonList(segment)).content().get(0);
+            // 向量按 float 计 4 字节，另加键和对象头
+            queryCache.put(key, embedding, embedding.vector().length * 4L + 96);
+        }
+        return Response.from(embedding);
+    }
+
+    @Override
+    public Response<List<Embedding>> embedAll(List<TextSegment> segments) {
+        Embedding[] results = new Embedding[segments.size()];
+        // 摘要 -> 需要该向量的位置，LinkedHashMap保证待嵌入文本的顺序稳定
+        Map<ByteBuffer, List<Integer>> misses = new LinkedHashMap<>();
+        Map<ByteBuffer, TextSegment> missSegments = new HashMap<>();
+        int cacheHits = 0;
+
+        for (int i = 0; i < segments.size(); i++) {
+            byte[] key = key(segments.get(i).text());
+            float[] vector = lookup(key);
+            if (vector != null) {
+                results[i] = Embedding.from(vector);
+                cacheHits++;
+                continue;
+            }
+            ByteBuffer wrapped = ByteBuffer.wrap(key);
+            misses.computeIfAbsent(wrapped, k -> new ArrayList<>()).add(i);
+            missSegments.putIfAbsent(wrapped, segments.get(i));
+        }
+
+        if (!misses.isEmpty()) {
+            List<TextSegment> toEmbed = new ArrayList<>(misses.size());
+            List<byte[]> keys = new ArrayList<>(misses.size());
+            for (ByteBuffer key : misses.keySet()) {
+                toEmbed.add(missSegments.get(key));
+                keys.add(key.array());
+            }
+            List<Embedding> embeddings = remote.apply(toEmbed);
+
+            List<float[]> vectors = new ArrayList<>(embeddings.size());
+            int index = 0;
+            for (List<Integer> positions : misses.values()) {
+                Embedding embedding = embeddings.get(index++);
+                vectors.add(embedding.vector());
+                for (int position : positions) {
+                    results[position] = embedding;
+                }
+            }
+            try {
+                cacheStore.putAll(keys, vectors);
+            } catch (IOException e) {
+                log.warn("写入嵌入缓存失败: {}", e.getMessage());
+            }
+        }
+
+        requested.addAndGet(segments.size());
+        hits.addAndGet(cacheHits);
+        embedded.addAndGet(misses.size());
+        if (segments.size() > 1) {
+            log.info("嵌入 {} 个文本段，缓存命中 {} 个，批内重复 {} 个，实际调用模型 {} 个，去重率 {}%",
+                    segments.size(), cacheHits, segments.size() - cacheHits - misses.size(), misses.size(),
+                    Math.round(100.0 * (segments.size() - misses.size()) / segments.size()));
+        }
+
+        List<Embedding> embeddings = new ArrayList<>(results.length);
+        for (Embedding embedding : results) {
+            embeddings.add(embedding);
+        }
+        return Response.from(embeddings);
+    }
+
+    /**
+     * 缓存统计信息
+     */
+    public Map<String, Object> stats() {
+        long total = requested.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("entries", cacheStore.size());
+        stats.put("sizeBytes", cacheStore.sizeInBytes());
+        stats.put("requestedSegments", total);
+        stats.put("cacheHits", hits.get());
+        stats.put("embeddedSegments", embedded.get());
+        stats.put("dedupRatio", total == 0 ? 0.0 : (double) (total - embedded.get()) / total);
+        if (queryCache != null) {
+            stats.put("queryCache", queryCache.stats());
+        }
+        return stats;
+    }
+
+    private float[] lookup(byte[] key) {
+        try {
+            return cacheStore.get(key);
+        } catch (IOException e) {
+            log.warn("读取嵌入缓存失败，重新嵌入: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 规范化文本后计算摘要：统一全角半角等兼容字符，合并连续空白
+     */
+    static byte[] key(String text) {
+        String normalized = WHITESPACE.matcher(Normalizer.normalize(text, Normalizer.Form.NFKC)).replaceAll(" ").trim();
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(normalized.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.cjlu.finalversionwebsystem.rag;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.query.Query;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * 知识库向量集合检索器
+ * 查询只嵌入一次，在每个知识库集合中各做一次近似最近邻检索，合并出全局前 maxResults 个结果；
+ * 可按 source_file 元数据限定只返回指定文件的内容
+ */
+@Slf4j
+public class CollectionContentRetriever implements ContentRetriever {
+
+    // 按文件过滤时多取的候选倍数，弥补过滤掉的结果
+    private static final int FILTER_OVERFETCH = 4;
+
+    private final EmbeddingModel embeddingModel;
+    private final List<EmbeddingStore<TextSegment>> collections;
+    private final int maxResults;
+    private final double minScore;
+    private final Set<String> sourceFiles;
+
+    /**
+     * @param embeddingModel 嵌入模型，仅用于嵌入查询
+     * @param collections 参与检索的知识库集合
+     * @param maxResults 合并后返回的最大结果数
+     * @param minScore 最低相关度分数
+     * @param sourceFiles 只返回这些文件的内容，为空时不过滤
+     */
+    public CollectionContentRetriever(EmbeddingModel embeddingModel,
+                                      Collection<EmbeddingStore<TextSegment>> collections,
+                                      int maxResults,
+                                      double minScore,
+                                      Set<String> sourceFiles) {
+        this.embeddingModel = embeddingModel;
+        this.collections = new ArrayList<>(collections);
+        this.maxResults = maxResults;
+        this.minScore = minScore;
+        this.sourceFiles = sourceFiles == null || sourceFiles.isEmpty()
+                ? Collections.emptySet() : new HashSet<>(sourceFiles);
+    }
+
+    @Override
+    public List<Content> retrieve(Query query) {
+        if (collections.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Embedding queryEmbedding = embeddingModel.embed(query.text()).content();
+        int candidates = sourceFiles.isEmpty() ? maxResults : maxResults * FILTER_OVERFETCH;
+
+        // 小顶堆，堆顶为当前保留结果中分数最低的
+        PriorityQueue<EmbeddingMatch<TextSegment>> topMatches =
+                new PriorityQueue<>(maxResults + 1, Comparator.comparingDouble(EmbeddingMatch::score));
+
+        for (EmbeddingStore<TextSegment> collection : collections) {
+            for (EmbeddingMatch<TextSegment> match : collection.findRelevant(queryEmbedding, candidates, minScore)) {
+                if (!accept(match.embedded())) {
+                    continue;
+                }
+                if (topMatches.size() < maxResults) {
+                    topMatches.offer(match);
+                } else if (match.score() > topMatches.peek().score()) {
+                    topMatches.poll();
+                    topMatches.offer(match);
+                }
+            }
+        }
+
+        List<EmbeddingMatch<TextSegment>> ordered = new ArrayList<>(topMatches);
+        ordered.sort(Comparator.comparingDouble((EmbeddingMatch<TextSegment> match) -> match.score()).reversed());
+
+        List<Content> contents = new ArrayList<>(ordered.size());
+        for (EmbeddingMatch<TextSegment> match : ordered) {
+            contents.add(Content.from(match.embedded()));
+        }
+
+        log.debug("知识库检索完成，集合数: {}, 返回结果数: {}", collections.size(), contents.size());
+        return contents;
+    }
+
+    private boolean accept(TextSegment segment) {
+        return sourceFiles.isEmpty() || (segment != null && sourceFiles.contains(segment.metadata().get("source_file")));
+    }
+}
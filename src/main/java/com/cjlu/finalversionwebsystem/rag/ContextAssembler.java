@@ -0,0 +1,126 @@
+package com.cjlu.finalversionwebsystem.rag;
+
+import dev.langchain4j.rag.content.Content;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 按token预算组装提示词上下文
+ * 小文件直接使用全文；其余情况按相关度顺序装入检索到的片段，直到用完预算
+ */
+public class ContextAssembler {
+
+    private final int tokenBudget;
+    private final int wholeFileMaxTokens;
+
+    /**
+     * @param tokenBudget 上下文最多占用的token数
+     * @param wholeFileMaxTokens 全文不超过该token数时直接使用全文
+     */
+    public ContextAssembler(int tokenBudget, int wholeFileMaxTokens) {
+        this.tokenBudget = tokenBudget;
+        this.wholeFileMaxTokens = Math.min(wholeFileMaxTokens, tokenBudget);
+    }
+
+    /**
+     * 组装上下文
+     * @param fileContent 文件全文，为null时只使用检索片段
+     * @param contents 检索到的片段，按相关度降序
+     * @return 组装结果
+     */
+    public AssembledContext assemble(String fileContent, List<Content> contents) {
+        if (fileContent != null) {
+            // 字符数已超过预算的4倍时不可能装下全文，省去逐字符估算
+            if (fileContent.length() <= (long) wholeFileMaxTokens * 4) {
+                int fileTokens = TokenEstimator.estimate(fileContent);
+                if (fileTokens <= wholeFileMaxTokens) {
+                    return new AssembledContext(fileContent, fileTokens, 0, true);
+                }
+            }
+        }
+
+        StringBuilder context = new StringBuilder();
+        Set<String> seen = new HashSet<>();
+        int usedTokens = 0;
+        int packed = 0;
+        for (Content content : contents) {
+            String text = content.textSegment().text();
+            if (!seen.add(text)) {
+                continue;
+            }
+            String header = "【片段" + (packed + 1) + "】\n";
+            int cost = TokenEstimator.estimate(header) + TokenEstimator.estimate(text);
+            int remaining = tokenBudget - usedTokens;
+            if (cost <= remaining) {
+                context.append(header).append(text).append("\n\n");
+                usedTokens += cost;
+                packed++;
+            } else if (packed == 0) {
+                // 最相关的片段本身超出预算时截断装入，保证至少有一段上下文
+                String truncated = truncate(text, remaining - TokenEstimator.estimate(header));
+                if (!truncated.isEmpty()) {
+                    context.append(header).append(truncated).append("\n\n");
+                    usedTokens += TokenEstimator.estimate(header) + TokenEstimator.estimate(truncated);
+                    packed++;
+                }
+            }
+            // 装不下的片段跳过，后面更短的片段仍可能装得下
+        }
+        return new AssembledContext(context.toString(), usedTokens, packed, false);
+    }
+
+    /**
+     * 截取不超过指定token数的最长前缀
+     */
+    private static String truncate(String text, int maxTokens) {
+        if (maxTokens <= 0) {
+            return "";
+        }
+        int low = 0;
+        int high = text.length();
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (TokenEstimator.estimate(text.subSequence(0, mid)) <= maxTokens) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return text.substring(0, low);
+    }
+
+    /**
+     * 组装结果
+     */
+    public static class AssembledContext {
+        private final String text;
+        private final int tokens;
+        private final int segmentCount;
+        private final boolean wholeFile;
+
+        private AssembledContext(String text, int tokens, int segmentCount, boolean wholeFile) {
+            this.text = text;
+            this.tokens = tokens;
+            this.segmentCount = segmentCount;
+            this.wholeFile = wholeFile;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        public int getTokens() {
+            return tokens;
+        }
+
+        public int getSegmentCount() {
+            return segmentCount;
+        }
+
+        public boolean isWholeFile() {
+            return wholeFile;
+        }
+    }
+}
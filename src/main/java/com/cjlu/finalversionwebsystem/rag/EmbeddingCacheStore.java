@@ -0,0 +1,155 @@
+package com.cjlu.finalversionwebsystem.rag;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 持久化的嵌入向量缓存
+ * 只追加写的数据文件，每条记录为 [32字节文本摘要][维度][向量]；
+ * 内存中只保存 摘要 -> 记录偏移，读取时按偏移从文件中取向量
+ */
+@Slf4j
+public class EmbeddingCacheStore implements Closeable {
+
+    public static final int KEY_LENGTH = 32;
+    private static final int HEADER_LENGTH = KEY_LENGTH + Integer.BYTES;
+
+    private final FileChannel channel;
+    private final Map<ByteBuffer, Long> offsets = new ConcurrentHashMap<>();
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private volatile long end;
+
+    private EmbeddingCacheStore(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * 打开缓存文件，不存在时创建；末尾未写完整的记录会被截掉
+     * @param file 缓存文件
+     * @return 缓存
+     * @throws IOException IO异常
+     */
+    public static EmbeddingCacheStore open(Path file) throws IOException {
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        EmbeddingCacheStore store = new EmbeddingCacheStore(channel);
+        store.scan();
+        return store;
+    }
+
+    private void scan() throws IOException {
+        long size = channel.size();
+        long position = 0;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+        while (position + HEADER_LENGTH <= size) {
+            header.clear();
+            readFully(header, position);
+            header.flip();
+            byte[] key = new byte[KEY_LENGTH];
+            header.get(key);
+            int dimension = header.getInt();
+            long recordLength = HEADER_LENGTH + (long) dimension * Float.BYTES;
+            if (dimension <= 0 || position + recordLength > size) {
+                break;
+            }
+            offsets.put(ByteBuffer.wrap(key), position);
+            position += recordLength;
+        }
+        if (position < size) {
+            log.warn("嵌入缓存文件末尾有 {} 字节不完整的记录，已截断", size - position);
+            channel.truncate(position);
+        }
+        end = position;
+    }
+
+    /**
+     * 读取缓存的向量
+     * @param key 文本摘要
+     * @return 向量，未缓存时返回null
+     * @throws IOException IO异常
+     */
+    public float[] get(byte[] key) throws IOException {
+        Long offset = offsets.get(ByteBuffer.wrap(key));
+        if (offset == null) {
+            return null;
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(header, offset);
+        int dimension = header.getInt(KEY_LENGTH);
+        ByteBuffer data = ByteBuffer.allocate(dimension * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(data, offset + HEADER_LENGTH);
+        data.flip();
+        float[] vector = new float[dimension];
+        data.asFloatBuffer().get(vector);
+        return vector;
+    }
+
+    /**
+     * 追加写入一批向量，已存在的摘要跳过
+     * @param keys 文本摘要
+     * @param vectors 向量，与摘要一一对应
+     * @throws IOException IO异常
+     */
+    public void putAll(List<byte[]> keys, List<float[]> vectors) throws IOException {
+        appendLock.lock();
+        try {
+            for (int i = 0; i < keys.size(); i++) {
+                ByteBuffer key = ByteBuffer.wrap(keys.get(i));
+                if (offsets.containsKey(key)) {
+                    continue;
+                }
+                float[] vector = vectors.get(i);
+                ByteBuffer record = ByteBuffer.allocate(HEADER_LENGTH + vector.length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+                record.put(keys.get(i)).putInt(vector.length);
+                record.asFloatBuffer().put(vector);
+                record.position(0);
+                long offset = end;
+                while (record.hasRemaining()) {
+                    channel.write(record, offset + record.position());
+                }
+                end += record.capacity();
+                offsets.put(key, offset);
+            }
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    public int size() {
+        return offsets.size();
+    }
+
+    /**
+     * 数据文件占用的字节数
+     */
+    public long sizeInBytes() {
+        return end;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("嵌入缓存文件意外结束");
+            }
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package com.cjlu.finalversionwebsystem.rag;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 并行限流的嵌入执行器
+ * 把文本段切成批次后并发调用嵌入模型，请求数和token数分别受令牌桶限制以符合服务商的QPS/TPM配额；
+ * 遇到限流（429）按指数退避重试，遇到批次过大的错误时对半拆分批次并记住更小的批次大小
+ */
+@Slf4j
+public class EmbeddingExecutor {
+
+    private static final long MAX_BACKOFF_MS = 30_000;
+
+    private final EmbeddingModel embeddingModel;
+    private final ExecutorService workers;
+    private final TokenBucket requestBucket;
+    private final TokenBucket tokenBucket;
+    private final int maxRetries;
+    private final long initialBackoffMs;
+    private final AtomicInteger batchSize;
+
+    /**
+     * @param embeddingModel 嵌入模型
+     * @param concurrency 同时进行的批次数
+     * @param maxBatchSize 初始批次大小，即服务商允许的单次最大输入数
+     * @param requestsPerSecond 每秒最多请求数
+     * @param tokensPerMinute 每分钟最多token数
+     * @param maxRetries 限流时的最大重试次数
+     * @param initialBackoffMs 首次重试前的等待毫秒数，之后每次翻倍
+     */
+    public EmbeddingExecutor(EmbeddingModel embeddingModel, int concurrency, int maxBatchSize,
+                             double requestsPerSecond, double tokensPerMinute, int maxRetries, long initialBackoffMs) {
+        this.embeddingModel = embeddingModel;
+        this.requestBucket = new TokenBucket(Math.max(1, requestsPerSecond), requestsPerSecond);
+        this.tokenBucket = new TokenBucket(tokensPerMinute, tokensPerMinute / 60);
+        this.maxRetries = maxRetries;
+        this.initialBackoffMs = initialBackoffMs;
+        this.batchSize = new AtomicInteger(Math.max(1, maxBatchSize));
+
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(Math.max(1, concurrency), runnable -> {
+            Thread thread = new Thread(runnable, "embedding-worker-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 嵌入全部文本段，返回的向量与文本段一一对应
+     * @param segments 文本段
+     * @return 向量列表
+     */
+    public List<Embedding> embedAll(List<TextSegment> segments) {
+        if (segments.isEmpty()) {
+            return new ArrayList<>();
+        }
+        int size = batchSize.get();
+        // 只有一批时直接在调用线程上执行
+        if (segments.size() <= size) {
+            return embedBatch(segments);
+        }
+
+        long startTime = System.currentTimeMillis();
+        List<Future<List<Embedding>>> futures = new ArrayList<>();
+        for (int i = 0; i < segments.size(); i += size) {
+            List<TextSegment> batch = segments.subList(i, Math.min(i + size, segments.size()));
+            futures.add(workers.submit(() -> embedBatch(batch)));
+        }
+
+        List<Embedding> embeddings = new ArrayList<>(segments.size());
+        try {
+            for (Future<List<Embedding>> future : futures) {
+                embeddings.addAll(future.get());
+            }
+        } catch (InterruptedException e) {
+            futures.forEach(future -> future.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("嵌入过程被中断", e);
+        } catch (ExecutionException e) {
+            futures.forEach(future -> future.cancel(true));
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new IllegalStateException(cause);
+        }
+
+        log.info("并行嵌入完成，文本段数: {}，批次数: {}，耗时: {}ms",
+                segments.size(), futures.size(), System.currentTimeMillis() - startTime);
+        return embeddings;
+    }
+
+    /**
+     * 当前使用的批次大小
+     */
+    public int getBatchSize() {
+        return batchSize.get();
+    }
+
+    public void shutdown() {
+        workers.shutdownNow();
+    }
+
+    private List<Embedding> embedBatch(List<TextSegment> batch) {
+        int estimatedTokens = 0;
+        for (TextSegment segment : batch) {
+            estimatedTokens += TokenEstimator.estimate(segment.text());
+        }
+
+        int attempt = 0;
+        while (true) {
+            try {
+                requestBucket.acquire(1);
+                tokenBucket.acquire(estimatedTokens);
+                List<Embedding> embeddings = embeddingModel.embedAll(batch).content();
+                if (embeddings.size() != batch.size()) {
+                    throw new IllegalStateException("嵌入结果数量 " + embeddings.size() + " 与文本段数量 " + batch.size() + " 不一致");
+                }
+                return embeddings;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("嵌入过程被中断", e);
+            } catch (RuntimeException e) {
+                if (batch.size() > 1 && isBatchTooLarge(e)) {
+                    return splitAndEmbed(batch);
+                }
+                if (!isRateLimited(e) || ++attempt > maxRetries) {
+                    throw e;
+                }
+                long backoff = Math.min(MAX_BACKOFF_MS, initialBackoffMs << (attempt - 1));
+                backoff += ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+                log.warn("嵌入请求被限流，第 {} 次重试，等待 {}ms", attempt, backoff);
+                sleep(backoff);
+            }
+        }
+    }
+
+    /**
+     * 服务商拒绝当前批次大小时对半拆分，并把后续批次调小
+     */
+    private List<Embedding> splitAndEmbed(List<TextSegment> batch) {
+        int half = batch.size() / 2;
+        int previous = batchSize.getAndAccumulate(half, Math::min);
+        if (previous > half) {
+            log.warn("嵌入批次大小 {} 超过服务商上限，调整为 {}", batch.size(), half);
+        }
+        List<Embedding> embeddings = new ArrayList<>(embedBatch(batch.subList(0, half)));
+        embeddings.addAll(embedBatch(batch.subList(half, batch.size())));
+        return embeddings;
+    }
+
+    private static boolean isRateLimited(Throwable error) {
+        String message = messages(error);
+        return message.contains("429") || message.contains("rate limit") || message.contains("ratelimit")
+                || message.contains("throttling") || message.contains("too many requests");
+    }
+
+    private static boolean isBatchTooLarge(Throwable error) {
+        String message = messages(error);
+        return message.contains("batch size") || message.contains("batch_size")
+                || message.contains("too many inputs") || message.contains("input should not be larger")
+                || message.contains("maximum number of input");
+    }
+
+    /**
+     * 合并异常链上的所有消息，统一转为小写便于匹配
+     */
+    private static String messages(Throwable error) {
+        StringBuilder builder = new StringBuilder();
+        for (Throwable current = error; current != null && builder.length() < 4096; current = current.getCause()) {
+            builder.append(current.getMessage()).append('\n');
+            if (current.getCause() == current) {
+                break;
+            }
+        }
+        return builder.toString().toLowerCase(Locale.ROOT);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("嵌入过程被中断", e);
+        }
+    }
+}
@@ -0,0 +1,786 @@
+package com.cjlu.finalversionwebsystem.rag;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 基于 HNSW（分层可导航小世界图）的近似最近邻向量存储
+ * 适用于知识库级别（数万到数百万文本段）的检索，检索复杂度约为 O(log n)
+ *
+ * - m：每层每个节点的最大邻居数，第0层为 2m
+ * - efConstruction：插入时的候选集大小，越大图质量越高、构建越慢
+ * - efSearch：检索时的候选集大小，越大召回率越高、检索越慢
+ *
+ * 向量归一化后存放在分块的 float 数组中，相似度为点积；删除采用墓碑标记，
+ * 墓碑超过一半时整体重建。分数与 InMemoryEmbeddingStore 一致：(cos + 1) / 2
+ */
+public class HnswEmbeddingStore implements EmbeddingStore<TextSegment> {
+
+    private static final int MAGIC = 0x484E5357; // "HNSW"
+    private static final int VERSION = 1;
+
+    // 每个向量块存放的行数
+    private static final int BLOCK_SHIFT = 10;
+    private static final int BLOCK_ROWS = 1 << BLOCK_SHIFT;
+
+    private static final ThreadLocal<VisitedSet> VISITED = ThreadLocal.withInitial(VisitedSet::new);
+
+    private final int m;
+    private final int maxM0;
+    private final int efConstruction;
+    private volatile int efSearch;
+    private final double levelMultiplier;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Random random = new Random();
+
+    private int dimension;
+    private final List<float[]> vectorBlocks = new ArrayList<>();
+    // links.get(node)[level] = {邻居数, 邻居1, 邻居2, ...}
+    private final List<int[][]> links = new ArrayList<>();
+    private final List<String> ids = new ArrayList<>();
+    private final List<TextSegment> segments = new ArrayList<>();
+    private final Map<String, Integer> nodeById = new HashMap<>();
+    private final BitSet deleted = new BitSet();
+    private int deletedCount;
+
+    private int count;
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+
+    public HnswEmbeddingStore(int m, int efConstruction, int efSearch) {
+        if (m < 2 || efConstruction < 1 || efSearch < 1) {
+            throw new IllegalArgumentException("HNSW参数无效: m=" + m + ", efConstruction=" + efConstruction + ", efSearch=" + efSearch);
+        }
+        this.m = m;
+        this.maxM0 = 2 * m;
+        this.efConstruction = Math.max(efConstruction, m);
+        this.efSearch = efSearch;
+        this.levelMultiplier = 1 / Math.log(m);
+    }
+
+    @Override
+    public String add(Embedding embedding) {
+        String id = UUID.randomUUID().toString();
+        add(id, embedding);
+        return id;
+    }
+
+    @Override
+    public void add(String id, Embedding embedding) {
+        lock.writeLock().lock();
+        try {
+            insert(id, embedding.vector(), null);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public String add(Embedding embedding, TextSegment textSegment) {
+        String id = UUID.randomUUID().toString();
+        lock.writeLock().lock();
+        try {
+            insert(id, embedding.vector(), textSegment);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return id;
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings) {
+        return addAll(embeddings, null);
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings, List<TextSegment> textSegments) {
+        if (textSegments != null && textSegments.size() != embeddings.size()) {
+            throw new IllegalArgumentException("文本段数量与向量数量不一致: " + textSegments.size() + " != " + embeddings.size());
+        }
+        List<String> newIds = new ArrayList<>(embeddings.size());
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i < embeddings.size(); i++) {
+                String id = UUID.randomUUID().toString();
+                insert(id, embeddings.get(i).vector(), textSegments == null ? null : textSegments.get(i));
+                newIds.add(id);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return newIds;
+    }
+
+    /**
+     * 使用指定ID批量加入向量，已存在的ID视为替换
+     */
+    public void addAll(List<String> ids, List<Embedding> embeddings, List<TextSegment> textSegments) {
+        if (ids.size() != embeddings.size() || textSegments.size() != embeddings.size()) {
+            throw new IllegalArgumentException("ID、向量与文本段数量不一致: " + ids.size() + ", " + embeddings.size() + ", " + textSegments.size());
+        }
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i < embeddings.size(); i++) {
+                insert(ids.get(i), embeddings.get(i).vector(), textSegments.get(i));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 是否包含全部指定ID的存活向量
+     */
+    public boolean containsAll(Collection<String> ids) {
+        lock.readLock().lock();
+        try {
+            return nodeById.keySet().containsAll(ids);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 删除向量（墓碑标记），墓碑超过一半时重建图
+     * @return 是否删除成功
+     */
+    public boolean remove(String id) {
+        lock.writeLock().lock();
+        try {
+            boolean removed = markDeleted(id);
+            compactIfNeeded();
+            return removed;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 批量删除向量
+     * @return 实际删除的数量
+     */
+    public int removeAll(Collection<String> idsToRemove) {
+        lock.writeLock().lock();
+        try {
+            int removed = 0;
+            for (String id : idsToRemove) {
+                if (markDeleted(id)) {
+                    removed++;
+                }
+            }
+            compactIfNeeded();
+            return removed;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<EmbeddingMatch<TextSegment>> findRelevant(Embedding referenceEmbedding, int maxResults, double minScore) {
+        if (maxResults <= 0) {
+            return Collections.emptyList();
+        }
+        lock.readLock().lock();
+        try {
+            if (entryPoint < 0 || count == deletedCount) {
+                return Collections.emptyList();
+            }
+            if (referenceEmbedding.dimension() != dimension) {
+                throw new IllegalArgumentException("查询向量维度不一致: " + referenceEmbedding.dimension() + " != " + dimension);
+            }
+
+            float[] query = normalize(referenceEmbedding.vector());
+            int current = greedyDescend(query, entryPoint, maxLevel, 0);
+            // 墓碑节点参与导航但不作为结果，按比例放大候选集保证结果数
+            int ef = Math.max(efSearch, maxResults);
+            if (deletedCount > 0) {
+                ef = (int) Math.min(count, (long) ef * count / (count - deletedCount));
+            }
+            ScoreHeap candidates = searchLayer(query, current, ef, 0);
+
+            double minCosine = 2 * minScore - 1;
+            List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>(maxResults);
+            int[] nodes = candidates.nodesByScoreDescending();
+            for (int node : nodes) {
+                if (matches.size() >= maxResults) {
+                    break;
+                }
+                float cosine = dot(query, node);
+                if (deleted.get(node) || cosine < minCosine) {
+                    continue;
+                }
+                matches.add(new EmbeddingMatch<>((cosine + 1) / 2.0, ids.get(node),
+                        Embedding.from(vector(node)), segments.get(node)));
+            }
+            return matches;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void setEfSearch(int efSearch) {
+        if (efSearch < 1) {
+            throw new IllegalArgumentException("efSearch必须大于0: " + efSearch);
+        }
+        this.efSearch = efSearch;
+    }
+
+    /**
+     * 有效（未删除）向量数
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return count - deletedCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int dimension() {
+        return dimension;
+    }
+
+    /**
+     * 将图结构、向量和文本段写入文件（先写临时文件再原子替换）
+     */
+    public void save(Path file) throws IOException {
+        Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+        lock.readLock().lock();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(dimension);
+            out.writeInt(m);
+            out.writeInt(efConstruction);
+            out.writeInt(count);
+            out.writeInt(entryPoint);
+            out.writeInt(maxLevel);
+
+            for (int node = 0; node < count; node++) {
+                SegmentIndex.writeString(out, ids.get(node));
+                out.writeBoolean(deleted.get(node));
+                float[] block = vectorBlocks.get(node >>> BLOCK_SHIFT);
+                int offset = (node & (BLOCK_ROWS - 1)) * dimension;
+                for (int i = 0; i < dimension; i++) {
+                    out.writeFloat(block[offset + i]);
+                }
+
+                int[][] nodeLinks = links.get(node);
+                out.writeInt(nodeLinks.length);
+                for (int[] levelLinks : nodeLinks) {
+                    out.writeInt(levelLinks[0]);
+                    for (int i = 1; i <= levelLinks[0]; i++) {
+                        out.writeInt(levelLinks[i]);
+                    }
+                }
+
+                TextSegment segment = segments.get(node);
+                out.writeBoolean(segment != null);
+                if (segment != null) {
+                    SegmentIndex.writeSegment(out, segment);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * 从文件加载，无需重新构建图
+     */
+    public static HnswEmbeddingStore load(Path file, int efSearch) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("不是有效的HNSW索引文件: " + file);
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("不支持的HNSW索引版本: " + version);
+            }
+            int dimension = in.readInt();
+            int m = in.readInt();
+            int efConstruction = in.readInt();
+            int count = in.readInt();
+
+            HnswEmbeddingStore store = new HnswEmbeddingStore(m, efConstruction, efSearch);
+            store.dimension = dimension;
+            store.entryPoint = in.readInt();
+            store.maxLevel = in.readInt();
+
+            for (int node = 0; node < count; node++) {
+                String id = SegmentIndex.readString(in);
+                boolean isDeleted = in.readBoolean();
+                float[] vector = new float[dimension];
+                for (int i = 0; i < dimension; i++) {
+                    vector[i] = in.readFloat();
+                }
+
+                int levels = in.readInt();
+                int[][] nodeLinks = new int[levels][];
+                for (int level = 0; level < levels; level++) {
+                    int[] levelLinks = new int[store.maxNeighbors(level) + 1];
+                    levelLinks[0] = in.readInt();
+                    for (int i = 1; i <= levelLinks[0]; i++) {
+                        levelLinks[i] = in.readInt();
+                    }
+                    nodeLinks[level] = levelLinks;
+                }
+
+                TextSegment segment = in.readBoolean() ? SegmentIndex.readSegment(in) : null;
+                store.appendNode(id, vector, nodeLinks, segment);
+                if (isDeleted) {
+                    store.deleted.set(node);
+                    store.deletedCount++;
+                    store.nodeById.remove(id);
+                }
+            }
+            return store;
+        }
+    }
+
+    // ==================== 图构建 ====================
+
+    private void insert(String id, float[] rawVector, TextSegment textSegment) {
+        if (dimension == 0) {
+            dimension = rawVector.length;
+        }
+        if (rawVector.length != dimension) {
+            throw new IllegalArgumentException("向量维度不一致: " + rawVector.length + " != " + dimension);
+        }
+        Integer existing = nodeById.get(id);
+        if (existing != null) {
+            // 与 InMemoryEmbeddingStore 不同，相同ID视为替换
+            deleted.set(existing);
+            deletedCount++;
+        }
+
+        float[] vector = normalize(rawVector);
+        int level = randomLevel();
+        int[][] nodeLinks = new int[level + 1][];
+        for (int l = 0; l <= level; l++) {
+            nodeLinks[l] = new int[maxNeighbors(l) + 1];
+        }
+        int node = appendNode(id, vector, nodeLinks, textSegment);
+
+        if (entryPoint < 0) {
+            entryPoint = node;
+            maxLevel = level;
+            return;
+        }
+
+        int current = greedyDescend(vector, entryPoint, maxLevel, level + 1);
+        for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+            ScoreHeap candidates = searchLayer(vector, current, efConstruction, l);
+            int[] ordered = candidates.nodesByScoreDescending();
+            int[] neighbors = selectNeighbors(vector, ordered, m);
+
+            int[] levelLinks = nodeLinks[l];
+            levelLinks[0] = neighbors.length;
+            System.arraycopy(neighbors, 0, levelLinks, 1, neighbors.length);
+
+            for (int neighbor : neighbors) {
+                connect(neighbor, node, l);
+            }
+            current = ordered[0];
+        }
+
+        if (level > maxLevel) {
+            entryPoint = node;
+            maxLevel = level;
+        }
+    }
+
+    /**
+     * 为 neighbor 增加一条指向 node 的边，邻居已满时用启发式重新挑选
+     */
+    private void connect(int neighbor, int node, int level) {
+        int[] neighborLinks = links.get(neighbor)[level];
+        int capacity = neighborLinks.length - 1;
+        if (neighborLinks[0] < capacity) {
+            neighborLinks[++neighborLinks[0]] = node;
+            return;
+        }
+
+        float[] base = vector(neighbor);
+        int[] candidates = new int[capacity + 1];
+        System.arraycopy(neighborLinks, 1, candidates, 0, capacity);
+        candidates[capacity] = node;
+        sortBySimilarity(base, candidates);
+
+        int[] selected = selectNeighbors(base, candidates, capacity);
+        neighborLinks[0] = selected.length;
+        System.arraycopy(selected, 0, neighborLinks, 1, selected.length);
+    }
+
+    /**
+     * 启发式邻居选择：优先保留彼此不相近的候选以保持图的连通性，不足时再用剩余候选补齐
+     * @param ordered 按与 base 相似度降序排列的候选
+     */
+    private int[] selectNeighbors(float[] base, int[] ordered, int limit) {
+        if (ordered.length <= limit) {
+            return ordered;
+        }
+        int[] selected = new int[limit];
+        int selectedCount = 0;
+        boolean[] taken = new boolean[ordered.length];
+
+        for (int i = 0; i < ordered.length && selectedCount < limit; i++) {
+            int candidate = ordered[i];
+            float toBase = dot(base, candidate);
+            boolean diverse = true;
+            for (int j = 0; j < selectedCount; j++) {
+                if (dotNodes(candidate, selected[j]) > toBase) {
+                    diverse = false;
+                    break;
+                }
+            }
+            if (diverse) {
+                selected[selectedCount++] = candidate;
+                taken[i] = true;
+            }
+        }
+        for (int i = 0; i < ordered.length && selectedCount < limit; i++) {
+            if (!taken[i]) {
+                selected[selectedCount++] = ordered[i];
+            }
+        }
+        return selected;
+    }
+
+    private void sortBySimilarity(float[] base, int[] nodes) {
+        ScoreHeap heap = new ScoreHeap(nodes.length);
+        for (int node : nodes) {
+            heap.push(node, dot(base, node));
+        }
+        int[] ordered = heap.nodesByScoreDescending();
+        System.arraycopy(ordered, 0, nodes, 0, nodes.length);
+    }
+
+    // ==================== 图检索 ====================
+
+    /**
+     * 从 fromLevel 逐层贪心下降到 toLevel，返回 toLevel 上离查询最近的入口
+     */
+    private int greedyDescend(float[] query, int start, int fromLevel, int toLevel) {
+        int current = start;
+        float currentScore = dot(query, current);
+        for (int level = fromLevel; level >= toLevel; level--) {
+            boolean changed = true;
+            while (changed) {
+                changed = false;
+                int[] levelLinks = links.get(current)[level];
+                for (int i = 1; i <= levelLinks[0]; i++) {
+                    int neighbor = levelLinks[i];
+                    float score = dot(query, neighbor);
+                    if (score > currentScore) {
+                        current = neighbor;
+                        currentScore = score;
+                        changed = true;
+                    }
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * 在单层图上做 ef 宽度的最佳优先搜索，返回最多 ef 个候选
+     */
+    private ScoreHeap searchLayer(float[] query, int entry, int ef, int level) {
+        VisitedSet visited = VISITED.get();
+        visited.reset(count);
+
+        ScoreHeap results = new ScoreHeap(ef + 1);
+        ScoreHeap candidates = new ScoreHeap(ef + 1);
+        float entryScore = dot(query, entry);
+        visited.visit(entry);
+        results.push(entry, entryScore);
+        candidates.push(entry, -entryScore);
+
+        while (candidates.size() > 0) {
+            float candidateScore = -candidates.topScore();
+            int candidate = candidates.pop();
+            if (results.size() >= ef && candidateScore < results.topScore()) {
+                break;
+            }
+            int[][] candidateLinks = links.get(candidate);
+            if (level >= candidateLinks.length) {
+                continue;
+            }
+            int[] levelLinks = candidateLinks[level];
+            for (int i = 1; i <= levelLinks[0]; i++) {
+                int neighbor = levelLinks[i];
+                if (!visited.visit(neighbor)) {
+                    continue;
+                }
+                float score = dot(query, neighbor);
+                if (results.size() < ef || score > results.topScore()) {
+                    candidates.push(neighbor, -score);
+                    results.push(neighbor, score);
+                    if (results.size() > ef) {
+                        results.pop();
+                    }
+                }
+            }
+        }
+        return results;
+    }
+
+    // ==================== 存储 ====================
+
+    private int appendNode(String id, float[] vector, int[][] nodeLinks, TextSegment textSegment) {
+        int node = count;
+        int block = node >>> BLOCK_SHIFT;
+        if (block == vectorBlocks.size()) {
+            vectorBlocks.add(new float[BLOCK_ROWS * dimension]);
+        }
+        System.arraycopy(vector, 0, vectorBlocks.get(block), (node & (BLOCK_ROWS - 1)) * dimension, dimension);
+        links.add(nodeLinks);
+        ids.add(id);
+        segments.add(textSegment);
+        nodeById.put(id, node);
+        count++;
+        return node;
+    }
+
+    private boolean markDeleted(String id) {
+        Integer node = nodeById.remove(id);
+        if (node == null || deleted.get(node)) {
+            return false;
+        }
+        deleted.set(node);
+        deletedCount++;
+        return true;
+    }
+
+    /**
+     * 墓碑超过一半时用存活节点重建整张图
+     */
+    private void compactIfNeeded() {
+        if (deletedCount == 0 || deletedCount * 2 < count) {
+            return;
+        }
+        List<String> liveIds = new ArrayList<>();
+        List<float[]> liveVectors = new ArrayList<>();
+        List<TextSegment> liveSegments = new ArrayList<>();
+        for (int node = 0; node < count; node++) {
+            if (!deleted.get(node)) {
+                liveIds.add(ids.get(node));
+                liveVectors.add(vector(node));
+                liveSegments.add(segments.get(node));
+            }
+        }
+
+        vectorBlocks.clear();
+        links.clear();
+        ids.clear();
+        segments.clear();
+        nodeById.clear();
+        deleted.clear();
+        deletedCount = 0;
+        count = 0;
+        entryPoint = -1;
+        maxLevel = -1;
+
+        for (int i = 0; i < liveIds.size(); i++) {
+            insert(liveIds.get(i), liveVectors.get(i), liveSegments.get(i));
+        }
+    }
+
+    private int maxNeighbors(int level) {
+        return level == 0 ? maxM0 : m;
+    }
+
+    private int randomLevel() {
+        double u = 1 - random.nextDouble();
+        return (int) (-Math.log(u) * levelMultiplier);
+    }
+
+    private float[] vector(int node) {
+        float[] vector = new float[dimension];
+        System.arraycopy(vectorBlocks.get(node >>> BLOCK_SHIFT), (node & (BLOCK_ROWS - 1)) * dimension, vector, 0, dimension);
+        return vector;
+    }
+
+    /**
+     * 查询向量与节点向量的点积，手动展开4路
+     */
+    private float dot(float[] query, int node) {
+        float[] block = vectorBlocks.get(node >>> BLOCK_SHIFT);
+        int offset = (node & (BLOCK_ROWS - 1)) * dimension;
+        float s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int i = 0;
+        int upper = dimension & ~3;
+        for (; i < upper; i += 4) {
+            s0 += query[i] * block[offset + i];
+            s1 += query[i + 1] * block[offset + i + 1];
+            s2 += query[i + 2] * block[offset + i + 2];
+            s3 += query[i + 3] * block[offset + i + 3];
+        }
+        for (; i < dimension; i++) {
+            s0 += query[i] * block[offset + i];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    private float dotNodes(int a, int b) {
+        float[] blockA = vectorBlocks.get(a >>> BLOCK_SHIFT);
+        float[] blockB = vectorBlocks.get(b >>> BLOCK_SHIFT);
+        int offsetA = (a & (BLOCK_ROWS - 1)) * dimension;
+        int offsetB = (b & (BLOCK_ROWS - 1)) * dimension;
+        float sum = 0;
+        for (int i = 0; i < dimension; i++) {
+            sum += blockA[offsetA + i] * blockB[offsetB + i];
+        }
+        return sum;
+    }
+
+    private static float[] normalize(float[] vector) {
+        double sum = 0;
+        for (float value : vector) {
+            sum += value * value;
+        }
+        float[] normalized = new float[vector.length];
+        if (sum == 0) {
+            return normalized;
+        }
+        float inverse = (float) (1 / Math.sqrt(sum));
+        for (int i = 0; i < vector.length; i++) {
+            normalized[i] = vector[i] * inverse;
+        }
+        return normalized;
+    }
+
+    /**
+     * 基于原始数组的小顶堆（按分数），堆顶为最低分
+     */
+    private static class ScoreHeap {
+        private int[] nodes;
+        private float[] scores;
+        private int size;
+
+        private ScoreHeap(int initialCapacity) {
+            this.nodes = new int[Math.max(initialCapacity, 4)];
+            this.scores = new float[nodes.length];
+        }
+
+        private int size() {
+            return size;
+        }
+
+        private float topScore() {
+            return scores[0];
+        }
+
+        private void push(int node, float score) {
+            if (size == nodes.length) {
+                nodes = Arrays.copyOf(nodes, size * 2);
+                scores = Arrays.copyOf(scores, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (scores[parent] <= score) {
+                    break;
+                }
+                nodes[i] = nodes[parent];
+                scores[i] = scores[parent];
+                i = parent;
+            }
+            nodes[i] = node;
+            scores[i] = score;
+        }
+
+        private int pop() {
+            int top = nodes[0];
+            size--;
+            int lastNode = nodes[size];
+            float lastScore = scores[size];
+            int i = 0;
+            while (true) {
+                int left = 2 * i + 1;
+                if (left >= size) {
+                    break;
+                }
+                int child = left + 1 < size && scores[left + 1] < scores[left] ? left + 1 : left;
+                if (lastScore <= scores[child]) {
+                    break;
+                }
+                nodes[i] = nodes[child];
+                scores[i] = scores[child];
+                i = child;
+            }
+            nodes[i] = lastNode;
+            scores[i] = lastScore;
+            return top;
+        }
+
+        /**
+         * 依次弹出全部元素，返回按分数降序排列的节点
+         */
+        private int[] nodesByScoreDescending() {
+            int[] ordered = new int[size];
+            for (int i = ordered.length - 1; i >= 0; i--) {
+                ordered[i] = pop();
+            }
+            return ordered;
+        }
+    }
+
+    /**
+     * 线程本地的访问标记，用代数计数避免每次检索清空数组
+     */
+    private static class VisitedSet {
+        private int[] marks = new int[0];
+        private int generation;
+
+        private void reset(int capacity) {
+            if (marks.length < capacity) {
+                marks = new int[Math.max(capacity, marks.length * 2)];
+                generation = 0;
+            }
+            generation++;
+            if (generation == Integer.MAX_VALUE) {
+                Arrays.fill(marks, 0);
+                generation = 1;
+            }
+        }
+
+        /**
+         * @return 是否首次访问
+         */
+        private boolean visit(int node) {
+            if (marks[node] == generation) {
+                return false;
+            }
+            marks[node] = generation;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.cjlu.finalversionwebsystem.rag;
+
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.query.Query;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 向量与关键词混合检索器
+ * 向量检索和BM25关键词检索各取一批候选，按倒数排名融合（RRF）：每个文本段的得分为
+ * 它在各路结果中 1/(k+排名) 之和，两路都靠前的文本段排在最前。不依赖两路分数的量纲，也不增加模型调用
+ */
+@Slf4j
+public class HybridContentRetriever implements ContentRetriever {
+
+    private final ContentRetriever vectorRetriever;
+    private final Collection<Bm25Index> keywordIndexes;
+    private final int maxResults;
+    private final int candidates;
+    private final int rrfK;
+
+    /**
+     * @param vectorRetriever 向量检索器，其返回数量即向量一路的候选数
+     * @param keywordIndexes 参与检索的BM25索引（每个文件一个）
+     * @param maxResults 融合后返回的最大结果数
+     * @param candidates 关键词一路的候选数
+     * @param rrfK RRF平滑常数，越大排名靠后的结果权重衰减越慢
+     */
+    public HybridContentRetriever(ContentRetriever vectorRetriever,
+                                  Collection<Bm25Index> keywordIndexes,
+                                  int maxResults,
+                                  int candidates,
+                                  int rrfK) {
+        this.vectorRetriever = vectorRetriever;
+        this.keywordIndexes = new ArrayList<>(keywordIndexes);
+        this.maxResults = maxResults;
+        this.candidates = candidates;
+        this.rrfK = rrfK;
+    }
+
+    @Override
+    public List<Content> retrieve(Query query) {
+        List<Content> vectorResults = vectorRetriever.retrieve(query);
+        List<TextSegment> keywordResults = searchKeywords(query.text());
+
+        // 文本段 -> 融合得分，同一文件的同一段文本视为同一结果
+        Map<String, Fused> fused = new LinkedHashMap<>();
+        for (int rank = 0; rank < vectorResults.size(); rank++) {
+            accumulate(fused, vectorResults.get(rank).textSegment(), rank);
+        }
+        for (int rank = 0; rank < keywordResults.size(); rank++) {
+            accumulate(fused, keywordResults.get(rank), rank);
+        }
+
+        List<Fused> ordered = new ArrayList<>(fused.values());
+        ordered.sort(Comparator.comparingDouble((Fused f) -> f.score).reversed());
+
+        List<Content> contents = new ArrayList<>(Math.min(maxResults, ordered.size()));
+        for (Fused result : ordered) {
+            if (contents.size() >= maxResults) {
+                break;
+            }
+            contents.add(Content.from(result.segment));
+        }
+        log.debug("混合检索完成，向量候选: {}, 关键词候选: {}, 返回结果数: {}",
+                vectorResults.size(), keywordResults.size(), contents.size());
+        return contents;
+    }
+
+    /**
+     * 在每个BM25索引中各取前 candidates 个，按倒数排名融合为一路关键词结果
+     * 每个索引的IDF和平均长度只按各自文件统计，不同索引的原始分数不可比，因此只按排名合并；
+     * 每个文本段只出现在一个索引中，融合后即按排名交替合并，排名相同时按相对各自最高分的比例排序
+     */
+    private List<TextSegment> searchKeywords(String query) {
+        List<RankedMatch> ranked = new ArrayList<>();
+        for (Bm25Index index : keywordIndexes) {
+            List<Bm25Index.Match> matches = index.search(query, candidates);
+            if (matches.isEmpty()) {
+                continue;
+            }
+            double topScore = matches.get(0).getScore();
+            for (int rank = 0; rank < matches.size(); rank++) {
+                Bm25Index.Match match = matches.get(rank);
+                ranked.add(new RankedMatch(match.getSegment(), rank, match.getScore() / topScore));
+            }
+        }
+        ranked.sort(Comparator.comparingInt((RankedMatch r) -> r.rank)
+                .thenComparing(Comparator.comparingDouble((RankedMatch r) -> r.relativeScore).reversed()));
+
+        List<TextSegment> segments = new ArrayList<>(Math.min(candidates, ranked.size()));
+        for (RankedMatch match : ranked) {
+            if (segments.size() >= candidates) {
+                break;
+            }
+            segments.add(match.segment);
+        }
+        return segments;
+    }
+
+    private void accumulate(Map<String, Fused> fused, TextSegment segment, int rank) {
+        String key = segment.metadata().get("source_file") + "\u0000" + segment.text();
+        fused.computeIfAbsent(key, k -> new Fused(segment)).score += 1.0 / (rrfK + rank + 1);
+    }
+
+    private static class RankedMatch {
+        private final TextSegment segment;
+        private final int rank;
+        private final double relativeScore;
+
+        private RankedMatch(TextSegment segment, int rank, double relativeScore) {
+            this.segment = segment;
+            this.rank = rank;
+            this.relativeScore = relativeScore;
+        }
+    }
+
+    private static class Fused {
+        private final TextSegment segment;
+        private double score;
+
+        private Fused(TextSegment segment) {
+            this.segment = segment;
+        }
+    }
+}
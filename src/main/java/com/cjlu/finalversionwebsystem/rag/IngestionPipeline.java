@@ -0,0 +1,109 @@
+package com.cjlu.finalversionwebsystem.rag;
+
+import dev.langchain4j.data.segment.TextSegment;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * 有界的流式摄取管道
+ * 读取线程负责解密、解析和切分，把文本段放入有界队列；调用线程从队列中按批取出并嵌入、保存。
+ * 嵌入跟不上时队列写满，读取线程阻塞等待，同时处于流转中的文本段不超过队列容量加一批
+ */
+public class IngestionPipeline {
+
+    private static final TextSegment END = TextSegment.from("\u0000");
+    private static final AtomicInteger THREAD_INDEX = new AtomicInteger();
+
+    private final int maxInFlight;
+    private final int batchSize;
+
+    /**
+     * 文本段来源：解密、解析、切分文件，并按文档顺序把文本段交给回调
+     */
+    public interface SegmentSource {
+        void produce(Consumer<TextSegment> sink) throws Exception;
+    }
+
+    /**
+     * 批处理：嵌入并保存一批文本段
+     */
+    public interface BatchHandler {
+        void handle(List<TextSegment> batch) throws Exception;
+    }
+
+    /**
+     * @param maxInFlight 队列中最多等待处理的文本段数
+     * @param batchSize 每批交给处理方的文本段数
+     */
+    public IngestionPipeline(int maxInFlight, int batchSize) {
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    /**
+     * 运行管道，直到来源读完且全部批次处理完毕
+     * @param source 文本段来源，在独立的读取线程中执行
+     * @param handler 批处理，在调用线程中按文档顺序执行
+     * @throws Exception 任一阶段的异常，另一阶段随之停止
+     */
+    public void run(SegmentSource source, BatchHandler handler) throws Exception {
+        BlockingQueue<TextSegment> queue = new ArrayBlockingQueue<>(maxInFlight);
+        AtomicReference<Exception> producerError = new AtomicReference<>();
+
+        Thread reader = new Thread(() -> {
+            try {
+                source.produce(segment -> {
+                    try {
+                        queue.put(segment);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IllegalStateException("摄取已取消", e);
+                    }
+                });
+            } catch (Exception e) {
+                producerError.set(e);
+            } finally {
+                // 处理方已停止时不再等待队列空位
+                if (!Thread.currentThread().isInterrupted()) {
+                    try {
+                        queue.put(END);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        }, "ingest-reader-" + THREAD_INDEX.incrementAndGet());
+        reader.setDaemon(true);
+        reader.start();
+
+        try {
+            List<TextSegment> batch = new ArrayList<>(batchSize);
+            while (true) {
+                TextSegment segment = queue.take();
+                if (segment == END) {
+                    break;
+                }
+                batch.add(segment);
+                if (batch.size() >= batchSize) {
+                    handler.handle(batch);
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+            if (producerError.get() != null) {
+                throw producerError.get();
+            }
+            if (!batch.isEmpty()) {
+                handler.handle(batch);
+            }
+        } finally {
+            reader.interrupt();
+            queue.clear();
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package com.cjlu.finalversionwebsystem.rag;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.DocumentSplitter;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.segment.TextSegment;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 按Markdown结构切分文档
+ * 以标题层级为边界组织文本段，每段开头带上所属的标题路径；段落、表格、代码块作为整体装入，
+ * 超出token上限的表格按行拆分并在每段重复表头，代码块按行拆分并补全围栏。段与段之间不重叠。
+ * 逐行读取输入，文本段一旦完整就交给回调，不需要把整篇文档的切分结果放在内存中
+ */
+public class MarkdownSplitter implements DocumentSplitter {
+
+    private static final Pattern HEADING = Pattern.compile("^(#{1,6})\\s+(.*?)\\s*#*\\s*$");
+    private static final Pattern SENTENCE_END = Pattern.compile("(?<=[。！？；.!?;])");
+
+    private final int maxTokens;
+
+    /**
+     * @param maxTokens 每个文本段的最大token数（按 TokenEstimator 估算）
+     */
+    public MarkdownSplitter(int maxTokens) {
+        if (maxTokens <= 0) {
+            throw new IllegalArgumentException("maxTokens必须大于0");
+        }
+        this.maxTokens = maxTokens;
+    }
+
+    @Override
+    public List<TextSegment> split(Document document) {
+        List<TextSegment> segments = new ArrayList<>();
+        try {
+            split(new StringReader(document.text()), document.metadata(), segments::add);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return segments;
+    }
+
+    /**
+     * 流式切分
+     * @param reader Markdown文本
+     * @param metadata 每个文本段继承的元数据
+     * @param sink 接收文本段的回调，按文档顺序调用
+     */
+    public void split(Reader reader, Metadata metadata, Consumer<TextSegment> sink) throws IOException {
+        State state = new State(metadata, sink);
+        BufferedReader lines = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+        String line;
+        while ((line = lines.readLine()) != null) {
+            state.accept(line);
+        }
+        state.finish();
+    }
+
+    private enum BlockType {
+        NONE, PARAGRAPH, TABLE, CODE
+    }
+
+    /**
+     * 一次切分的状态：标题路径、正在组装的文本段和正在读取的块
+     */
+    private class State {
+        private final Metadata metadata;
+        private final Consumer<TextSegment> sink;
+
+        private final String[] headings = new String[6];
+        private String headingPath = "";
+        private int headingTokens;
+
+        private final StringBuilder chunk = new StringBuilder();
+        private int chunkTokens;
+
+        private BlockType blockType = BlockType.NONE;
+        private final List<String> blockLines = new ArrayList<>();
+        private int blockTokens;
+        // 表格的表头和分隔行，拆分表格时在每段重复
+        private final List<String> tableHeader = new ArrayList<>();
+        private String codeFence;
+
+        private int index;
+
+        private State(Metadata metadata, Consumer<TextSegment> sink) {
+            this.metadata = metadata;
+            this.sink = sink;
+        }
+
+        private void accept(String line) {
+            String trimmed = line.trim();
+            if (blockType == BlockType.CODE) {
+                addLine(line);
+                if (trimmed.startsWith("```") && blockLines.size() > 1) {
+                    finishBlock();
+                }
+                return;
+            }
+            if (trimmed.startsWith("```")) {
+                finishBlock();
+                blockType = BlockType.CODE;
+                codeFence = line;
+                addLine(line);
+                return;
+            }
+            Matcher heading = HEADING.matcher(trimmed);
+            if (heading.matches()) {
+                finishBlock();
+                flushChunk();
+                updateHeadings(heading.group(1).length(), heading.group(2));
+                return;
+            }
+            if (trimmed.isEmpty()) {
+                finishBlock();
+                return;
+            }
+            if (trimmed.startsWith("|")) {
+                if (blockType != BlockType.TABLE) {
+                    finishBlock();
+                    blockType = BlockType.TABLE;
+                }
+                if (tableHeader.size() < 2 && blockLines.size() == tableHeader.size()) {
+                    tableHeader.add(line);
+                }
+                addLine(line);
+                return;
+            }
+            if (blockType == BlockType.TABLE) {
+                finishBlock();
+            }
+            blockType = BlockType.PARAGRAPH;
+            addLine(line);
+        }
+
+        private void finish() {
+            finishBlock();
+            flushChunk();
+        }
+
+        private void updateHeadings(int level, String title) {
+            headings[level - 1] = title;
+            for (int i = level; i < headings.length; i++) {
+                headings[i] = null;
+            }
+            StringBuilder path = new StringBuilder();
+            for (String heading : headings) {
+                if (heading != null && !heading.isEmpty()) {
+                    path.append(path.length() > 0 ? " > " : "").append(heading);
+                }
+            }
+            headingPath = path.toString();
+            headingTokens = TokenEstimator.estimate(headingPath);
+        }
+
+        /**
+         * 正文可用的token数，至少保留一半给正文
+         */
+        private int bodyLimit() {
+            return Math.max(maxTokens / 2, maxTokens - headingTokens);
+        }
+
+        private void addLine(String line) {
+            int lineTokens = TokenEstimator.estimate(line) + 1;
+            if (blockTokens + lineTokens > bodyLimit() && blockLines.size() > headerLineCount()) {
+                emitBlockPiece();
+            }
+            if (lineTokens > bodyLimit()) {
+                // 单行超长（如没有换行的PDF文本），按句子拆开
+                emitBlockPiece();
+                flushChunk();
+                splitLongLine(line);
+                return;
+            }
+            blockLines.add(line);
+            blockTokens += lineTokens;
+        }
+
+        /**
+         * 当前块已放不下，把已读取的部分作为独立文本段输出，表格和代码块保留结构
+         */
+        private void emitBlockPiece() {
+            if (blockLines.size() <= headerLineCount()) {
+                return;
+            }
+            flushChunk();
+            StringBuilder piece = new StringBuilder();
+            for (String blockLine : blockLines) {
+                piece.append(blockLine).append('\n');
+            }
+            if (blockType == BlockType.CODE) {
+                piece.append("```\n");
+            }
+            emit(piece.toString());
+
+            blockLines.clear();
+            blockTokens = 0;
+            if (blockType == BlockType.TABLE) {
+                for (String headerLine : tableHeader) {
+                    blockLines.add(headerLine);
+                    blockTokens += TokenEstimator.estimate(headerLine) + 1;
+                }
+            } else if (blockType == BlockType.CODE) {
+                blockLines.add(codeFence);
+                blockTokens += TokenEstimator.estimate(codeFence) + 1;
+            }
+        }
+
+        private int headerLineCount() {
+            if (blockType == BlockType.TABLE) {
+                return tableHeader.size();
+            }
+            return blockType == BlockType.CODE ? 1 : 0;
+        }
+
+        private void splitLongLine(String line) {
+            StringBuilder piece = new StringBuilder();
+            int pieceTokens = 0;
+            for (String sentence : SENTENCE_END.split(line)) {
+                int sentenceTokens = TokenEstimator.estimate(sentence);
+                if (pieceTokens + sentenceTokens > bodyLimit() && piece.length() > 0) {
+                    emit(piece.toString());
+                    piece.setLength(0);
+                    pieceTokens = 0;
+                }
+                if (sentenceTokens > bodyLimit()) {
+                    // 没有句读的超长文本按字符硬切
+                    int step = Math.max(1, sentence.length() * bodyLimit() / sentenceTokens);
+                    for (int start = 0; start < sentence.length(); start += step) {
+                        emit(sentence.substring(start, Math.min(sentence.length(), start + step)));
+                    }
+                    continue;
+                }
+                piece.append(sentence);
+                pieceTokens += sentenceTokens;
+            }
+            if (piece.length() > 0) {
+                emit(piece.toString());
+            }
+        }
+
+        /**
+         * 块读取完毕，装入当前文本段，装不下时先输出当前文本段
+         */
+        private void finishBlock() {
+            if (blockLines.size() > headerLineCount()) {
+                if (chunkTokens + blockTokens > bodyLimit()) {
+                    flushChunk();
+                }
+                for (String blockLine : blockLines) {
+                    chunk.append(blockLine).append('\n');
+                }
+                chunk.append('\n');
+                chunkTokens += blockTokens;
+            }
+            blockLines.clear();
+            blockTokens = 0;
+            tableHeader.clear();
+            blockType = BlockType.NONE;
+            codeFence = null;
+        }
+
+        private void flushChunk() {
+            if (chunk.length() > 0) {
+                emit(chunk.toString());
+                chunk.setLength(0);
+                chunkTokens = 0;
+            }
+        }
+
+        private void emit(String body) {
+            String text = body.trim();
+            if (text.isEmpty()) {
+                return;
+            }
+            Metadata segmentMetadata = metadata.copy();
+            if (!headingPath.isEmpty()) {
+                text = headingPath + "\n\n" + text;
+                segmentMetadata.add("heading", headingPath);
+            }
+            segmentMetadata.add("index", String.valueOf(index++));
+            sink.accept(TextSegment.from(text, segmentMetadata));
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.cjlu.finalversionwebsystem.rag;
+
+import dev.langchain4j.rag.content.Content;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 基于词重叠的最大边际相关（MMR）重排序，只使用CPU，不调用模型
+ * 相关度由问题词覆盖率与原检索排名共同决定，每次选出 λ·相关度 − (1−λ)·与已选片段最大相似度 最高的片段，
+ * 避免重叠切分产生的近似重复片段挤占提示词
+ */
+public class MmrReranker implements Reranker {
+
+    private final double lambda;
+
+    /**
+     * @param lambda 相关度权重，取值0~1，越小越强调多样性
+     */
+    public MmrReranker(double lambda) {
+        this.lambda = lambda;
+    }
+
+    @Override
+    public List<Content> rerank(String query, List<Content> candidates, int maxResults) {
+        int count = candidates.size();
+        if (count == 0 || maxResults <= 0) {
+            return new ArrayList<>();
+        }
+
+        Set<String> queryTerms = new HashSet<>(Bm25Index.tokenize(query));
+        List<Set<String>> terms = new ArrayList<>(count);
+        double[] relevance = new double[count];
+        for (int i = 0; i < count; i++) {
+            Set<String> segmentTerms = new HashSet<>(Bm25Index.tokenize(candidates.get(i).textSegment().text()));
+            terms.add(segmentTerms);
+            int overlap = 0;
+            for (String term : queryTerms) {
+                if (segmentTerms.contains(term)) {
+                    overlap++;
+                }
+            }
+            double coverage = queryTerms.isEmpty() ? 0 : (double) overlap / queryTerms.size();
+            // 保留检索阶段的排序信息，词覆盖率相同时原排名靠前的优先
+            double rankPrior = 1.0 - (double) i / count;
+            relevance[i] = 0.5 * coverage + 0.5 * rankPrior;
+        }
+
+        List<Content> selected = new ArrayList<>(Math.min(maxResults, count));
+        List<Integer> selectedPositions = new ArrayList<>();
+        boolean[] used = new boolean[count];
+        while (selected.size() < Math.min(maxResults, count)) {
+            if (Thread.currentThread().isInterrupted()) {
+                break;
+            }
+            int best = -1;
+            double bestScore = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < count; i++) {
+                if (used[i]) {
+                    continue;
+                }
+                double maxSimilarity = 0;
+                for (int position : selectedPositions) {
+                    maxSimilarity = Math.max(maxSimilarity, jaccard(terms.get(i), terms.get(position)));
+                }
+                double score = lambda * relevance[i] - (1 - lambda) * maxSimilarity;
+                if (score > bestScore) {
+                    bestScore = score;
+                    best = i;
+                }
+            }
+            used[best] = true;
+            selectedPositions.add(best);
+            selected.add(candidates.get(best));
+        }
+        return selected;
+    }
+
+    private static double jaccard(Set<String> a, Set<String> b) {
+        if (a.isEmpty() && b.isEmpty()) {
+            return 1;
+        }
+        Set<String> smaller = a.size() <= b.size() ? a : b;
+        Set<String> larger = smaller == a ? b : a;
+        int intersection = 0;
+        for (String term : smaller) {
+            if (larger.contains(term)) {
+                intersection++;
+            }
+        }
+        return (double) intersection / (a.size() + b.size() - intersection);
+    }
+}
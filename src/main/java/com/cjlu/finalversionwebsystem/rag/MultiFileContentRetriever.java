@@ -0,0 +1,113 @@
+package com.cjlu.finalversionwebsystem.rag;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.query.Query;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * 多文件联合检索器
+ * 复用每个文件已构建好的向量存储：查询只嵌入一次，分别在各文件中检索，
+ * 再用按分数排序的小顶堆合并出全局前 maxResults 个结果
+ */
+@Slf4j
+public class MultiFileContentRetriever implements ContentRetriever {
+
+    private final EmbeddingModel embeddingModel;
+    private final Map<String, EmbeddingStore<TextSegment>> stores;
+    private final int maxResults;
+    private final double minScore;
+
+    /**
+     * @param embeddingModel 嵌入模型，仅用于嵌入查询
+     * @param stores 文件名 -> 该文件的向量存储
+     * @param maxResults 合并后返回的最大结果数
+     * @param minScore 最低相关度分数
+     */
+    public MultiFileContentRetriever(EmbeddingModel embeddingModel,
+                                     Map<String, EmbeddingStore<TextSegment>> stores,
+                                     int maxResults,
+                                     double minScore) {
+        this.embeddingModel = embeddingModel;
+        this.stores = Collections.unmodifiableMap(new LinkedHashMap<>(stores));
+        this.maxResults = maxResults;
+        this.minScore = minScore;
+    }
+
+    @Override
+    public List<Content> retrieve(Query query) {
+        Embedding queryEmbedding = embeddingModel.embed(query.text()).content();
+
+        // 小顶堆，堆顶为当前保留结果中分数最低的
+        PriorityQueue<FileMatch> topMatches =
+                new PriorityQueue<>(maxResults + 1, Comparator.comparingDouble(FileMatch::score));
+
+        for (Map.Entry<String, EmbeddingStore<TextSegment>> entry : stores.entrySet()) {
+            // 每个文件最多贡献 maxResults 个候选，足以覆盖全局前 maxResults 个
+            List<EmbeddingMatch<TextSegment>> matches = entry.getValue().findRelevant(queryEmbedding, maxResults, minScore);
+            for (EmbeddingMatch<TextSegment> match : matches) {
+                if (topMatches.size() < maxResults) {
+                    topMatches.offer(new FileMatch(entry.getKey(), match));
+                } else if (match.score() > topMatches.peek().score()) {
+                    topMatches.poll();
+                    topMatches.offer(new FileMatch(entry.getKey(), match));
+                }
+            }
+        }
+
+        List<FileMatch> ordered = new ArrayList<>(topMatches);
+        ordered.sort(Comparator.comparingDouble(FileMatch::score).reversed());
+
+        List<Content> contents = new ArrayList<>(ordered.size());
+        for (FileMatch fileMatch : ordered) {
+            contents.add(Content.from(fileMatch.segment()));
+        }
+
+        log.debug("多文件检索完成，文件数: {}, 返回结果数: {}", stores.size(), contents.size());
+        return contents;
+    }
+
+    /**
+     * 带来源文件的检索结果
+     */
+    private static class FileMatch {
+        private final String fileName;
+        private final EmbeddingMatch<TextSegment> match;
+
+        private FileMatch(String fileName, EmbeddingMatch<TextSegment> match) {
+            this.fileName = fileName;
+            this.match = match;
+        }
+
+        private double score() {
+            return match.score();
+        }
+
+        /**
+         * 索引按内容寻址，可能由同内容的其他文件构建，返回前按实际文件名标注来源
+         */
+        private TextSegment segment() {
+            TextSegment segment = match.embedded();
+            if (fileName.equals(segment.metadata().get("source_file"))) {
+                return segment;
+            }
+            Metadata metadata = segment.metadata().copy();
+            metadata.add("source_file", fileName);
+            return TextSegment.from(segment.text(), metadata);
+        }
+    }
+}
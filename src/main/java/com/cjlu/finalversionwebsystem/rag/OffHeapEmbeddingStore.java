@@ -0,0 +1,324 @@
+package com.cjlu.finalversionwebsystem.rag;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 堆外向量存储
+ * 所有向量归一化后按行连续存放在一块直接内存（float矩阵）中，检索时直接在平坦缓冲区上做点积，
+ * 用有界小顶堆取前 maxResults 个结果，避免 InMemoryEmbeddingStore 中每个向量一个对象带来的GC压力
+ *
+ * 归一化后点积即余弦相似度，返回的分数与 InMemoryEmbeddingStore 一致：(cos + 1) / 2
+ */
+public class OffHeapEmbeddingStore implements EmbeddingStore<TextSegment> {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final List<String> ids = new ArrayList<>();
+    private final List<TextSegment> segments = new ArrayList<>();
+
+    private FloatBuffer matrix;
+    private int dimension;
+    private int capacity;
+    private int count;
+
+    public OffHeapEmbeddingStore() {
+    }
+
+    /**
+     * 预先分配容量，批量导入已知数量的向量时避免扩容拷贝
+     */
+    public OffHeapEmbeddingStore(int dimension, int initialCapacity) {
+        this.dimension = dimension;
+        if (dimension > 0) {
+            allocate(Math.max(initialCapacity, 1));
+        }
+    }
+
+    /**
+     * 基于索引构建存储
+     */
+    public static OffHeapEmbeddingStore from(List<Embedding> embeddings, List<TextSegment> segments) {
+        int dimension = embeddings.isEmpty() ? 0 : embeddings.get(0).dimension();
+        OffHeapEmbeddingStore store = new OffHeapEmbeddingStore(dimension, embeddings.size());
+        store.addAll(embeddings, segments);
+        return store;
+    }
+
+    @Override
+    public String add(Embedding embedding) {
+        String id = UUID.randomUUID().toString();
+        add(id, embedding);
+        return id;
+    }
+
+    @Override
+    public void add(String id, Embedding embedding) {
+        lock.writeLock().lock();
+        try {
+            append(id, embedding, null);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public String add(Embedding embedding, TextSegment textSegment) {
+        String id = UUID.randomUUID().toString();
+        lock.writeLock().lock();
+        try {
+            append(id, embedding, textSegment);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return id;
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings) {
+        return addAll(embeddings, null);
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings, List<TextSegment> textSegments) {
+        if (textSegments != null && textSegments.size() != embeddings.size()) {
+            throw new IllegalArgumentException("文本段数量与向量数量不一致: " + textSegments.size() + " != " + embeddings.size());
+        }
+        List<String> newIds = new ArrayList<>(embeddings.size());
+        lock.writeLock().lock();
+        try {
+            ensureCapacity(count + embeddings.size(), embeddings.isEmpty() ? 0 : embeddings.get(0).dimension());
+            for (int i = 0; i < embeddings.size(); i++) {
+                String id = UUID.randomUUID().toString();
+                append(id, embeddings.get(i), textSegments == null ? null : textSegments.get(i));
+                newIds.add(id);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return newIds;
+    }
+
+    @Override
+    public List<EmbeddingMatch<TextSegment>> findRelevant(Embedding referenceEmbedding, int maxResults, double minScore) {
+        if (maxResults <= 0) {
+            return Collections.emptyList();
+        }
+        lock.readLock().lock();
+        try {
+            if (count == 0) {
+                return Collections.emptyList();
+            }
+            if (referenceEmbedding.dimension() != dimension) {
+                throw new IllegalArgumentException("查询向量维度不一致: " + referenceEmbedding.dimension() + " != " + dimension);
+            }
+
+            float[] query = normalize(referenceEmbedding.vector());
+            // 把相关度下限换算成余弦相似度下限，循环内只比较原始点积
+            double minCosine = 2 * minScore - 1;
+
+            TopK topK = new TopK(Math.min(maxResults, count));
+            for (int row = 0; row < count; row++) {
+                float cosine = dot(query, row * dimension);
+                if (cosine >= minCosine) {
+                    topK.offer(row, cosine);
+                }
+            }
+
+            List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>(topK.size);
+            while (topK.size > 0) {
+                int row = topK.rows[0];
+                double score = (topK.scores[0] + 1) / 2;
+                matches.add(new EmbeddingMatch<>(score, ids.get(row), Embedding.from(readRow(row)), segments.get(row)));
+                topK.poll();
+            }
+            Collections.reverse(matches);
+            return matches;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return count;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 点积，手动展开4路以便JIT生成向量化指令
+     */
+    private float dot(float[] query, int offset) {
+        FloatBuffer m = matrix;
+        float s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int i = 0;
+        int upper = dimension & ~3;
+        for (; i < upper; i += 4) {
+            s0 += query[i] * m.get(offset + i);
+            s1 += query[i + 1] * m.get(offset + i + 1);
+            s2 += query[i + 2] * m.get(offset + i + 2);
+            s3 += query[i + 3] * m.get(offset + i + 3);
+        }
+        for (; i < dimension; i++) {
+            s0 += query[i] * m.get(offset + i);
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    /**
+     * 追加一行（调用方需持有写锁）
+     */
+    private void append(String id, Embedding embedding, TextSegment textSegment) {
+        ensureCapacity(count + 1, embedding.dimension());
+        if (embedding.dimension() != dimension) {
+            throw new IllegalArgumentException("向量维度不一致: " + embedding.dimension() + " != " + dimension);
+        }
+        float[] normalized = normalize(embedding.vector());
+        int offset = count * dimension;
+        for (int i = 0; i < dimension; i++) {
+            matrix.put(offset + i, normalized[i]);
+        }
+        ids.add(id);
+        segments.add(textSegment);
+        count++;
+    }
+
+    /**
+     * 保证可容纳 required 行，容量不足时按倍数扩容并拷贝（调用方需持有写锁）
+     */
+    private void ensureCapacity(int required, int vectorDimension) {
+        if (dimension == 0) {
+            dimension = vectorDimension;
+        }
+        if (dimension == 0 || (matrix != null && required <= capacity)) {
+            return;
+        }
+        int newCapacity = Math.max(Math.max(capacity * 2, INITIAL_CAPACITY), required);
+        FloatBuffer old = matrix;
+        allocate(newCapacity);
+        if (old != null) {
+            for (int i = 0; i < count * dimension; i++) {
+                matrix.put(i, old.get(i));
+            }
+        }
+    }
+
+    private void allocate(int rows) {
+        long bytes = (long) rows * dimension * Float.BYTES;
+        if (bytes > Integer.MAX_VALUE) {
+            throw new IllegalStateException("向量存储超过单块直接内存上限: " + bytes + " 字节");
+        }
+        matrix = ByteBuffer.allocateDirect((int) bytes).order(ByteOrder.nativeOrder()).asFloatBuffer();
+        capacity = rows;
+    }
+
+    private float[] readRow(int row) {
+        float[] vector = new float[dimension];
+        int offset = row * dimension;
+        for (int i = 0; i < dimension; i++) {
+            vector[i] = matrix.get(offset + i);
+        }
+        return vector;
+    }
+
+    private static float[] normalize(float[] vector) {
+        double sum = 0;
+        for (float value : vector) {
+            sum += value * value;
+        }
+        float[] normalized = new float[vector.length];
+        if (sum == 0) {
+            return normalized;
+        }
+        float inverse = (float) (1 / Math.sqrt(sum));
+        for (int i = 0; i < vector.length; i++) {
+            normalized[i] = vector[i] * inverse;
+        }
+        return normalized;
+    }
+
+    /**
+     * 基于原始数组的有界小顶堆，堆顶为当前保留结果中的最低分，检索过程不产生对象分配
+     */
+    private static class TopK {
+        private final int[] rows;
+        private final float[] scores;
+        private int size;
+
+        private TopK(int limit) {
+            this.rows = new int[limit];
+            this.scores = new float[limit];
+        }
+
+        private void offer(int row, float score) {
+            if (size < rows.length) {
+                rows[size] = row;
+                scores[size] = score;
+                siftUp(size++);
+            } else if (score > scores[0]) {
+                rows[0] = row;
+                scores[0] = score;
+                siftDown(0);
+            }
+        }
+
+        private void poll() {
+            size--;
+            rows[0] = rows[size];
+            scores[0] = scores[size];
+            siftDown(0);
+        }
+
+        private void siftUp(int i) {
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (scores[parent] <= scores[i]) {
+                    return;
+                }
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        private void siftDown(int i) {
+            while (true) {
+                int left = 2 * i + 1;
+                if (left >= size) {
+                    return;
+                }
+                int smallest = left + 1 < size && scores[left + 1] < scores[left] ? left + 1 : left;
+                if (scores[i] <= scores[smallest]) {
+                    return;
+                }
+                swap(i, smallest);
+                i = smallest;
+            }
+        }
+
+        private void swap(int a, int b) {
+            int row = rows[a];
+            rows[a] = rows[b];
+            rows[b] = row;
+            float score = scores[a];
+            scores[a] = scores[b];
+            scores[b] = score;
+        }
+    }
+}
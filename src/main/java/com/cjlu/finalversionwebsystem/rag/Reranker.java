@@ -0,0 +1,22 @@
+package com.cjlu.finalversionwebsystem.rag;
+
+import dev.langchain4j.rag.content.Content;
+
+import java.util.List;
+
+/**
+ * 检索结果重排序
+ * 位于检索与提示词组装之间，从候选片段中挑出更少、更相关的片段；
+ * 实现需要响应线程中断，超出延迟预算时由 RerankingStage 中断并退回检索顺序
+ */
+public interface Reranker {
+
+    /**
+     * 对候选片段重新排序
+     * @param query 用户问题
+     * @param candidates 检索得到的候选片段，按检索相关度从高到低排列
+     * @param maxResults 最多保留的片段数
+     * @return 重排序后的片段
+     */
+    List<Content> rerank(String query, List<Content> candidates, int maxResults);
+}
@@ -0,0 +1,77 @@
+package com.cjlu.finalversionwebsystem.rag;
+
+import dev.langchain4j.rag.content.Content;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 带延迟预算的重排序阶段
+ * 重排序在独立线程中执行，超过每次请求的预算或出错时中断它，直接按检索顺序截取，
+ * 保证重排序不会拖慢回答
+ */
+@Slf4j
+public class RerankingStage {
+
+    private final Reranker reranker;
+    private final long budgetMillis;
+    private final ExecutorService workers;
+
+    /**
+     * @param reranker 重排序实现
+     * @param budgetMillis 每次请求的延迟预算（毫秒）
+     * @param concurrency 同时执行重排序的线程数
+     */
+    public RerankingStage(Reranker reranker, long budgetMillis, int concurrency) {
+        this.reranker = reranker;
+        this.budgetMillis = budgetMillis;
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(Math.max(1, concurrency), runnable -> {
+            Thread thread = new Thread(runnable, "rerank-worker-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 重排序并截取
+     * @param query 用户问题
+     * @param candidates 检索得到的候选片段
+     * @param maxResults 最多保留的片段数
+     * @return 重排序后的片段，超时或出错时为检索顺序的前 maxResults 个
+     */
+    public List<Content> rerank(String query, List<Content> candidates, int maxResults) {
+        if (candidates.size() <= 1) {
+            return candidates;
+        }
+        long startTime = System.nanoTime();
+        Future<List<Content>> future = workers.submit(() -> reranker.rerank(query, candidates, maxResults));
+        try {
+            List<Content> reranked = future.get(budgetMillis, TimeUnit.MILLISECONDS);
+            log.debug("重排序完成，候选 {} 个，保留 {} 个，耗时: {}ms",
+                    candidates.size(), reranked.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+            return reranked;
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            log.warn("重排序超过 {}ms 预算，按检索顺序截取", budgetMillis);
+        } catch (ExecutionException e) {
+            log.warn("重排序失败，按检索顺序截取: {}", e.getCause().getMessage());
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+        }
+        return new ArrayList<>(candidates.subList(0, Math.min(maxResults, candidates.size())));
+    }
+
+    public void shutdown() {
+        workers.shutdownNow();
+    }
+}
@@ -0,0 +1,164 @@
+package com.cjlu.finalversionwebsystem.rag;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 文本段级别的索引差异
+ * 文本段以 "文本摘要-出现序号" 作为ID，新版本中ID已存在于旧索引的文本段直接复用旧向量，
+ * 只有新增或修改的文本段需要嵌入，旧索引中不再出现的文本段记为删除
+ */
+public class SegmentDiff {
+
+    private final List<TextSegment> segments;
+    private final List<String> ids;
+    private final Embedding[] embeddings;
+    private final List<Integer> changedPositions = new ArrayList<>();
+    private final List<String> removedIds = new ArrayList<>();
+
+    private SegmentDiff(List<TextSegment> segments) {
+        this.segments = segments;
+        this.ids = segmentIds(segments);
+        this.embeddings = new Embedding[segments.size()];
+    }
+
+    /**
+     * 计算新文本段相对旧索引的差异
+     * @param previous 旧索引，为null时全部文本段都需要嵌入
+     * @param segments 新版本的文本段
+     * @return 差异
+     */
+    public static SegmentDiff compute(SegmentIndex previous, List<TextSegment> segments) {
+        SegmentDiff diff = new SegmentDiff(segments);
+        Map<String, Embedding> previousEmbeddings = previous == null ? new HashMap<>() : embeddingsById(previous);
+
+        Set<String> currentIds = new HashSet<>(diff.ids);
+        for (int i = 0; i < segments.size(); i++) {
+            Embedding embedding = previousEmbeddings.get(diff.ids.get(i));
+            if (embedding != null) {
+                diff.embeddings[i] = embedding;
+            } else {
+                diff.changedPositions.add(i);
+            }
+        }
+        for (String previousId : previousEmbeddings.keySet()) {
+            if (!currentIds.contains(previousId)) {
+                diff.removedIds.add(previousId);
+            }
+        }
+        return diff;
+    }
+
+    /**
+     * 计算文本段ID，同一文件中重复出现的文本用序号区分
+     */
+    public static List<String> segmentIds(List<TextSegment> segments) {
+        List<String> ids = new ArrayList<>(segments.size());
+        IdSequence sequence = new IdSequence();
+        for (TextSegment segment : segments) {
+            ids.add(sequence.next(segment));
+        }
+        return ids;
+    }
+
+    /**
+     * 索引中各文本段ID对应的向量
+     */
+    public static Map<String, Embedding> embeddingsById(SegmentIndex index) {
+        List<String> ids = segmentIds(index.getSegments());
+        Map<String, Embedding> embeddings = new HashMap<>(ids.size() * 2);
+        for (int i = 0; i < ids.size(); i++) {
+            embeddings.put(ids.get(i), index.getEmbeddings().get(i));
+        }
+        return embeddings;
+    }
+
+    /**
+     * 需要重新嵌入的文本段（新增或修改）
+     */
+    public List<TextSegment> getChangedSegments() {
+        List<TextSegment> changed = new ArrayList<>(changedPositions.size());
+        for (int position : changedPositions) {
+            changed.add(segments.get(position));
+        }
+        return changed;
+    }
+
+    /**
+     * 需要重新嵌入的文本段ID，与 getChangedSegments 一一对应
+     */
+    public List<String> getChangedIds() {
+        List<String> changed = new ArrayList<>(changedPositions.size());
+        for (int position : changedPositions) {
+            changed.add(ids.get(position));
+        }
+        return changed;
+    }
+
+    /**
+     * 旧索引中已不存在的文本段ID
+     */
+    public List<String> getRemovedIds() {
+        return Collections.unmodifiableList(removedIds);
+    }
+
+    public int getReusedCount() {
+        return segments.size() - changedPositions.size();
+    }
+
+    /**
+     * 用新嵌入的向量补全差异，生成新版本的索引
+     * @param key 新索引的键
+     * @param changedEmbeddings 与 getChangedSegments 一一对应的向量
+     * @return 新索引
+     */
+    public SegmentIndex toIndex(String key, List<Embedding> changedEmbeddings) {
+        if (changedEmbeddings.size() != changedPositions.size()) {
+            throw new IllegalArgumentException("向量数量与待嵌入文本段数量不一致: " + changedEmbeddings.size() + " != " + changedPositions.size());
+        }
+        List<Embedding> all = new ArrayList<>(segments.size());
+        Collections.addAll(all, embeddings);
+        for (int i = 0; i < changedPositions.size(); i++) {
+            all.set(changedPositions.get(i), changedEmbeddings.get(i));
+        }
+        return new SegmentIndex(key, segments, all);
+    }
+
+    /**
+     * 按文档顺序逐个生成文本段ID，与 segmentIds 的结果一致，用于流式切分时不保留全部文本段
+     */
+    public static class IdSequence {
+        private final Map<String, Integer> occurrences = new HashMap<>();
+        private final MessageDigest digest = sha256();
+
+        public String next(TextSegment segment) {
+            byte[] hash = digest.digest(segment.text().getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(40);
+            for (int i = 0; i < 16; i++) {
+                hex.append(Character.forDigit((hash[i] >> 4) & 0xF, 16)).append(Character.forDigit(hash[i] & 0xF, 16));
+            }
+            String textHash = hex.toString();
+            int occurrence = occurrences.merge(textHash, 1, Integer::sum) - 1;
+            return textHash + "-" + occurrence;
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
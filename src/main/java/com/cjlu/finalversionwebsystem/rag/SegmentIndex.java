@@ -0,0 +1,195 @@
+package com.cjlu.finalversionwebsystem.rag;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 文件分段向量索引
+ * 保存某个文件按固定切分参数得到的全部文本段及其向量，可持久化到磁盘并在重启后复用
+ *
+ * 磁盘格式：魔数、版本、段数、维度各4字节，随后是连续存放的向量矩阵，最后是文本段及元数据
+ */
+public class SegmentIndex {
+
+    private static final int MAGIC = 0x4B494458; // "KIDX"
+    private static final int VERSION = 1;
+
+    /**
+     * 向量矩阵在索引文件中的起始偏移
+     */
+    public static final int VECTOR_OFFSET = 16;
+
+    private final String key;
+    private final List<TextSegment> segments;
+    private final List<Embedding> embeddings;
+
+    public SegmentIndex(String key, List<TextSegment> segments, List<Embedding> embeddings) {
+        if (segments.size() != embeddings.size()) {
+            throw new IllegalArgumentException("文本段数量与向量数量不一致: " + segments.size() + " != " + embeddings.size());
+        }
+        this.key = key;
+        this.segments = Collections.unmodifiableList(new ArrayList<>(segments));
+        this.embeddings = Collections.unmodifiableList(new ArrayList<>(embeddings));
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public List<TextSegment> getSegments() {
+        return segments;
+    }
+
+    public List<Embedding> getEmbeddings() {
+        return embeddings;
+    }
+
+    public int size() {
+        return segments.size();
+    }
+
+    public int dimension() {
+        return embeddings.isEmpty() ? 0 : embeddings.get(0).dimension();
+    }
+
+    /**
+     * 基于索引内容构建堆外向量存储
+     * 索引按内容寻址，可能由同内容的其他文件构建，因此按实际文件名重新标注来源
+     * @param sourceFile 文件名，写入文本段的 source_file 元数据
+     */
+    public EmbeddingStore<TextSegment> toEmbeddingStore(String sourceFile) {
+        return OffHeapEmbeddingStore.from(embeddings, withSourceFile(sourceFile));
+    }
+
+    /**
+     * 获取按实际文件名标注来源的文本段
+     */
+    public List<TextSegment> withSourceFile(String sourceFile) {
+        List<TextSegment> tagged = new ArrayList<>(segments.size());
+        for (TextSegment segment : segments) {
+            if (sourceFile.equals(segment.metadata().get("source_file"))) {
+                tagged.add(segment);
+            } else {
+                Metadata metadata = segment.metadata().copy();
+                metadata.add("source_file", sourceFile);
+                tagged.add(TextSegment.from(segment.text(), metadata));
+            }
+        }
+        return tagged;
+    }
+
+    /**
+     * 将索引写入文件（先写临时文件再原子替换，避免并发读到半个文件）
+     */
+    public void writeTo(Path file) throws IOException {
+        Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+        int dimension = dimension();
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(segments.size());
+            out.writeInt(dimension);
+
+            for (Embedding embedding : embeddings) {
+                float[] vector = embedding.vector();
+                if (vector.length != dimension) {
+                    throw new IOException("向量维度不一致: " + vector.length + " != " + dimension);
+                }
+                for (float value : vector) {
+                    out.writeFloat(value);
+                }
+            }
+
+            for (TextSegment segment : segments) {
+                writeSegment(out, segment);
+            }
+        }
+
+        Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * 从文件读取索引
+     */
+    public static SegmentIndex readFrom(String key, Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("不是有效的索引文件: " + file);
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("不支持的索引版本: " + version);
+            }
+            int count = in.readInt();
+            int dimension = in.readInt();
+
+            List<Embedding> embeddings = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                float[] vector = new float[dimension];
+                for (int j = 0; j < dimension; j++) {
+                    vector[j] = in.readFloat();
+                }
+                embeddings.add(Embedding.from(vector));
+            }
+
+            List<TextSegment> segments = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                segments.add(readSegment(in));
+            }
+
+            return new SegmentIndex(key, segments, embeddings);
+        }
+    }
+
+    /**
+     * 写入文本段：长度前缀的UTF-8文本，随后是元数据键值对
+     */
+    static void writeSegment(DataOutputStream out, TextSegment segment) throws IOException {
+        writeString(out, segment.text());
+        Map<String, String> metadata = segment.metadata() != null ? segment.metadata().asMap() : Collections.emptyMap();
+        out.writeInt(metadata.size());
+        for (Map.Entry<String, String> entry : metadata.entrySet()) {
+            writeString(out, entry.getKey());
+            writeString(out, entry.getValue());
+        }
+    }
+
+    static TextSegment readSegment(DataInputStream in) throws IOException {
+        String text = readString(in);
+        int metadataSize = in.readInt();
+        Metadata metadata = new Metadata();
+        for (int i = 0; i < metadataSize; i++) {
+            metadata.add(readString(in), readString(in));
+        }
+        return TextSegment.from(text, metadata);
+    }
+
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = (value == null ? "" : value).getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,184 @@
+package com.cjlu.finalversionwebsystem.rag;
+
+import dev.langchain4j.data.embedding.Embedding;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 语义回答缓存
+ * 新问题的向量与某个已缓存问题足够相似，且两者检索的知识库版本一致时，直接返回缓存的回答；
+ * 知识库内容变化后版本不同，旧回答自然不再命中
+ */
+public class SemanticAnswerCache {
+
+    private final int maxEntries;
+    private final double minSimilarity;
+    private final long ttlMillis;
+
+    // accessOrder=true，超出容量时淘汰最久未命中的回答
+    private final LinkedHashMap<Long, CachedAnswer> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final ReentrantLock lock = new ReentrantLock();
+    private long nextId;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param maxEntries 最多缓存的回答数
+     * @param minSimilarity 命中所需的最低余弦相似度
+     * @param ttl 回答的有效期
+     * @param unit 时间单位
+     */
+    public SemanticAnswerCache(int maxEntries, double minSimilarity, long ttl, TimeUnit unit) {
+        this.maxEntries = maxEntries;
+        this.minSimilarity = minSimilarity;
+        this.ttlMillis = unit.toMillis(ttl);
+    }
+
+    /**
+     * 查找语义相近且知识库版本相同的缓存回答
+     * @param question 问题向量
+     * @param version 问题检索的知识库版本
+     * @return 缓存的回答，未命中时返回null
+     */
+    public CachedAnswer find(Embedding question, String version) {
+        float[] vector = normalize(question.vector());
+        long now = System.currentTimeMillis();
+        lock.lock();
+        try {
+            Long bestId = null;
+            double bestSimilarity = minSimilarity;
+            Iterator<Map.Entry<Long, CachedAnswer>> iterator = entries.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<Long, CachedAnswer> entry = iterator.next();
+                CachedAnswer answer = entry.getValue();
+                if (now - answer.createdAt > ttlMillis) {
+                    iterator.remove();
+                    continue;
+                }
+                if (!answer.version.equals(version) || answer.vector.length != vector.length) {
+                    continue;
+                }
+                double similarity = dot(answer.vector, vector);
+                if (similarity >= bestSimilarity) {
+                    bestSimilarity = similarity;
+                    bestId = entry.getKey();
+                }
+            }
+            if (bestId == null) {
+                misses.incrementAndGet();
+                return null;
+            }
+            hits.incrementAndGet();
+            // get 会把命中的回答移到最近访问的位置
+            return entries.get(bestId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 缓存回答
+     * @param question 问题向量
+     * @param version 问题检索的知识库版本
+     * @param answer 完整回答
+     * @param references 回答后附加的参考文件信息
+     */
+    public void put(Embedding question, String version, String answer, String references) {
+        CachedAnswer cached = new CachedAnswer(normalize(question.vector()), version, answer, references, System.currentTimeMillis());
+        lock.lock();
+        try {
+            entries.put(nextId++, cached);
+            Iterator<Long> iterator = entries.keySet().iterator();
+            while (entries.size() > maxEntries && iterator.hasNext()) {
+                iterator.next();
+                iterator.remove();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void clear() {
+        lock.lock();
+        try {
+            entries.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 缓存统计信息
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        lock.lock();
+        try {
+            stats.put("entries", entries.size());
+        } finally {
+            lock.unlock();
+        }
+        stats.put("maxEntries", maxEntries);
+        stats.put("minSimilarity", minSimilarity);
+        stats.put("hits", hits.get());
+        stats.put("misses", misses.get());
+        return stats;
+    }
+
+    private static float[] normalize(float[] vector) {
+        double norm = 0;
+        for (float value : vector) {
+            norm += value * value;
+        }
+        norm = Math.sqrt(norm);
+        float[] normalized = new float[vector.length];
+        if (norm == 0) {
+            return normalized;
+        }
+        for (int i = 0; i < vector.length; i++) {
+            normalized[i] = (float) (vector[i] / norm);
+        }
+        return normalized;
+    }
+
+    private static double dot(float[] a, float[] b) {
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    /**
+     * 缓存的回答
+     */
+    public static class CachedAnswer {
+        private final float[] vector;
+        private final String version;
+        private final String answer;
+        private final String references;
+        private final long createdAt;
+
+        private CachedAnswer(float[] vector, String version, String answer, String references, long createdAt) {
+            this.vector = vector;
+            this.version = version;
+            this.answer = answer;
+            this.references = references;
+            this.createdAt = createdAt;
+        }
+
+        public String getAnswer() {
+            return answer;
+        }
+
+        public String getReferences() {
+            return references;
+        }
+    }
+}
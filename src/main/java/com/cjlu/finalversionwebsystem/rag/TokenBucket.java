@@ -0,0 +1,56 @@
+package com.cjlu.finalversionwebsystem.rag;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 令牌桶限流器
+ * 令牌按固定速率补充，桶满时不再累积；请求的令牌不足时阻塞等待
+ */
+public class TokenBucket {
+
+    private final double capacity;
+    private final double refillPerNano;
+    private double available;
+    private long lastRefill;
+
+    /**
+     * @param capacity 桶容量，即允许的最大突发量
+     * @param refillPerSecond 每秒补充的令牌数
+     */
+    public TokenBucket(double capacity, double refillPerSecond) {
+        if (capacity <= 0 || refillPerSecond <= 0) {
+            throw new IllegalArgumentException("令牌桶容量和补充速率必须大于0");
+        }
+        this.capacity = capacity;
+        this.refillPerNano = refillPerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.available = capacity;
+        this.lastRefill = System.nanoTime();
+    }
+
+    /**
+     * 获取令牌，不足时阻塞；超过桶容量的请求按桶容量计，避免永远等待
+     * @param permits 需要的令牌数
+     * @throws InterruptedException 等待时被中断
+     */
+    public void acquire(double permits) throws InterruptedException {
+        double needed = Math.min(permits, capacity);
+        while (true) {
+            long waitNanos;
+            synchronized (this) {
+                refill();
+                if (available >= needed) {
+                    available -= needed;
+                    return;
+                }
+                waitNanos = (long) Math.ceil((needed - available) / refillPerNano);
+            }
+            TimeUnit.NANOSECONDS.sleep(Math.max(waitNanos, TimeUnit.MILLISECONDS.toNanos(1)));
+        }
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        available = Math.min(capacity, available + (now - lastRefill) * refillPerNano);
+        lastRefill = now;
+    }
+}
@@ -0,0 +1,55 @@
+package com.cjlu.finalversionwebsystem.rag;
+
+/**
+ * Token数估算工具
+ * 不依赖具体模型的分词器，按常见BPE分词器的经验比例估算：
+ * 中日韩字符每个约1个token，其他连续字符约每4个字符1个token
+ */
+public final class TokenEstimator {
+
+    private static final int CHARS_PER_TOKEN = 4;
+
+    private TokenEstimator() {
+    }
+
+    /**
+     * 估算文本的token数
+     * @param text 文本
+     * @return 估算的token数
+     */
+    public static int estimate(CharSequence text) {
+        if (text == null || text.length() == 0) {
+            return 0;
+        }
+        int tokens = 0;
+        int run = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (isCjk(c)) {
+                tokens += ceilDiv(run) + 1;
+                run = 0;
+            } else if (Character.isWhitespace(c)) {
+                tokens += ceilDiv(run);
+                run = 0;
+            } else {
+                run++;
+            }
+        }
+        return tokens + ceilDiv(run);
+    }
+
+    private static int ceilDiv(int run) {
+        return (run + CHARS_PER_TOKEN - 1) / CHARS_PER_TOKEN;
+    }
+
+    private static boolean isCjk(char c) {
+        Character.UnicodeBlock block = Character.UnicodeBlock.of(c);
+        return block == Character.UnicodeBlock.CJK_UNIFIED_IDEOGRAPHS
+                || block == Character.UnicodeBlock.CJK_UNIFIED_IDEOGRAPHS_EXTENSION_A
+                || block == Character.UnicodeBlock.CJK_SYMBOLS_AND_PUNCTUATION
+                || block == Character.UnicodeBlock.HALFWIDTH_AND_FULLWIDTH_FORMS
+                || block == Character.UnicodeBlock.HIRAGANA
+                || block == Character.UnicodeBlock.KATAKANA
+                || block == Character.UnicodeBlock.HANGUL_SYLLABLES;
+    }
+}
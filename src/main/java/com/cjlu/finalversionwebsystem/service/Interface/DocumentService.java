@@ -1,5 +1,6 @@
 package com.cjlu.finalversionwebsystem.service.Interface;
 
+import com.cjlu.finalversionwebsystem.rag.SegmentIndex;
 import dev.langchain4j.data.document.Document;
 import dev.langchain4j.rag.content.retriever.ContentRetriever;
 
@@ -19,6 +20,30 @@ public interface DocumentService {
      */
     ContentRetriever createRetrieverForFile(String fileName) throws Exception;
 
+    /**
+     * 根据文件名加载文档并创建检索器
+     * @param fileName 文件名
+     * @param maxResults 最多返回的片段数
+     * @return 内容检索器
+     * @throws Exception 异常
+     */
+    ContentRetriever createRetrieverForFile(String fileName, int maxResults) throws Exception;
+
+    /**
+     * 获取文件的向量索引，内容未变化时复用已持久化的索引，否则重新切分并嵌入
+     * @param fileName 文件名
+     * @return 向量索引
+     * @throws Exception 异常
+     */
+    SegmentIndex getOrBuildIndex(String fileName) throws Exception;
+
+    /**
+     * 文件保存后重新构建向量索引并预热检索缓存，由后台摄取任务调用
+     * @param fileName 文件名
+     * @throws Exception 异常
+     */
+    void reindexFile(String fileName) throws Exception;
+
     /**
      * 加载指定文件的文档
      * @param fileName 文件名
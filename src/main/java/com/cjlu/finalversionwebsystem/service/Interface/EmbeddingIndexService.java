@@ -0,0 +1,68 @@
+package com.cjlu.finalversionwebsystem.service.Interface;
+
+import com.cjlu.finalversionwebsystem.rag.HnswEmbeddingStore;
+import com.cjlu.finalversionwebsystem.rag.SegmentIndex;
+
+import java.io.IOException;
+
+/**
+ * 向量索引持久化服务接口
+ * 按文件内容摘要和切分参数对分段向量索引进行寻址，构建一次后跨请求、跨重启复用
+ */
+public interface EmbeddingIndexService {
+
+    /**
+     * 计算文件当前内容对应的索引键
+     * @param fileName 文件名
+     * @param splitterSignature 切分参数签名，参数不同的索引互不复用
+     * @return 索引键
+     * @throws IOException IO异常
+     */
+    String resolveIndexKey(String fileName, String splitterSignature) throws IOException;
+
+    /**
+     * 查询文件最近一次登记的索引键，不检查文件内容是否已变化
+     * @param fileName 文件名
+     * @param splitterSignature 切分参数签名
+     * @return 索引键，未登记时返回null
+     */
+    String findRegisteredIndexKey(String fileName, String splitterSignature);
+
+    /**
+     * 加载已持久化的索引
+     * @param indexKey 索引键
+     * @return 索引，不存在时返回null
+     */
+    SegmentIndex loadIndex(String indexKey);
+
+    /**
+     * 持久化索引并记录文件与索引的对应关系
+     * @param fileName 文件名
+     * @param splitterSignature 切分参数签名
+     * @param index 索引
+     * @throws IOException IO异常
+     */
+    void saveIndex(String fileName, String splitterSignature, SegmentIndex index) throws IOException;
+
+    /**
+     * 加载与索引对应的HNSW图
+     * @param indexKey 索引键
+     * @param efSearch 检索时的候选集大小
+     * @return HNSW存储，不存在时返回null
+     */
+    HnswEmbeddingStore loadGraph(String indexKey, int efSearch);
+
+    /**
+     * 持久化与索引对应的HNSW图，随索引一起删除
+     * @param indexKey 索引键
+     * @param store HNSW存储
+     * @throws IOException IO异常
+     */
+    void saveGraph(String indexKey, HnswEmbeddingStore store) throws IOException;
+
+    /**
+     * 使文件对应的索引失效
+     * @param fileName 文件名
+     */
+    void invalidate(String fileName);
+}
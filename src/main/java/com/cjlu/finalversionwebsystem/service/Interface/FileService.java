@@ -3,8 +3,12 @@ package com.cjlu.finalversionwebsystem.service.Interface;
 import com.cjlu.finalversionwebsystem.entity.FileSearchResult;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.List;
+import java.util.Map;
 
 public interface FileService {
     /**
@@ -24,6 +28,32 @@ public interface FileService {
      */
     byte[] decryptAndReadFile(String fileName) throws IOException;
 
+    /**
+     * 打开文件的明文输入流，加密文件边读边解密，不把整个文件读入内存
+     * @param fileName 文件名
+     * @return 明文输入流，由调用方关闭
+     * @throws IOException IO异常
+     */
+    InputStream openDecryptedStream(String fileName) throws IOException;
+
+    /**
+     * 获取文件明文的字节数，加密文件按格式推算，不需要解密整个文件
+     * @param fileName 文件名
+     * @return 明文字节数
+     * @throws IOException IO异常
+     */
+    long getPlainLength(String fileName) throws IOException;
+
+    /**
+     * 把文件明文中指定范围的字节写到输出流，普通文件由文件通道直接传输，加密文件从范围所在的分块开始边读边解密
+     * @param fileName 文件名
+     * @param offset 明文起始偏移
+     * @param length 字节数，小于0表示到文件末尾
+     * @param out 输出流，不会被关闭
+     * @throws IOException IO异常
+     */
+    void transferPlainRange(String fileName, long offset, long length, OutputStream out) throws IOException;
+
     /**
      * 检查文件是否存在
      * @param fileName 文件名
@@ -31,6 +61,13 @@ public interface FileService {
      */
     boolean fileExists(String fileName);
 
+    /**
+     * 获取文件在存储目录中的位置，不检查文件是否存在
+     * @param fileName 文件名
+     * @return 存储的（加密后的）文件
+     */
+    File getStoredFile(String fileName);
+
     /**
      * 删除文件
      * @param fileName 文件名
@@ -59,4 +96,25 @@ public interface FileService {
      * @throws IOException IO异常
      */
     String readFileContent(String fileName) throws IOException;
+
+    /**
+     * 获取文件明文内容的SHA-256摘要
+     * @param fileName 文件名
+     * @return 十六进制摘要字符串
+     * @throws IOException IO异常
+     */
+    String getContentHash(String fileName) throws IOException;
+
+    /**
+     * 把没有文件头的旧ECB加密文件转换为分块加密格式，明文内容和修改时间不变
+     * 解密结果与文件类型不符的文件不转换，转换前原文件备份到文件根目录下的备份目录
+     * @return 文件数统计：migrated 已转换，skipped 无需转换，failed 转换失败
+     */
+    Map<String, Integer> migrateLegacyEncryptedFiles();
+
+    /**
+     * 获取明文缓存的统计信息，包括两级缓存的命中次数和命中率
+     * @return 统计信息
+     */
+    Map<String, Object> getPlaintextCacheStats();
 }
@@ -0,0 +1,26 @@
+package com.cjlu.finalversionwebsystem.service.Interface;
+
+import com.cjlu.finalversionwebsystem.entity.IngestJob;
+
+import java.util.List;
+
+/**
+ * 文件摄取任务服务接口
+ * 上传只负责保存文件并登记任务，格式转换和嵌入由后台工作线程完成，任务状态持久化在数据库中
+ */
+public interface IngestJobService {
+
+    /**
+     * 登记任务，同一文件已有同类任务时重新排队
+     * @param jobType 任务类型，见 IngestJob.TYPE_*
+     * @param fileName 文件名
+     */
+    void enqueue(String jobType, String fileName);
+
+    /**
+     * 查询任务状态
+     * @param fileName 文件名，为空时返回最近更新的任务
+     * @return 任务列表
+     */
+    List<IngestJob> getStatus(String fileName);
+}
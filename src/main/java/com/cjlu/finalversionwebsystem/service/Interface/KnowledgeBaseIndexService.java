@@ -0,0 +1,61 @@
+package com.cjlu.finalversionwebsystem.service.Interface;
+
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 知识库向量集合服务接口
+ * 每个知识库（klb表中的一行）对应一个独立的向量集合，检索只在用户有权限的知识库中进行
+ */
+public interface KnowledgeBaseIndexService {
+
+    /**
+     * 同步知识库目录与向量集合：新增或修改的文件重新嵌入，已删除的文件从集合中移除
+     * @param klbName 知识库名
+     * @return 本次重新嵌入的文件数
+     * @throws IOException IO异常，或有文件嵌入失败（其他文件的同步结果已保存）
+     */
+    int syncCollection(String klbName) throws IOException;
+
+    /**
+     * 比较知识库目录与已保存的集合清单，判断是否有文件新增、修改或删除
+     * @param klbName 知识库名
+     * @return 是否需要同步
+     * @throws IOException 知识库目录不存在或IO异常
+     */
+    boolean needsSync(String klbName) throws IOException;
+
+    /**
+     * 获取用户有权限访问的知识库（权限表中的记录以及用户创建的知识库）
+     * @param userName 用户名
+     * @return 知识库名列表
+     */
+    List<String> getPermittedKLBNames(String userName);
+
+    /**
+     * 获取知识库集合的版本，任一知识库的内容变化后版本随之变化
+     * @param klbNames 知识库名列表
+     * @return 版本字符串
+     */
+    String getCollectionVersion(List<String> klbNames);
+
+    /**
+     * 为指定知识库创建检索器
+     * @param klbNames 知识库名列表
+     * @param sourceFiles 只检索这些文件，为空时检索知识库中的全部文件
+     * @return 内容检索器
+     */
+    ContentRetriever createRetriever(List<String> klbNames, Set<String> sourceFiles);
+
+    /**
+     * 在用户有权限的知识库中检索与问题相关的内容
+     * @param userName 用户名，为空时不检索
+     * @param query 问题
+     * @return 相关内容，按相关度降序
+     */
+    List<Content> retrieveForUser(String userName, String query);
+}
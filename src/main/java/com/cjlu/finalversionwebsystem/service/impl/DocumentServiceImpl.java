@@ -1,25 +1,47 @@
 package com.cjlu.finalversionwebsystem.service.impl;
 
 import cn.hutool.core.io.FileUtil;
+import com.cjlu.finalversionwebsystem.event.FileChangeEvent;
+import com.cjlu.finalversionwebsystem.rag.Bm25Index;
+import com.cjlu.finalversionwebsystem.rag.BoundedCache;
+import com.cjlu.finalversionwebsystem.rag.HnswEmbeddingStore;
+import com.cjlu.finalversionwebsystem.rag.HybridContentRetriever;
+import com.cjlu.finalversionwebsystem.rag.IngestionPipeline;
+import com.cjlu.finalversionwebsystem.rag.MarkdownSplitter;
+import com.cjlu.finalversionwebsystem.rag.MultiFileContentRetriever;
+import com.cjlu.finalversionwebsystem.rag.SegmentDiff;
+import com.cjlu.finalversionwebsystem.rag.SegmentIndex;
 import com.cjlu.finalversionwebsystem.service.Interface.DocumentService;
+import com.cjlu.finalversionwebsystem.service.Interface.EmbeddingIndexService;
 import com.cjlu.finalversionwebsystem.service.Interface.FileService;
 import dev.langchain4j.data.document.Document;
-import dev.langchain4j.data.document.DocumentSplitter;
 import dev.langchain4j.data.document.Metadata;
 import dev.langchain4j.data.document.loader.FileSystemDocumentLoader;
 import dev.langchain4j.data.document.parser.apache.pdfbox.ApachePdfBoxDocumentParser;
-import dev.langchain4j.data.document.splitter.DocumentSplitters;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
 import dev.langchain4j.model.embedding.EmbeddingModel;
 import dev.langchain4j.rag.content.retriever.ContentRetriever;
 import dev.langchain4j.rag.content.retriever.EmbeddingStoreContentRetriever;
-import dev.langchain4j.store.embedding.EmbeddingStoreIngestor;
-import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+import dev.langchain4j.store.embedding.EmbeddingStore;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.text.PDFTextStripper;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -27,9 +49,14 @@ import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 @Slf4j
 @Service
@@ -48,11 +75,74 @@ public class DocumentServiceImpl implements DocumentService {
     @Autowired
     private FileService fileService;
 
-    // 缓存检索器，避免重复处理相同文件组合
-    private final ConcurrentHashMap<String, ContentRetriever> retrieverCache = new ConcurrentHashMap<>();
+    @Autowired
+    private EmbeddingIndexService embeddingIndexService;
+
+    // 单文件检索的切分参数，参与索引寻址
+    private static final int SEGMENT_MAX_TOKENS = 500;
+    private static final String SPLITTER_SIGNATURE = "markdown-" + SEGMENT_MAX_TOKENS;
+
+    @Value("${klb.rag.hnsw.threshold:20000}")
+    private int hnswThreshold;
+
+    @Value("${klb.rag.hnsw.m:16}")
+    private int hnswM;
+
+    @Value("${klb.rag.hnsw.ef-construction:200}")
+    private int hnswEfConstruction;
+
+    @Value("${klb.rag.hnsw.ef-search:100}")
+    private int hnswEfSearch;
+
+    // 正在构建中的索引锁
+    private final ConcurrentHashMap<String, Object> indexBuildLocks = new ConcurrentHashMap<>();
+
+    @Value("${klb.rag.store-cache.max-mb:256}")
+    private long storeCacheMaxMb;
+
+    @Value("${klb.rag.store-cache.idle-ttl-minutes:30}")
+    private long storeCacheIdleTtlMinutes;
+
+    // 缓存每个文件的向量存储，单文件和任意文件组合的检索都复用；按向量和文本估算字节数限容
+    private BoundedCache<String, EmbeddingStore<TextSegment>> storeCache;
+
+    @Value("${klb.rag.ingest.max-in-flight-segments:256}")
+    private int ingestMaxInFlight;
+
+    @Value("${klb.rag.ingest.batch-size:32}")
+    private int ingestBatchSize;
+
+    @Value("${klb.rag.hybrid.enabled:true}")
+    private boolean hybridEnabled;
+
+    @Value("${klb.rag.hybrid.candidates:20}")
+    private int hybridCandidates;
+
+    @Value("${klb.rag.hybrid.rrf-k:60}")
+    private int hybridRrfK;
+
+    @Value("${klb.rag.hybrid.keyword-cache-mb:64}")
+    private long keywordCacheMaxMb;
+
+    // 缓存每个文件的BM25索引，与向量存储使用相同的键
+    private BoundedCache<String, Bm25Index> keywordIndexCache;
+
+    @PostConstruct
+    public void init() {
+        storeCache = new BoundedCache<>(storeCacheMaxMb * 1024 * 1024,
+                storeCacheIdleTtlMinutes, TimeUnit.MINUTES);
+        log.info("向量存储缓存容量: {}MB，空闲过期时间: {}分钟", storeCacheMaxMb, storeCacheIdleTtlMinutes);
+        keywordIndexCache = new BoundedCache<>(keywordCacheMaxMb * 1024 * 1024,
+                storeCacheIdleTtlMinutes, TimeUnit.MINUTES);
+    }
 
     @Override
     public ContentRetriever createRetrieverForFile(String fileName) throws Exception {
+        return createRetrieverForFile(fileName, 3);
+    }
+
+    @Override
+    public ContentRetriever createRetrieverForFile(String fileName, int maxResults) throws Exception {
         if (!isSupportedDocument(fileName)) {
             throw new IllegalArgumentException("不支持的文档类型: " + fileName);
         }
@@ -61,66 +151,322 @@ public class DocumentServiceImpl implements DocumentService {
             throw new IllegalArgumentException("文件不存在: " + fileName);
         }
 
-        // 加载文档
-        List<Document> documents = loadDocumentFromFile(fileName);
+        // 每个文件使用独立的向量存储，避免不同文件内容混合
+        EmbeddingStore<TextSegment> store = getOrLoadStore(fileName);
 
-        if (documents.isEmpty()) {
-            throw new IllegalArgumentException("无法从文件中加载文档: " + fileName);
+        // 创建检索器，开启混合检索时向量一路多取候选，与关键词结果融合后再截取
+        ContentRetriever retriever = EmbeddingStoreContentRetriever.builder()
+                .embeddingStore(store)
+                .minScore(0.5)
+                .maxResults(hybridEnabled ? Math.max(maxResults, hybridCandidates) : maxResults)
+                .embeddingModel(embeddingModel)
+                .build();
+        if (hybridEnabled) {
+            retriever = new HybridContentRetriever(retriever, Collections.singletonList(getOrLoadKeywordIndex(fileName)),
+                    maxResults, hybridCandidates, hybridRrfK);
         }
 
-        // 创建全新的向量数据库，确保每次都是独立的存储空间
-        InMemoryEmbeddingStore<dev.langchain4j.data.segment.TextSegment> store = new InMemoryEmbeddingStore<>();
-        log.info("为文件 {} 创建新的向量存储", fileName);
+        log.info("为文件 {} 创建检索器成功", fileName);
+        return retriever;
+    }
 
-        // 构建文档分割器 - 增加分割大小以减少文本段数量，避免超过OpenAI API批处理限制
-        // 使用更大的分割大小：1000字符，重叠200字符
-        DocumentSplitter splitter = DocumentSplitters.recursive(1000, 200);
+    @Override
+    public SegmentIndex getOrBuildIndex(String fileName) throws Exception {
+        return getOrBuildIndex(fileName, null);
+    }
 
-        // 手动处理文档分割和嵌入，以控制批处理大小
+    /**
+     * 获取文件的向量索引，需要重新构建时只嵌入相对旧版本索引新增或修改的文本段
+     * @param previous 文件旧版本的索引，没有时为null
+     */
+    private SegmentIndex getOrBuildIndex(String fileName, SegmentIndex previous) throws Exception {
+        String indexKey = embeddingIndexService.resolveIndexKey(fileName, SPLITTER_SIGNATURE);
+        SegmentIndex index = embeddingIndexService.loadIndex(indexKey);
+        if (index != null) {
+            return index;
+        }
+
+        // 同一索引只允许一个线程构建，其余线程等待后直接复用
+        Object buildLock = indexBuildLocks.computeIfAbsent(indexKey, key -> new Object());
         try {
-            // 先分割文档
-            List<dev.langchain4j.data.segment.TextSegment> allSegments = new ArrayList<>();
-            for (Document document : documents) {
-                List<dev.langchain4j.data.segment.TextSegment> segments = splitter.split(document);
-                allSegments.addAll(segments);
+            synchronized (buildLock) {
+                index = embeddingIndexService.loadIndex(indexKey);
+                if (index != null) {
+                    return index;
+                }
+                index = buildIndex(fileName, indexKey, previous);
+                embeddingIndexService.saveIndex(fileName, SPLITTER_SIGNATURE, index);
+                return index;
             }
+        } finally {
+            indexBuildLocks.remove(indexKey, buildLock);
+        }
+    }
+
+    /**
+     * 获取文件的向量存储，优先使用内存缓存，其次加载持久化索引，最后才重新嵌入
+     */
+    private EmbeddingStore<TextSegment> getOrLoadStore(String fileName) throws Exception {
+        String indexKey = embeddingIndexService.resolveIndexKey(fileName, SPLITTER_SIGNATURE);
+        EmbeddingStore<TextSegment> store = storeCache.get(storeCacheKey(fileName, indexKey));
+        if (store != null) {
+            return store;
+        }
+
+        SegmentIndex index = getOrBuildIndex(fileName);
+        // 文本段较多时使用HNSW近似检索，否则精确扫描
+        store = index.size() >= hnswThreshold ? getOrBuildGraph(fileName, index) : index.toEmbeddingStore(fileName);
+        long weightBytes = BoundedCache.estimateBytes(index.getSegments(), index.getEmbeddings());
+        if (storeCache.put(storeCacheKey(fileName, index.getKey()), store, weightBytes)) {
+            log.info("为文件 {} 创建向量存储，文本段数: {}，已缓存，估算占用 {} 字节", fileName, index.size(), weightBytes);
+        } else {
+            log.warn("为文件 {} 创建向量存储，文本段数: {}，估算占用 {} 字节超过缓存容量，未缓存", fileName, index.size(), weightBytes);
+        }
+        return store;
+    }
+
+    /**
+     * 获取文件的BM25索引，基于向量索引中已切分好的文本段构建，不需要重新加载文档
+     */
+    private Bm25Index getOrLoadKeywordIndex(String fileName) throws Exception {
+        String indexKey = embeddingIndexService.resolveIndexKey(fileName, SPLITTER_SIGNATURE);
+        Bm25Index keywordIndex = keywordIndexCache.get(storeCacheKey(fileName, indexKey));
+        if (keywordIndex != null) {
+            return keywordIndex;
+        }
+
+        SegmentIndex index = getOrBuildIndex(fileName);
+        keywordIndex = new Bm25Index(index.withSourceFile(fileName));
+        keywordIndexCache.put(storeCacheKey(fileName, index.getKey()), keywordIndex,
+                keywordIndex.estimateBytes() + BoundedCache.estimateBytes(index.getSegments(), Collections.emptyList()));
+        log.info("为文件 {} 构建BM25索引，文本段数: {}", fileName, keywordIndex.size());
+        return keywordIndex;
+    }
 
-            log.info("文档分割完成，共生成 {} 个文本段", allSegments.size());
+    /**
+     * 获取与索引对应的HNSW图，不存在时基于索引中的向量构建并持久化，无需重新嵌入
+     */
+    private EmbeddingStore<TextSegment> getOrBuildGraph(String fileName, SegmentIndex index) throws IOException {
+        HnswEmbeddingStore graph = embeddingIndexService.loadGraph(index.getKey(), hnswEfSearch);
+        if (graph != null) {
+            return graph;
+        }
 
-            // 分批处理嵌入，每批最多8个（留出安全边际）
-            int batchSize = 8;
-            for (int i = 0; i < allSegments.size(); i += batchSize) {
-                int endIndex = Math.min(i + batchSize, allSegments.size());
-                List<dev.langchain4j.data.segment.TextSegment> batch = allSegments.subList(i, endIndex);
+        long startTime = System.currentTimeMillis();
+        graph = new HnswEmbeddingStore(hnswM, hnswEfConstruction, hnswEfSearch);
+        // 以文本段ID作为图中的ID，文件修改后可以按差异增量更新
+        graph.addAll(SegmentDiff.segmentIds(index.getSegments()), index.getEmbeddings(), index.withSourceFile(fileName));
+        log.info("为文件 {} 构建HNSW图，向量数: {}，耗时: {}ms", fileName, graph.size(), System.currentTimeMillis() - startTime);
 
-                log.debug("处理第 {} 批文本段，包含 {} 个段落", (i / batchSize + 1), batch.size());
+        embeddingIndexService.saveGraph(index.getKey(), graph);
+        return graph;
+    }
 
-                // 为这批文本段生成嵌入
-                List<dev.langchain4j.data.embedding.Embedding> embeddings = embeddingModel.embedAll(batch).content();
+    private String storeCacheKey(String fileName, String indexKey) {
+        return fileName + "|" + indexKey;
+    }
 
-                // 存储到向量数据库
-                for (int j = 0; j < batch.size(); j++) {
-                    store.add(embeddings.get(j), batch.get(j));
-                }
+    /**
+     * 增量更新旧版本的HNSW图：删除已不存在的文本段，加入新增或修改的文本段，并按新索引持久化
+     */
+    private void updateGraph(String fileName, HnswEmbeddingStore graph, SegmentIndex previous, SegmentIndex index) throws IOException {
+        if (!graph.containsAll(SegmentDiff.segmentIds(previous.getSegments()))) {
+            // 旧图不是按文本段ID构建的，首次检索时重新构建
+            log.info("文件 {} 的旧HNSW图无法增量更新，将在首次检索时重建", fileName);
+            return;
+        }
+
+        long startTime = System.currentTimeMillis();
+        SegmentDiff diff = SegmentDiff.compute(previous, index.getSegments());
+        Map<String, Integer> positions = new HashMap<>();
+        List<String> ids = SegmentDiff.segmentIds(index.getSegments());
+        for (int i = 0; i < ids.size(); i++) {
+            positions.put(ids.get(i), i);
+        }
+        List<TextSegment> taggedSegments = index.withSourceFile(fileName);
+        List<Embedding> addedEmbeddings = new ArrayList<>();
+        List<TextSegment> addedSegments = new ArrayList<>();
+        for (String id : diff.getChangedIds()) {
+            int position = positions.get(id);
+            addedEmbeddings.add(index.getEmbeddings().get(position));
+            addedSegments.add(taggedSegments.get(position));
+        }
+
+        graph.removeAll(diff.getRemovedIds());
+        graph.addAll(diff.getChangedIds(), addedEmbeddings, addedSegments);
+        embeddingIndexService.saveGraph(index.getKey(), graph);
+        log.info("文件 {} 的HNSW图增量更新完成，删除 {} 个，新增 {} 个，耗时: {}ms",
+                fileName, diff.getRemovedIds().size(), addedSegments.size(), System.currentTimeMillis() - startTime);
+    }
+
+    /**
+     * 文件删除或变为不支持的类型后使旧索引失效
+     * 支持解析的文件保存后由摄取任务调用 reindexFile，上传请求不等待嵌入
+     */
+    @EventListener
+    public void onFileChange(FileChangeEvent event) {
+        String fileName = event.getFileName();
+        if (event.getType() == FileChangeEvent.Type.SAVED && isSupportedDocument(fileName)) {
+            return;
+        }
+        invalidateFile(fileName);
+    }
+
+    /**
+     * 重新构建文件的索引并预热检索缓存，首次对话时可直接使用
+     * 覆盖上传时基于旧版本索引增量构建，只嵌入变化的文本段
+     */
+    @Override
+    public void reindexFile(String fileName) throws Exception {
+        // 旧版本的索引和HNSW图在失效前取出
+        SegmentIndex previous = null;
+        HnswEmbeddingStore previousGraph = null;
+        String previousKey = embeddingIndexService.findRegisteredIndexKey(fileName, SPLITTER_SIGNATURE);
+        if (previousKey != null) {
+            previous = embeddingIndexService.loadIndex(previousKey);
+            if (previous != null && previous.size() >= hnswThreshold) {
+                previousGraph = embeddingIndexService.loadGraph(previousKey, hnswEfSearch);
             }
+        }
+
+        invalidateFile(fileName);
+
+        SegmentIndex index = getOrBuildIndex(fileName, previous);
+        if (previousGraph != null && index.size() >= hnswThreshold) {
+            updateGraph(fileName, previousGraph, previous, index);
+        }
+        getOrLoadStore(fileName);
+        if (hybridEnabled) {
+            getOrLoadKeywordIndex(fileName);
+        }
+    }
+
+    private void invalidateFile(String fileName) {
+        embeddingIndexService.invalidate(fileName);
+
+        // 该文件旧内容对应的向量存储已过时
+        int removed = storeCache.invalidateIf(key -> key.startsWith(fileName + "|"));
+        keywordIndexCache.invalidateIf(key -> key.startsWith(fileName + "|"));
+        if (removed > 0) {
+            log.info("文件 {} 已变更，移除 {} 个相关的向量存储缓存", fileName, removed);
+        }
+    }
+
+    /**
+     * 流式加载、分割并嵌入文件，生成向量索引；有旧版本索引时复用未变化文本段的向量
+     * 解密、解析、切分在读取线程中进行，嵌入跟不上时读取线程等待，不会把整个明文或文档文本读入内存
+     */
+    private SegmentIndex buildIndex(String fileName, String indexKey, SegmentIndex previous) throws Exception {
+        log.info("为文件 {} 构建新的向量索引: {}", fileName, indexKey);
+        long startTime = System.currentTimeMillis();
 
-            log.info("所有文本段嵌入完成");
+        // 旧版本中仍然存在的文本段直接复用向量
+        Map<String, Embedding> reusable = previous == null ? Collections.emptyMap() : SegmentDiff.embeddingsById(previous);
+        SegmentDiff.IdSequence idSequence = new SegmentDiff.IdSequence();
+        List<TextSegment> allSegments = new ArrayList<>();
+        List<Embedding> allEmbeddings = new ArrayList<>();
+        final int[] embeddedCount = {0};
 
+        try {
+            new IngestionPipeline(ingestMaxInFlight, ingestBatchSize).run(
+                    sink -> streamSegments(fileName, sink),
+                    batch -> {
+                        // 只嵌入相对旧版本新增或修改的文本段；先查嵌入缓存，未命中的分批并行嵌入
+                        List<TextSegment> changedSegments = new ArrayList<>();
+                        List<Integer> changedPositions = new ArrayList<>();
+                        for (TextSegment segment : batch) {
+                            Embedding embedding = reusable.get(idSequence.next(segment));
+                            if (embedding == null) {
+                                changedPositions.add(allSegments.size());
+                                changedSegments.add(segment);
+                            }
+                            allSegments.add(segment);
+                            allEmbeddings.add(embedding);
+                        }
+                        if (!changedSegments.isEmpty()) {
+                            List<Embedding> embedded = embeddingModel.embedAll(changedSegments).content();
+                            for (int i = 0; i < embedded.size(); i++) {
+                                allEmbeddings.set(changedPositions.get(i), embedded.get(i));
+                            }
+                            embeddedCount[0] += changedSegments.size();
+                        }
+                    });
         } catch (Exception e) {
             log.error("手动处理文档嵌入时出错: {}", e.getMessage(), e);
             throw new RuntimeException("文档嵌入处理失败: " + e.getMessage(), e);
         }
 
-        // 创建检索器
-        ContentRetriever retriever = EmbeddingStoreContentRetriever.builder()
-                .embeddingStore(store)
-                .minScore(0.5)
-                .maxResults(3)
-                .embeddingModel(embeddingModel)
-                .build();
+        if (allSegments.isEmpty()) {
+            throw new IllegalArgumentException("无法从文件中加载文档: " + fileName);
+        }
 
-        log.info("为文件 {} 创建检索器成功", fileName);
-        return retriever;
+        log.info("文件 {} 索引完成，文本段 {} 个，复用向量 {} 个，新嵌入 {} 个，耗时: {}ms", fileName, allSegments.size(),
+                allSegments.size() - embeddedCount[0], embeddedCount[0], System.currentTimeMillis() - startTime);
+        return new SegmentIndex(indexKey, allSegments, allEmbeddings);
+    }
+
+    /**
+     * 流式解密、解析并切分文件，文本段按文档顺序交给回调
+     * PDF以临时文件作为PDFBox的缓冲区并逐页提取文本，其他格式按UTF-8文本逐行读取
+     */
+    private void streamSegments(String fileName, Consumer<TextSegment> sink) throws IOException {
+        String extName = FileUtil.extName(fileName);
+        if (extName == null) {
+            throw new IllegalArgumentException("无法确定文件类型: " + fileName);
+        }
+
+        Metadata metadata = new Metadata();
+        metadata.add("file_name", fileName);
+        metadata.add("source_file", fileName);
+        // 按标题层级切分，表格和代码块保持完整，按token数限制文本段大小，段间不重叠
+        MarkdownSplitter splitter = new MarkdownSplitter(SEGMENT_MAX_TOKENS);
+
+        try (InputStream in = fileService.openDecryptedStream(fileName)) {
+            switch (extName.toLowerCase()) {
+                case "pdf":
+                    try (PDDocument pdf = PDDocument.load(in, MemoryUsageSetting.setupTempFileOnly())) {
+                        Reader pages = new InputStreamReader(new SequenceInputStream(pageTexts(pdf)), StandardCharsets.UTF_8);
+                        splitter.split(pages, metadata, sink);
+                    }
+                    break;
+                case "txt":
+                case "md":
+                case "doc":
+                case "docx":
+                    splitter.split(new InputStreamReader(in, StandardCharsets.UTF_8), metadata, sink);
+                    break;
+                default:
+                    throw new IllegalArgumentException("不支持的文档类型: " + extName);
+            }
+        }
+    }
+
+    /**
+     * 按页惰性提取PDF文本，同一时刻只保留一页
+     */
+    private Enumeration<InputStream> pageTexts(PDDocument pdf) throws IOException {
+        PDFTextStripper stripper = new PDFTextStripper();
+        int pageCount = pdf.getNumberOfPages();
+        return new Enumeration<InputStream>() {
+            private int nextPage = 1;
+
+            @Override
+            public boolean hasMoreElements() {
+                return nextPage <= pageCount;
+            }
+
+            @Override
+            public InputStream nextElement() {
+                stripper.setStartPage(nextPage);
+                stripper.setEndPage(nextPage);
+                nextPage++;
+                try {
+                    return new ByteArrayInputStream(stripper.getText(pdf).getBytes(StandardCharsets.UTF_8));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
     }
 
     @Override
@@ -133,8 +479,8 @@ public class DocumentServiceImpl implements DocumentService {
         // 解密文件内容并保存到临时文件
         byte[] decryptedContent = fileService.decryptAndReadFile(fileName);
 
-        // 调试：验证读取的文件内容
-        String contentPreview = new String(decryptedContent, StandardCharsets.UTF_8);
+        // 调试：验证读取的文件内容，只解码开头部分用于预览
+        String contentPreview = new String(decryptedContent, 0, Math.min(decryptedContent.length, 300), StandardCharsets.UTF_8);
         String preview = contentPreview.length() > 100 ? contentPreview.substring(0, 100) + "..." : contentPreview;
         log.info("文件 {} 读取内容预览: [{}], 字节长度: {}", fileName, preview, decryptedContent.length);
 
@@ -215,16 +561,6 @@ public class DocumentServiceImpl implements DocumentService {
             throw new IllegalArgumentException("文件名列表不能为空");
         }
 
-        // 创建缓存键（排序后的文件名组合）
-        String cacheKey = fileNames.stream().sorted().collect(Collectors.joining(","));
-
-        // 检查缓存
-        ContentRetriever cachedRetriever = retrieverCache.get(cacheKey);
-        if (cachedRetriever != null) {
-            log.info("使用缓存的检索器，文件组合: {}", cacheKey);
-            return cachedRetriever;
-        }
-
         log.info("开始为多个文件创建检索器，文件数量: {}", fileNames.size());
 
         // 验证所有文件
@@ -237,100 +573,31 @@ public class DocumentServiceImpl implements DocumentService {
             }
         }
 
-        // 加载所有文档
-        List<Document> allDocuments = loadDocumentsFromMultipleFiles(fileNames);
-
-        if (allDocuments.isEmpty()) {
-            throw new IllegalArgumentException("无法从文件中加载任何文档");
-        }
-
-        // 创建全新的向量数据库，用于存储所有文件的内容
-        InMemoryEmbeddingStore<dev.langchain4j.data.segment.TextSegment> store = new InMemoryEmbeddingStore<>();
-        log.info("为多个文件创建新的向量存储，文档总数: {}", allDocuments.size());
-
-        // 构建文档分割器 - 增加块大小减少段数，提升性能
-        DocumentSplitter splitter = DocumentSplitters.recursive(1500, 300);
-
-        // 手动处理文档分割和嵌入
-        try {
-            // 先分割所有文档
-            List<dev.langchain4j.data.segment.TextSegment> allSegments = new ArrayList<>();
-            for (Document document : allDocuments) {
-                List<dev.langchain4j.data.segment.TextSegment> segments = splitter.split(document);
-                allSegments.addAll(segments);
-            }
-
-            log.info("文档分割完成，总段数: {}", allSegments.size());
-
-            // 调试：打印所有分割的段内容
-            for (int i = 0; i < allSegments.size(); i++) {
-                dev.langchain4j.data.segment.TextSegment segment = allSegments.get(i);
-                String segmentText = segment.text();
-                String preview = segmentText.length() > 100 ? segmentText.substring(0, 100) + "..." : segmentText;
-
-                // 获取源文件信息
-                String sourceFile = "未知";
-                String uniqueId = "未知";
-                if (segment.metadata() != null && segment.metadata().asMap() != null) {
-                    sourceFile = segment.metadata().asMap().getOrDefault("source_file", "未知").toString();
-                    uniqueId = segment.metadata().asMap().getOrDefault("unique_id", "未知").toString();
-                }
-
-                log.info("🔍 段 {}: 来源文件=[{}], 唯一ID=[{}], 预览=[{}], 长度={}",
-                        i + 1, sourceFile, uniqueId, preview, segmentText.length());
-
-                // 检查段的元数据
-                if (segment.metadata() != null && segment.metadata().asMap() != null) {
-                    log.info("📋 段 {} 完整元数据: {}", i + 1, segment.metadata().asMap());
-                }
-            }
-
-            // 分批处理嵌入，避免API限制 - 遵守阿里云API限制
-            int batchSize = 10; // 阿里云API最大批次大小为10
-            for (int i = 0; i < allSegments.size(); i += batchSize) {
-                int endIndex = Math.min(i + batchSize, allSegments.size());
-                List<dev.langchain4j.data.segment.TextSegment> batch = allSegments.subList(i, endIndex);
-
-                log.debug("处理嵌入批次 {}/{}, 段数: {}",
-                        (i / batchSize) + 1,
-                        (allSegments.size() + batchSize - 1) / batchSize,
-                        batch.size());
-
-                // 为这批文本段生成嵌入
-                List<dev.langchain4j.data.embedding.Embedding> embeddings = embeddingModel.embedAll(batch).content();
-
-                // 存储到向量数据库
-                for (int j = 0; j < batch.size(); j++) {
-                    store.add(embeddings.get(j), batch.get(j));
-                }
-
-                // 减少延迟时间，提升响应速度
-                if (i + batchSize < allSegments.size()) {
-                    try {
-                        Thread.sleep(50); // 减少到50ms延迟
-                    } catch (InterruptedException e) {
-                        Thread.currentThread().interrupt();
-                        break;
-                    }
-                }
+        // 复用每个文件已有的向量存储，任意文件组合都不需要重新嵌入
+        Map<String, EmbeddingStore<TextSegment>> stores = new LinkedHashMap<>();
+        for (String fileName : fileNames) {
+            try {
+                stores.put(fileName, getOrLoadStore(fileName));
+            } catch (Exception e) {
+                log.error("加载文件 {} 的向量存储失败: {}", fileName, e.getMessage(), e);
+                throw new Exception("处理多文件文档嵌入失败: " + e.getMessage(), e);
             }
-
-        } catch (Exception e) {
-            log.error("处理多文件文档嵌入时出错: {}", e.getMessage(), e);
-            throw new Exception("处理多文件文档嵌入失败: " + e.getMessage(), e);
         }
 
         // 创建检索器 - 平衡性能和质量
-        ContentRetriever retriever = EmbeddingStoreContentRetriever.builder()
-                .embeddingStore(store)
-                .minScore(0.4) // 适中的分数，平衡质量和覆盖度
-                .maxResults(10) // 减少检索结果，提升速度
-                .embeddingModel(embeddingModel)
-                .build();
+        int maxResults = 10; // 减少检索结果，提升速度
+        ContentRetriever retriever = new MultiFileContentRetriever(embeddingModel, stores,
+                hybridEnabled ? Math.max(maxResults, hybridCandidates) : maxResults,
+                0.4); // 适中的分数，平衡质量和覆盖度
+        if (hybridEnabled) {
+            List<Bm25Index> keywordIndexes = new ArrayList<>(fileNames.size());
+            for (String fileName : fileNames) {
+                keywordIndexes.add(getOrLoadKeywordIndex(fileName));
+            }
+            retriever = new HybridContentRetriever(retriever, keywordIndexes, maxResults, hybridCandidates, hybridRrfK);
+        }
 
-        // 存储到缓存
-        retrieverCache.put(cacheKey, retriever);
-        log.info("为多个文件创建检索器成功，文件列表: {}，已缓存", String.join(", ", fileNames));
+        log.info("为多个文件创建检索器成功，文件列表: {}", String.join(", ", fileNames));
         return retriever;
     }
 
@@ -338,14 +605,14 @@ public class DocumentServiceImpl implements DocumentService {
      * 清理检索器缓存
      */
     public void clearRetrieverCache() {
-        retrieverCache.clear();
+        storeCache.clear();
+        keywordIndexCache.clear();
         log.info("检索器缓存已清理");
     }
 
     public void clearAllCaches() {
-        retrieverCache.clear();
-        // 强制垃圾回收，清理内存中的向量存储
-        System.gc();
+        storeCache.clear();
+        keywordIndexCache.clear();
         log.info("所有缓存已清理，包括内存中的向量存储");
     }
 
@@ -353,7 +620,16 @@ public class DocumentServiceImpl implements DocumentService {
      * 获取缓存大小
      */
     public int getCacheSize() {
-        return retrieverCache.size();
+        return storeCache.size();
+    }
+
+    /**
+     * 获取缓存统计信息：条目数、占用字节、命中/未命中/淘汰次数
+     */
+    public Map<String, Object> getCacheStats() {
+        Map<String, Object> stats = new LinkedHashMap<>(storeCache.stats());
+        stats.put("keywordIndexCache", keywordIndexCache.stats());
+        return stats;
     }
 
     @Override
@@ -0,0 +1,248 @@
+package com.cjlu.finalversionwebsystem.service.impl;
+
+import cn.hutool.crypto.digest.DigestUtil;
+import com.cjlu.finalversionwebsystem.rag.HnswEmbeddingStore;
+import com.cjlu.finalversionwebsystem.rag.SegmentIndex;
+import com.cjlu.finalversionwebsystem.service.Interface.EmbeddingIndexService;
+import com.cjlu.finalversionwebsystem.service.Interface.FileService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 向量索引持久化服务实现类
+ * 索引文件按 "内容摘要-参数摘要" 命名存放在 index 目录下，
+ * manifest 记录文件名与索引的对应关系，文件大小和修改时间未变时无需重新计算摘要
+ */
+@Slf4j
+@Service
+public class EmbeddingIndexServiceImpl implements EmbeddingIndexService {
+
+    private static final String MANIFEST_FILE = "manifest.properties";
+    private static final String INDEX_SUFFIX = ".idx";
+    private static final String GRAPH_SUFFIX = ".hnsw";
+
+    @Autowired
+    private FileService fileService;
+
+    // 索引目录，位于工作目录下
+    private String indexPath = System.getProperty("user.dir") + File.separator + "index";
+
+    @Value("${langchain4j.open-ai.embedding-model.model-name:text-embedding-v3}")
+    private String embeddingModelName;
+
+    // 文件名|切分签名 -> 索引记录
+    private final ConcurrentHashMap<String, ManifestEntry> manifest = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        try {
+            Files.createDirectories(Paths.get(indexPath));
+            loadManifest();
+            log.info("向量索引目录: {}，已登记索引 {} 个", indexPath, manifest.size());
+        } catch (IOException e) {
+            log.warn("初始化向量索引目录失败: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public String resolveIndexKey(String fileName, String splitterSignature) throws IOException {
+        File file = fileService.getStoredFile(fileName);
+        String manifestKey = manifestKey(fileName, splitterSignature);
+
+        ManifestEntry entry = manifest.get(manifestKey);
+        if (entry != null && entry.size == file.length() && entry.lastModified == file.lastModified()) {
+            return entry.indexKey;
+        }
+
+        return fileService.getContentHash(fileName) + "-" + paramsHash(splitterSignature);
+    }
+
+    @Override
+    public String findRegisteredIndexKey(String fileName, String splitterSignature) {
+        ManifestEntry entry = manifest.get(manifestKey(fileName, splitterSignature));
+        return entry == null ? null : entry.indexKey;
+    }
+
+    @Override
+    public SegmentIndex loadIndex(String indexKey) {
+        Path indexFile = indexFile(indexKey);
+        if (!Files.exists(indexFile)) {
+            return null;
+        }
+        try {
+            SegmentIndex index = SegmentIndex.readFrom(indexKey, indexFile);
+            log.info("从磁盘加载向量索引: {}, 文本段数: {}", indexKey, index.size());
+            return index;
+        } catch (IOException e) {
+            log.warn("读取向量索引 {} 失败，将重新构建: {}", indexKey, e.getMessage());
+            return null;
+        }
+    }
+
+    @Override
+    public void saveIndex(String fileName, String splitterSignature, SegmentIndex index) throws IOException {
+        index.writeTo(indexFile(index.getKey()));
+
+        File file = fileService.getStoredFile(fileName);
+        ManifestEntry previous = manifest.put(manifestKey(fileName, splitterSignature),
+                new ManifestEntry(index.getKey(), file.length(), file.lastModified()));
+        if (previous != null && !previous.indexKey.equals(index.getKey())) {
+            deleteIfUnreferenced(previous.indexKey);
+        }
+        storeManifest();
+
+        log.info("向量索引已持久化: 文件={}, 索引={}, 文本段数={}", fileName, index.getKey(), index.size());
+    }
+
+    @Override
+    public HnswEmbeddingStore loadGraph(String indexKey, int efSearch) {
+        Path graphFile = graphFile(indexKey);
+        if (!Files.exists(graphFile)) {
+            return null;
+        }
+        try {
+            HnswEmbeddingStore store = HnswEmbeddingStore.load(graphFile, efSearch);
+            log.info("从磁盘加载HNSW图: {}, 向量数: {}", indexKey, store.size());
+            return store;
+        } catch (IOException e) {
+            log.warn("读取HNSW图 {} 失败，将重新构建: {}", indexKey, e.getMessage());
+            return null;
+        }
+    }
+
+    @Override
+    public void saveGraph(String indexKey, HnswEmbeddingStore store) throws IOException {
+        store.save(graphFile(indexKey));
+        log.info("HNSW图已持久化: 索引={}, 向量数={}", indexKey, store.size());
+    }
+
+    @Override
+    public void invalidate(String fileName) {
+        List<String> removedKeys = new ArrayList<>();
+        manifest.entrySet().removeIf(entry -> {
+            if (fileNameOf(entry.getKey()).equals(fileName)) {
+                removedKeys.add(entry.getValue().indexKey);
+                return true;
+            }
+            return false;
+        });
+
+        if (removedKeys.isEmpty()) {
+            return;
+        }
+
+        for (String indexKey : removedKeys) {
+            deleteIfUnreferenced(indexKey);
+        }
+        storeManifest();
+        log.info("文件 {} 的向量索引已失效，共 {} 个", fileName, removedKeys.size());
+    }
+
+    /**
+     * 内容寻址的索引可能被其他同内容文件共享，只有无人引用时才删除
+     */
+    private void deleteIfUnreferenced(String indexKey) {
+        boolean stillReferenced = manifest.values().stream().anyMatch(entry -> entry.indexKey.equals(indexKey));
+        if (!stillReferenced) {
+            try {
+                Files.deleteIfExists(indexFile(indexKey));
+                Files.deleteIfExists(graphFile(indexKey));
+            } catch (IOException e) {
+                log.warn("删除向量索引文件 {} 失败: {}", indexKey, e.getMessage());
+            }
+        }
+    }
+
+    private Path indexFile(String indexKey) {
+        return Paths.get(indexPath, indexKey + INDEX_SUFFIX);
+    }
+
+    private Path graphFile(String indexKey) {
+        return Paths.get(indexPath, indexKey + GRAPH_SUFFIX);
+    }
+
+    /**
+     * 嵌入模型和切分参数的摘要，任一变化都会生成新的索引
+     */
+    private String paramsHash(String splitterSignature) {
+        return DigestUtil.sha256Hex(embeddingModelName + "|" + splitterSignature).substring(0, 12);
+    }
+
+    /**
+     * manifest中的键，签名部分使用参数摘要，避免文件名中的分隔符干扰解析
+     */
+    private String manifestKey(String fileName, String splitterSignature) {
+        return fileName + "|" + paramsHash(splitterSignature);
+    }
+
+    private String fileNameOf(String manifestKey) {
+        return manifestKey.substring(0, manifestKey.lastIndexOf('|'));
+    }
+
+    private void loadManifest() throws IOException {
+        Path manifestPath = Paths.get(indexPath, MANIFEST_FILE);
+        if (!Files.exists(manifestPath)) {
+            return;
+        }
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(manifestPath)) {
+            properties.load(in);
+        }
+        for (String name : properties.stringPropertyNames()) {
+            String[] parts = properties.getProperty(name).split("\\|");
+            if (parts.length == 3) {
+                manifest.put(name, new ManifestEntry(parts[0], Long.parseLong(parts[1]), Long.parseLong(parts[2])));
+            }
+        }
+    }
+
+    private synchronized void storeManifest() {
+        Properties properties = new Properties();
+        for (Map.Entry<String, ManifestEntry> entry : manifest.entrySet()) {
+            ManifestEntry value = entry.getValue();
+            properties.setProperty(entry.getKey(), value.indexKey + "|" + value.size + "|" + value.lastModified);
+        }
+        Path manifestPath = Paths.get(indexPath, MANIFEST_FILE);
+        Path tempPath = Paths.get(indexPath, MANIFEST_FILE + ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(tempPath)) {
+                properties.store(out, "fileName|paramsHash=indexKey|size|lastModified");
+            }
+            Files.move(tempPath, manifestPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("保存向量索引清单失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 索引清单记录
+     */
+    private static class ManifestEntry {
+        private final String indexKey;
+        private final long size;
+        private final long lastModified;
+
+        private ManifestEntry(String indexKey, long size, long lastModified) {
+            this.indexKey = indexKey;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+    }
+}
@@ -1,6 +1,9 @@
 package com.cjlu.finalversionwebsystem.service.impl;
 
 import com.cjlu.finalversionwebsystem.entity.ChatResponse;
+import com.cjlu.finalversionwebsystem.rag.ContextAssembler;
+import com.cjlu.finalversionwebsystem.rag.RerankingStage;
+import com.cjlu.finalversionwebsystem.rag.TokenEstimator;
 import com.cjlu.finalversionwebsystem.service.Interface.*;
 import dev.langchain4j.memory.chat.ChatMemoryProvider;
 import dev.langchain4j.model.openai.OpenAiChatModel;
@@ -12,6 +15,7 @@ import dev.langchain4j.service.AiServices;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 
@@ -55,6 +59,21 @@ public class EnhancedChatServiceImpl implements EnhancedChatService {
     @Autowired
     private FileReferenceDetectionService fileReferenceDetectionService;
 
+    @Value("${klb.rag.context.token-budget:3000}")
+    private int contextTokenBudget;
+
+    @Value("${klb.rag.context.whole-file-max-tokens:1500}")
+    private int wholeFileMaxTokens;
+
+    @Value("${klb.rag.context.max-segments:8}")
+    private int contextMaxSegments;
+
+    @Autowired
+    private RerankingStage rerankingStage;
+
+    @Value("${klb.rag.rerank.max-results:5}")
+    private int rerankMaxResults;
+
     @Override
     public Flux<ChatResponse> chatWithReferences(String message) {
         try {
@@ -181,12 +200,12 @@ public class EnhancedChatServiceImpl implements EnhancedChatService {
                         "\n\n提示：对于没有扩展名的文件（如 '" + fileName + "'），系统会尝试作为文本文件处理。", true));
             }
 
-            // 为指定文件创建ContentRetriever
-            ContentRetriever fileRetriever = documentService.createRetrieverForFile(fileName);
+            // 为指定文件创建ContentRetriever，多取一些候选片段供上下文组装按预算挑选
+            ContentRetriever fileRetriever = documentService.createRetrieverForFile(fileName, contextMaxSegments);
 
-            // 获取相关内容
+            // 获取相关内容，重排序后相关且不重复的片段优先装入上下文
             Query query = Query.from(message);
-            List<Content> retrievedContents = fileRetriever.retrieve(query);
+            List<Content> retrievedContents = rerankingStage.rerank(message, fileRetriever.retrieve(query), contextMaxSegments);
 
             // 提取文件引用信息
             List<ChatResponse.FileReference> references = extractFileReferences(retrievedContents, fileName);
@@ -211,27 +230,31 @@ public class EnhancedChatServiceImpl implements EnhancedChatService {
                 final ChatServiceInterface finalRagChatService = ragChatService;
                 final boolean[] hasReceivedTokens = {false};
                 final boolean[] isCompleted = {false};
+                final int[] contextTokens = {0};
 
                 return Flux.create(sink -> {
                     try {
-                        // 直接使用原始文件内容，不依赖可能被污染的向量检索
                         log.info("开始RAG聊天，文件: {}, 问题: {}", fileName, message);
 
-                        // 重新读取文件内容，确保使用最新且正确的内容
+                        // 小文件使用全文，否则按token预算装入检索到的片段
                         String fileContent;
                         try {
                             fileContent = fileService.readFileContent(fileName);
-                            log.info("重新读取文件内容成功，文件: {}, 内容长度: {}", fileName, fileContent.length());
                         } catch (Exception e) {
-                            log.error("重新读取文件内容失败: {}", e.getMessage());
+                            log.error("读取文件内容失败: {}", e.getMessage());
                             throw new RuntimeException("无法读取文件内容: " + fileName, e);
                         }
+                        ContextAssembler.AssembledContext context =
+                                new ContextAssembler(contextTokenBudget, wholeFileMaxTokens).assemble(fileContent, retrievedContents);
+                        contextTokens[0] = context.getTokens();
+                        log.info("上下文组装完成，文件: {}, 使用全文: {}, 片段数: {}, 估算token数: {}/{}",
+                                fileName, context.isWholeFile(), context.getSegmentCount(), context.getTokens(), contextTokenBudget);
 
                         final String chinesePrompt = "你是一个极其严格的文档分析助手。\n\n" +
                                              "当前文档名：" + fileName + "\n\n" +
-                                             "以下是文档的完整内容：\n" +
+                                             (context.isWholeFile() ? "以下是文档的完整内容：\n" : "以下是文档中与问题最相关的内容片段：\n") +
                                              "=== 文档内容开始 ===\n" +
-                                             fileContent + "\n" +
+                                             context.getText() + "\n" +
                                              "=== 文档内容结束 ===\n\n" +
                                              "用户问题：" + message + "\n\n" +
                                              "严格要求：\n" +
@@ -258,6 +281,7 @@ public class EnhancedChatServiceImpl implements EnhancedChatService {
                                     // 发送文件引用信息
                                     try {
                                         ChatResponse finalResponse = new ChatResponse("\n\n📚 参考文件：\n文件名：" + fileName + "\n链接：" + "http:\\\\localhost:8080\\" + "/files/" + fileName, true);
+                                        finalResponse.setContextTokens(contextTokens[0]);
                                         sink.next(finalResponse);
                                     } catch (Exception e) {
                                         log.warn("发送文件引用信息时出错: {}", e.getMessage());
@@ -646,32 +670,47 @@ public class EnhancedChatServiceImpl implements EnhancedChatService {
                             log.info("🔍 检索内容 {}: 来源=[{}], 预览=[{}]", i + 1, sourceFile, contentPreview);
                         }
 
-                        // 按照用户指定的文件顺序重新组织内容映射
+                        // 重排序挑出更少、更相关的片段；某个文件没有片段入选时补上它检索排名最高的片段
+                        List<Content> rerankedContents = rerankingStage.rerank(message, retrievedContents, rerankMaxResults);
+
+                        // 按照用户指定的文件顺序重新组织内容映射，片段总量受token预算限制
                         StringBuilder fileContentMapping = new StringBuilder();
+                        int usedTokens = 0;
 
                         // 为每个用户指定的文件查找对应的检索内容
                         for (int i = 0; i < fileNames.size(); i++) {
                             String targetFileName = fileNames.get(i);
-                            String fileContent = "未找到内容";
-
-                            // 在检索结果中查找对应文件的内容
-                            for (Content content : retrievedContents) {
-                                String sourceFile = "未知";
-                                if (content.textSegment().metadata() != null && content.textSegment().metadata().asMap() != null) {
-                                    sourceFile = content.textSegment().metadata().asMap().getOrDefault("source_file", "未知").toString();
+                            List<String> fileSegments = new ArrayList<>();
+                            for (Content content : rerankedContents) {
+                                if (targetFileName.equals(content.textSegment().metadata().get("source_file"))) {
+                                    fileSegments.add(content.textSegment().text());
+                                }
+                            }
+                            if (fileSegments.isEmpty()) {
+                                for (Content content : retrievedContents) {
+                                    if (targetFileName.equals(content.textSegment().metadata().get("source_file"))) {
+                                        fileSegments.add(content.textSegment().text());
+                                        break;
+                                    }
                                 }
+                            }
 
-                                if (targetFileName.equals(sourceFile)) {
-                                    fileContent = content.textSegment().text().length() > 200 ?
-                                        content.textSegment().text().substring(0, 200) + "..." :
-                                        content.textSegment().text();
+                            StringBuilder fileContent = new StringBuilder();
+                            for (String segment : fileSegments) {
+                                int tokens = TokenEstimator.estimate(segment);
+                                // 每个文件至少保留一个片段
+                                if (fileContent.length() > 0 && usedTokens + tokens > contextTokenBudget) {
                                     break;
                                 }
+                                fileContent.append(fileContent.length() > 0 ? "\n---\n" : "").append(segment);
+                                usedTokens += tokens;
                             }
 
                             fileContentMapping.append(String.format("文件%d（%s）的内容：%s\n",
-                                i + 1, targetFileName, fileContent));
+                                i + 1, targetFileName, fileContent.length() > 0 ? fileContent : "未找到内容"));
                         }
+                        log.info("多文件上下文组装完成，候选 {} 个片段，重排序后保留 {} 个，估算token数: {}",
+                                retrievedContents.size(), rerankedContents.size(), usedTokens);
 
                         String enhancedPrompt = String.format(
                             "请严格按照以下指定的文件顺序回答问题，每个文件必须单独回答。\n\n" +
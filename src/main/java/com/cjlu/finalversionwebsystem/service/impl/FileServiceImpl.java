@@ -1,21 +1,49 @@
 package com.cjlu.finalversionwebsystem.service.impl;
 
 import cn.hutool.core.io.FileUtil;
+import cn.hutool.crypto.digest.DigestUtil;
 import com.cjlu.finalversionwebsystem.entity.FileSearchResult;
+import com.cjlu.finalversionwebsystem.event.FileChangeEvent;
 import com.cjlu.finalversionwebsystem.service.Interface.FileService;
+import com.cjlu.finalversionwebsystem.utils.ChunkedEncryption;
 import com.cjlu.finalversionwebsystem.utils.EncryptionUtil;
+import com.cjlu.finalversionwebsystem.utils.PlaintextCache;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.crypto.CipherInputStream;
+import javax.crypto.CipherOutputStream;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestInputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
@@ -23,30 +51,130 @@ import java.util.stream.Collectors;
 @Service
 public class FileServiceImpl implements FileService {
 
-    private static final String ROOT_PATH = System.getProperty("user.dir") + File.separator + "files";
+    private static final int AES_BLOCK_SIZE = 16;
+
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    // 上传时的临时目录，位于文件根目录下，文件列表只列出普通文件
+    private static final String TEMP_DIR = ".tmp";
+
+    // 迁移旧ECB文件前备份原文件的目录，位于文件根目录下
+    private static final String LEGACY_BACKUP_DIR = ".legacy-ecb";
+
+    // 迁移时检查原始内容和解密结果开头的字节数
+    private static final int MIGRATE_PROBE_LENGTH = 4096;
+
+    private static final byte[] ZIP_SIGNATURE = {0x50, 0x4B, 0x03, 0x04};
+    private static final byte[] OLE_SIGNATURE = {(byte) 0xD0, (byte) 0xCF, 0x11, (byte) 0xE0,
+            (byte) 0xA1, (byte) 0xB1, 0x1A, (byte) 0xE1};
+    private static final byte[] JPEG_SIGNATURE = {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF};
+
+    // 常见二进制文件类型开头的固定字节，用来区分普通文件和旧ECB加密文件
+    private static final Map<String, byte[]> FILE_SIGNATURES = Map.of(
+            "pdf", new byte[]{'%', 'P', 'D', 'F'},
+            "docx", ZIP_SIGNATURE, "xlsx", ZIP_SIGNATURE, "pptx", ZIP_SIGNATURE,
+            "doc", OLE_SIGNATURE, "xls", OLE_SIGNATURE, "ppt", OLE_SIGNATURE,
+            "png", new byte[]{(byte) 0x89, 'P', 'N', 'G'},
+            "jpg", JPEG_SIGNATURE, "jpeg", JPEG_SIGNATURE);
+
+    // 文本文件类型，内容应为合法的UTF-8
+    private static final Set<String> TEXT_EXTENSIONS = Set.of("txt", "md", "csv", "json", "xml", "html", "htm", "log");
+
+    // 文件根目录，创建实例时按当前工作目录确定
+    private final String rootPath = System.getProperty("user.dir") + File.separator + "files";
 
     @Autowired
     private EncryptionUtil encryptionUtil;
 
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    // 是否识别没有文件头的旧ECB加密文件，旧文件全部迁移后可以关闭，省去对普通文件的试解密
+    @Value("${klb.encryption.legacy-detection:true}")
+    private boolean legacyDetection;
+
+    // 文件内容摘要缓存，文件大小和修改时间不变时直接复用
+    private final ConcurrentHashMap<String, ContentHashEntry> contentHashCache = new ConcurrentHashMap<>();
+
+    @Value("${klb.plaintext-cache.enabled:true}")
+    private boolean plaintextCacheEnabled;
+
+    @Value("${klb.plaintext-cache.heap-mb:64}")
+    private long plaintextCacheHeapMb;
+
+    @Value("${klb.plaintext-cache.heap-entry-max-kb:1024}")
+    private long plaintextCacheHeapEntryMaxKb;
+
+    // 映射文件层默认关闭：映射文件是加密文件的明文，需要时显式配置容量
+    @Value("${klb.plaintext-cache.spill-mb:0}")
+    private long plaintextCacheSpillMb;
+
+    // 为空时使用随机命名的私有临时目录
+    @Value("${klb.plaintext-cache.spill-dir:}")
+    private String plaintextCacheSpillDir;
+
+    // 解密后明文的缓存：小文件在堆内，大文件在私有目录的映射文件中；未启用时为null
+    private PlaintextCache plaintextCache;
+
+    @PostConstruct
+    public void init() {
+        if (!plaintextCacheEnabled || plaintextCacheHeapMb <= 0) {
+            log.info("明文缓存未启用");
+            return;
+        }
+        Path spillDir = plaintextCacheSpillDir == null || plaintextCacheSpillDir.trim().isEmpty()
+                ? null : Paths.get(plaintextCacheSpillDir);
+        try {
+            plaintextCache = new PlaintextCache(plaintextCacheHeapMb * 1024 * 1024,
+                    plaintextCacheHeapEntryMaxKb * 1024, plaintextCacheSpillMb * 1024 * 1024, spillDir);
+            log.info("明文缓存容量: 堆内{}MB，映射文件{}MB", plaintextCacheHeapMb, Math.max(plaintextCacheSpillMb, 0));
+        } catch (IOException e) {
+            log.warn("明文缓存的映射文件目录不可用，只启用堆内缓存: {}", e.getMessage());
+            try {
+                plaintextCache = new PlaintextCache(plaintextCacheHeapMb * 1024 * 1024,
+                        plaintextCacheHeapEntryMaxKb * 1024, 0, null);
+            } catch (IOException ignored) {
+                // 不启用映射文件层时不会访问文件系统
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (plaintextCache != null) {
+            plaintextCache.close();
+        }
+    }
+
     @Override
     public String encryptAndSaveFile(MultipartFile file, String fileName) throws IOException {
         try {
             // 确保目录存在
-            File parentFile = new File(ROOT_PATH);
+            File parentFile = new File(rootPath);
             if (!parentFile.exists()) {
                 parentFile.mkdirs();
             }
 
-            // 读取文件内容
-            byte[] fileContent = file.getBytes();
-
-            // 加密文件内容
-            byte[] encryptedContent = encryptionUtil.encrypt(fileContent);
-
-            // 保存加密后的文件
-            String filePath = ROOT_PATH + File.separator + fileName;
+            // 先流式加密到临时文件，写完后再替换目标文件，读取方不会看到写了一半的文件
+            Path tempDir = Paths.get(rootPath, TEMP_DIR);
+            Files.createDirectories(tempDir);
+            Path tempFile = Files.createTempFile(tempDir, "upload-", ".tmp");
+            String filePath = rootPath + File.separator + fileName;
             Path path = Paths.get(filePath);
-            Files.write(path, encryptedContent);
+            try {
+                try (InputStream in = file.getInputStream();
+                     OutputStream fileOut = new BufferedOutputStream(Files.newOutputStream(tempFile));
+                     OutputStream out = encryptionUtil.createEncryptingStream(fileOut)) {
+                    in.transferTo(out);
+                }
+                Files.move(tempFile, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tempFile);
+            }
+
+            contentHashCache.remove(fileName);
+            invalidatePlaintext(fileName);
+            eventPublisher.publishEvent(new FileChangeEvent(this, fileName, FileChangeEvent.Type.SAVED));
 
             log.info("文件加密保存成功: {}", fileName);
             return filePath;
@@ -60,28 +188,16 @@ public class FileServiceImpl implements FileService {
     @Override
     public byte[] decryptAndReadFile(String fileName) throws IOException {
         try {
-            String filePath = ROOT_PATH + File.separator + fileName;
+            String filePath = rootPath + File.separator + fileName;
 
             // 检查文件是否存在
             if (!FileUtil.exist(filePath)) {
                 throw new IOException("文件不存在: " + fileName);
             }
 
-            // 读取文件内容
-            Path path = Paths.get(filePath);
-            byte[] fileContent = Files.readAllBytes(path);
-
-            // 尝试判断文件是否为加密格式
-            if (isEncryptedFile(fileContent)) {
-                // 解密文件内容
-                byte[] decryptedContent = encryptionUtil.decrypt(fileContent);
-                log.info("文件解密读取成功: {}", fileName);
-                return decryptedContent;
-            } else {
-                // 直接返回普通文本文件内容
-                log.info("文件直接读取成功（普通文本文件）: {}", fileName);
-                return fileContent;
-            }
+            byte[] content = toBytes(readPlaintext(fileName));
+            log.info("文件读取成功: {}", fileName);
+            return content;
 
         } catch (Exception e) {
             log.error("文件读取失败: {}", e.getMessage(), e);
@@ -89,14 +205,259 @@ public class FileServiceImpl implements FileService {
         }
     }
 
+    @Override
+    public InputStream openDecryptedStream(String fileName) throws IOException {
+        Path path = Paths.get(rootPath, fileName);
+        if (!Files.exists(path)) {
+            throw new IOException("文件不存在: " + fileName);
+        }
+
+        StoredFormat format = probeFormat(path, legacyDetection);
+        InputStream in = new BufferedInputStream(Files.newInputStream(path));
+        try {
+            switch (format) {
+                case CHUNKED:
+                    return encryptionUtil.createDecryptingStream(in);
+                case LEGACY_ECB:
+                    return new CipherInputStream(in, encryptionUtil.createDecryptCipher());
+                default:
+                    log.debug("文件以流方式直接读取（普通文件）: {}", fileName);
+                    return in;
+            }
+        } catch (Exception e) {
+            in.close();
+            throw new IOException("创建解密流失败: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public long getPlainLength(String fileName) throws IOException {
+        Path path = Paths.get(rootPath, fileName);
+        if (!Files.exists(path)) {
+            throw new IOException("文件不存在: " + fileName);
+        }
+
+        StoredFormat format = probeFormat(path, legacyDetection);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            switch (format) {
+                case CHUNKED:
+                    return ChunkedEncryption.plainLength(channel);
+                case LEGACY_ECB:
+                    // 只有最后一个分组带填充，解密它即可得到明文长度
+                    return channel.size() - AES_BLOCK_SIZE + encryptionUtil.decrypt(readLastBlock(channel)).length;
+                default:
+                    return channel.size();
+            }
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("计算明文长度失败: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void transferPlainRange(String fileName, long offset, long length, OutputStream out) throws IOException {
+        Path path = Paths.get(rootPath, fileName);
+        if (!Files.exists(path)) {
+            throw new IOException("文件不存在: " + fileName);
+        }
+
+        StoredFormat format = probeFormat(path, legacyDetection);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (format == StoredFormat.PLAIN) {
+                // 普通文件由文件通道直接传输到输出
+                WritableByteChannel target = Channels.newChannel(out);
+                long end = length < 0 ? channel.size() : Math.min(channel.size(), offset + length);
+                long position = offset;
+                while (position < end) {
+                    long n = channel.transferTo(position, end - position, target);
+                    if (n <= 0) {
+                        break;
+                    }
+                    position += n;
+                }
+                return;
+            }
+
+            try (InputStream in = openPlainStream(channel, format, offset)) {
+                byte[] buffer = new byte[COPY_BUFFER_SIZE];
+                long remaining = length < 0 ? Long.MAX_VALUE : length;
+                while (remaining > 0) {
+                    int n = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                    if (n < 0) {
+                        break;
+                    }
+                    out.write(buffer, 0, n);
+                    remaining -= n;
+                }
+            }
+        }
+    }
+
     /**
-     * 判断文件是否为加密格式
-     * 通过尝试解密来判断，如果解密失败则认为是普通文本文件
+     * 从指定明文偏移开始解密：分块格式定位到偏移所在的帧，ECB格式各分组独立，定位到偏移所在的分组
      */
-    private boolean isEncryptedFile(byte[] fileContent) {
+    private InputStream openPlainStream(FileChannel channel, StoredFormat format, long offset) throws IOException {
+        if (format == StoredFormat.CHUNKED) {
+            return encryptionUtil.createDecryptingStream(channel, offset);
+        }
+        channel.position(offset - offset % AES_BLOCK_SIZE);
+        InputStream in;
         try {
-            // 尝试解密，如果成功则认为是加密文件
-            encryptionUtil.decrypt(fileContent);
+            in = new CipherInputStream(new BufferedInputStream(Channels.newInputStream(channel)),
+                    encryptionUtil.createDecryptCipher());
+        } catch (Exception e) {
+            throw new IOException("创建解密流失败: " + e.getMessage(), e);
+        }
+        int skip = (int) (offset % AES_BLOCK_SIZE);
+        if (in.readNBytes(new byte[skip], 0, skip) < skip) {
+            in.close();
+            throw new IOException("明文偏移超出文件末尾: " + offset);
+        }
+        return in;
+    }
+
+    /**
+     * 读取文件明文，优先使用明文缓存；未命中时解密一遍并写入缓存
+     * 命中时返回只读缓冲区，未命中时返回包装新读取数组的缓冲区（缓存中保存的是副本）
+     */
+    private ByteBuffer readPlaintext(String fileName) throws IOException {
+        Path path = Paths.get(rootPath, fileName);
+        if (!Files.exists(path)) {
+            throw new IOException("文件不存在: " + fileName);
+        }
+        // 先取文件的大小和修改时间再读取，读取期间文件被替换时缓存条目会与新文件不匹配
+        long size = Files.size(path);
+        long lastModified = Files.getLastModifiedTime(path).toMillis();
+        if (plaintextCache != null) {
+            ByteBuffer cached = plaintextCache.get(fileName, size, lastModified);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        byte[] content;
+        try (InputStream in = openDecryptedStream(fileName)) {
+            content = in.readAllBytes();
+        }
+        if (plaintextCache != null) {
+            try {
+                plaintextCache.put(fileName, size, lastModified, content);
+            } catch (IOException e) {
+                log.warn("写入明文缓存失败: {}: {}", fileName, e.getMessage());
+            }
+        }
+        return ByteBuffer.wrap(content);
+    }
+
+    private static byte[] toBytes(ByteBuffer buffer) {
+        if (buffer.hasArray()) {
+            return buffer.array();
+        }
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private void invalidatePlaintext(String fileName) {
+        if (plaintextCache != null) {
+            plaintextCache.invalidate(fileName);
+        }
+    }
+
+    @Override
+    public Map<String, Object> getPlaintextCacheStats() {
+        if (plaintextCache == null) {
+            return Collections.singletonMap("enabled", false);
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", true);
+        stats.putAll(plaintextCache.stats());
+        return stats;
+    }
+
+    /**
+     * 文件在磁盘上的存储格式
+     */
+    private enum StoredFormat {
+        PLAIN, LEGACY_ECB, CHUNKED
+    }
+
+    /**
+     * 判断文件的存储格式，只读取文件头，需要时再读取最后一个分组
+     * 分块加密格式以固定的魔数和版本开头；旧的整体ECB格式没有文件头，
+     * ECB模式下各分组独立解密，整个文件能否解密只取决于长度是否为分组的整数倍以及最后一个分组的填充，
+     * 因此只解密最后一个分组即可得到与整体解密相同的判断；
+     * 普通文件的最后一个分组也有约1/256的概率恰好是有效填充，开头符合扩展名对应文件类型的直接按普通文件处理
+     * @param checkLegacy 是否检查旧的ECB格式，旧文件全部迁移后可以关闭
+     */
+    private StoredFormat probeFormat(Path path, boolean checkLegacy) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteBuffer header = ByteBuffer.allocate((int) Math.min(size, ChunkedEncryption.HEADER_LENGTH));
+            readFully(channel, header, 0);
+            if (ChunkedEncryption.hasHeader(header.array())) {
+                return StoredFormat.CHUNKED;
+            }
+            if (!checkLegacy || size == 0 || size % AES_BLOCK_SIZE != 0) {
+                return StoredFormat.PLAIN;
+            }
+            if (hasFileSignature(extensionOf(path), header.array(), header.limit())) {
+                return StoredFormat.PLAIN;
+            }
+            return hasValidPadding(readLastBlock(channel)) ? StoredFormat.LEGACY_ECB : StoredFormat.PLAIN;
+        }
+    }
+
+    private static String extensionOf(Path path) {
+        return FileUtil.extName(path.getFileName().toString()).toLowerCase();
+    }
+
+    /**
+     * 判断内容开头是否是扩展名对应的二进制文件类型的固定字节
+     */
+    private static boolean hasFileSignature(String extension, byte[] head, int length) {
+        byte[] signature = FILE_SIGNATURES.get(extension);
+        return signature != null && length >= signature.length
+                && Arrays.equals(head, 0, signature.length, signature, 0, signature.length);
+    }
+
+    /**
+     * 判断内容是否符合扩展名对应的文件类型：二进制类型比较开头的固定字节，文本类型要求是合法的UTF-8
+     * 扩展名不是已知类型时无法判断，返回false
+     * @param complete 内容是否已到文件末尾，否则末尾被截断的多字节字符不算错误
+     */
+    private static boolean matchesFileType(String extension, byte[] head, int length, boolean complete) {
+        if (FILE_SIGNATURES.containsKey(extension)) {
+            return hasFileSignature(extension, head, length);
+        }
+        if (!TEXT_EXTENSIONS.contains(extension)) {
+            return false;
+        }
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        return !decoder.decode(ByteBuffer.wrap(head, 0, length), CharBuffer.allocate(length), complete).isError();
+    }
+
+    private static byte[] readLastBlock(FileChannel channel) throws IOException {
+        ByteBuffer lastBlock = ByteBuffer.allocate(AES_BLOCK_SIZE);
+        readFully(channel, lastBlock, channel.size() - AES_BLOCK_SIZE);
+        return lastBlock.array();
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position + buffer.position());
+            if (n < 0) {
+                break;
+            }
+        }
+    }
+
+    private boolean hasValidPadding(byte[] lastBlock) {
+        try {
+            encryptionUtil.decrypt(lastBlock);
             return true;
         } catch (Exception e) {
             // 解密失败，认为是普通文本文件
@@ -107,16 +468,24 @@ public class FileServiceImpl implements FileService {
 
     @Override
     public boolean fileExists(String fileName) {
-        String filePath = ROOT_PATH + File.separator + fileName;
+        String filePath = rootPath + File.separator + fileName;
         return FileUtil.exist(filePath);
     }
 
+    @Override
+    public File getStoredFile(String fileName) {
+        return new File(rootPath, fileName);
+    }
+
     @Override
     public boolean deleteFile(String fileName) {
         try {
-            String filePath = ROOT_PATH + File.separator + fileName;
+            String filePath = rootPath + File.separator + fileName;
             if (FileUtil.exist(filePath)) {
                 FileUtil.del(filePath);
+                contentHashCache.remove(fileName);
+                invalidatePlaintext(fileName);
+                eventPublisher.publishEvent(new FileChangeEvent(this, fileName, FileChangeEvent.Type.DELETED));
                 log.info("文件删除成功: {}", fileName);
                 return true;
             }
@@ -136,10 +505,10 @@ public class FileServiceImpl implements FileService {
         }
 
         String normalizedKeyword = keyword.toLowerCase().trim();
-        File rootDir = new File(ROOT_PATH);
+        File rootDir = new File(rootPath);
 
         if (!rootDir.exists() || !rootDir.isDirectory()) {
-            log.warn("文件根目录不存在: {}", ROOT_PATH);
+            log.warn("文件根目录不存在: {}", rootPath);
             return results;
         }
 
@@ -171,10 +540,10 @@ public class FileServiceImpl implements FileService {
     @Override
     public List<String> getAllFileNames() {
         List<String> fileNames = new ArrayList<>();
-        File rootDir = new File(ROOT_PATH);
+        File rootDir = new File(rootPath);
 
         if (!rootDir.exists() || !rootDir.isDirectory()) {
-            log.warn("文件根目录不存在: {}", ROOT_PATH);
+            log.warn("文件根目录不存在: {}", rootPath);
             return fileNames;
         }
 
@@ -213,16 +582,8 @@ public class FileServiceImpl implements FileService {
         // 检查内容匹配（仅对文本类型文件）
         if (isTextFile(extension)) {
             try {
-                // 尝试直接读取文件内容（普通文本文件）
-                String content;
-                try {
-                    content = FileUtil.readUtf8String(file);
-                } catch (Exception e) {
-                    // 如果直接读取失败，尝试解密读取（加密文件）
-                    log.debug("直接读取文件失败，尝试解密读取: {}", fileName);
-                    byte[] decryptedContent = decryptAndReadFile(fileName);
-                    content = new String(decryptedContent, StandardCharsets.UTF_8);
-                }
+                // 优先使用明文缓存，未命中时按文件头判断是否加密，读取一遍得到明文
+                String content = StandardCharsets.UTF_8.decode(readPlaintext(fileName)).toString();
 
                 // 搜索内容中的关键字
                 String[] lines = content.split("\n");
@@ -298,7 +659,7 @@ public class FileServiceImpl implements FileService {
 
     @Override
     public String readFileContent(String fileName) throws IOException {
-        String filePath = ROOT_PATH + File.separator + fileName;
+        String filePath = rootPath + File.separator + fileName;
         File file = new File(filePath);
 
         if (!file.exists()) {
@@ -306,22 +667,164 @@ public class FileServiceImpl implements FileService {
         }
 
         try {
-            // 首先尝试解密读取
-            byte[] encryptedContent = Files.readAllBytes(file.toPath());
-            byte[] decryptedContent = encryptionUtil.decrypt(encryptedContent);
-            String content = new String(decryptedContent, StandardCharsets.UTF_8);
-            log.info("文件解密读取成功: {}", fileName);
+            String content = StandardCharsets.UTF_8.decode(readPlaintext(fileName)).toString();
+            log.info("文件读取成功: {}", fileName);
             return content;
-        } catch (Exception e) {
-            // 如果解密失败，尝试直接读取（普通文本文件）
+        } catch (IOException e) {
+            log.error("文件读取失败: {}, 错误: {}", fileName, e.getMessage());
+            throw new IOException("无法读取文件: " + fileName, e);
+        }
+    }
+
+    @Override
+    public String getContentHash(String fileName) throws IOException {
+        File file = new File(rootPath + File.separator + fileName);
+        if (!file.exists()) {
+            throw new IOException("文件不存在: " + fileName);
+        }
+
+        long size = file.length();
+        long lastModified = file.lastModified();
+        ContentHashEntry cached = contentHashCache.get(fileName);
+        if (cached != null && cached.size == size && cached.lastModified == lastModified) {
+            return cached.hash;
+        }
+
+        String hash;
+        try (InputStream in = openDecryptedStream(fileName)) {
+            hash = DigestUtil.sha256Hex(in);
+        }
+        contentHashCache.put(fileName, new ContentHashEntry(size, lastModified, hash));
+        return hash;
+    }
+
+    @Override
+    public Map<String, Integer> migrateLegacyEncryptedFiles() {
+        int migrated = 0;
+        int skipped = 0;
+        int failed = 0;
+        File[] files = new File(rootPath).listFiles(File::isFile);
+        for (File file : files == null ? new File[0] : files) {
             try {
-                String content = Files.readString(file.toPath(), StandardCharsets.UTF_8);
-                log.info("文件直接读取成功（普通文本文件）: {}", fileName);
-                return content;
-            } catch (Exception e2) {
-                log.error("文件读取失败: {}, 解密错误: {}, 直接读取错误: {}", fileName, e.getMessage(), e2.getMessage());
-                throw new IOException("无法读取文件: " + fileName, e2);
+                // 迁移时不受开关影响，总是检查旧格式
+                if (probeFormat(file.toPath(), true) != StoredFormat.LEGACY_ECB) {
+                    skipped++;
+                    continue;
+                }
+                if (!migrateFile(file.toPath())) {
+                    skipped++;
+                    continue;
+                }
+                contentHashCache.remove(file.getName());
+                invalidatePlaintext(file.getName());
+                migrated++;
+                log.info("文件已迁移为分块加密格式: {}", file.getName());
+            } catch (Exception e) {
+                failed++;
+                log.error("文件迁移失败: {}: {}", file.getName(), e.getMessage(), e);
             }
         }
+        log.info("加密格式迁移完成，已转换: {}，无需转换: {}，失败: {}", migrated, skipped, failed);
+
+        Map<String, Integer> stats = new LinkedHashMap<>();
+        stats.put("migrated", migrated);
+        stats.put("skipped", skipped);
+        stats.put("failed", failed);
+        return stats;
+    }
+
+    /**
+     * 流式解密旧文件并按分块格式重新加密到临时文件，校验通过后备份原文件再替换
+     * 最后一个分组的填充有效只说明文件可能是旧格式，替换前还要确认：
+     * 原始内容不符合扩展名对应的文件类型而解密结果符合，整个文件解密成功且重新加密后与原文件一致，
+     * 新文件解密后与旧文件的明文一致
+     * @return 是否已转换；无法确认是旧加密文件时返回false，原文件不变
+     */
+    private boolean migrateFile(Path path) throws Exception {
+        String extension = extensionOf(path);
+        byte[] head = new byte[MIGRATE_PROBE_LENGTH];
+        int headLength;
+        try (InputStream in = Files.newInputStream(path)) {
+            headLength = in.readNBytes(head, 0, head.length);
+        }
+        if (matchesFileType(extension, head, headLength, headLength < head.length)) {
+            log.warn("文件原始内容已符合其文件类型，按普通文件跳过: {}", path.getFileName());
+            return false;
+        }
+
+        FileTime lastModified = Files.getLastModifiedTime(path);
+        Path tempDir = Paths.get(rootPath, TEMP_DIR);
+        Files.createDirectories(tempDir);
+        Path tempFile = Files.createTempFile(tempDir, "migrate-", ".tmp");
+        try {
+            MessageDigest cipherDigest = MessageDigest.getInstance("SHA-256");
+            MessageDigest reencryptedDigest = MessageDigest.getInstance("SHA-256");
+            MessageDigest plainDigest = MessageDigest.getInstance("SHA-256");
+            byte[] plainHead = new byte[MIGRATE_PROBE_LENGTH];
+            int plainHeadLength = 0;
+            // 填充无效时 CipherInputStream 在读到末尾时抛出异常，整个文件都必须能解密
+            try (InputStream in = new CipherInputStream(new DigestInputStream(
+                         new BufferedInputStream(Files.newInputStream(path)), cipherDigest),
+                         encryptionUtil.createDecryptCipher());
+                 OutputStream reencrypted = new CipherOutputStream(
+                         new DigestOutputStream(OutputStream.nullOutputStream(), reencryptedDigest),
+                         encryptionUtil.createEncryptCipher());
+                 OutputStream fileOut = new BufferedOutputStream(Files.newOutputStream(tempFile));
+                 OutputStream out = encryptionUtil.createEncryptingStream(fileOut)) {
+                byte[] buffer = new byte[COPY_BUFFER_SIZE];
+                int n;
+                while ((n = in.read(buffer)) != -1) {
+                    if (plainHeadLength < plainHead.length) {
+                        int length = Math.min(n, plainHead.length - plainHeadLength);
+                        System.arraycopy(buffer, 0, plainHead, plainHeadLength, length);
+                        plainHeadLength += length;
+                    }
+                    plainDigest.update(buffer, 0, n);
+                    reencrypted.write(buffer, 0, n);
+                    out.write(buffer, 0, n);
+                }
+            }
+
+            if (!matchesFileType(extension, plainHead, plainHeadLength, plainHeadLength < plainHead.length)) {
+                log.warn("文件解密结果不符合其文件类型或类型无法识别，无法确认是旧加密文件，未转换: {}", path.getFileName());
+                return false;
+            }
+            if (!MessageDigest.isEqual(cipherDigest.digest(), reencryptedDigest.digest())) {
+                throw new IOException("解密结果重新加密后与原文件不一致");
+            }
+            try (InputStream in = encryptionUtil.createDecryptingStream(
+                    new BufferedInputStream(Files.newInputStream(tempFile)))) {
+                if (!MessageDigest.isEqual(plainDigest.digest(), DigestUtil.sha256(in))) {
+                    throw new IOException("转换后的文件解密结果与原文件不一致");
+                }
+            }
+
+            // 替换前保留原文件，误判时可以恢复
+            Path backupDir = Paths.get(rootPath, LEGACY_BACKUP_DIR);
+            Files.createDirectories(backupDir);
+            Path backup = backupDir.resolve(path.getFileName() + "." + lastModified.toMillis());
+            Files.copy(path, backup, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+
+            Files.setLastModifiedTime(tempFile, lastModified);
+            Files.move(tempFile, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    /**
+     * 文件摘要缓存项
+     */
+    private static class ContentHashEntry {
+        private final long size;
+        private final long lastModified;
+        private final String hash;
+
+        private ContentHashEntry(long size, long lastModified, String hash) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.hash = hash;
+        }
     }
 }
@@ -0,0 +1,320 @@
+package com.cjlu.finalversionwebsystem.service.impl;
+
+import com.cjlu.finalversionwebsystem.File.service.FileStorageService;
+import com.cjlu.finalversionwebsystem.entity.IngestJob;
+import com.cjlu.finalversionwebsystem.event.FileChangeEvent;
+import com.cjlu.finalversionwebsystem.mapper.IngestJobMapper;
+import com.cjlu.finalversionwebsystem.mapper.NewKLBMapper;
+import com.cjlu.finalversionwebsystem.service.Interface.DocumentService;
+import com.cjlu.finalversionwebsystem.service.Interface.IngestJobService;
+import com.cjlu.finalversionwebsystem.service.Interface.KnowledgeBaseIndexService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 文件摄取任务服务实现
+ * 任务登记在 ingest_job 表中，调度线程定时领取到期的排队任务交给有界的工作线程池执行，
+ * 失败的任务按指数退避重新排队，超过最大次数后标记为失败；服务重启时未完成的任务重新排队。
+ * 同一文件的任务执行期间再次登记时不会并发执行，而是在本次执行结束后重新排队。
+ * 知识库向量集合的同步也作为任务在后台执行：转换完成、知识库创建或修改时登记，
+ * 并定时检查知识库目录，目录中的文件有增删改时登记同步任务，对话时只读取已同步的集合；
+ * 同步失败后与其他任务一样按退避时间重试，定时检查不会重复登记，直到目录再次变化
+ */
+@Slf4j
+@Service
+public class IngestJobServiceImpl implements IngestJobService {
+
+    private static final int STATUS_LIST_LIMIT = 100;
+    private static final int ERROR_MAX_LENGTH = 1000;
+
+    @Autowired
+    private IngestJobMapper ingestJobMapper;
+
+    @Autowired
+    private DocumentService documentService;
+
+    @Autowired
+    private FileStorageService fileStorageService;
+
+    @Autowired
+    private KnowledgeBaseIndexService knowledgeBaseIndexService;
+
+    @Autowired
+    private NewKLBMapper klbMapper;
+
+    @Value("${klb.ingest.workers:2}")
+    private int workers;
+
+    @Value("${klb.ingest.max-attempts:3}")
+    private int maxAttempts;
+
+    @Value("${klb.ingest.retry-backoff-ms:5000}")
+    private long retryBackoffMs;
+
+    @Value("${klb.ingest.poll-interval-ms:1000}")
+    private long pollIntervalMs;
+
+    // 检查知识库目录是否有变化的间隔
+    @Value("${klb.rag.collection.sync-interval-seconds:60}")
+    private long syncIntervalSeconds;
+
+    // 空闲工作线程数，调度时最多领取这么多任务
+    private Semaphore freeWorkers;
+    private ExecutorService workerPool;
+    private ScheduledExecutorService dispatcher;
+
+    @PostConstruct
+    public void init() {
+        ingestJobMapper.createTable();
+        int resumed = ingestJobMapper.requeueInterrupted(System.currentTimeMillis());
+        if (resumed > 0) {
+            log.info("{} 个未完成的摄取任务已重新排队", resumed);
+        }
+
+        int poolSize = Math.max(1, workers);
+        freeWorkers = new Semaphore(poolSize);
+        AtomicInteger threadIndex = new AtomicInteger();
+        workerPool = Executors.newFixedThreadPool(poolSize, runnable -> {
+            Thread thread = new Thread(runnable, "ingest-worker-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        dispatcher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ingest-dispatcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        dispatcher.scheduleWithFixedDelay(this::dispatch, 0, pollIntervalMs, TimeUnit.MILLISECONDS);
+        dispatcher.scheduleWithFixedDelay(this::scanKnowledgeBases, 0, Math.max(1, syncIntervalSeconds), TimeUnit.SECONDS);
+        log.info("摄取任务服务已启动，工作线程数: {}", poolSize);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        dispatcher.shutdownNow();
+        workerPool.shutdownNow();
+    }
+
+    /**
+     * 加密文件保存后登记嵌入任务，删除后取消尚未执行的任务
+     */
+    @EventListener
+    public void onFileChange(FileChangeEvent event) {
+        String fileName = event.getFileName();
+        if (!documentService.isSupportedDocument(fileName)) {
+            return;
+        }
+        try {
+            if (event.getType() == FileChangeEvent.Type.SAVED) {
+                enqueue(IngestJob.TYPE_INDEX, fileName);
+            } else {
+                ingestJobMapper.delete(IngestJob.TYPE_INDEX, fileName);
+            }
+        } catch (Exception e) {
+            // 登记失败不影响上传，索引会在首次对话时构建
+            log.warn("登记文件 {} 的摄取任务失败: {}", fileName, e.getMessage());
+        }
+    }
+
+    @Override
+    public void enqueue(String jobType, String fileName) {
+        long now = System.currentTimeMillis();
+        while (ingestJobMapper.requeue(jobType, fileName, now) == 0
+                && ingestJobMapper.touchRunning(jobType, fileName, now) == 0
+                && ingestJobMapper.insertQueued(jobType, fileName, now) == 0) {
+            // 几条语句之间任务被其他线程新建或领取，按新的状态重新登记
+            now = System.currentTimeMillis();
+        }
+        log.info("已登记摄取任务: {} {}", jobType, fileName);
+        // 不等下一次轮询，立即尝试调度
+        dispatcher.execute(this::dispatch);
+    }
+
+    @Override
+    public List<IngestJob> getStatus(String fileName) {
+        if (fileName == null || fileName.trim().isEmpty()) {
+            return ingestJobMapper.selectRecent(STATUS_LIST_LIMIT);
+        }
+        return ingestJobMapper.selectByFileName(fileName);
+    }
+
+    /**
+     * 领取到期的排队任务，数量不超过空闲工作线程数；只在调度线程中执行
+     */
+    private void dispatch() {
+        try {
+            int free = freeWorkers.availablePermits();
+            if (free == 0) {
+                return;
+            }
+            long now = System.currentTimeMillis();
+            for (IngestJob job : ingestJobMapper.selectRunnable(now, free)) {
+                String runningState = IngestJob.TYPE_CONVERT.equals(job.getJobType())
+                        ? IngestJob.STATE_CONVERTING : IngestJob.STATE_EMBEDDING;
+                if (!freeWorkers.tryAcquire()) {
+                    return;
+                }
+                if (ingestJobMapper.claim(job.getId(), runningState, now) != 1) {
+                    freeWorkers.release();
+                    continue;
+                }
+                job.setState(runningState);
+                job.setAttempts(job.getAttempts() + 1);
+                job.setUpdateTime(now);
+                workerPool.execute(() -> run(job));
+            }
+        } catch (Exception e) {
+            log.warn("调度摄取任务失败: {}", e.getMessage());
+        }
+    }
+
+    private void run(IngestJob job) {
+        long startTime = System.currentTimeMillis();
+        try {
+            execute(job);
+            complete(job, IngestJob.STATE_READY, null, job.getNextRunTime(), System.currentTimeMillis());
+            log.info("摄取任务完成: {} {}，耗时: {}ms", job.getJobType(), job.getFileName(),
+                    System.currentTimeMillis() - startTime);
+        } catch (Exception e) {
+            String error = e.getMessage() == null ? e.getClass().getName() : e.getMessage();
+            if (error.length() > ERROR_MAX_LENGTH) {
+                error = error.substring(0, ERROR_MAX_LENGTH);
+            }
+            long now = System.currentTimeMillis();
+            if (job.getAttempts() < maxAttempts) {
+                long backoff = retryBackoffMs << Math.min(job.getAttempts() - 1, 10);
+                complete(job, IngestJob.STATE_QUEUED, error, now + backoff, now);
+                log.warn("摄取任务失败，{}ms 后重试（第 {} 次）: {} {}: {}",
+                        backoff, job.getAttempts(), job.getJobType(), job.getFileName(), error);
+            } else {
+                complete(job, IngestJob.STATE_FAILED, error, now, now);
+                log.error("摄取任务失败，已达到最大重试次数: {} {}", job.getJobType(), job.getFileName(), e);
+            }
+        } finally {
+            freeWorkers.release();
+            if (!dispatcher.isShutdown()) {
+                dispatcher.execute(this::dispatch);
+            }
+        }
+    }
+
+    /**
+     * 记录任务结果；执行期间任务被重新登记时不记录本次结果，直接重新排队
+     */
+    private void complete(IngestJob job, String state, String error, long nextRunTime, long now) {
+        if (ingestJobMapper.finish(job.getId(), job.getUpdateTime(), state, error, nextRunTime, now) == 1) {
+            return;
+        }
+        if (ingestJobMapper.requeueUpdated(job.getId(), job.getUpdateTime(), now) == 1) {
+            log.info("摄取任务执行期间被重新登记，重新排队: {} {}", job.getJobType(), job.getFileName());
+        }
+    }
+
+    private void execute(IngestJob job) throws Exception {
+        switch (job.getJobType()) {
+            case IngestJob.TYPE_CONVERT:
+                fileStorageService.convertToMarkdown(job.getFileName());
+                enqueueSyncForDirectory(fileStorageService.getFilePath(job.getFileName()).getParent());
+                break;
+            case IngestJob.TYPE_INDEX:
+                documentService.reindexFile(job.getFileName());
+                break;
+            case IngestJob.TYPE_SYNC:
+                knowledgeBaseIndexService.syncCollection(job.getFileName());
+                break;
+            default:
+                throw new IllegalArgumentException("未知的摄取任务类型: " + job.getJobType());
+        }
+    }
+
+    /**
+     * 文件转换完成后，为文件所在目录对应的知识库登记同步任务
+     */
+    private void enqueueSyncForDirectory(Path directory) {
+        if (directory == null) {
+            return;
+        }
+        for (Map<String, Object> klb : klbMapper.selectAllKLBs()) {
+            Object klbName = klb.get("KLBName");
+            Object location = klb.get("location");
+            if (klbName != null && location != null && Paths.get(location.toString()).normalize().equals(directory)) {
+                enqueue(IngestJob.TYPE_SYNC, klbName.toString());
+            }
+        }
+    }
+
+    /**
+     * 定时检查各知识库目录，文件有增删改时登记同步任务；只在调度线程中执行
+     */
+    private void scanKnowledgeBases() {
+        try {
+            for (Map<String, Object> klb : klbMapper.selectAllKLBs()) {
+                Object klbName = klb.get("KLBName");
+                if (klbName == null) {
+                    continue;
+                }
+                try {
+                    if (!isSyncSettled(klbName.toString(), klb.get("location"))
+                            && knowledgeBaseIndexService.needsSync(klbName.toString())) {
+                        enqueue(IngestJob.TYPE_SYNC, klbName.toString());
+                    }
+                } catch (Exception e) {
+                    log.debug("检查知识库 {} 的目录失败: {}", klbName, e.getMessage());
+                }
+            }
+        } catch (Exception e) {
+            log.warn("检查知识库目录失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 知识库的同步任务是否无需重新登记：任务仍在排队（包括等待退避重试）或执行中，
+     * 或者已达到最大重试次数而失败、之后目录中的文件没有变化
+     */
+    private boolean isSyncSettled(String klbName, Object location) {
+        for (IngestJob job : ingestJobMapper.selectByFileName(klbName)) {
+            if (!IngestJob.TYPE_SYNC.equals(job.getJobType())) {
+                continue;
+            }
+            if (IngestJob.STATE_READY.equals(job.getState())) {
+                return false;
+            }
+            if (IngestJob.STATE_FAILED.equals(job.getState())) {
+                return location == null || latestModification(new File(location.toString())) <= job.getUpdateTime();
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 目录及其中文件的最后修改时间；新增、删除文件会改变目录的修改时间
+     */
+    private static long latestModification(File directory) {
+        long latest = directory.lastModified();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                latest = Math.max(latest, file.lastModified());
+            }
+        }
+        return latest;
+    }
+}
@@ -0,0 +1,474 @@
+package com.cjlu.finalversionwebsystem.service.impl;
+
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.crypto.digest.DigestUtil;
+import com.cjlu.finalversionwebsystem.entity.Permission;
+import com.cjlu.finalversionwebsystem.mapper.NewKLBMapper;
+import com.cjlu.finalversionwebsystem.mapper.PermissionMapper;
+import com.cjlu.finalversionwebsystem.rag.CollectionContentRetriever;
+import com.cjlu.finalversionwebsystem.rag.HnswEmbeddingStore;
+import com.cjlu.finalversionwebsystem.rag.MarkdownSplitter;
+import com.cjlu.finalversionwebsystem.rag.SegmentDiff;
+import com.cjlu.finalversionwebsystem.service.Interface.KnowledgeBaseIndexService;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.query.Query;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 知识库向量集合服务实现类
+ * 每个知识库的向量集合是一张持久化的HNSW图，存放在 index/klb 目录下，
+ * 集合清单记录每个文件的大小、修改时间以及对应的向量ID，用于增量同步
+ */
+@Slf4j
+@Service
+public class KnowledgeBaseIndexServiceImpl implements KnowledgeBaseIndexService {
+
+    private static final String GRAPH_SUFFIX = ".hnsw";
+    private static final String MANIFEST_SUFFIX = ".properties";
+
+    // 文本段切分参数，与嵌入模型名一起参与集合文件寻址，切分方式变化后集合重新构建
+    private static final int SEGMENT_MAX_TOKENS = 500;
+    private static final String SPLITTER_SIGNATURE = "markdown-" + SEGMENT_MAX_TOKENS;
+
+    // 每攒够这么多待嵌入的文本段就嵌入一批，读取大文件时不保留全部文本段
+    private static final int EMBED_BATCH_SEGMENTS = 64;
+
+    // 参与索引的文本文件类型，其他格式的文件在上传时已生成同名的md副本
+    private static final List<String> INDEXED_TYPES = Arrays.asList("md", "txt");
+
+    @Autowired
+    private NewKLBMapper klbMapper;
+
+    @Autowired
+    private PermissionMapper permissionMapper;
+
+    @Autowired
+    private EmbeddingModel embeddingModel;
+
+    @Value("${langchain4j.open-ai.embedding-model.model-name:text-embedding-v3}")
+    private String embeddingModelName;
+
+    @Value("${klb.rag.hnsw.m:16}")
+    private int hnswM;
+
+    @Value("${klb.rag.hnsw.ef-construction:200}")
+    private int hnswEfConstruction;
+
+    @Value("${klb.rag.hnsw.ef-search:100}")
+    private int hnswEfSearch;
+
+    @Value("${klb.rag.collection.max-results:5}")
+    private int maxResults;
+
+    @Value("${klb.rag.collection.min-score:0.6}")
+    private double minScore;
+
+    // 集合目录，位于工作目录下
+    private String collectionPath = System.getProperty("user.dir") + File.separator + "index" + File.separator + "klb";
+
+    // 知识库名 -> 向量集合
+    private final ConcurrentHashMap<String, VectorCollection> collections = new ConcurrentHashMap<>();
+
+    @Override
+    public int syncCollection(String klbName) throws IOException {
+        VectorCollection collection = getOrLoadCollection(klbName);
+        synchronized (collection) {
+            return sync(klbName, collection);
+        }
+    }
+
+    @Override
+    public boolean needsSync(String klbName) throws IOException {
+        Map<String, File> currentFiles = listIndexedFiles(klbDirectory(klbName));
+        // 读取磁盘上的集合清单，不等待正在进行的同步
+        Path manifestFile = collectionFile(klbName, MANIFEST_SUFFIX);
+        Map<String, FileEntry> indexed = Files.exists(manifestFile) ? readManifest(manifestFile) : Collections.emptyMap();
+        if (indexed.size() != currentFiles.size()) {
+            return true;
+        }
+        for (Map.Entry<String, File> entry : currentFiles.entrySet()) {
+            FileEntry fileEntry = indexed.get(entry.getKey());
+            if (fileEntry == null || entry.getValue().length() != fileEntry.size
+                    || entry.getValue().lastModified() != fileEntry.lastModified) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public List<String> getPermittedKLBNames(String userName) {
+        if (userName == null || userName.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Set<String> klbNames = new LinkedHashSet<>();
+        for (Permission permission : permissionMapper.selectPermissionTableByUserName(userName)) {
+            klbNames.add(permission.getKLBName());
+        }
+        for (Map<String, Object> klb : klbMapper.selectKLBByKLBCreator(userName)) {
+            Object klbName = klb.get("KLBName");
+            if (klbName != null) {
+                klbNames.add(klbName.toString());
+            }
+        }
+        return new ArrayList<>(klbNames);
+    }
+
+    @Override
+    public String getCollectionVersion(List<String> klbNames) {
+        List<String> sorted = new ArrayList<>(klbNames);
+        Collections.sort(sorted);
+        StringBuilder version = new StringBuilder();
+        for (String klbName : sorted) {
+            if (version.length() > 0) {
+                version.append(',');
+            }
+            version.append(klbName).append('@');
+            try {
+                version.append(getOrLoadCollection(klbName).version);
+            } catch (Exception e) {
+                // 加载失败的知识库不参与检索，单独标记
+                version.append('?');
+            }
+        }
+        return version.toString();
+    }
+
+    @Override
+    public ContentRetriever createRetriever(List<String> klbNames, Set<String> sourceFiles) {
+        List<EmbeddingStore<TextSegment>> stores = new ArrayList<>();
+        for (String klbName : klbNames) {
+            try {
+                stores.add(getOrLoadCollection(klbName).store);
+            } catch (Exception e) {
+                log.warn("加载知识库 {} 的向量集合失败，跳过: {}", klbName, e.getMessage());
+            }
+        }
+        return new CollectionContentRetriever(embeddingModel, stores, maxResults, minScore, sourceFiles);
+    }
+
+    @Override
+    public List<Content> retrieveForUser(String userName, String query) {
+        List<String> klbNames = getPermittedKLBNames(userName);
+        if (klbNames.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Content> contents = createRetriever(klbNames, null).retrieve(Query.from(query));
+        log.info("用户 {} 在 {} 个知识库中检索到 {} 条相关内容", userName, klbNames.size(), contents.size());
+        return contents;
+    }
+
+    /**
+     * 获取向量集合，只从内存或磁盘加载；同步由后台摄取任务完成，检索时不列目录也不嵌入
+     */
+    private VectorCollection getOrLoadCollection(String klbName) throws IOException {
+        VectorCollection collection = collections.get(klbName);
+        if (collection != null) {
+            return collection;
+        }
+        synchronized (collections) {
+            collection = collections.get(klbName);
+            if (collection == null) {
+                collection = loadCollection(klbName);
+                collections.put(klbName, collection);
+            }
+            return collection;
+        }
+    }
+
+    /**
+     * 增量同步（调用方需持有集合锁）
+     */
+    private int sync(String klbName, VectorCollection collection) throws IOException {
+        File directory = klbDirectory(klbName);
+        Map<String, File> currentFiles = listIndexedFiles(directory);
+
+        // 移除已删除文件的旧向量，已修改的文件留待按文本段比对
+        List<String> staleIds = new ArrayList<>();
+        Map<String, FileEntry> modifiedFiles = new HashMap<>();
+        for (Map.Entry<String, FileEntry> entry : new ArrayList<>(collection.files.entrySet())) {
+            File file = currentFiles.get(entry.getKey());
+            if (file == null) {
+                staleIds.addAll(entry.getValue().ids);
+                collection.files.remove(entry.getKey());
+            } else if (file.length() != entry.getValue().size || file.lastModified() != entry.getValue().lastModified) {
+                modifiedFiles.put(entry.getKey(), entry.getValue());
+                collection.files.remove(entry.getKey());
+            }
+        }
+        if (!staleIds.isEmpty()) {
+            collection.store.removeAll(staleIds);
+        }
+
+        // 嵌入新增的文件，修改过的文件只嵌入变化的文本段
+        int embeddedFiles = 0;
+        List<String> failedFiles = new ArrayList<>();
+        for (Map.Entry<String, File> entry : currentFiles.entrySet()) {
+            if (collection.files.containsKey(entry.getKey())) {
+                continue;
+            }
+            try {
+                FileEntry indexed = indexFile(klbName, entry.getValue(), collection.store, modifiedFiles.get(entry.getKey()));
+                collection.files.put(entry.getKey(), indexed);
+                embeddedFiles++;
+            } catch (Exception e) {
+                // 保留修改前的记录，下次同步时仍按差异重试，旧向量不会成为无主数据
+                FileEntry previous = modifiedFiles.get(entry.getKey());
+                if (previous != null) {
+                    collection.files.put(entry.getKey(), previous);
+                }
+                failedFiles.add(entry.getKey());
+                log.warn("知识库 {} 中的文件 {} 嵌入失败，下次同步时重试: {}", klbName, entry.getKey(), e.getMessage());
+            }
+        }
+
+        collection.lastSync = System.currentTimeMillis();
+        if (!staleIds.isEmpty() || embeddedFiles > 0) {
+            collection.version = collection.lastSync;
+            saveCollection(klbName, collection);
+            log.info("知识库 {} 向量集合已同步: 重新嵌入 {} 个文件，移除 {} 个旧向量，当前向量数 {}",
+                    klbName, embeddedFiles, staleIds.size(), collection.store.size());
+        }
+        // 其他文件的结果已保存；抛出异常使同步任务按退避时间重试，超过最大次数后标记为失败
+        if (!failedFiles.isEmpty()) {
+            throw new IOException("知识库 " + klbName + " 中有 " + failedFiles.size() + " 个文件嵌入失败: " + failedFiles);
+        }
+        return embeddedFiles;
+    }
+
+    /**
+     * 嵌入文件并写入集合。向量ID为 "文件名#文本段ID"，文件修改后ID不变的文本段保留原向量，
+     * 只嵌入新增或修改的文本段，不再出现的文本段从图中删除。
+     * 按Markdown结构流式切分，边读边分批嵌入；中途失败时删除本次已写入的向量，图中不留下无主数据
+     * @param previous 文件修改前的索引信息，新文件为null
+     */
+    private FileEntry indexFile(String klbName, File file, HnswEmbeddingStore store, FileEntry previous) throws IOException {
+        long size = file.length();
+        long lastModified = file.lastModified();
+
+        Metadata metadata = new Metadata();
+        metadata.add("source_file", file.getName());
+        metadata.add("klb_name", klbName);
+
+        Set<String> previousIds = previous == null ? Collections.emptySet() : new HashSet<>(previous.ids);
+        SegmentDiff.IdSequence idSequence = new SegmentDiff.IdSequence();
+        List<String> ids = new ArrayList<>();
+        List<String> pendingIds = new ArrayList<>();
+        List<TextSegment> pendingSegments = new ArrayList<>();
+        List<String> addedIds = new ArrayList<>();
+
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(Files.newInputStream(file.toPath()), StandardCharsets.UTF_8))) {
+            new MarkdownSplitter(SEGMENT_MAX_TOKENS).split(reader, metadata, segment -> {
+                String id = file.getName() + "#" + idSequence.next(segment);
+                ids.add(id);
+                if (previousIds.contains(id)) {
+                    return;
+                }
+                pendingIds.add(id);
+                pendingSegments.add(segment);
+                if (pendingSegments.size() >= EMBED_BATCH_SEGMENTS) {
+                    embedInto(store, pendingIds, pendingSegments, addedIds);
+                }
+            });
+            embedInto(store, pendingIds, pendingSegments, addedIds);
+        } catch (IOException | RuntimeException e) {
+            // 修改前的向量仍由旧记录引用，只删除本次新写入的
+            store.removeAll(addedIds);
+            throw e;
+        }
+
+        Set<String> currentIds = new HashSet<>(ids);
+        List<String> removedIds = new ArrayList<>();
+        for (String previousId : previousIds) {
+            if (!currentIds.contains(previousId)) {
+                removedIds.add(previousId);
+            }
+        }
+        store.removeAll(removedIds);
+        if (previous != null) {
+            log.info("知识库 {} 中的文件 {} 增量嵌入: 复用 {} 个文本段，新嵌入 {} 个，删除 {} 个",
+                    klbName, file.getName(), ids.size() - addedIds.size(), addedIds.size(), removedIds.size());
+        }
+        return new FileEntry(size, lastModified, ids);
+    }
+
+    /**
+     * 嵌入一批文本段写入集合，并清空待嵌入列表
+     * @param addedIds 记录写入集合的向量ID
+     */
+    private void embedInto(HnswEmbeddingStore store, List<String> ids, List<TextSegment> segments, List<String> addedIds) {
+        if (segments.isEmpty()) {
+            return;
+        }
+        List<Embedding> embeddings = embeddingModel.embedAll(segments).content();
+        store.addAll(ids, embeddings, segments);
+        addedIds.addAll(ids);
+        ids.clear();
+        segments.clear();
+    }
+
+    /**
+     * 列出知识库目录中参与索引的文件；存在同名md副本的txt文件只索引md副本
+     */
+    private Map<String, File> listIndexedFiles(File directory) {
+        Map<String, File> indexed = new HashMap<>();
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return indexed;
+        }
+        Set<String> markdownBaseNames = new HashSet<>();
+        for (File file : files) {
+            if (file.isFile() && "md".equalsIgnoreCase(FileUtil.extName(file))) {
+                markdownBaseNames.add(FileUtil.mainName(file));
+            }
+        }
+        for (File file : files) {
+            String extName = FileUtil.extName(file);
+            if (!file.isFile() || extName == null || !INDEXED_TYPES.contains(extName.toLowerCase())) {
+                continue;
+            }
+            if ("txt".equalsIgnoreCase(extName) && markdownBaseNames.contains(FileUtil.mainName(file))) {
+                continue;
+            }
+            indexed.put(file.getName(), file);
+        }
+        return indexed;
+    }
+
+    private File klbDirectory(String klbName) throws IOException {
+        Map<String, Object> klb = klbMapper.selectKLBByName(klbName);
+        if (klb == null || klb.get("location") == null) {
+            throw new IOException("知识库不存在或未设置存储位置: " + klbName);
+        }
+        File directory = new File(klb.get("location").toString());
+        if (!directory.isDirectory()) {
+            throw new IOException("知识库目录不存在: " + directory);
+        }
+        return directory;
+    }
+
+    // ==================== 持久化 ====================
+
+    private VectorCollection loadCollection(String klbName) throws IOException {
+        Path graphFile = collectionFile(klbName, GRAPH_SUFFIX);
+        Path manifestFile = collectionFile(klbName, MANIFEST_SUFFIX);
+        if (Files.exists(graphFile) && Files.exists(manifestFile)) {
+            try {
+                HnswEmbeddingStore store = HnswEmbeddingStore.load(graphFile, hnswEfSearch);
+                VectorCollection collection = new VectorCollection(store, readManifest(manifestFile));
+                collection.version = Files.getLastModifiedTime(graphFile).toMillis();
+                log.info("从磁盘加载知识库 {} 的向量集合，文件数: {}，向量数: {}", klbName, collection.files.size(), store.size());
+                return collection;
+            } catch (IOException e) {
+                log.warn("读取知识库 {} 的向量集合失败，将重新构建: {}", klbName, e.getMessage());
+            }
+        }
+        return new VectorCollection(new HnswEmbeddingStore(hnswM, hnswEfConstruction, hnswEfSearch), new HashMap<>());
+    }
+
+    private void saveCollection(String klbName, VectorCollection collection) throws IOException {
+        Files.createDirectories(Paths.get(collectionPath));
+        collection.store.save(collectionFile(klbName, GRAPH_SUFFIX));
+
+        Properties properties = new Properties();
+        for (Map.Entry<String, FileEntry> entry : collection.files.entrySet()) {
+            FileEntry value = entry.getValue();
+            properties.setProperty(entry.getKey(), value.size + "|" + value.lastModified + "|" + String.join(",", value.ids));
+        }
+        Path manifestFile = collectionFile(klbName, MANIFEST_SUFFIX);
+        Path tempFile = manifestFile.resolveSibling(manifestFile.getFileName() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(tempFile)) {
+            properties.store(out, "fileName=size|lastModified|vectorIds");
+        }
+        Files.move(tempFile, manifestFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private Map<String, FileEntry> readManifest(Path manifestFile) throws IOException {
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(manifestFile)) {
+            properties.load(in);
+        }
+        Map<String, FileEntry> files = new HashMap<>();
+        for (String fileName : properties.stringPropertyNames()) {
+            String[] parts = properties.getProperty(fileName).split("\\|", 3);
+            if (parts.length == 3) {
+                List<String> ids = parts[2].isEmpty() ? new ArrayList<>() : Arrays.asList(parts[2].split(","));
+                files.put(fileName, new FileEntry(Long.parseLong(parts[0]), Long.parseLong(parts[1]), ids));
+            }
+        }
+        return files;
+    }
+
+    /**
+     * 知识库名可能包含路径中不允许的字符，文件名使用其摘要；
+     * 更换嵌入模型后向量不可比较，摘要中包含模型名，新模型使用新的集合文件
+     */
+    private Path collectionFile(String klbName, String suffix) {
+        String key = klbName + "|" + embeddingModelName + "|" + SPLITTER_SIGNATURE;
+        return Paths.get(collectionPath, DigestUtil.sha256Hex(key).substring(0, 16) + suffix);
+    }
+
+    /**
+     * 知识库向量集合
+     */
+    private static class VectorCollection {
+        private final HnswEmbeddingStore store;
+        private final Map<String, FileEntry> files;
+        private volatile long lastSync;
+        // 内容最后一次变化的时间，用作集合版本
+        private volatile long version;
+
+        private VectorCollection(HnswEmbeddingStore store, Map<String, FileEntry> files) {
+            this.store = store;
+            this.files = files;
+        }
+    }
+
+    /**
+     * 集合清单中的文件记录
+     */
+    private static class FileEntry {
+        private final long size;
+        private final long lastModified;
+        private final List<String> ids;
+
+        private FileEntry(long size, long lastModified, List<String> ids) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.ids = ids;
+        }
+    }
+}
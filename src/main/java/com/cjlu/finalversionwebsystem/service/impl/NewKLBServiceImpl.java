@@ -78,7 +78,10 @@ public class NewKLBServiceImpl implements NewKLBInterface {
         List<String> fileNames = new ArrayList<>();
         if (files != null) {
             for (File file : files) {
-                fileNames.add(file.getName());
+                // 转换生成的图片目录不是知识库文件
+                if (file.isFile()) {
+                    fileNames.add(file.getName());
+                }
             }
         }
         return fileNames;
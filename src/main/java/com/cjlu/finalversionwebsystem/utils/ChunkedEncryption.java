@@ -0,0 +1,346 @@
+package com.cjlu.finalversionwebsystem.utils;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SeekableByteChannel;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+/**
+ * 分块加密的文件格式
+ * 文件头16字节：魔数"KLBE"(4) + 版本(1) + 分块大小(4) + 随机nonce前缀(7)；
+ * 之后是若干帧，每帧是一个明文分块的AES-GCM密文加16字节认证标签，除最后一帧外明文长度都等于分块大小。
+ * 帧的nonce为 前缀 + 帧序号(4) + 是否最后一帧(1)，文件头作为每帧的附加认证数据，
+ * 帧被调换、截断或文件头被篡改都会在读取时认证失败。加解密都只缓冲一个分块；
+ * 帧长度固定，按明文偏移读取时可以直接定位到对应的帧
+ */
+public final class ChunkedEncryption {
+
+    public static final int HEADER_LENGTH = 16;
+    public static final int DEFAULT_CHUNK_SIZE = 1 << 20;
+
+    private static final byte[] MAGIC = {'K', 'L', 'B', 'E'};
+    private static final byte VERSION = 1;
+    private static final int MAX_CHUNK_SIZE = 64 << 20;
+    private static final int NONCE_PREFIX_LENGTH = 7;
+    private static final int TAG_LENGTH = 16;
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private ChunkedEncryption() {
+    }
+
+    /**
+     * 判断数据是否以本格式的文件头开始
+     * @param prefix 文件开头的字节，至少包含魔数和版本
+     * @return 是否为分块加密格式
+     */
+    public static boolean hasHeader(byte[] prefix) {
+        return prefix.length >= MAGIC.length + 1
+                && Arrays.equals(Arrays.copyOf(prefix, MAGIC.length), MAGIC)
+                && prefix[MAGIC.length] == VERSION;
+    }
+
+    /**
+     * 取出文件头中的随机nonce前缀；每次加密生成的前缀都不同，可用来区分重新加密的文件
+     * @param header 完整的文件头
+     * @return nonce前缀
+     */
+    public static byte[] noncePrefix(byte[] header) {
+        return Arrays.copyOfRange(header, HEADER_LENGTH - NONCE_PREFIX_LENGTH, HEADER_LENGTH);
+    }
+
+    /**
+     * 创建加密输出流，写入的明文按分块加密后写到目标流；关闭时写出最后一帧并关闭目标流
+     * @param out 密文目标流
+     * @param key AES密钥
+     * @param chunkSize 分块大小
+     * @return 加密输出流
+     * @throws IOException IO异常
+     */
+    public static OutputStream encrypt(OutputStream out, SecretKey key, int chunkSize) throws IOException {
+        if (chunkSize <= 0 || chunkSize > MAX_CHUNK_SIZE) {
+            throw new IllegalArgumentException("分块大小超出范围: " + chunkSize);
+        }
+        byte[] noncePrefix = new byte[NONCE_PREFIX_LENGTH];
+        RANDOM.nextBytes(noncePrefix);
+        byte[] header = ByteBuffer.allocate(HEADER_LENGTH)
+                .put(MAGIC).put(VERSION).putInt(chunkSize).put(noncePrefix)
+                .array();
+        out.write(header);
+        return new EncryptingOutputStream(out, key, header, chunkSize);
+    }
+
+    /**
+     * 创建解密输入流，先读取并校验文件头，之后逐帧解密并认证
+     * @param in 密文来源
+     * @param key AES密钥
+     * @return 明文输入流
+     * @throws IOException 文件头无效或IO异常
+     */
+    public static InputStream decrypt(InputStream in, SecretKey key) throws IOException {
+        byte[] header = in.readNBytes(HEADER_LENGTH);
+        return new DecryptingInputStream(in, key, header, chunkSize(header), 0);
+    }
+
+    /**
+     * 从指定的明文偏移开始解密，直接定位到偏移所在的帧，之前的帧不读取也不解密
+     * @param channel 密文文件通道，读取位置由本方法设置，随返回的流一起关闭
+     * @param key AES密钥
+     * @param plainOffset 明文起始偏移
+     * @return 从该偏移开始的明文输入流
+     * @throws IOException 文件头无效或IO异常
+     */
+    public static InputStream decrypt(SeekableByteChannel channel, SecretKey key, long plainOffset) throws IOException {
+        byte[] header = readHeader(channel);
+        int chunkSize = chunkSize(header);
+        long frameIndex = plainOffset / chunkSize;
+        if (plainOffset < 0 || frameIndex > Integer.MAX_VALUE) {
+            throw new IOException("明文偏移超出范围: " + plainOffset);
+        }
+        channel.position(HEADER_LENGTH + frameIndex * (chunkSize + TAG_LENGTH));
+        InputStream in = new DecryptingInputStream(Channels.newInputStream(channel), key, header, chunkSize, (int) frameIndex);
+        long skip = plainOffset % chunkSize;
+        while (skip > 0) {
+            long n = in.skip(skip);
+            if (n <= 0) {
+                in.close();
+                throw new IOException("明文偏移超出文件末尾: " + plainOffset);
+            }
+            skip -= n;
+        }
+        return in;
+    }
+
+    /**
+     * 根据文件头和密文长度推算明文长度，不需要解密
+     * @param channel 密文文件通道
+     * @return 明文字节数
+     * @throws IOException 文件头无效或长度与格式不符
+     */
+    public static long plainLength(SeekableByteChannel channel) throws IOException {
+        channel.position(0);
+        int chunkSize = chunkSize(readHeader(channel));
+        long frameLength = chunkSize + TAG_LENGTH;
+        long body = channel.size() - HEADER_LENGTH;
+        long fullFrames = body / frameLength;
+        long remainder = body % frameLength;
+        if (remainder == 0 && fullFrames > 0) {
+            return fullFrames * chunkSize;
+        }
+        if (remainder < TAG_LENGTH) {
+            throw new IOException("加密文件不完整");
+        }
+        return fullFrames * chunkSize + remainder - TAG_LENGTH;
+    }
+
+    private static byte[] readHeader(SeekableByteChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        channel.position(0);
+        while (header.hasRemaining() && channel.read(header) >= 0) {
+            // 读满文件头
+        }
+        return header.array();
+    }
+
+    private static int chunkSize(byte[] header) throws IOException {
+        if (header.length < HEADER_LENGTH || !hasHeader(header)) {
+            throw new IOException("不是有效的分块加密文件");
+        }
+        int chunkSize = ByteBuffer.wrap(header, MAGIC.length + 1, 4).getInt();
+        if (chunkSize <= 0 || chunkSize > MAX_CHUNK_SIZE) {
+            throw new IOException("分块大小无效: " + chunkSize);
+        }
+        return chunkSize;
+    }
+
+    private static GCMParameterSpec frameNonce(byte[] header, int frameIndex, boolean last) {
+        byte[] nonce = ByteBuffer.allocate(NONCE_PREFIX_LENGTH + 5)
+                .put(header, HEADER_LENGTH - NONCE_PREFIX_LENGTH, NONCE_PREFIX_LENGTH)
+                .putInt(frameIndex)
+                .put((byte) (last ? 1 : 0))
+                .array();
+        return new GCMParameterSpec(TAG_LENGTH * 8, nonce);
+    }
+
+    private static Cipher newCipher() throws IOException {
+        try {
+            return Cipher.getInstance(TRANSFORMATION);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("创建加密器失败: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 加密输出流；缓冲区写满后等到有后续数据时才加密，以便关闭时确定最后一帧
+     */
+    private static class EncryptingOutputStream extends OutputStream {
+        private final OutputStream out;
+        private final SecretKey key;
+        private final byte[] header;
+        private final Cipher cipher;
+        private final byte[] chunk;
+        private final byte[] frame;
+        private int length;
+        private int frameIndex;
+        private boolean closed;
+
+        private EncryptingOutputStream(OutputStream out, SecretKey key, byte[] header, int chunkSize) throws IOException {
+            this.out = out;
+            this.key = key;
+            this.header = header;
+            this.cipher = newCipher();
+            this.chunk = new byte[chunkSize];
+            this.frame = new byte[chunkSize + TAG_LENGTH];
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (closed) {
+                throw new IOException("加密输出流已关闭");
+            }
+            while (len > 0) {
+                if (length == chunk.length) {
+                    writeFrame(false);
+                }
+                int n = Math.min(len, chunk.length - length);
+                System.arraycopy(b, off, chunk, length, n);
+                length += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                writeFrame(true);
+            } finally {
+                out.close();
+            }
+        }
+
+        private void writeFrame(boolean last) throws IOException {
+            try {
+                cipher.init(Cipher.ENCRYPT_MODE, key, frameNonce(header, frameIndex++, last));
+                cipher.updateAAD(header);
+                int n = cipher.doFinal(chunk, 0, length, frame, 0);
+                out.write(frame, 0, n);
+                length = 0;
+            } catch (GeneralSecurityException e) {
+                throw new IOException("加密失败: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * 解密输入流；读完一帧后预读一个字节判断是否为最后一帧
+     */
+    private static class DecryptingInputStream extends InputStream {
+        private final PushbackInputStream in;
+        private final SecretKey key;
+        private final byte[] header;
+        private final Cipher cipher;
+        private final byte[] frame;
+        private final byte[] plain;
+        private int position;
+        private int limit;
+        private int frameIndex;
+        private boolean finished;
+
+        private DecryptingInputStream(InputStream in, SecretKey key, byte[] header, int chunkSize, int firstFrame) throws IOException {
+            this.in = new PushbackInputStream(in, 1);
+            this.key = key;
+            this.header = header;
+            this.cipher = newCipher();
+            this.frame = new byte[chunkSize + TAG_LENGTH];
+            this.plain = new byte[chunkSize];
+            this.frameIndex = firstFrame;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            int n = read(b, 0, 1);
+            return n < 0 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (position == limit) {
+                if (finished) {
+                    return -1;
+                }
+                readFrame();
+            }
+            int n = Math.min(len, limit - position);
+            System.arraycopy(plain, position, b, off, n);
+            position += n;
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return limit - position;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+
+        private void readFrame() throws IOException {
+            int n = in.readNBytes(frame, 0, frame.length);
+            boolean last = n < frame.length;
+            if (!last) {
+                int next = in.read();
+                if (next < 0) {
+                    last = true;
+                } else {
+                    in.unread(next);
+                }
+            }
+            if (n < TAG_LENGTH) {
+                throw new IOException("加密文件不完整");
+            }
+            try {
+                cipher.init(Cipher.DECRYPT_MODE, key, frameNonce(header, frameIndex++, last));
+                cipher.updateAAD(header);
+                limit = cipher.doFinal(frame, 0, n, plain, 0);
+                position = 0;
+                finished = last;
+            } catch (AEADBadTagException e) {
+                throw new IOException("加密文件校验失败，文件可能被截断或篡改", e);
+            } catch (GeneralSecurityException e) {
+                throw new IOException("解密失败: " + e.getMessage(), e);
+            }
+        }
+    }
+}
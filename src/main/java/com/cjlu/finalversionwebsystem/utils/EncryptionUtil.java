@@ -6,11 +6,20 @@ import javax.crypto.Cipher;
 import javax.crypto.KeyGenerator;
 import javax.crypto.SecretKey;
 import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.SeekableByteChannel;
+import java.security.GeneralSecurityException;
 import java.util.Base64;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 文件加密解密工具类
- * 使用AES算法进行文件加密和解密
+ * 使用AES算法进行文件加密和解密；新保存的文件使用分块的AES-GCM格式（见 ChunkedEncryption），
+ * 整体ECB加密的方法保留用于读取旧文件。
+ * Cipher.getInstance 需要查找安全提供者，开销远大于小数据的加解密本身，
+ * 因此每个线程复用自己的ECB Cipher实例，密钥对象只构造一次，外部传入的密钥解码后缓存
  */
 @Component
 public class EncryptionUtil {
@@ -20,6 +29,23 @@ public class EncryptionUtil {
     
     // 固定密钥，实际项目中应该从配置文件或环境变量中获取
     private static final String SECRET_KEY = "MySecretKey12345"; // 16字节密钥
+
+    private static final SecretKeySpec SECRET_KEY_SPEC = new SecretKeySpec(SECRET_KEY.getBytes(), ALGORITHM);
+
+    // 外部传入密钥的缓存上限，超过后整体清空
+    private static final int KEY_CACHE_MAX_SIZE = 64;
+
+    // 每个线程复用的ECB Cipher；同一线程内的调用是串行的，每次使用前重新init即可
+    private static final ThreadLocal<Cipher> ECB_CIPHERS = ThreadLocal.withInitial(() -> {
+        try {
+            return Cipher.getInstance(TRANSFORMATION);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("创建加密器失败: " + e.getMessage(), e);
+        }
+    });
+
+    // Base64密钥 -> 密钥对象
+    private final ConcurrentHashMap<String, SecretKeySpec> keyCache = new ConcurrentHashMap<>();
     
     /**
      * 生成AES密钥
@@ -40,10 +66,7 @@ public class EncryptionUtil {
      * @throws Exception 异常
      */
     public byte[] encrypt(byte[] data) throws Exception {
-        SecretKeySpec secretKeySpec = new SecretKeySpec(SECRET_KEY.getBytes(), ALGORITHM);
-        Cipher cipher = Cipher.getInstance(TRANSFORMATION);
-        cipher.init(Cipher.ENCRYPT_MODE, secretKeySpec);
-        return cipher.doFinal(data);
+        return ecbCipher(Cipher.ENCRYPT_MODE, SECRET_KEY_SPEC).doFinal(data);
     }
     
     /**
@@ -53,10 +76,61 @@ public class EncryptionUtil {
      * @throws Exception 异常
      */
     public byte[] decrypt(byte[] encryptedData) throws Exception {
-        SecretKeySpec secretKeySpec = new SecretKeySpec(SECRET_KEY.getBytes(), ALGORITHM);
+        return ecbCipher(Cipher.DECRYPT_MODE, SECRET_KEY_SPEC).doFinal(encryptedData);
+    }
+    
+    /**
+     * 创建解密用的Cipher，配合 CipherInputStream 流式解密大文件
+     * 流的生命周期超出单次调用，不能使用线程复用的实例，每次新建
+     * @return 已初始化为解密模式的Cipher
+     * @throws Exception 异常
+     */
+    public Cipher createDecryptCipher() throws Exception {
         Cipher cipher = Cipher.getInstance(TRANSFORMATION);
-        cipher.init(Cipher.DECRYPT_MODE, secretKeySpec);
-        return cipher.doFinal(encryptedData);
+        cipher.init(Cipher.DECRYPT_MODE, SECRET_KEY_SPEC);
+        return cipher;
+    }
+    
+    /**
+     * 创建旧ECB格式的加密Cipher，迁移旧文件时用于校验解密结果能还原出原密文
+     * @return 已初始化为加密模式的Cipher
+     * @throws Exception 异常
+     */
+    public Cipher createEncryptCipher() throws Exception {
+        Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+        cipher.init(Cipher.ENCRYPT_MODE, SECRET_KEY_SPEC);
+        return cipher;
+    }
+    
+    /**
+     * 创建分块加密输出流，写入的明文逐块加密后写到目标流，关闭时写出最后一块
+     * @param out 密文目标流
+     * @return 加密输出流
+     * @throws IOException IO异常
+     */
+    public OutputStream createEncryptingStream(OutputStream out) throws IOException {
+        return ChunkedEncryption.encrypt(out, SECRET_KEY_SPEC, ChunkedEncryption.DEFAULT_CHUNK_SIZE);
+    }
+    
+    /**
+     * 创建分块解密输入流，逐块解密并校验
+     * @param in 分块加密格式的密文
+     * @return 明文输入流
+     * @throws IOException 文件头无效或IO异常
+     */
+    public InputStream createDecryptingStream(InputStream in) throws IOException {
+        return ChunkedEncryption.decrypt(in, SECRET_KEY_SPEC);
+    }
+    
+    /**
+     * 创建从指定明文偏移开始的分块解密输入流，只解密偏移所在的分块及之后的分块
+     * @param channel 分块加密格式的密文文件通道
+     * @param plainOffset 明文起始偏移
+     * @return 明文输入流
+     * @throws IOException 文件头无效或IO异常
+     */
+    public InputStream createDecryptingStream(SeekableByteChannel channel, long plainOffset) throws IOException {
+        return ChunkedEncryption.decrypt(channel, SECRET_KEY_SPEC, plainOffset);
     }
     
     /**
@@ -67,11 +141,7 @@ public class EncryptionUtil {
      * @throws Exception 异常
      */
     public byte[] encryptWithKey(byte[] data, String key) throws Exception {
-        byte[] keyBytes = Base64.getDecoder().decode(key);
-        SecretKeySpec secretKeySpec = new SecretKeySpec(keyBytes, ALGORITHM);
-        Cipher cipher = Cipher.getInstance(TRANSFORMATION);
-        cipher.init(Cipher.ENCRYPT_MODE, secretKeySpec);
-        return cipher.doFinal(data);
+        return ecbCipher(Cipher.ENCRYPT_MODE, keySpec(key)).doFinal(data);
     }
     
     /**
@@ -82,10 +152,27 @@ public class EncryptionUtil {
      * @throws Exception 异常
      */
     public byte[] decryptWithKey(byte[] encryptedData, String key) throws Exception {
-        byte[] keyBytes = Base64.getDecoder().decode(key);
-        SecretKeySpec secretKeySpec = new SecretKeySpec(keyBytes, ALGORITHM);
-        Cipher cipher = Cipher.getInstance(TRANSFORMATION);
-        cipher.init(Cipher.DECRYPT_MODE, secretKeySpec);
-        return cipher.doFinal(encryptedData);
+        return ecbCipher(Cipher.DECRYPT_MODE, keySpec(key)).doFinal(encryptedData);
+    }
+
+    /**
+     * 取当前线程的ECB Cipher并按模式和密钥初始化；密钥与上次相同时JDK内部不会重新展开轮密钥
+     */
+    private static Cipher ecbCipher(int mode, SecretKeySpec keySpec) throws GeneralSecurityException {
+        Cipher cipher = ECB_CIPHERS.get();
+        cipher.init(mode, keySpec);
+        return cipher;
+    }
+
+    private SecretKeySpec keySpec(String key) {
+        SecretKeySpec keySpec = keyCache.get(key);
+        if (keySpec == null) {
+            if (keyCache.size() >= KEY_CACHE_MAX_SIZE) {
+                keyCache.clear();
+            }
+            keySpec = new SecretKeySpec(Base64.getDecoder().decode(key), ALGORITHM);
+            keyCache.put(key, keySpec);
+        }
+        return keySpec;
     }
 }
@@ -0,0 +1,45 @@
+package com.cjlu.finalversionwebsystem.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * 文件下载的ETag
+ * 由存储文件的长度和修改时间组成，分块加密的文件再加上文件头中的nonce前缀，
+ * 同一时刻以相同长度重新加密的文件也能区分。只读取文件属性和文件头，不解密也不计算摘要
+ */
+public final class FileETag {
+
+    private FileETag() {
+    }
+
+    /**
+     * 计算文件的强ETag
+     * @param file 存储的文件
+     * @return 带引号的ETag
+     * @throws IOException IO异常
+     */
+    public static String of(Path file) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        StringBuilder etag = new StringBuilder("\"")
+                .append(Long.toHexString(attributes.size()))
+                .append('-')
+                .append(Long.toHexString(attributes.lastModifiedTime().toMillis()));
+        if (attributes.size() >= ChunkedEncryption.HEADER_LENGTH) {
+            byte[] header;
+            try (InputStream in = Files.newInputStream(file)) {
+                header = in.readNBytes(ChunkedEncryption.HEADER_LENGTH);
+            }
+            if (header.length == ChunkedEncryption.HEADER_LENGTH && ChunkedEncryption.hasHeader(header)) {
+                etag.append('-');
+                for (byte b : ChunkedEncryption.noncePrefix(header)) {
+                    etag.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+                }
+            }
+        }
+        return etag.append('"').toString();
+    }
+}
@@ -5,6 +5,7 @@ import org.springframework.stereotype.Component;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -31,13 +32,12 @@ public class FileTestUtil {
             parentFile.mkdirs();
         }
         
-        // 加密内容
-        byte[] encryptedContent = encryptionUtil.encrypt(content.getBytes("UTF-8"));
-        
-        // 保存加密文件
+        // 按分块加密格式保存
         String filePath = ROOT_PATH + File.separator + fileName;
         Path path = Paths.get(filePath);
-        Files.write(path, encryptedContent);
+        try (OutputStream out = encryptionUtil.createEncryptingStream(Files.newOutputStream(path))) {
+            out.write(content.getBytes("UTF-8"));
+        }
         
         System.out.println("加密测试文件创建成功: " + fileName);
     }
@@ -0,0 +1,343 @@
+package com.cjlu.finalversionwebsystem.utils;
+
+import com.cjlu.finalversionwebsystem.rag.BoundedCache;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * 解密后明文的两级缓存
+ * 不超过单条上限的小文件放在堆内LRU中；更大的文件写入私有临时目录并以只读方式内存映射，由操作系统页缓存承载，
+ * 映射文件按总字节数做LRU淘汰。条目记录加密文件的大小和修改时间，文件被替换后旧条目自动视为未命中。
+ * 映射区在缓冲区被回收后才释放，淘汰时只删除映射文件。
+ * 映射文件是加密文件的明文，目录必须只有当前用户可以访问：未指定目录时新建随机命名的临时目录，
+ * 指定的目录已存在时必须是当前用户所有、其他用户无任何权限的真实目录，否则拒绝使用
+ */
+public class PlaintextCache {
+
+    private final long heapEntryMaxBytes;
+    private final long spillMaxBytes;
+    private final Path spillDir;
+    // 映射文件目录由本类创建，关闭时一并删除
+    private final boolean ownsSpillDir;
+
+    private final BoundedCache<String, HeapEntry> heap;
+
+    // accessOrder=true，迭代顺序即从最久未访问到最近访问
+    private final LinkedHashMap<String, SpillEntry> spill = new LinkedHashMap<>(16, 0.75f, true);
+    private final ReentrantLock spillLock = new ReentrantLock();
+    private long spillBytes;
+
+    private final AtomicLong heapHits = new AtomicLong();
+    private final AtomicLong spillHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong spillEvictions = new AtomicLong();
+    private final AtomicLong spillSequence = new AtomicLong();
+
+    /**
+     * @param heapMaxBytes 堆内缓存容量（字节）
+     * @param heapEntryMaxBytes 放入堆内的单个文件上限，更大的文件进入映射文件层
+     * @param spillMaxBytes 映射文件层容量（字节），小于等于0表示不启用
+     * @param spillDir 映射文件目录，为null时新建随机命名的临时目录；不存在时创建，已存在时校验只有当前用户可以访问，
+     *                 启动时删除其中遗留的映射文件
+     * @throws IOException 目录无法创建，或已存在的目录不属于当前用户、对其他用户开放权限
+     */
+    public PlaintextCache(long heapMaxBytes, long heapEntryMaxBytes, long spillMaxBytes, Path spillDir) throws IOException {
+        this.heap = new BoundedCache<>(heapMaxBytes, 0, TimeUnit.MINUTES);
+        this.heapEntryMaxBytes = Math.min(heapEntryMaxBytes, heapMaxBytes);
+        this.spillMaxBytes = spillMaxBytes;
+        if (spillMaxBytes <= 0) {
+            this.spillDir = spillDir;
+            this.ownsSpillDir = false;
+        } else if (spillDir == null) {
+            // 临时目录名随机，POSIX系统上创建时权限即为rwx------
+            this.spillDir = Files.createTempDirectory("klb-plaintext-cache");
+            this.ownsSpillDir = true;
+        } else {
+            this.spillDir = privateDirectory(spillDir);
+            this.ownsSpillDir = false;
+            deleteSpillFiles();
+        }
+    }
+
+    /**
+     * 读取缓存的明文
+     * @param fileName 文件名
+     * @param fileSize 当前加密文件的大小
+     * @param lastModified 当前加密文件的修改时间
+     * @return 只读的明文缓冲区，未命中或文件已变化时返回null
+     */
+    public ByteBuffer get(String fileName, long fileSize, long lastModified) {
+        HeapEntry heapEntry = heap.get(fileName);
+        if (heapEntry != null && heapEntry.matches(fileSize, lastModified)) {
+            heapHits.incrementAndGet();
+            return ByteBuffer.wrap(heapEntry.plain).asReadOnlyBuffer();
+        }
+        if (spillMaxBytes > 0) {
+            spillLock.lock();
+            try {
+                SpillEntry spillEntry = spill.get(fileName);
+                if (spillEntry != null && spillEntry.matches(fileSize, lastModified)) {
+                    spillHits.incrementAndGet();
+                    return spillEntry.buffer.asReadOnlyBuffer();
+                }
+            } finally {
+                spillLock.unlock();
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * 写入明文，小文件保存一份副本到堆内，大文件写入映射文件；超过两级上限的文件不缓存
+     * @param fileName 文件名
+     * @param fileSize 读取明文前加密文件的大小
+     * @param lastModified 读取明文前加密文件的修改时间
+     * @param plain 明文
+     */
+    public void put(String fileName, long fileSize, long lastModified, byte[] plain) throws IOException {
+        if (plain.length <= heapEntryMaxBytes) {
+            removeSpill(fileName);
+            heap.put(fileName, new HeapEntry(fileSize, lastModified, plain.clone()), plain.length);
+            return;
+        }
+        heap.invalidateIf(fileName::equals);
+        if (plain.length > spillMaxBytes) {
+            removeSpill(fileName);
+            return;
+        }
+
+        Path spillFile = spillDir.resolve(spillSequence.incrementAndGet() + ".bin");
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(spillFile,
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer source = ByteBuffer.wrap(plain);
+            while (source.hasRemaining()) {
+                channel.write(source);
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, plain.length);
+        } catch (IOException e) {
+            Files.deleteIfExists(spillFile);
+            throw e;
+        }
+
+        spillLock.lock();
+        try {
+            SpillEntry previous = spill.put(fileName, new SpillEntry(fileSize, lastModified, spillFile, buffer));
+            spillBytes += plain.length;
+            if (previous != null) {
+                discard(previous);
+            }
+            Iterator<SpillEntry> iterator = spill.values().iterator();
+            while (spillBytes > spillMaxBytes && iterator.hasNext()) {
+                SpillEntry eldest = iterator.next();
+                iterator.remove();
+                discard(eldest);
+                spillEvictions.incrementAndGet();
+            }
+        } finally {
+            spillLock.unlock();
+        }
+    }
+
+    /**
+     * 文件写入或删除后移除缓存
+     */
+    public void invalidate(String fileName) {
+        heap.invalidateIf(fileName::equals);
+        removeSpill(fileName);
+    }
+
+    /**
+     * 清空两级缓存并删除映射文件
+     */
+    public void clear() {
+        heap.clear();
+        spillLock.lock();
+        try {
+            for (SpillEntry entry : spill.values()) {
+                discard(entry);
+            }
+            spill.clear();
+        } finally {
+            spillLock.unlock();
+        }
+    }
+
+    /**
+     * 清空缓存，并删除由本类创建的临时目录
+     */
+    public void close() {
+        clear();
+        if (ownsSpillDir) {
+            try {
+                deleteSpillFiles();
+                Files.deleteIfExists(spillDir);
+            } catch (IOException e) {
+                spillDir.toFile().deleteOnExit();
+            }
+        }
+    }
+
+    /**
+     * 缓存统计信息
+     */
+    public Map<String, Object> stats() {
+        long heapHitCount = heapHits.get();
+        long spillHitCount = spillHits.get();
+        long missCount = misses.get();
+        long requests = heapHitCount + spillHitCount + missCount;
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("heapHits", heapHitCount);
+        stats.put("spillHits", spillHitCount);
+        stats.put("misses", missCount);
+        stats.put("hitRate", requests == 0 ? 0.0 : (double) (heapHitCount + spillHitCount) / requests);
+        Map<String, Object> heapStats = heap.stats();
+        stats.put("heapEntries", heapStats.get("entries"));
+        stats.put("heapBytes", heapStats.get("bytes"));
+        stats.put("heapEvictions", heapStats.get("evictions"));
+        spillLock.lock();
+        try {
+            stats.put("spillEntries", spill.size());
+            stats.put("spillBytes", spillBytes);
+            stats.put("spillMaxBytes", spillMaxBytes);
+        } finally {
+            spillLock.unlock();
+        }
+        stats.put("spillEvictions", spillEvictions.get());
+        return stats;
+    }
+
+    private void removeSpill(String fileName) {
+        if (spillMaxBytes <= 0) {
+            return;
+        }
+        spillLock.lock();
+        try {
+            SpillEntry entry = spill.remove(fileName);
+            if (entry != null) {
+                discard(entry);
+            }
+        } finally {
+            spillLock.unlock();
+        }
+    }
+
+    /**
+     * 释放映射文件（调用方需持有锁）；已映射的区域在缓冲区被回收前仍可读取
+     */
+    private void discard(SpillEntry entry) {
+        spillBytes -= entry.buffer.capacity();
+        try {
+            Files.deleteIfExists(entry.file);
+        } catch (IOException e) {
+            // 部分系统上映射中的文件不能删除，退出时再删
+            entry.file.toFile().deleteOnExit();
+        }
+    }
+
+    /**
+     * 删除目录中本类写入的映射文件，其他文件不动
+     */
+    private void deleteSpillFiles() throws IOException {
+        try (Stream<Path> files = Files.list(spillDir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                if (file.getFileName().toString().matches("\\d+\\.bin") && Files.isRegularFile(file, LinkOption.NOFOLLOW_LINKS)) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    /**
+     * 创建或校验映射文件目录：不能是符号链接，必须属于当前用户，POSIX系统上同组和其他用户不能有任何权限
+     */
+    private static Path privateDirectory(Path dir) throws IOException {
+        boolean posix = FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+        if (Files.notExists(dir, LinkOption.NOFOLLOW_LINKS)) {
+            if (posix) {
+                Files.createDirectories(dir, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+            } else {
+                Files.createDirectories(dir);
+            }
+        }
+        if (!Files.isDirectory(dir, LinkOption.NOFOLLOW_LINKS)) {
+            throw new IOException("明文缓存目录不是普通目录: " + dir);
+        }
+        UserPrincipal owner = Files.getOwner(dir, LinkOption.NOFOLLOW_LINKS);
+        UserPrincipal currentUser = dir.getFileSystem().getUserPrincipalLookupService()
+                .lookupPrincipalByName(System.getProperty("user.name"));
+        if (!owner.equals(currentUser)) {
+            throw new IOException("明文缓存目录不属于当前用户: " + dir + "，所有者: " + owner.getName());
+        }
+        if (posix) {
+            Set<PosixFilePermission> permissions = Files.getPosixFilePermissions(dir, LinkOption.NOFOLLOW_LINKS);
+            Set<PosixFilePermission> ownerOnly = EnumSet.of(PosixFilePermission.OWNER_READ,
+                    PosixFilePermission.OWNER_WRITE, PosixFilePermission.OWNER_EXECUTE);
+            if (!ownerOnly.containsAll(permissions)) {
+                throw new IOException("明文缓存目录对其他用户开放了权限: " + dir + " " + PosixFilePermissions.toString(permissions));
+            }
+        }
+        return dir;
+    }
+
+    /**
+     * 堆内条目
+     */
+    private static class HeapEntry {
+        private final long fileSize;
+        private final long lastModified;
+        private final byte[] plain;
+
+        private HeapEntry(long fileSize, long lastModified, byte[] plain) {
+            this.fileSize = fileSize;
+            this.lastModified = lastModified;
+            this.plain = plain;
+        }
+
+        private boolean matches(long fileSize, long lastModified) {
+            return this.fileSize == fileSize && this.lastModified == lastModified;
+        }
+    }
+
+    /**
+     * 映射文件条目
+     */
+    private static class SpillEntry {
+        private final long fileSize;
+        private final long lastModified;
+        private final Path file;
+        private final ByteBuffer buffer;
+
+        private SpillEntry(long fileSize, long lastModified, Path file, ByteBuffer buffer) {
+            this.fileSize = fileSize;
+            this.lastModified = lastModified;
+            this.file = file;
+            this.buffer = buffer;
+        }
+
+        private boolean matches(long fileSize, long lastModified) {
+            return this.fileSize == fileSize && this.lastModified == lastModified;
+        }
+    }
+}
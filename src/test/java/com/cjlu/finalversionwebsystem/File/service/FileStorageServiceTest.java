@@ -0,0 +1,141 @@
+package com.cjlu.finalversionwebsystem.File.service;
+
+import cn.hutool.crypto.digest.DigestUtil;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.graphics.image.LosslessFactory;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * FileStorageService转换缓存测试类
+ */
+public class FileStorageServiceTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Object originalUploadDir;
+    private FileStorageService storageService;
+    private Path klbDir;
+    private Path cacheDir;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        originalUploadDir = ReflectionTestUtils.getField(FileStorageService.class, "uploadDir");
+        ReflectionTestUtils.setField(FileStorageService.class, "uploadDir", tempDir.toString());
+        storageService = new FileStorageService();
+        ReflectionTestUtils.setField(storageService, "conversionCacheMaxMb", 512L);
+        klbDir = Files.createDirectories(tempDir.resolve("产品手册"));
+        cacheDir = tempDir.resolve(".conversion-cache");
+    }
+
+    @AfterEach
+    void tearDown() {
+        ReflectionTestUtils.setField(FileStorageService.class, "uploadDir", originalUploadDir);
+    }
+
+    @Test
+    void testCacheHitMissAndInvalidation() throws Exception {
+        Path source = write("a.txt", "# 安装\n安装步骤。\n");
+
+        // 未命中：转换并写入缓存
+        storageService.convertToMarkdown(klbDir.toString(), "a.txt");
+        Path cached = cacheDir.resolve(DigestUtil.sha256Hex(source.toFile()) + "-txt-v2.md");
+        assertTrue(Files.exists(cached));
+        assertEquals(read(klbDir.resolve("a.md")), read(cached));
+
+        // 命中：内容相同的文件直接复制缓存的结果，不再转换
+        Files.write(cached, "缓存的结果\n".getBytes(StandardCharsets.UTF_8));
+        Files.copy(source, klbDir.resolve("a(1).txt"));
+        storageService.convertToMarkdown(klbDir.toString(), "a(1).txt");
+        assertEquals("缓存的结果\n", read(klbDir.resolve("a(1).md")));
+
+        // 内容变化后缓存键不同，重新转换
+        write("a.txt", "# 安装\n新的安装步骤。\n");
+        storageService.convertToMarkdown(klbDir.toString(), "a.txt");
+        assertTrue(read(klbDir.resolve("a.md")).contains("新的安装步骤"));
+
+        // 旧版本转换器的缓存结果不再使用
+        Path other = write("b.txt", "# 退货\n七天无理由退货。\n");
+        Files.write(cacheDir.resolve(DigestUtil.sha256Hex(other.toFile()) + "-txt-v1.md"),
+                "旧版本的结果\n".getBytes(StandardCharsets.UTF_8));
+        storageService.convertToMarkdown(klbDir.toString(), "b.txt");
+        assertTrue(read(klbDir.resolve("b.md")).contains("七天无理由退货"));
+    }
+
+    @Test
+    void testCachedImagesAreSharedAndEvictedWithMarkdown() throws Exception {
+        writePdf(klbDir.resolve("manual.pdf"));
+        storageService.convertToMarkdown(klbDir.toString(), "manual.pdf");
+        Path image = klbDir.resolve("manual_images").resolve("image_p1_0.png");
+        assertTrue(read(klbDir.resolve("manual.md")).contains("![图片](manual_images/image_p1_0.png)"));
+        assertTrue(Files.isRegularFile(image));
+
+        // 命中缓存：链接改为副本自己的图片目录，图片与缓存共用同一份数据
+        Files.copy(klbDir.resolve("manual.pdf"), klbDir.resolve("manual(1).pdf"));
+        storageService.convertToMarkdown(klbDir.toString(), "manual(1).pdf");
+        String copy = read(klbDir.resolve("manual(1).md"));
+        assertTrue(copy.contains("![图片](manual(1)_images/image_p1_0.png)"));
+        assertFalse(copy.contains("manual_images/"));
+        assertTrue(Files.isSameFile(image, klbDir.resolve("manual(1)_images").resolve("image_p1_0.png")));
+
+        // 淘汰缓存条目时一并删除图片目录，知识库中的副本不受影响
+        ReflectionTestUtils.setField(storageService, "conversionCacheMaxMb", 0L);
+        write("c.txt", "# 保修\n整机保修一年。\n");
+        storageService.convertToMarkdown(klbDir.toString(), "c.txt");
+        try (Stream<Path> entries = Files.list(cacheDir)) {
+            List<Path> left = entries.collect(Collectors.toList());
+            assertEquals(0, left.size(), left.toString());
+        }
+        assertTrue(Files.isRegularFile(klbDir.resolve("manual(1)_images").resolve("image_p1_0.png")));
+    }
+
+    private Path write(String fileName, String content) throws IOException {
+        return Files.write(klbDir.resolve(fileName), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String read(Path file) throws IOException {
+        return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 生成带一张图片的单页PDF
+     */
+    private static void writePdf(Path pdf) throws IOException {
+        BufferedImage chart = new BufferedImage(200, 150, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = chart.createGraphics();
+        graphics.setColor(Color.WHITE);
+        graphics.fillRect(0, 0, 200, 150);
+        graphics.setColor(Color.BLUE);
+        graphics.fillRect(20, 20, 160, 110);
+        graphics.dispose();
+        try (PDDocument document = new PDDocument()) {
+            PDPage page = new PDPage();
+            document.addPage(page);
+            PDImageXObject image = LosslessFactory.createFromImage(document, chart);
+            try (PDPageContentStream content = new PDPageContentStream(document, page)) {
+                content.drawImage(image, 72, 400, 200, 150);
+            }
+            document.save(pdf.toFile());
+        }
+    }
+}
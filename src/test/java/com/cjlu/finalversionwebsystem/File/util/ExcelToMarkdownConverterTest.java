@@ -0,0 +1,63 @@
+package com.cjlu.finalversionwebsystem.File.util;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ExcelToMarkdownConverter测试类
+ */
+public class ExcelToMarkdownConverterTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testStreamingFitsRaggedRowsToHeaderWidth() throws IOException {
+        // 大写扩展名同样走流式读取：非流式路径按最宽的行补齐表头，表头会变成5列
+        Path excel = tempDir.resolve("REPORT.XLSX");
+        try (XSSFWorkbook workbook = new XSSFWorkbook(); OutputStream out = Files.newOutputStream(excel)) {
+            Sheet sheet = workbook.createSheet("库存");
+            writeRow(sheet, 0, "名称", "数量", "备注");
+            // 比表头窄
+            writeRow(sheet, 1, "苹果", "3");
+            // 比表头宽，中间有空单元格
+            writeRow(sheet, 2, "香蕉", "5", "进口", "", "特价");
+            // 超出表头的部分全是空单元格
+            writeRow(sheet, 3, "橙子", "2", "本地", "", "");
+            workbook.write(out);
+        }
+        Path markdown = tempDir.resolve("report.md");
+
+        ExcelToMarkdownConverter.convert(excel.toString(), markdown.toString());
+
+        List<String> lines = Files.readAllLines(markdown, StandardCharsets.UTF_8);
+        assertEquals(Arrays.asList(
+                "## 库存",
+                "",
+                "| 名称 | 数量 | 备注 | ",
+                "| --- | --- | --- | ",
+                "| 苹果 | 3 |  | ",
+                "| 香蕉 | 5 | 进口 特价 | ",
+                "| 橙子 | 2 | 本地 | "), lines.subList(0, 7));
+    }
+
+    private static void writeRow(Sheet sheet, int rowNum, String... values) {
+        Row row = sheet.createRow(rowNum);
+        for (int i = 0; i < values.length; i++) {
+            row.createCell(i).setCellValue(values[i]);
+        }
+    }
+}
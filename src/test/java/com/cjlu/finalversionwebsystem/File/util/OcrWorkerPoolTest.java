@@ -0,0 +1,130 @@
+package com.cjlu.finalversionwebsystem.File.util;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * OcrWorkerPool测试类
+ */
+public class OcrWorkerPoolTest {
+
+    private static final int THREADS = Runtime.getRuntime().availableProcessors();
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private final List<Thread> callers = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        release.countDown();
+        for (Thread caller : callers) {
+            caller.join();
+        }
+        OcrWorkerPool.setTimeoutSeconds(60);
+    }
+
+    @Test
+    void testTimedOutNativeCallIsReplacedByFreshWorker() throws InterruptedException {
+        OcrWorkerPool.setTimeoutSeconds(1);
+        // 每个工作线程都卡在无法中断的调用中，提交方各自等待超时
+        List<String> stuckResults = Collections.synchronizedList(new ArrayList<>());
+        for (int i = 0; i < THREADS; i++) {
+            startCaller(() -> stuckResults.addAll(OcrWorkerPool.runAll(Collections.singletonList(this::blockUninterruptibly))));
+        }
+        for (Thread caller : callers) {
+            caller.join();
+        }
+        assertEquals(Collections.nCopies(THREADS, null), stuckResults);
+        assertEquals(THREADS * 2, workers().getCorePoolSize());
+
+        // 超时的任务仍占着原来的线程，新的识别由补位的线程执行
+        assertEquals(Collections.singletonList("ok"), OcrWorkerPool.runAll(Collections.singletonList(() -> "ok")));
+
+        // 卡住的调用结束后撤回补位的线程
+        release.countDown();
+        waitUntil(() -> workers().getCorePoolSize() == THREADS);
+        assertEquals(THREADS, workers().getCorePoolSize());
+        assertEquals(THREADS, workers().getMaximumPoolSize());
+        assertEquals(Collections.singletonList("ok"), OcrWorkerPool.runAll(Collections.singletonList(() -> "ok")));
+    }
+
+    @Test
+    void testFullQueueRejectsWithoutBlocking() throws InterruptedException {
+        OcrWorkerPool.setTimeoutSeconds(30);
+        // 每次批量识别最多同时提交线程数个任务，多个转换同时进行才能占满工作线程和等待队列
+        int queueCapacity = workers().getQueue().remainingCapacity();
+        int batches = (THREADS + queueCapacity) / THREADS;
+        List<String> blockedResults = Collections.synchronizedList(new ArrayList<>());
+        for (int i = 0; i < batches; i++) {
+            List<OcrWorkerPool.OcrTask> tasks = new ArrayList<>();
+            for (int j = 0; j < THREADS; j++) {
+                tasks.add(this::blockUninterruptibly);
+            }
+            startCaller(() -> blockedResults.addAll(OcrWorkerPool.runAll(tasks)));
+            if (i == 0) {
+                // 第一批占满工作线程后，其余批次刚好填满等待队列
+                waitUntil(() -> workers().getActiveCount() == THREADS);
+            }
+        }
+        waitUntil(() -> workers().getQueue().remainingCapacity() == 0);
+        assertEquals(0, workers().getQueue().remainingCapacity());
+
+        // 队列已满时立即按失败返回，不等待空位
+        long start = System.nanoTime();
+        assertEquals(Collections.singletonList(null), OcrWorkerPool.runAll(Collections.singletonList(() -> "ok")));
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+
+        release.countDown();
+        for (Thread caller : callers) {
+            caller.join();
+        }
+        assertEquals(Collections.nCopies(batches * THREADS, "done"), blockedResults);
+    }
+
+    private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    private void startCaller(Runnable runnable) {
+        Thread caller = new Thread(runnable);
+        callers.add(caller);
+        caller.start();
+    }
+
+    /**
+     * 模拟Tesseract的本地调用，中断后仍继续等待
+     */
+    private String blockUninterruptibly() {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                release.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        return "done";
+    }
+
+    private static ThreadPoolExecutor workers() {
+        return (ThreadPoolExecutor) ReflectionTestUtils.getField(OcrWorkerPool.class, "workers");
+    }
+}
@@ -0,0 +1,160 @@
+package com.cjlu.finalversionwebsystem.File.util;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.graphics.image.LosslessFactory;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * PdfToMarkdownConverter测试类
+ */
+public class PdfToMarkdownConverterTest {
+
+    private static final Pattern IMAGE_LINK = Pattern.compile("!\\[图片]\\(([^)]+)\\)");
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testImageLinksPointToKeptImageFiles() throws IOException {
+        Path pdf = tempDir.resolve("manual.pdf");
+        writePdf(pdf, 1);
+        Path markdown = tempDir.resolve("manual.md");
+        // 上一次转换留下的图片在重新转换时清除
+        Path staleImage = Files.createDirectories(tempDir.resolve("manual_images")).resolve("image_9.png");
+        Files.write(staleImage, new byte[]{1});
+
+        PdfToMarkdownConverter.convert(pdf.toString(), markdown.toString());
+
+        List<String> links = imageLinks(markdown);
+        assertEquals(1, links.size());
+        assertTrue(links.get(0).startsWith("manual_images/"));
+        // 链接相对Markdown文件解析，转换结束后图片仍然存在
+        Path image = markdown.resolveSibling(links.get(0));
+        assertTrue(Files.isRegularFile(image));
+        assertTrue(Files.size(image) > 0);
+        assertFalse(Files.exists(staleImage));
+    }
+
+    @Test
+    void testParallelOutputMatchesSequentialOutput() throws IOException {
+        Path pdf = tempDir.resolve("report.pdf");
+        writePdf(pdf, 5);
+        Path sequential = tempDir.resolve("sequential.md");
+        Path parallel = tempDir.resolve("parallel.md");
+
+        // 少于并行阈值的页数按顺序转换；并行转换时每页一个任务
+        PdfToMarkdownConverter.convert(pdf.toString(), sequential.toString());
+        PdfToMarkdownConverter.convertParallel(pdf.toString(), parallel.toString(), 2);
+
+        String expected = read(sequential).replace("sequential_images/", "parallel_images/");
+        String actual = read(parallel);
+        assertEquals(expected, actual);
+
+        // 页按顺序写出，每页的表格紧跟该页正文，图片在表格之后
+        int previous = -1;
+        for (int pageNumber = 1; pageNumber <= 5; pageNumber++) {
+            int text = actual.indexOf("Page " + pageNumber + " introduction");
+            int table = actual.indexOf("| Q" + pageNumber + " ");
+            int image = actual.indexOf("parallel_images/image_p" + pageNumber + "_0.png");
+            assertTrue(previous < text && text < table && table < image, "第" + pageNumber + "页顺序错误");
+            previous = image;
+        }
+        for (String link : imageLinks(parallel)) {
+            assertTrue(Files.isRegularFile(parallel.resolveSibling(link)));
+        }
+    }
+
+    private static String read(Path file) throws IOException {
+        return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+    }
+
+    private static List<String> imageLinks(Path markdown) throws IOException {
+        Matcher matcher = IMAGE_LINK.matcher(read(markdown));
+        List<String> links = new ArrayList<>();
+        while (matcher.find()) {
+            links.add(matcher.group(1));
+        }
+        return links;
+    }
+
+    /**
+     * 生成每页一段文字、一个带边框的表格和一张图片的PDF
+     */
+    private static void writePdf(Path pdf, int pageCount) throws IOException {
+        try (PDDocument document = new PDDocument()) {
+            for (int pageNumber = 1; pageNumber <= pageCount; pageNumber++) {
+                PDPage page = new PDPage();
+                document.addPage(page);
+                PDImageXObject image = LosslessFactory.createFromImage(document, chart(pageNumber));
+                try (PDPageContentStream content = new PDPageContentStream(document, page)) {
+                    content.beginText();
+                    content.setFont(PDType1Font.HELVETICA, 12);
+                    content.newLineAtOffset(72, 700);
+                    content.showText("Page " + pageNumber + " introduction");
+                    content.endText();
+                    drawTable(content, new String[][]{{"Q" + pageNumber, "Sales"}, {"East", String.valueOf(pageNumber * 100)}});
+                    content.drawImage(image, 72, 300, 200, 150);
+                }
+            }
+            document.save(pdf.toFile());
+        }
+    }
+
+    /**
+     * 在正文下方画两列的表格，单元格带边框线，表格识别按边框线划分单元格
+     */
+    private static void drawTable(PDPageContentStream content, String[][] rows) throws IOException {
+        float left = 72;
+        float top = 650;
+        float cellWidth = 120;
+        float cellHeight = 24;
+        for (int i = 0; i <= rows.length; i++) {
+            content.moveTo(left, top - i * cellHeight);
+            content.lineTo(left + 2 * cellWidth, top - i * cellHeight);
+        }
+        for (int j = 0; j <= 2; j++) {
+            content.moveTo(left + j * cellWidth, top);
+            content.lineTo(left + j * cellWidth, top - rows.length * cellHeight);
+        }
+        content.stroke();
+        for (int i = 0; i < rows.length; i++) {
+            for (int j = 0; j < 2; j++) {
+                content.beginText();
+                content.setFont(PDType1Font.HELVETICA, 10);
+                content.newLineAtOffset(left + j * cellWidth + 6, top - (i + 1) * cellHeight + 8);
+                content.showText(rows[i][j]);
+                content.endText();
+            }
+        }
+    }
+
+    private static BufferedImage chart(int seed) {
+        BufferedImage image = new BufferedImage(200, 150, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(Color.WHITE);
+        graphics.fillRect(0, 0, 200, 150);
+        graphics.setColor(new Color(40 * seed % 256, 80, 160));
+        graphics.fillRect(20, 20, 160, 110);
+        graphics.dispose();
+        return image;
+    }
+}
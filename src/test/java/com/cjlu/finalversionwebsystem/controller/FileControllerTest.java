@@ -0,0 +1,163 @@
+package com.cjlu.finalversionwebsystem.controller;
+
+import com.cjlu.finalversionwebsystem.service.Interface.FileService;
+import com.cjlu.finalversionwebsystem.service.Interface.IngestJobService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * FileController下载接口测试类
+ */
+public class FileControllerTest {
+
+    private static final String FILE_NAME = "manual.txt";
+    private static final byte[] PLAIN = "0123456789abcdefghij".getBytes(StandardCharsets.US_ASCII);
+    private static final FileTime MODIFIED = FileTime.fromMillis(1_600_000_000_000L);
+
+    @Mock
+    private FileService fileService;
+
+    @Mock
+    private IngestJobService ingestJobService;
+
+    @InjectMocks
+    private FileController fileController;
+
+    @TempDir
+    Path tempDir;
+
+    private Path storedFile;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        MockitoAnnotations.openMocks(this);
+        storedFile = tempDir.resolve(FILE_NAME);
+        writeStoredFile((byte) 1);
+        when(fileService.fileExists(FILE_NAME)).thenReturn(true);
+        when(fileService.getStoredFile(FILE_NAME)).thenReturn(storedFile.toFile());
+        when(fileService.getPlainLength(FILE_NAME)).thenReturn((long) PLAIN.length);
+        doAnswer(invocation -> {
+            long offset = invocation.getArgument(1);
+            long length = invocation.getArgument(2);
+            OutputStream out = invocation.getArgument(3);
+            out.write(PLAIN, (int) offset, (int) length);
+            return null;
+        }).when(fileService).transferPlainRange(anyString(), anyLong(), anyLong(), any(OutputStream.class));
+    }
+
+    @Test
+    void testFullDownloadCarriesCheapETag() throws Exception {
+        MockHttpServletResponse response = download(new MockHttpServletRequest());
+
+        assertEquals(200, response.getStatus());
+        assertArrayEquals(PLAIN, response.getContentAsByteArray());
+        assertEquals("bytes", response.getHeader(HttpHeaders.ACCEPT_RANGES));
+        assertNotNull(response.getHeader(HttpHeaders.ETAG));
+        // ETag不需要解密文件计算摘要
+        verify(fileService, never()).getContentHash(anyString());
+    }
+
+    @Test
+    void testRangeReturnsPartialContent() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader(HttpHeaders.RANGE, "bytes=5-9");
+
+        MockHttpServletResponse response = download(request);
+
+        assertEquals(206, response.getStatus());
+        assertEquals("bytes 5-9/20", response.getHeader(HttpHeaders.CONTENT_RANGE));
+        assertEquals("56789", response.getContentAsString());
+        assertEquals(5, response.getContentLength());
+    }
+
+    @Test
+    void testRangeBeyondEndIsNotSatisfiable() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader(HttpHeaders.RANGE, "bytes=20-");
+
+        MockHttpServletResponse response = download(request);
+
+        assertEquals(416, response.getStatus());
+        assertEquals("bytes */20", response.getHeader(HttpHeaders.CONTENT_RANGE));
+        verify(fileService, never()).transferPlainRange(anyString(), anyLong(), anyLong(), any(OutputStream.class));
+    }
+
+    @Test
+    void testIfNoneMatchReturnsNotModifiedUntilFileIsReencrypted() throws Exception {
+        String etag = download(new MockHttpServletRequest()).getHeader(HttpHeaders.ETAG);
+
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader(HttpHeaders.IF_NONE_MATCH, "\"other\", W/" + etag);
+        MockHttpServletResponse response = download(request);
+
+        assertEquals(304, response.getStatus());
+        assertEquals(0, response.getContentAsByteArray().length);
+
+        // 重新上传后长度和修改时间都没变，文件头的nonce不同，ETag随之变化
+        writeStoredFile((byte) 2);
+        response = download(request);
+        assertEquals(200, response.getStatus());
+        assertNotEquals(etag, response.getHeader(HttpHeaders.ETAG));
+    }
+
+    @Test
+    void testIfRangeHonoursRangeOnlyForCurrentETag() throws Exception {
+        String etag = download(new MockHttpServletRequest()).getHeader(HttpHeaders.ETAG);
+
+        MockHttpServletRequest current = new MockHttpServletRequest();
+        current.addHeader(HttpHeaders.RANGE, "bytes=-4");
+        current.addHeader(HttpHeaders.IF_RANGE, etag);
+        MockHttpServletResponse response = download(current);
+        assertEquals(206, response.getStatus());
+        assertEquals("ghij", response.getContentAsString());
+
+        // 客户端缓存的是旧版本，忽略Range返回完整文件
+        MockHttpServletRequest stale = new MockHttpServletRequest();
+        stale.addHeader(HttpHeaders.RANGE, "bytes=-4");
+        stale.addHeader(HttpHeaders.IF_RANGE, "\"0-0\"");
+        response = download(stale);
+        assertEquals(200, response.getStatus());
+        assertNull(response.getHeader(HttpHeaders.CONTENT_RANGE));
+        assertArrayEquals(PLAIN, response.getContentAsByteArray());
+    }
+
+    private MockHttpServletResponse download(MockHttpServletRequest request) {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        fileController.download(FILE_NAME, request, response);
+        return response;
+    }
+
+    /**
+     * 写入分块加密格式的文件头和固定长度的密文，nonce前缀按参数区分，修改时间保持不变
+     */
+    private void writeStoredFile(byte nonce) throws IOException {
+        byte[] content = new byte[16 + PLAIN.length + 16];
+        System.arraycopy("KLBE".getBytes(StandardCharsets.US_ASCII), 0, content, 0, 4);
+        content[4] = 1;
+        content[7] = 0x10;
+        Arrays.fill(content, 9, 16, nonce);
+        Files.write(storedFile, content);
+        Files.setLastModifiedTime(storedFile, MODIFIED);
+    }
+}
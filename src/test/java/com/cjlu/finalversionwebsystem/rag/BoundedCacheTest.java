@@ -0,0 +1,68 @@
+package com.cjlu.finalversionwebsystem.rag;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * BoundedCache测试类
+ */
+public class BoundedCacheTest {
+
+    @Test
+    void testEvictsLeastRecentlyUsedWhenOverCapacity() {
+        BoundedCache<String, String> cache = new BoundedCache<>(100, 0, TimeUnit.MINUTES);
+
+        cache.put("a", "A", 40);
+        cache.put("b", "B", 40);
+        // 访问a，使b成为最久未使用的条目
+        assertEquals("A", cache.get("a"));
+        cache.put("c", "C", 40);
+
+        assertNull(cache.get("b"));
+        assertEquals("A", cache.get("a"));
+        assertEquals("C", cache.get("c"));
+
+        Map<String, Object> stats = cache.stats();
+        assertEquals(2, stats.get("entries"));
+        assertEquals(80L, stats.get("bytes"));
+        assertEquals(1L, stats.get("evictions"));
+        assertEquals(3L, stats.get("hits"));
+        assertEquals(1L, stats.get("misses"));
+    }
+
+    @Test
+    void testRejectsEntryLargerThanCapacity() {
+        BoundedCache<String, String> cache = new BoundedCache<>(100, 0, TimeUnit.MINUTES);
+
+        assertFalse(cache.put("big", "X", 101));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void testExpiresIdleEntries() throws InterruptedException {
+        BoundedCache<String, String> cache = new BoundedCache<>(100, 20, TimeUnit.MILLISECONDS);
+
+        cache.put("a", "A", 10);
+        Thread.sleep(50);
+
+        assertNull(cache.get("a"));
+        assertEquals(0L, cache.stats().get("bytes"));
+    }
+
+    @Test
+    void testInvalidateIf() {
+        BoundedCache<String, String> cache = new BoundedCache<>(100, 0, TimeUnit.MINUTES);
+
+        cache.put("a.md,b.md", "AB", 10);
+        cache.put("b.md,c.md", "BC", 10);
+        cache.put("c.md", "C", 10);
+
+        assertEquals(2, cache.invalidateIf(key -> key.contains("b.md")));
+        assertEquals(1, cache.size());
+        assertEquals(10L, cache.stats().get("bytes"));
+    }
+}
@@ -0,0 +1,81 @@
+package com.cjlu.finalversionwebsystem.rag;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * CachingEmbeddingModel测试类
+ */
+public class CachingEmbeddingModelTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final List<String> remoteTexts = new ArrayList<>();
+
+    @Test
+    void testOnlyUnseenSegmentsAreEmbedded() throws Exception {
+        try (EmbeddingCacheStore store = EmbeddingCacheStore.open(tempDir.resolve("cache.bin"))) {
+            CachingEmbeddingModel model = new CachingEmbeddingModel(store, this::remoteEmbed);
+
+            List<Embedding> first = model.embedAll(segments("版权所有", "第一章", "版权所有")).content();
+            assertEquals(Arrays.asList("版权所有", "第一章"), remoteTexts);
+            assertEquals(3, first.size());
+            assertArrayEquals(first.get(0).vector(), first.get(2).vector());
+
+            remoteTexts.clear();
+            List<Embedding> second = model.embedAll(segments("第一章", "  版权所有\n", "第二章")).content();
+            // 空白不同的文本视为相同
+            assertEquals(Arrays.asList("第二章"), remoteTexts);
+            assertArrayEquals(first.get(1).vector(), second.get(0).vector());
+            assertArrayEquals(first.get(0).vector(), second.get(1).vector());
+
+            assertEquals(3, store.size());
+            assertEquals(3L, model.stats().get("embeddedSegments"));
+        }
+    }
+
+    @Test
+    void testCacheSurvivesReopen() throws Exception {
+        Path file = tempDir.resolve("cache.bin");
+        float[] expected;
+        try (EmbeddingCacheStore store = EmbeddingCacheStore.open(file)) {
+            expected = new CachingEmbeddingModel(store, this::remoteEmbed).embed("公司经营情况").content().vector();
+        }
+
+        remoteTexts.clear();
+        try (EmbeddingCacheStore store = EmbeddingCacheStore.open(file)) {
+            assertEquals(1, store.size());
+            float[] actual = new CachingEmbeddingModel(store, this::remoteEmbed).embed("公司经营情况").content().vector();
+            assertArrayEquals(expected, actual);
+            assertTrue(remoteTexts.isEmpty());
+        }
+    }
+
+    private List<Embedding> remoteEmbed(List<TextSegment> segments) {
+        List<Embedding> embeddings = new ArrayList<>();
+        for (TextSegment segment : segments) {
+            remoteTexts.add(segment.text());
+            String text = segment.text();
+            embeddings.add(Embedding.from(new float[]{text.length(), text.hashCode(), text.charAt(0)}));
+        }
+        return embeddings;
+    }
+
+    private List<TextSegment> segments(String... texts) {
+        List<TextSegment> segments = new ArrayList<>();
+        for (String text : texts) {
+            segments.add(TextSegment.from(text));
+        }
+        return segments;
+    }
+}
@@ -0,0 +1,82 @@
+package com.cjlu.finalversionwebsystem.rag;
+
+import dev.langchain4j.rag.content.Content;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ContextAssembler测试类
+ */
+public class ContextAssemblerTest {
+
+    @Test
+    void testEstimate() {
+        assertEquals(0, TokenEstimator.estimate(""));
+        assertEquals(4, TokenEstimator.estimate("知识库测"));
+        assertEquals(4, TokenEstimator.estimate("hello world"));
+    }
+
+    @Test
+    void testSmallFileUsesWholeContent() {
+        ContextAssembler.AssembledContext context =
+                new ContextAssembler(1000, 500).assemble("这是一个很小的文件", segments(5, 100));
+
+        assertTrue(context.isWholeFile());
+        assertEquals("这是一个很小的文件", context.getText());
+        assertEquals(9, context.getTokens());
+    }
+
+    @Test
+    void testLargeFileStaysWithinBudget() {
+        StringBuilder largeFile = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            largeFile.append("内容");
+        }
+        List<Content> contents = segments(10, 300);
+
+        ContextAssembler.AssembledContext context = new ContextAssembler(1000, 500).assemble(largeFile.toString(), contents);
+
+        assertFalse(context.isWholeFile());
+        assertEquals(3, context.getSegmentCount());
+        assertTrue(context.getTokens() <= 1000);
+        assertEquals(context.getTokens(), TokenEstimator.estimate(context.getText()));
+        // 按相关度顺序装入
+        assertTrue(context.getText().indexOf(contents.get(0).textSegment().text())
+                < context.getText().indexOf(contents.get(1).textSegment().text()));
+    }
+
+    @Test
+    void testOversizedTopSegmentIsTruncated() {
+        ContextAssembler.AssembledContext context = new ContextAssembler(100, 50).assemble(null, segments(2, 500));
+
+        assertEquals(1, context.getSegmentCount());
+        assertTrue(context.getTokens() <= 100);
+    }
+
+    @Test
+    void testDuplicateSegmentsPackedOnce() {
+        List<Content> contents = Arrays.asList(Content.from("重复片段"), Content.from("重复片段"));
+
+        assertEquals(1, new ContextAssembler(1000, 0).assemble(null, contents).getSegmentCount());
+    }
+
+    /**
+     * 生成count个各含length个汉字的片段
+     */
+    private List<Content> segments(int count, int length) {
+        List<Content> contents = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            StringBuilder text = new StringBuilder();
+            for (int j = 0; j < length; j++) {
+                text.append((char) ('一' + i));
+            }
+            contents.add(Content.from(text.toString()));
+        }
+        return contents;
+    }
+}
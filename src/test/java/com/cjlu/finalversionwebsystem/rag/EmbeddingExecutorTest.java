@@ -0,0 +1,106 @@
+package com.cjlu.finalversionwebsystem.rag;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * EmbeddingExecutor测试类
+ */
+public class EmbeddingExecutorTest {
+
+    private EmbeddingExecutor executor;
+
+    @AfterEach
+    void tearDown() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void testEmbeddingsKeepSegmentOrder() {
+        executor = new EmbeddingExecutor(new IndexEmbeddingModel(Integer.MAX_VALUE, 0), 4, 10, 1000, 1_000_000, 0, 1);
+
+        List<Embedding> embeddings = executor.embedAll(segments(95));
+
+        assertEquals(95, embeddings.size());
+        for (int i = 0; i < embeddings.size(); i++) {
+            assertEquals(i, embeddings.get(i).vector()[0]);
+        }
+    }
+
+    @Test
+    void testRetriesWhenRateLimited() {
+        IndexEmbeddingModel model = new IndexEmbeddingModel(Integer.MAX_VALUE, 3);
+        executor = new EmbeddingExecutor(model, 2, 10, 1000, 1_000_000, 5, 1);
+
+        assertEquals(30, executor.embedAll(segments(30)).size());
+        assertEquals(6, model.calls.get());
+    }
+
+    @Test
+    void testGivesUpAfterMaxRetries() {
+        executor = new EmbeddingExecutor(new IndexEmbeddingModel(Integer.MAX_VALUE, 10), 2, 10, 1000, 1_000_000, 2, 1);
+
+        assertThrows(RuntimeException.class, () -> executor.embedAll(segments(5)));
+    }
+
+    @Test
+    void testShrinksBatchWhenProviderRejectsSize() {
+        executor = new EmbeddingExecutor(new IndexEmbeddingModel(4, 0), 2, 16, 1000, 1_000_000, 0, 1);
+
+        List<Embedding> embeddings = executor.embedAll(segments(50));
+
+        assertEquals(50, embeddings.size());
+        assertEquals(49, embeddings.get(49).vector()[0]);
+        assertTrue(executor.getBatchSize() <= 4);
+    }
+
+    private List<TextSegment> segments(int count) {
+        List<TextSegment> segments = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            segments.add(TextSegment.from(String.valueOf(i)));
+        }
+        return segments;
+    }
+
+    /**
+     * 把文本段中的序号作为向量返回，可模拟批次上限和限流
+     */
+    private static class IndexEmbeddingModel implements EmbeddingModel {
+        private final int maxBatchSize;
+        private final AtomicInteger rateLimitedCalls;
+        private final AtomicInteger calls = new AtomicInteger();
+
+        private IndexEmbeddingModel(int maxBatchSize, int rateLimitedCalls) {
+            this.maxBatchSize = maxBatchSize;
+            this.rateLimitedCalls = new AtomicInteger(rateLimitedCalls);
+        }
+
+        @Override
+        public Response<List<Embedding>> embedAll(List<TextSegment> segments) {
+            calls.incrementAndGet();
+            if (segments.size() > maxBatchSize) {
+                throw new RuntimeException("batch size is invalid, it should not be larger than " + maxBatchSize);
+            }
+            if (rateLimitedCalls.getAndDecrement() > 0) {
+                throw new RuntimeException("status code: 429, Too Many Requests");
+            }
+            List<Embedding> embeddings = new ArrayList<>(segments.size());
+            for (TextSegment segment : segments) {
+                embeddings.add(Embedding.from(new float[]{Float.parseFloat(segment.text())}));
+            }
+            return Response.from(embeddings);
+        }
+    }
+}
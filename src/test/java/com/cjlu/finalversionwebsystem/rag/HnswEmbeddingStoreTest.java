@@ -0,0 +1,123 @@
+package com.cjlu.finalversionwebsystem.rag;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * HnswEmbeddingStore测试类
+ */
+public class HnswEmbeddingStoreTest {
+
+    private static final int DIMENSION = 32;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testRecallAgainstExactSearch() {
+        Random random = new Random(7);
+        List<Embedding> embeddings = randomEmbeddings(random, 2000);
+        List<TextSegment> segments = segments(embeddings.size());
+
+        HnswEmbeddingStore hnswStore = new HnswEmbeddingStore(16, 200, 200);
+        hnswStore.addAll(embeddings, segments);
+        OffHeapEmbeddingStore exactStore = OffHeapEmbeddingStore.from(embeddings, segments);
+
+        double hits = 0;
+        int queries = 50;
+        for (Embedding query : randomEmbeddings(random, queries)) {
+            Set<String> expected = texts(exactStore.findRelevant(query, 10, 0));
+            for (EmbeddingMatch<TextSegment> match : hnswStore.findRelevant(query, 10, 0)) {
+                if (expected.contains(match.embedded().text())) {
+                    hits++;
+                }
+            }
+        }
+        assertTrue(hits / (queries * 10) > 0.9, "召回率过低: " + hits / (queries * 10));
+    }
+
+    @Test
+    void testRemovedVectorsAreNotReturned() {
+        Random random = new Random(11);
+        List<Embedding> embeddings = randomEmbeddings(random, 500);
+        HnswEmbeddingStore store = new HnswEmbeddingStore(8, 100, 50);
+        List<String> ids = store.addAll(embeddings, segments(embeddings.size()));
+
+        // 查询向量与第0个向量相同，删除前必然排第一
+        Embedding query = embeddings.get(0);
+        assertEquals("segment-0", store.findRelevant(query, 1, 0).get(0).embedded().text());
+
+        assertTrue(store.remove(ids.get(0)));
+        assertFalse(store.remove(ids.get(0)));
+        assertEquals(499, store.size());
+        assertNotEquals("segment-0", store.findRelevant(query, 1, 0).get(0).embedded().text());
+
+        // 超过一半被删除时重建
+        assertEquals(300, store.removeAll(ids.subList(1, 301)));
+        assertEquals(199, store.size());
+        for (EmbeddingMatch<TextSegment> match : store.findRelevant(query, 20, 0)) {
+            int index = Integer.parseInt(match.embedded().text().substring("segment-".length()));
+            assertTrue(index > 300);
+        }
+    }
+
+    @Test
+    void testSaveAndLoad() throws Exception {
+        Random random = new Random(3);
+        List<Embedding> embeddings = randomEmbeddings(random, 300);
+        HnswEmbeddingStore store = new HnswEmbeddingStore(8, 100, 50);
+        List<String> ids = store.addAll(embeddings, segments(embeddings.size()));
+        store.remove(ids.get(5));
+
+        Path file = tempDir.resolve("test.hnsw");
+        store.save(file);
+        HnswEmbeddingStore loaded = HnswEmbeddingStore.load(file, 50);
+
+        assertEquals(store.size(), loaded.size());
+        for (Embedding query : randomEmbeddings(random, 10)) {
+            List<EmbeddingMatch<TextSegment>> expected = store.findRelevant(query, 5, 0);
+            List<EmbeddingMatch<TextSegment>> actual = loaded.findRelevant(query, 5, 0);
+            assertEquals(texts(expected), texts(actual));
+        }
+    }
+
+    private List<Embedding> randomEmbeddings(Random random, int count) {
+        List<Embedding> embeddings = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            float[] vector = new float[DIMENSION];
+            for (int j = 0; j < DIMENSION; j++) {
+                vector[j] = (float) random.nextGaussian();
+            }
+            embeddings.add(Embedding.from(vector));
+        }
+        return embeddings;
+    }
+
+    private List<TextSegment> segments(int count) {
+        List<TextSegment> segments = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            segments.add(TextSegment.from("segment-" + i));
+        }
+        return segments;
+    }
+
+    private Set<String> texts(List<EmbeddingMatch<TextSegment>> matches) {
+        Set<String> texts = new HashSet<>();
+        for (EmbeddingMatch<TextSegment> match : matches) {
+            texts.add(match.embedded().text());
+        }
+        return texts;
+    }
+}
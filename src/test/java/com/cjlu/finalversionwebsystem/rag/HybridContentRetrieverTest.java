@@ -0,0 +1,77 @@
+package com.cjlu.finalversionwebsystem.rag;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.query.Query;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * HybridContentRetriever测试类
+ */
+public class HybridContentRetrieverTest {
+
+    @Test
+    void testTokenizeCjkBigramsAndPartNumbers() {
+        assertEquals(Arrays.asList("合同", "同编", "编号", "ht-2024-007", "ht", "2024", "007"),
+                Bm25Index.tokenize("合同编号：HT-2024-007"));
+        // 全角字母数字与半角写法一致
+        assertEquals(Bm25Index.tokenize("ab12"), Bm25Index.tokenize("ＡＢ１２"));
+    }
+
+    @Test
+    void testKeywordHitIsFusedWithVectorResults() {
+        List<TextSegment> segments = segments("test.md", "公司简介与发展历程", "采购合同HT-2024-007的付款条款", "员工考勤管理办法");
+        Bm25Index keywordIndex = new Bm25Index(segments);
+        assertEquals("采购合同HT-2024-007的付款条款", keywordIndex.search("HT-2024-007", 5).get(0).getSegment().text());
+
+        // 向量检索没有召回含编号的文本段
+        List<Content> vectorResults = new ArrayList<>();
+        vectorResults.add(Content.from(segments.get(0)));
+        vectorResults.add(Content.from(segments.get(2)));
+        HybridContentRetriever retriever = new HybridContentRetriever(query -> vectorResults,
+                Collections.singletonList(keywordIndex), 2, 10, 60);
+
+        List<Content> results = retriever.retrieve(Query.from("HT-2024-007 公司"));
+        assertEquals(2, results.size());
+        // 两路都命中的文本段排在最前，只有关键词命中的编号段也被召回
+        assertEquals("公司简介与发展历程", results.get(0).textSegment().text());
+        assertEquals("采购合同HT-2024-007的付款条款", results.get(1).textSegment().text());
+    }
+
+    @Test
+    void testKeywordResultsOfDifferentFilesAreMergedByRank() {
+        // 大文件中“付款”很少见，IDF高，原始分数整体高于小文件
+        Bm25Index largeFile = new Bm25Index(segments("large.md", "付款条款第一条", "付款条款第二条",
+                "公司简介", "发展历程", "组织架构", "员工手册", "考勤管理", "培训计划", "福利制度", "安全规范"));
+        // 小文件中每段都含“付款”，IDF低
+        Bm25Index smallFile = new Bm25Index(segments("small.md", "付款方式说明", "付款时间说明"));
+        assertTrue(largeFile.search("付款", 1).get(0).getScore() > smallFile.search("付款", 1).get(0).getScore());
+
+        HybridContentRetriever retriever = new HybridContentRetriever(query -> Collections.emptyList(),
+                Arrays.asList(largeFile, smallFile), 2, 2, 60);
+
+        // 各文件的第一名都进入关键词候选，不会只取原始分数高的文件
+        List<Content> results = retriever.retrieve(Query.from("付款"));
+        assertEquals(2, results.size());
+        assertEquals("large.md", results.get(0).textSegment().metadata().get("source_file"));
+        assertEquals("small.md", results.get(1).textSegment().metadata().get("source_file"));
+    }
+
+    private List<TextSegment> segments(String sourceFile, String... texts) {
+        List<TextSegment> segments = new ArrayList<>();
+        for (String text : texts) {
+            Metadata metadata = new Metadata();
+            metadata.add("source_file", sourceFile);
+            segments.add(TextSegment.from(text, metadata));
+        }
+        return segments;
+    }
+}
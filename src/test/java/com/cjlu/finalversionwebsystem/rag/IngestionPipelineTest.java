@@ -0,0 +1,55 @@
+package com.cjlu.finalversionwebsystem.rag;
+
+import dev.langchain4j.data.segment.TextSegment;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * IngestionPipeline测试类
+ */
+public class IngestionPipelineTest {
+
+    @Test
+    void testBatchesKeepOrderAndInFlightStaysBounded() throws Exception {
+        AtomicInteger produced = new AtomicInteger();
+        AtomicInteger consumed = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        List<String> texts = new ArrayList<>();
+
+        new IngestionPipeline(4, 3).run(sink -> {
+            for (int i = 0; i < 50; i++) {
+                sink.accept(TextSegment.from("段落" + i));
+                produced.incrementAndGet();
+            }
+        }, batch -> {
+            maxInFlight.accumulateAndGet(produced.get() - consumed.get(), Math::max);
+            for (TextSegment segment : batch) {
+                texts.add(segment.text());
+            }
+            consumed.addAndGet(batch.size());
+            Thread.sleep(2);
+        });
+
+        assertEquals(50, texts.size());
+        assertEquals("段落0", texts.get(0));
+        assertEquals("段落49", texts.get(49));
+        // 队列容量加一批，另有读取线程手中的一段
+        assertTrue(maxInFlight.get() <= 4 + 3 + 1);
+    }
+
+    @Test
+    void testSourceFailureIsRethrown() {
+        IllegalStateException error = assertThrows(IllegalStateException.class, () ->
+                new IngestionPipeline(4, 3).run(sink -> {
+                    sink.accept(TextSegment.from("第一段"));
+                    throw new IllegalStateException("解析失败");
+                }, batch -> {
+                }));
+        assertEquals("解析失败", error.getMessage());
+    }
+}
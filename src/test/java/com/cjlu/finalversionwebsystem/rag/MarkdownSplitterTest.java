@@ -0,0 +1,53 @@
+package com.cjlu.finalversionwebsystem.rag;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.segment.TextSegment;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * MarkdownSplitter测试类
+ */
+public class MarkdownSplitterTest {
+
+    @Test
+    void testSegmentsFollowHeadingsAndKeepTables() {
+        String markdown = "# 员工手册\n\n" +
+                "## 考勤\n\n" +
+                "上班时间为九点。\n\n" +
+                "| 类型 | 天数 |\n" +
+                "| --- | --- |\n" +
+                "| 年假 | 5 |\n\n" +
+                "## 报销\n\n" +
+                "发票需在三十天内提交。\n";
+        List<TextSegment> segments = new MarkdownSplitter(200).split(Document.from(markdown, new Metadata()));
+
+        assertEquals(2, segments.size());
+        assertTrue(segments.get(0).text().startsWith("员工手册 > 考勤"));
+        assertTrue(segments.get(0).text().contains("| 类型 | 天数 |\n| --- | --- |\n| 年假 | 5 |"));
+        assertEquals("员工手册 > 报销", segments.get(1).metadata().get("heading"));
+        assertFalse(segments.get(1).text().contains("九点"));
+    }
+
+    @Test
+    void testOversizedTableRepeatsHeaderAndStaysUnderLimit() throws Exception {
+        StringBuilder markdown = new StringBuilder("# 价格表\n\n| 型号 | 价格 |\n| --- | --- |\n");
+        for (int i = 0; i < 100; i++) {
+            markdown.append("| 产品型号").append(i).append(" | ").append(i * 10).append(" |\n");
+        }
+        List<TextSegment> segments = new ArrayList<>();
+        new MarkdownSplitter(120).split(new StringReader(markdown.toString()), new Metadata(), segments::add);
+
+        assertTrue(segments.size() > 1);
+        for (TextSegment segment : segments) {
+            assertTrue(segment.text().contains("| 型号 | 价格 |\n| --- | --- |"));
+            assertTrue(TokenEstimator.estimate(segment.text()) <= 120 + 10);
+        }
+    }
+}
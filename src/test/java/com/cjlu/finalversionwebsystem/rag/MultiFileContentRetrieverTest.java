@@ -0,0 +1,119 @@
+package com.cjlu.finalversionwebsystem.rag;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.query.Query;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * MultiFileContentRetriever测试类
+ */
+public class MultiFileContentRetrieverTest {
+
+    // 查询向量固定为(1, 0)，文本段向量与它的夹角决定相关度
+    private final EmbeddingModel queryModel = segments -> {
+        List<Embedding> embeddings = new ArrayList<>();
+        for (int i = 0; i < segments.size(); i++) {
+            embeddings.add(Embedding.from(new float[]{1, 0}));
+        }
+        return Response.from(embeddings);
+    };
+
+    @Test
+    void testMergesFilesByScoreWithinGlobalLimit() {
+        Map<String, EmbeddingStore<TextSegment>> stores = new LinkedHashMap<>();
+        stores.put("a.md", store("a.md", new String[]{"a-0度", "a-30度", "a-45度"}, new double[]{0, 30, 45}));
+        stores.put("b.md", store("b.md", new String[]{"b-10度", "b-80度"}, new double[]{10, 80}));
+
+        MultiFileContentRetriever retriever = new MultiFileContentRetriever(queryModel, stores, 3, 0.8);
+        List<Content> results = retriever.retrieve(Query.from("问题"));
+
+        // 两个文件的结果按分数交错合并，低于最低分数的 b-80度 被过滤
+        assertEquals(Arrays.asList("a-0度", "b-10度", "a-30度"), texts(results));
+        assertEquals("b.md", results.get(1).textSegment().metadata().get("source_file"));
+    }
+
+    @Test
+    void testEachFileContributesAtMostMaxResultsCandidates() {
+        RecordingStore large = new RecordingStore();
+        RecordingStore small = new RecordingStore();
+        for (int i = 0; i < 10; i++) {
+            large.add(vector(i), segment("large-" + i, "large.md"));
+        }
+        small.add(vector(5), segment("small-5", "small.md"));
+        Map<String, EmbeddingStore<TextSegment>> stores = new LinkedHashMap<>();
+        stores.put("large.md", large);
+        stores.put("small.md", small);
+
+        List<Content> results = new MultiFileContentRetriever(queryModel, stores, 2, 0).retrieve(Query.from("问题"));
+
+        // 每个文件只取前 maxResults 个候选
+        assertEquals(Arrays.asList(2, 2), Arrays.asList(large.requestedMaxResults, small.requestedMaxResults));
+        assertEquals(Arrays.asList("large-0", "large-1"), texts(results));
+    }
+
+    @Test
+    void testRelabelsSegmentsSharedFromAnotherFile() {
+        // 内容寻址的索引由同内容的 original.md 构建，返回时标注为实际检索的文件
+        Map<String, EmbeddingStore<TextSegment>> stores = new LinkedHashMap<>();
+        stores.put("copy.md", store("original.md", new String[]{"共享内容"}, new double[]{0}));
+
+        List<Content> results = new MultiFileContentRetriever(queryModel, stores, 1, 0).retrieve(Query.from("问题"));
+
+        assertEquals("copy.md", results.get(0).textSegment().metadata().get("source_file"));
+    }
+
+    private static OffHeapEmbeddingStore store(String sourceFile, String[] texts, double[] degrees) {
+        OffHeapEmbeddingStore store = new OffHeapEmbeddingStore();
+        for (int i = 0; i < texts.length; i++) {
+            store.add(vector(degrees[i]), segment(texts[i], sourceFile));
+        }
+        return store;
+    }
+
+    private static Embedding vector(double degrees) {
+        double radians = Math.toRadians(degrees);
+        return Embedding.from(new float[]{(float) Math.cos(radians), (float) Math.sin(radians)});
+    }
+
+    private static TextSegment segment(String text, String sourceFile) {
+        Metadata metadata = new Metadata();
+        metadata.add("source_file", sourceFile);
+        return TextSegment.from(text, metadata);
+    }
+
+    private static List<String> texts(List<Content> contents) {
+        List<String> texts = new ArrayList<>();
+        for (Content content : contents) {
+            texts.add(content.textSegment().text());
+        }
+        return texts;
+    }
+
+    /**
+     * 记录每次检索请求的候选数
+     */
+    private static class RecordingStore extends OffHeapEmbeddingStore {
+        private int requestedMaxResults;
+
+        @Override
+        public List<EmbeddingMatch<TextSegment>> findRelevant(Embedding referenceEmbedding, int maxResults, double minScore) {
+            requestedMaxResults = maxResults;
+            return super.findRelevant(referenceEmbedding, maxResults, minScore);
+        }
+    }
+}
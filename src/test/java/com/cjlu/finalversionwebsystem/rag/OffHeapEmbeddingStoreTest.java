@@ -0,0 +1,65 @@
+package com.cjlu.finalversionwebsystem.rag;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * OffHeapEmbeddingStore测试类
+ */
+public class OffHeapEmbeddingStoreTest {
+
+    @Test
+    void testMatchesInMemoryEmbeddingStore() {
+        Random random = new Random(42);
+        int dimension = 37;
+        List<Embedding> embeddings = new ArrayList<>();
+        List<TextSegment> segments = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            embeddings.add(randomEmbedding(random, dimension));
+            segments.add(TextSegment.from("segment-" + i));
+        }
+
+        OffHeapEmbeddingStore offHeapStore = new OffHeapEmbeddingStore();
+        offHeapStore.addAll(embeddings, segments);
+        InMemoryEmbeddingStore<TextSegment> inMemoryStore = new InMemoryEmbeddingStore<>();
+        inMemoryStore.addAll(embeddings, segments);
+
+        for (int q = 0; q < 10; q++) {
+            Embedding query = randomEmbedding(random, dimension);
+            List<EmbeddingMatch<TextSegment>> expected = inMemoryStore.findRelevant(query, 5, 0.55);
+            List<EmbeddingMatch<TextSegment>> actual = offHeapStore.findRelevant(query, 5, 0.55);
+
+            assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.get(i).embedded().text(), actual.get(i).embedded().text());
+                assertEquals(expected.get(i).score(), actual.get(i).score(), 1e-5);
+            }
+        }
+    }
+
+    @Test
+    void testRejectsDimensionMismatch() {
+        OffHeapEmbeddingStore store = new OffHeapEmbeddingStore();
+        store.add(Embedding.from(new float[]{1, 0, 0}));
+
+        assertThrows(IllegalArgumentException.class, () -> store.add(Embedding.from(new float[]{1, 0})));
+        assertThrows(IllegalArgumentException.class, () -> store.findRelevant(Embedding.from(new float[]{1, 0}), 1, 0));
+    }
+
+    private Embedding randomEmbedding(Random random, int dimension) {
+        float[] vector = new float[dimension];
+        for (int i = 0; i < dimension; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return Embedding.from(vector);
+    }
+}
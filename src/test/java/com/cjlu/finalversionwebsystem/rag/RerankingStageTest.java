@@ -0,0 +1,62 @@
+package com.cjlu.finalversionwebsystem.rag;
+
+import dev.langchain4j.rag.content.Content;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * RerankingStage测试类
+ */
+public class RerankingStageTest {
+
+    @Test
+    void testMmrSkipsNearDuplicateSegments() {
+        List<Content> candidates = contents(
+                "年假天数按工龄计算，满一年五天",
+                "年假天数按工龄计算，满一年五天，满十年十天",
+                "病假需要提供医院证明");
+        RerankingStage stage = new RerankingStage(new MmrReranker(0.5), 1000, 1);
+        try {
+            List<Content> reranked = stage.rerank("年假和病假怎么请", candidates, 2);
+            assertEquals(2, reranked.size());
+            assertEquals("年假天数按工龄计算，满一年五天", reranked.get(0).textSegment().text());
+            assertEquals("病假需要提供医院证明", reranked.get(1).textSegment().text());
+        } finally {
+            stage.shutdown();
+        }
+    }
+
+    @Test
+    void testFallsBackToRetrievalOrderWhenOverBudget() {
+        Reranker slow = (query, candidates, maxResults) -> {
+            try {
+                Thread.sleep(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return candidates;
+        };
+        RerankingStage stage = new RerankingStage(slow, 50, 1);
+        try {
+            long startTime = System.currentTimeMillis();
+            List<Content> reranked = stage.rerank("问题", contents("a", "b", "c"), 2);
+            assertTrue(System.currentTimeMillis() - startTime < 2000);
+            assertEquals(2, reranked.size());
+            assertEquals("a", reranked.get(0).textSegment().text());
+        } finally {
+            stage.shutdown();
+        }
+    }
+
+    private List<Content> contents(String... texts) {
+        List<Content> contents = new ArrayList<>();
+        for (String text : texts) {
+            contents.add(Content.from(text));
+        }
+        return contents;
+    }
+}
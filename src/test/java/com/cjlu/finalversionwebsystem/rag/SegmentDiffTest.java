@@ -0,0 +1,72 @@
+package com.cjlu.finalversionwebsystem.rag;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * SegmentDiff测试类
+ */
+public class SegmentDiffTest {
+
+    @Test
+    void testOnlyChangedSegmentsNeedEmbedding() {
+        List<TextSegment> oldSegments = segments("第一章", "第二章", "第三章");
+        SegmentIndex previous = new SegmentIndex("old", oldSegments, embeddings(oldSegments));
+
+        List<TextSegment> newSegments = segments("第一章", "第二章（修订）", "第三章", "附录");
+        SegmentDiff diff = SegmentDiff.compute(previous, newSegments);
+
+        assertEquals(2, diff.getReusedCount());
+        assertEquals(Arrays.asList("第二章（修订）", "附录"), texts(diff.getChangedSegments()));
+        assertEquals(SegmentDiff.segmentIds(segments("第二章")), diff.getRemovedIds());
+
+        SegmentIndex index = diff.toIndex("new", embeddings(diff.getChangedSegments()));
+        assertEquals(4, index.size());
+        // 未变化的文本段复用旧向量
+        assertArrayEquals(previous.getEmbeddings().get(2).vector(), index.getEmbeddings().get(2).vector());
+        assertArrayEquals(embeddings(segments("附录")).get(0).vector(), index.getEmbeddings().get(3).vector());
+    }
+
+    @Test
+    void testRepeatedTextGetsDistinctIds() {
+        List<String> ids = SegmentDiff.segmentIds(segments("版权所有", "正文", "版权所有"));
+        assertEquals(3, new HashSet<>(ids).size());
+
+        SegmentDiff diff = SegmentDiff.compute(null, segments("正文"));
+        assertEquals(1, diff.getChangedSegments().size());
+        assertTrue(diff.getRemovedIds().isEmpty());
+    }
+
+    private List<Embedding> embeddings(List<TextSegment> segments) {
+        List<Embedding> embeddings = new ArrayList<>();
+        for (TextSegment segment : segments) {
+            String text = segment.text();
+            embeddings.add(Embedding.from(new float[]{text.length(), text.hashCode()}));
+        }
+        return embeddings;
+    }
+
+    private List<TextSegment> segments(String... texts) {
+        List<TextSegment> segments = new ArrayList<>();
+        for (String text : texts) {
+            segments.add(TextSegment.from(text));
+        }
+        return segments;
+    }
+
+    private List<String> texts(List<TextSegment> segments) {
+        List<String> texts = new ArrayList<>();
+        for (TextSegment segment : segments) {
+            texts.add(segment.text());
+        }
+        return texts;
+    }
+}
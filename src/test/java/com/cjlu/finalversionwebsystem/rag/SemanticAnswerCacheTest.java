@@ -0,0 +1,42 @@
+package com.cjlu.finalversionwebsystem.rag;
+
+import dev.langchain4j.data.embedding.Embedding;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * SemanticAnswerCache测试类
+ */
+public class SemanticAnswerCacheTest {
+
+    @Test
+    void testSimilarQuestionWithSameVersionHits() {
+        SemanticAnswerCache cache = new SemanticAnswerCache(10, 0.95, 60, TimeUnit.MINUTES);
+        cache.put(Embedding.from(new float[]{1, 0, 0}), "kb@1", "经营情况良好", "\n\n📚 没参考任何文件");
+
+        SemanticAnswerCache.CachedAnswer cached = cache.find(Embedding.from(new float[]{0.99f, 0.05f, 0}), "kb@1");
+        assertNotNull(cached);
+        assertEquals("经营情况良好", cached.getAnswer());
+
+        assertNull(cache.find(Embedding.from(new float[]{0.5f, 0.5f, 0}), "kb@1"));
+        // 知识库内容变化后不再命中
+        assertNull(cache.find(Embedding.from(new float[]{1, 0, 0}), "kb@2"));
+    }
+
+    @Test
+    void testLeastRecentlyUsedAnswerEvicted() {
+        SemanticAnswerCache cache = new SemanticAnswerCache(2, 0.95, 60, TimeUnit.MINUTES);
+        cache.put(Embedding.from(new float[]{1, 0, 0}), "", "a", "");
+        cache.put(Embedding.from(new float[]{0, 1, 0}), "", "b", "");
+        assertNotNull(cache.find(Embedding.from(new float[]{1, 0, 0}), ""));
+
+        cache.put(Embedding.from(new float[]{0, 0, 1}), "", "c", "");
+
+        assertNotNull(cache.find(Embedding.from(new float[]{1, 0, 0}), ""));
+        assertNull(cache.find(Embedding.from(new float[]{0, 1, 0}), ""));
+        assertNotNull(cache.find(Embedding.from(new float[]{0, 0, 1}), ""));
+    }
+}
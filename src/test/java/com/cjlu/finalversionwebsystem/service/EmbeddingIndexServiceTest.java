@@ -0,0 +1,107 @@
+package com.cjlu.finalversionwebsystem.service;
+
+import com.cjlu.finalversionwebsystem.rag.SegmentIndex;
+import com.cjlu.finalversionwebsystem.service.Interface.FileService;
+import com.cjlu.finalversionwebsystem.service.impl.EmbeddingIndexServiceImpl;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * EmbeddingIndexService测试类
+ */
+public class EmbeddingIndexServiceTest {
+
+    private static final String SIGNATURE = "markdown-500";
+
+    @Mock
+    private FileService fileService;
+
+    @TempDir
+    Path tempDir;
+
+    private Path storedFile;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        MockitoAnnotations.openMocks(this);
+        storedFile = tempDir.resolve("files").resolve("manual.md");
+        Files.createDirectories(storedFile.getParent());
+        Files.write(storedFile, "第一版内容".getBytes(StandardCharsets.UTF_8));
+        when(fileService.getStoredFile("manual.md")).thenReturn(storedFile.toFile());
+        when(fileService.getContentHash("manual.md")).thenReturn("hash-v1");
+    }
+
+    @Test
+    void testSavedIndexIsReusedAfterRestartAndInvalidatedOnChange() throws IOException {
+        EmbeddingIndexServiceImpl service = newService("text-embedding-v3");
+        String indexKey = service.resolveIndexKey("manual.md", SIGNATURE);
+        service.saveIndex("manual.md", SIGNATURE, new SegmentIndex(indexKey,
+                Arrays.asList(segment("第一段"), segment("第二段")),
+                Arrays.asList(Embedding.from(new float[]{1f, 0f}), Embedding.from(new float[]{0f, 1f}))));
+
+        // 模拟重启：新实例从清单恢复对应关系，文件未变时不重新计算摘要
+        EmbeddingIndexServiceImpl restarted = newService("text-embedding-v3");
+        clearInvocations(fileService);
+        assertEquals(indexKey, restarted.findRegisteredIndexKey("manual.md", SIGNATURE));
+        assertEquals(indexKey, restarted.resolveIndexKey("manual.md", SIGNATURE));
+        verify(fileService, never()).getContentHash(anyString());
+
+        SegmentIndex loaded = restarted.loadIndex(indexKey);
+        assertNotNull(loaded);
+        assertEquals(Arrays.asList("第一段", "第二段"), texts(loaded.getSegments()));
+        assertArrayEquals(new float[]{0f, 1f}, loaded.getEmbeddings().get(1).vector());
+
+        // 嵌入模型变化时索引键不同，旧索引不会被复用
+        EmbeddingIndexServiceImpl otherModel = newService("bge-m3");
+        assertNull(otherModel.findRegisteredIndexKey("manual.md", SIGNATURE));
+        assertNotEquals(indexKey, otherModel.resolveIndexKey("manual.md", SIGNATURE));
+        // 切分参数变化同理
+        assertNotEquals(indexKey, restarted.resolveIndexKey("manual.md", "markdown-300"));
+
+        // 内容变化后文件大小不同，重新计算摘要得到新的索引键
+        Files.write(storedFile, "第二版内容，比第一版长".getBytes(StandardCharsets.UTF_8));
+        when(fileService.getContentHash("manual.md")).thenReturn("hash-v2");
+        assertNotEquals(indexKey, restarted.resolveIndexKey("manual.md", SIGNATURE));
+
+        restarted.invalidate("manual.md");
+        assertNull(restarted.findRegisteredIndexKey("manual.md", SIGNATURE));
+        assertNull(restarted.loadIndex(indexKey));
+    }
+
+    private EmbeddingIndexServiceImpl newService(String modelName) {
+        EmbeddingIndexServiceImpl service = new EmbeddingIndexServiceImpl();
+        ReflectionTestUtils.setField(service, "fileService", fileService);
+        ReflectionTestUtils.setField(service, "embeddingModelName", modelName);
+        ReflectionTestUtils.setField(service, "indexPath", tempDir.resolve("index").toString());
+        service.init();
+        return service;
+    }
+
+    private static TextSegment segment(String text) {
+        Metadata metadata = new Metadata();
+        metadata.add("source_file", "manual.md");
+        return TextSegment.from(text, metadata);
+    }
+
+    private static List<String> texts(List<TextSegment> segments) {
+        return Arrays.asList(segments.stream().map(TextSegment::text).toArray(String[]::new));
+    }
+}
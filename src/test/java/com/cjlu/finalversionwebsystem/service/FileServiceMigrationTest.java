@@ -0,0 +1,128 @@
+package com.cjlu.finalversionwebsystem.service;
+
+import com.cjlu.finalversionwebsystem.service.impl.FileServiceImpl;
+import com.cjlu.finalversionwebsystem.utils.ChunkedEncryption;
+import com.cjlu.finalversionwebsystem.utils.EncryptionUtil;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * FileService加密格式迁移测试类
+ */
+public class FileServiceMigrationTest {
+
+    private static final FileTime MODIFIED = FileTime.fromMillis(1_600_000_000_000L);
+
+    private final EncryptionUtil encryptionUtil = new EncryptionUtil();
+
+    @TempDir
+    Path tempDir;
+
+    private Path filesDir;
+    private FileServiceImpl fileService;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        // 文件根目录在创建实例时按工作目录确定
+        System.setProperty("user.dir", tempDir.toString());
+        filesDir = Files.createDirectories(tempDir.resolve("files"));
+        fileService = new FileServiceImpl();
+        ReflectionTestUtils.setField(fileService, "encryptionUtil", encryptionUtil);
+        ReflectionTestUtils.setField(fileService, "legacyDetection", true);
+    }
+
+    @Test
+    void testMigratesLegacyFileWithBackupAndOriginalModifiedTime() throws Exception {
+        byte[] plain = "旧版本整体ECB加密的说明文档。\n第二行内容。".getBytes(StandardCharsets.UTF_8);
+        byte[] legacy = encryptionUtil.encrypt(plain);
+        Path file = write("legacy.txt", legacy);
+
+        Map<String, Integer> stats = fileService.migrateLegacyEncryptedFiles();
+
+        assertEquals(1, stats.get("migrated"));
+        assertEquals(0, stats.get("failed"));
+        assertTrue(ChunkedEncryption.hasHeader(Files.readAllBytes(file)));
+        assertArrayEquals(plain, fileService.decryptAndReadFile("legacy.txt"));
+        assertEquals(MODIFIED, Files.getLastModifiedTime(file));
+
+        // 原文件按 文件名.修改时间 备份，内容不变
+        Path backup = filesDir.resolve(".legacy-ecb").resolve("legacy.txt." + MODIFIED.toMillis());
+        assertArrayEquals(legacy, Files.readAllBytes(backup));
+        // 备份目录不出现在文件列表中
+        assertEquals(Arrays.asList("legacy.txt"), fileService.getAllFileNames());
+
+        // 再次迁移时已是分块格式，不再处理
+        assertEquals(0, fileService.migrateLegacyEncryptedFiles().get("migrated"));
+    }
+
+    @Test
+    void testLeavesChunkedFileUntouched() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = encryptionUtil.createEncryptingStream(bytes)) {
+            out.write("分块加密的新文件".getBytes(StandardCharsets.UTF_8));
+        }
+        byte[] chunked = bytes.toByteArray();
+        Path file = write("chunked.txt", chunked);
+
+        Map<String, Integer> stats = fileService.migrateLegacyEncryptedFiles();
+
+        assertEquals(0, stats.get("migrated"));
+        assertEquals(1, stats.get("skipped"));
+        assertArrayEquals(chunked, Files.readAllBytes(file));
+        assertFalse(Files.exists(filesDir.resolve(".legacy-ecb")));
+    }
+
+    @Test
+    void testLeavesPlainFilesWithValidLookingPaddingUntouched() throws Exception {
+        // 最后一个分组恰好能按有效填充解密：只看填充会误判为旧加密文件
+        byte[] paddedBlock = encryptionUtil.encrypt("fifteen-bytes!!".getBytes(StandardCharsets.US_ASCII));
+        assertEquals(16, paddedBlock.length);
+
+        // 开头符合PDF文件头，识别为普通文件
+        byte[] pdf = concat("%PDF-1.4\n%%EOF\n\n".getBytes(StandardCharsets.US_ASCII), paddedBlock);
+        Path pdfFile = write("report.pdf", pdf);
+        // 不是合法UTF-8的文本文件，整体解密后仍不是合法UTF-8，无法确认是旧加密文件
+        byte[] notText = new byte[64];
+        Arrays.fill(notText, (byte) 0xFF);
+        byte[] text = concat(notText, paddedBlock);
+        Path textFile = write("notes.txt", text);
+
+        Map<String, Integer> stats = fileService.migrateLegacyEncryptedFiles();
+
+        assertEquals(0, stats.get("migrated"));
+        assertEquals(2, stats.get("skipped"));
+        assertEquals(0, stats.get("failed"));
+        assertArrayEquals(pdf, Files.readAllBytes(pdfFile));
+        assertArrayEquals(text, Files.readAllBytes(textFile));
+        assertEquals(MODIFIED, Files.getLastModifiedTime(textFile));
+        // PDF文件按原样读取，不做解密
+        assertArrayEquals(pdf, fileService.decryptAndReadFile("report.pdf"));
+    }
+
+    private Path write(String fileName, byte[] content) throws IOException {
+        Path file = filesDir.resolve(fileName);
+        Files.write(file, content);
+        Files.setLastModifiedTime(file, MODIFIED);
+        return file;
+    }
+
+    private static byte[] concat(byte[] first, byte[] second) {
+        byte[] result = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+        return result;
+    }
+}
@@ -0,0 +1,382 @@
+package com.cjlu.finalversionwebsystem.service;
+
+import com.cjlu.finalversionwebsystem.entity.IngestJob;
+import com.cjlu.finalversionwebsystem.mapper.IngestJobMapper;
+import com.cjlu.finalversionwebsystem.mapper.NewKLBMapper;
+import com.cjlu.finalversionwebsystem.service.Interface.DocumentService;
+import com.cjlu.finalversionwebsystem.service.Interface.KnowledgeBaseIndexService;
+import com.cjlu.finalversionwebsystem.service.impl.IngestJobServiceImpl;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * IngestJobService测试类
+ * 使用内存中的任务表模拟 IngestJobMapper 的SQL语义
+ */
+public class IngestJobServiceTest {
+
+    private static final long RETRY_BACKOFF_MS = 200;
+
+    @Mock
+    private DocumentService documentService;
+
+    @Mock
+    private KnowledgeBaseIndexService knowledgeBaseIndexService;
+
+    @Mock
+    private NewKLBMapper klbMapper;
+
+    @TempDir
+    Path tempDir;
+
+    private final InMemoryIngestJobMapper ingestJobMapper = new InMemoryIngestJobMapper();
+    private IngestJobServiceImpl service;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(klbMapper.selectAllKLBs()).thenReturn(Collections.emptyList());
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (service != null) {
+            service.shutdown();
+        }
+    }
+
+    @Test
+    void testFailedJobIsRetriedAfterBackoff() throws Exception {
+        List<Long> runTimes = new CopyOnWriteArrayList<>();
+        doAnswer(invocation -> {
+            runTimes.add(System.currentTimeMillis());
+            if (runTimes.size() == 1) {
+                throw new IOException("嵌入服务暂时不可用");
+            }
+            return null;
+        }).when(documentService).reindexFile("manual.md");
+        start(3);
+
+        service.enqueue(IngestJob.TYPE_INDEX, "manual.md");
+
+        IngestJob job = awaitState(IngestJob.TYPE_INDEX, "manual.md", IngestJob.STATE_READY);
+        assertEquals(2, job.getAttempts());
+        assertEquals(2, runTimes.size());
+        // 第一次失败后按退避时间推迟重试
+        assertTrue(runTimes.get(1) - runTimes.get(0) >= RETRY_BACKOFF_MS);
+    }
+
+    @Test
+    void testJobFailsAfterMaxAttempts() throws Exception {
+        AtomicInteger runs = new AtomicInteger();
+        doAnswer(invocation -> {
+            runs.incrementAndGet();
+            throw new IOException("文件已损坏");
+        }).when(documentService).reindexFile("broken.md");
+        start(2);
+
+        service.enqueue(IngestJob.TYPE_INDEX, "broken.md");
+
+        IngestJob job = awaitState(IngestJob.TYPE_INDEX, "broken.md", IngestJob.STATE_FAILED);
+        assertEquals(2, job.getAttempts());
+        assertEquals("文件已损坏", job.getLastError());
+        // 失败的任务不再被领取
+        Thread.sleep(RETRY_BACKOFF_MS * 3);
+        assertEquals(2, runs.get());
+
+        // 重新登记后执行次数清零，重新开始重试
+        service.enqueue(IngestJob.TYPE_INDEX, "broken.md");
+        job = awaitState(IngestJob.TYPE_INDEX, "broken.md", IngestJob.STATE_FAILED);
+        assertEquals(2, job.getAttempts());
+        assertEquals(4, runs.get());
+    }
+
+    @Test
+    void testInterruptedJobIsRequeuedOnStartup() throws Exception {
+        // 上次运行时领取后未执行完的任务
+        ingestJobMapper.insertQueued(IngestJob.TYPE_INDEX, "manual.md", 1000);
+        IngestJob interrupted = ingestJobMapper.find(IngestJob.TYPE_INDEX, "manual.md");
+        assertEquals(1, ingestJobMapper.claim(interrupted.getId(), IngestJob.STATE_EMBEDDING, 2000));
+
+        start(3);
+
+        IngestJob job = awaitState(IngestJob.TYPE_INDEX, "manual.md", IngestJob.STATE_READY);
+        assertEquals(2, job.getAttempts());
+        verify(documentService, times(1)).reindexFile("manual.md");
+    }
+
+    @Test
+    void testJobEnqueuedWhileRunningIsRunAgainAfterwards() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        AtomicInteger runs = new AtomicInteger();
+        doAnswer(invocation -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            runs.incrementAndGet();
+            started.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            running.decrementAndGet();
+            return null;
+        }).when(documentService).reindexFile("manual.md");
+        start(3);
+
+        service.enqueue(IngestJob.TYPE_INDEX, "manual.md");
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        // 执行期间再次上传：仍保持执行状态，不会被第二个工作线程领取
+        service.enqueue(IngestJob.TYPE_INDEX, "manual.md");
+        assertEquals(IngestJob.STATE_EMBEDDING, ingestJobMapper.find(IngestJob.TYPE_INDEX, "manual.md").getState());
+        release.countDown();
+
+        awaitCondition(() -> runs.get() == 2
+                && IngestJob.STATE_READY.equals(ingestJobMapper.find(IngestJob.TYPE_INDEX, "manual.md").getState()));
+        assertEquals(1, maxRunning.get());
+        assertEquals(1, ingestJobMapper.find(IngestJob.TYPE_INDEX, "manual.md").getAttempts());
+    }
+
+    @Test
+    void testFailingSyncIsNotRequeuedUntilDirectoryChanges() throws Exception {
+        Path directory = Files.createDirectories(tempDir.resolve("klb"));
+        Path file = Files.write(directory.resolve("manual.md"), "内容".getBytes());
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() - 60_000));
+        Files.setLastModifiedTime(directory, FileTime.fromMillis(System.currentTimeMillis() - 60_000));
+        Map<String, Object> klb = new HashMap<>();
+        klb.put("KLBName", "产品手册");
+        klb.put("location", directory.toString());
+        when(klbMapper.selectAllKLBs()).thenReturn(Collections.singletonList(klb));
+        // 目录与集合清单始终不一致，同步始终失败
+        when(knowledgeBaseIndexService.needsSync(anyString())).thenReturn(true);
+        AtomicInteger syncRuns = new AtomicInteger();
+        doAnswer(invocation -> {
+            syncRuns.incrementAndGet();
+            throw new IOException("嵌入失败");
+        }).when(knowledgeBaseIndexService).syncCollection("产品手册");
+        start(2);
+
+        awaitState(IngestJob.TYPE_SYNC, "产品手册", IngestJob.STATE_FAILED);
+        // 每秒一次的目录检查不会重新登记失败的同步任务
+        Thread.sleep(2500);
+        assertEquals(2, syncRuns.get());
+        assertEquals(IngestJob.STATE_FAILED, ingestJobMapper.find(IngestJob.TYPE_SYNC, "产品手册").getState());
+
+        // 目录中的文件修改后重新登记
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() + 1000));
+        awaitCondition(() -> syncRuns.get() > 2);
+    }
+
+    private void start(int maxAttempts) {
+        service = new IngestJobServiceImpl();
+        ReflectionTestUtils.setField(service, "ingestJobMapper", ingestJobMapper);
+        ReflectionTestUtils.setField(service, "documentService", documentService);
+        ReflectionTestUtils.setField(service, "knowledgeBaseIndexService", knowledgeBaseIndexService);
+        ReflectionTestUtils.setField(service, "klbMapper", klbMapper);
+        ReflectionTestUtils.setField(service, "workers", 2);
+        ReflectionTestUtils.setField(service, "maxAttempts", maxAttempts);
+        ReflectionTestUtils.setField(service, "retryBackoffMs", RETRY_BACKOFF_MS);
+        ReflectionTestUtils.setField(service, "pollIntervalMs", 20L);
+        ReflectionTestUtils.setField(service, "syncIntervalSeconds", 1L);
+        service.init();
+    }
+
+    private IngestJob awaitState(String jobType, String fileName, String state) throws InterruptedException {
+        awaitCondition(() -> {
+            IngestJob job = ingestJobMapper.find(jobType, fileName);
+            return job != null && state.equals(job.getState());
+        });
+        return ingestJobMapper.find(jobType, fileName);
+    }
+
+    private static void awaitCondition(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "等待任务状态超时");
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * 内存中的任务表，按 IngestJobMapper 中各条SQL的条件实现
+     */
+    private static class InMemoryIngestJobMapper implements IngestJobMapper {
+        private final List<IngestJob> rows = new ArrayList<>();
+        private long nextId = 1;
+
+        @Override
+        public void createTable() {
+        }
+
+        @Override
+        public synchronized int requeue(String jobType, String fileName, long now) {
+            IngestJob job = row(jobType, fileName);
+            if (job == null || isRunning(job)) {
+                return 0;
+            }
+            job.setState(IngestJob.STATE_QUEUED);
+            job.setAttempts(0);
+            job.setLastError(null);
+            job.setNextRunTime(now);
+            job.setUpdateTime(now);
+            return 1;
+        }
+
+        @Override
+        public synchronized int touchRunning(String jobType, String fileName, long now) {
+            IngestJob job = row(jobType, fileName);
+            if (job == null || !isRunning(job)) {
+                return 0;
+            }
+            job.setUpdateTime(Math.max(now, job.getUpdateTime() + 1));
+            return 1;
+        }
+
+        @Override
+        public synchronized int insertQueued(String jobType, String fileName, long now) {
+            if (row(jobType, fileName) != null) {
+                return 0;
+            }
+            rows.add(new IngestJob(nextId++, jobType, fileName, IngestJob.STATE_QUEUED, 0, null, now, now, now));
+            return 1;
+        }
+
+        @Override
+        public synchronized List<IngestJob> selectRunnable(long now, int limit) {
+            return rows.stream()
+                    .filter(job -> IngestJob.STATE_QUEUED.equals(job.getState()) && job.getNextRunTime() <= now)
+                    .sorted((a, b) -> Long.compare(a.getNextRunTime(), b.getNextRunTime()))
+                    .limit(limit)
+                    .map(InMemoryIngestJobMapper::copy)
+                    .collect(Collectors.toList());
+        }
+
+        @Override
+        public synchronized int claim(long id, String state, long now) {
+            IngestJob job = findById(id);
+            if (job == null || !IngestJob.STATE_QUEUED.equals(job.getState())) {
+                return 0;
+            }
+            job.setState(state);
+            job.setAttempts(job.getAttempts() + 1);
+            job.setUpdateTime(now);
+            return 1;
+        }
+
+        @Override
+        public synchronized int finish(long id, long claimTime, String state, String lastError, long nextRunTime, long now) {
+            IngestJob job = findById(id);
+            if (job == null || job.getUpdateTime() != claimTime || !isRunning(job)) {
+                return 0;
+            }
+            job.setState(state);
+            job.setLastError(lastError);
+            job.setNextRunTime(nextRunTime);
+            job.setUpdateTime(now);
+            return 1;
+        }
+
+        @Override
+        public synchronized int requeueUpdated(long id, long claimTime, long now) {
+            IngestJob job = findById(id);
+            if (job == null || job.getUpdateTime() == claimTime || !isRunning(job)) {
+                return 0;
+            }
+            job.setState(IngestJob.STATE_QUEUED);
+            job.setAttempts(0);
+            job.setLastError(null);
+            job.setNextRunTime(now);
+            job.setUpdateTime(now);
+            return 1;
+        }
+
+        @Override
+        public synchronized int requeueInterrupted(long now) {
+            int count = 0;
+            for (IngestJob job : rows) {
+                if (isRunning(job)) {
+                    job.setState(IngestJob.STATE_QUEUED);
+                    job.setNextRunTime(now);
+                    job.setUpdateTime(now);
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        @Override
+        public synchronized List<IngestJob> selectByFileName(String fileName) {
+            return rows.stream().filter(job -> job.getFileName().equals(fileName))
+                    .map(InMemoryIngestJobMapper::copy).collect(Collectors.toList());
+        }
+
+        @Override
+        public synchronized List<IngestJob> selectRecent(int limit) {
+            return rows.stream().sorted((a, b) -> Long.compare(b.getUpdateTime(), a.getUpdateTime()))
+                    .limit(limit).map(InMemoryIngestJobMapper::copy).collect(Collectors.toList());
+        }
+
+        @Override
+        public synchronized void delete(String jobType, String fileName) {
+            rows.removeIf(job -> job.getJobType().equals(jobType) && job.getFileName().equals(fileName));
+        }
+
+        /**
+         * 查询任务的副本，与数据库查询一样不会看到之后的修改
+         */
+        synchronized IngestJob find(String jobType, String fileName) {
+            IngestJob job = row(jobType, fileName);
+            return job == null ? null : copy(job);
+        }
+
+        private IngestJob row(String jobType, String fileName) {
+            for (IngestJob job : rows) {
+                if (job.getJobType().equals(jobType) && job.getFileName().equals(fileName)) {
+                    return job;
+                }
+            }
+            return null;
+        }
+
+        private IngestJob findById(long id) {
+            for (IngestJob job : rows) {
+                if (job.getId() == id) {
+                    return job;
+                }
+            }
+            return null;
+        }
+
+        private static boolean isRunning(IngestJob job) {
+            return IngestJob.STATE_CONVERTING.equals(job.getState()) || IngestJob.STATE_EMBEDDING.equals(job.getState());
+        }
+
+        private static IngestJob copy(IngestJob job) {
+            return new IngestJob(job.getId(), job.getJobType(), job.getFileName(), job.getState(), job.getAttempts(),
+                    job.getLastError(), job.getNextRunTime(), job.getCreateTime(), job.getUpdateTime());
+        }
+    }
+}
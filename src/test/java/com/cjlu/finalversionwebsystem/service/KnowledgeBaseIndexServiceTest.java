@@ -0,0 +1,189 @@
+package com.cjlu.finalversionwebsystem.service;
+
+import com.cjlu.finalversionwebsystem.mapper.NewKLBMapper;
+import com.cjlu.finalversionwebsystem.service.impl.KnowledgeBaseIndexServiceImpl;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.query.Query;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.when;
+
+/**
+ * KnowledgeBaseIndexService测试类
+ */
+public class KnowledgeBaseIndexServiceTest {
+
+    private static final String KLB_NAME = "产品手册";
+
+    @Mock
+    private NewKLBMapper klbMapper;
+
+    @TempDir
+    Path tempDir;
+
+    private Path klbDir;
+
+    // 每个文件成功嵌入的文本段数
+    private final Map<String, Integer> embeddedSegments = new HashMap<>();
+
+    // 按文本摘要生成向量；文本段含有“损坏”时嵌入失败
+    private final EmbeddingModel embeddingModel = segments -> {
+        List<Embedding> embeddings = new ArrayList<>();
+        for (TextSegment segment : segments) {
+            if (segment.text().contains("损坏")) {
+                throw new IllegalStateException("嵌入服务返回错误");
+            }
+            int hash = segment.text().hashCode();
+            embeddings.add(Embedding.from(new float[]{(hash & 0xff) + 1, (hash >> 8 & 0xff) + 1, (hash >> 16 & 0xff) + 1}));
+        }
+        for (TextSegment segment : segments) {
+            String sourceFile = segment.metadata().get("source_file");
+            if (sourceFile != null) {
+                embeddedSegments.merge(sourceFile, 1, Integer::sum);
+            }
+        }
+        return Response.from(embeddings);
+    };
+
+    @BeforeEach
+    void setUp() throws IOException {
+        MockitoAnnotations.openMocks(this);
+        klbDir = Files.createDirectories(tempDir.resolve("klb"));
+        Map<String, Object> klb = new HashMap<>();
+        klb.put("KLBName", KLB_NAME);
+        klb.put("location", klbDir.toString());
+        when(klbMapper.selectKLBByName(KLB_NAME)).thenReturn(klb);
+    }
+
+    @Test
+    void testSyncAppliesDirectoryDiffAndDropsVectorsOfFailedFile() throws IOException {
+        write("a.md", "# 安装\n安装步骤。\n\n# 配置\n配置说明。", 1_000_000L);
+        write("b.md", "# 退货\n七天无理由退货。", 1_000_000L);
+        KnowledgeBaseIndexServiceImpl service = newService("text-embedding-v3");
+
+        assertEquals(2, service.syncCollection(KLB_NAME));
+        assertFalse(service.needsSync(KLB_NAME));
+        assertEquals(setOf("a.md", "b.md"), sourceFiles(service));
+
+        // 修改a.md的第二节，删除b.md，新增c.md和一个嵌入到一半会失败的d.md
+        write("a.md", "# 安装\n安装步骤。\n\n# 配置\n新的配置说明。", 2_000_000L);
+        Files.delete(klbDir.resolve("b.md"));
+        write("c.md", "# 保修\n整机保修一年。", 2_000_000L);
+        StringBuilder broken = new StringBuilder();
+        for (int i = 0; i < 70; i++) {
+            broken.append("# 第").append(i).append("节\n第").append(i).append("节的内容。\n\n");
+        }
+        broken.append("# 附录\n损坏的内容。");
+        write("d.md", broken.toString(), 2_000_000L);
+        embeddedSegments.clear();
+
+        IOException error = assertThrows(IOException.class, () -> service.syncCollection(KLB_NAME));
+        assertTrue(error.getMessage().contains("d.md"));
+
+        // 修改过的文件只重新嵌入变化的文本段
+        assertEquals(1, embeddedSegments.get("a.md"));
+        assertEquals(1, embeddedSegments.get("c.md"));
+        // d.md的第一批文本段已写入集合，失败后被删除，不会被检索到
+        assertTrue(embeddedSegments.get("d.md") > 0);
+        assertEquals(setOf("a.md", "c.md"), sourceFiles(service));
+        List<String> texts = texts(service);
+        assertTrue(texts.stream().anyMatch(text -> text.contains("新的配置说明")));
+        assertTrue(texts.stream().noneMatch(text -> text.contains("配置说明。") && !text.contains("新的")));
+        assertTrue(texts.stream().noneMatch(text -> text.contains("七天无理由")));
+        // 成功的部分已保存，d.md仍待同步
+        assertTrue(service.needsSync(KLB_NAME));
+
+        // 重启后从磁盘加载已保存的集合，修复d.md后只嵌入d.md
+        KnowledgeBaseIndexServiceImpl restarted = newService("text-embedding-v3");
+        assertEquals(setOf("a.md", "c.md"), sourceFiles(restarted));
+        write("d.md", broken.toString().replace("损坏的内容", "完整的内容"), 3_000_000L);
+        embeddedSegments.clear();
+        assertEquals(1, restarted.syncCollection(KLB_NAME));
+        assertEquals(setOf("d.md"), embeddedSegments.keySet());
+        assertEquals(setOf("a.md", "c.md", "d.md"), sourceFiles(restarted));
+        assertFalse(restarted.needsSync(KLB_NAME));
+    }
+
+    @Test
+    void testCollectionIsRebuiltForAnotherEmbeddingModel() throws IOException {
+        write("a.md", "# 安装\n安装步骤。", 1_000_000L);
+        KnowledgeBaseIndexServiceImpl service = newService("text-embedding-v3");
+        assertEquals(1, service.syncCollection(KLB_NAME));
+
+        // 其他模型的向量不可比较，使用独立的集合文件
+        KnowledgeBaseIndexServiceImpl otherModel = newService("bge-m3");
+        assertTrue(otherModel.needsSync(KLB_NAME));
+        assertEquals(Collections.emptySet(), sourceFiles(otherModel));
+        assertEquals(1, otherModel.syncCollection(KLB_NAME));
+
+        assertFalse(newService("text-embedding-v3").needsSync(KLB_NAME));
+    }
+
+    private KnowledgeBaseIndexServiceImpl newService(String modelName) {
+        KnowledgeBaseIndexServiceImpl service = new KnowledgeBaseIndexServiceImpl();
+        ReflectionTestUtils.setField(service, "klbMapper", klbMapper);
+        ReflectionTestUtils.setField(service, "embeddingModel", embeddingModel);
+        ReflectionTestUtils.setField(service, "embeddingModelName", modelName);
+        ReflectionTestUtils.setField(service, "collectionPath", tempDir.resolve("index").toString());
+        ReflectionTestUtils.setField(service, "hnswM", 16);
+        ReflectionTestUtils.setField(service, "hnswEfConstruction", 200);
+        ReflectionTestUtils.setField(service, "hnswEfSearch", 200);
+        ReflectionTestUtils.setField(service, "maxResults", 200);
+        ReflectionTestUtils.setField(service, "minScore", 0.0);
+        return service;
+    }
+
+    private void write(String fileName, String content, long lastModified) throws IOException {
+        File file = Files.write(klbDir.resolve(fileName), content.getBytes(StandardCharsets.UTF_8)).toFile();
+        assertTrue(file.setLastModified(lastModified));
+    }
+
+    private static List<Content> retrieveAll(KnowledgeBaseIndexServiceImpl service) {
+        return service.createRetriever(Collections.singletonList(KLB_NAME), null).retrieve(Query.from("手册"));
+    }
+
+    private static Set<String> sourceFiles(KnowledgeBaseIndexServiceImpl service) {
+        Set<String> sourceFiles = new TreeSet<>();
+        for (Content content : retrieveAll(service)) {
+            sourceFiles.add(content.textSegment().metadata().get("source_file"));
+        }
+        return sourceFiles;
+    }
+
+    private static List<String> texts(KnowledgeBaseIndexServiceImpl service) {
+        List<String> texts = new ArrayList<>();
+        for (Content content : retrieveAll(service)) {
+            texts.add(content.textSegment().text());
+        }
+        return texts;
+    }
+
+    private static Set<String> setOf(String... values) {
+        Set<String> set = new TreeSet<>();
+        Collections.addAll(set, values);
+        return set;
+    }
+}
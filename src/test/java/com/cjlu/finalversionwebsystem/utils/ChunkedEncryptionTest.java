@@ -0,0 +1,148 @@
+package com.cjlu.finalversionwebsystem.utils;
+
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ChunkedEncryption测试类
+ */
+public class ChunkedEncryptionTest {
+
+    private static final SecretKey KEY = new SecretKeySpec("0123456789abcdef".getBytes(StandardCharsets.US_ASCII), "AES");
+    private static final int CHUNK_SIZE = 64;
+
+    @Test
+    void testRoundTripAcrossChunkBoundaries() throws IOException {
+        Random random = new Random(42);
+        for (int length : new int[]{0, 1, CHUNK_SIZE - 1, CHUNK_SIZE, CHUNK_SIZE + 1, CHUNK_SIZE * 3, 1000}) {
+            byte[] plain = new byte[length];
+            random.nextBytes(plain);
+
+            byte[] encrypted = encrypt(plain);
+            assertTrue(ChunkedEncryption.hasHeader(encrypted));
+            assertArrayEquals(plain, decrypt(encrypted), "长度: " + length);
+        }
+    }
+
+    @Test
+    void testRejectsTamperedFrame() throws IOException {
+        byte[] encrypted = encrypt(new byte[CHUNK_SIZE * 2]);
+        encrypted[ChunkedEncryption.HEADER_LENGTH + 3] ^= 1;
+
+        assertThrows(IOException.class, () -> decrypt(encrypted));
+    }
+
+    @Test
+    void testRejectsTruncationAtFrameBoundary() throws IOException {
+        byte[] encrypted = encrypt(new byte[CHUNK_SIZE * 3]);
+        // 去掉最后一帧，剩下的帧都完整但没有结束标记
+        int frameLength = CHUNK_SIZE + 16;
+        byte[] truncated = Arrays.copyOf(encrypted, encrypted.length - frameLength);
+
+        assertThrows(IOException.class, () -> decrypt(truncated));
+    }
+
+    @Test
+    void testDecryptFromOffsetSeeksToFrame() throws IOException {
+        byte[] plain = new byte[CHUNK_SIZE * 3 + 10];
+        new Random(7).nextBytes(plain);
+        SeekableInMemoryChannel channel = new SeekableInMemoryChannel(encrypt(plain));
+
+        assertEquals(plain.length, ChunkedEncryption.plainLength(channel));
+        for (int offset : new int[]{0, 5, CHUNK_SIZE, CHUNK_SIZE * 2 + 17, plain.length - 1, plain.length}) {
+            try (InputStream in = ChunkedEncryption.decrypt(channel, KEY, offset)) {
+                assertArrayEquals(Arrays.copyOfRange(plain, offset, plain.length), in.readAllBytes(), "偏移: " + offset);
+            }
+        }
+        assertEquals(0, ChunkedEncryption.plainLength(new SeekableInMemoryChannel(encrypt(new byte[0]))));
+    }
+
+    private static byte[] encrypt(byte[] plain) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = ChunkedEncryption.encrypt(bytes, KEY, CHUNK_SIZE)) {
+            // 分多次写入，覆盖写满缓冲区后继续写的情况
+            int half = plain.length / 2;
+            out.write(plain, 0, half);
+            out.write(plain, half, plain.length - half);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] decrypt(byte[] encrypted) throws IOException {
+        try (InputStream in = ChunkedEncryption.decrypt(new ByteArrayInputStream(encrypted), KEY)) {
+            return in.readAllBytes();
+        }
+    }
+
+    /**
+     * 内存中的可定位通道，模拟文件通道
+     */
+    private static class SeekableInMemoryChannel implements SeekableByteChannel {
+        private final byte[] data;
+        private long position;
+
+        private SeekableInMemoryChannel(byte[] data) {
+            this.data = data;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) {
+            if (position >= data.length) {
+                return -1;
+            }
+            int n = (int) Math.min(dst.remaining(), data.length - position);
+            dst.put(data, (int) position, n);
+            position += n;
+            return n;
+        }
+
+        @Override
+        public int write(ByteBuffer src) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public long position() {
+            return position;
+        }
+
+        @Override
+        public SeekableByteChannel position(long newPosition) {
+            position = newPosition;
+            return this;
+        }
+
+        @Override
+        public long size() {
+            return data.length;
+        }
+
+        @Override
+        public SeekableByteChannel truncate(long size) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
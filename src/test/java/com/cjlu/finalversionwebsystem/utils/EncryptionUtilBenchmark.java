@@ -0,0 +1,114 @@
+package com.cjlu.finalversionwebsystem.utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * EncryptionUtil基准测试
+ * 对比每次调用都查找提供者、新建密钥对象的原实现与线程复用Cipher的实现，并给出分块GCM格式流式加解密的吞吐量作为参照。
+ * 不属于单元测试，先执行 mvn test-compile，再以测试classpath运行本类的main方法
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class EncryptionUtilBenchmark {
+
+    // 4 KB、1 MB、100 MB
+    @Param({"4096", "1048576", "104857600"})
+    private int payloadSize;
+
+    private final EncryptionUtil encryptionUtil = new EncryptionUtil();
+
+    private byte[] plain;
+    private byte[] ecbEncrypted;
+    private byte[] chunkedEncrypted;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        plain = new byte[payloadSize];
+        new Random(42).nextBytes(plain);
+        ecbEncrypted = encryptionUtil.encrypt(plain);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(payloadSize + payloadSize / 1024 + 64);
+        try (OutputStream out = encryptionUtil.createEncryptingStream(bytes)) {
+            out.write(plain);
+        }
+        chunkedEncrypted = bytes.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] encryptPerCallCipher() throws Exception {
+        return perCallCipher(Cipher.ENCRYPT_MODE).doFinal(plain);
+    }
+
+    @Benchmark
+    public byte[] encryptReusedCipher() throws Exception {
+        return encryptionUtil.encrypt(plain);
+    }
+
+    @Benchmark
+    public byte[] decryptPerCallCipher() throws Exception {
+        return perCallCipher(Cipher.DECRYPT_MODE).doFinal(ecbEncrypted);
+    }
+
+    @Benchmark
+    public byte[] decryptReusedCipher() throws Exception {
+        return encryptionUtil.decrypt(ecbEncrypted);
+    }
+
+    @Benchmark
+    public void encryptChunkedStream() throws IOException {
+        try (OutputStream out = encryptionUtil.createEncryptingStream(OutputStream.nullOutputStream())) {
+            out.write(plain);
+        }
+    }
+
+    @Benchmark
+    public long decryptChunkedStream() throws IOException {
+        try (InputStream in = encryptionUtil.createDecryptingStream(new ByteArrayInputStream(chunkedEncrypted))) {
+            return in.transferTo(OutputStream.nullOutputStream());
+        }
+    }
+
+    /**
+     * 原实现：每次调用都新建密钥对象并通过 Cipher.getInstance 查找提供者
+     */
+    private static Cipher perCallCipher(int mode) throws Exception {
+        SecretKeySpec secretKeySpec = new SecretKeySpec("MySecretKey12345".getBytes(), "AES");
+        Cipher cipher = Cipher.getInstance("AES/ECB/PKCS5Padding");
+        cipher.init(mode, secretKeySpec);
+        return cipher;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(EncryptionUtilBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,120 @@
+package com.cjlu.finalversionwebsystem.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * PlaintextCache测试类
+ */
+public class PlaintextCacheTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testSmallFilesOnHeapAndLargeFilesSpilled() throws IOException {
+        PlaintextCache cache = new PlaintextCache(1024, 100, 1000, tempDir.resolve("spill"));
+
+        cache.put("small.txt", 10, 1, bytes(50, 'a'));
+        cache.put("large.txt", 20, 1, bytes(500, 'b'));
+
+        assertArrayEquals(bytes(50, 'a'), toArray(cache.get("small.txt", 10, 1)));
+        assertArrayEquals(bytes(500, 'b'), toArray(cache.get("large.txt", 20, 1)));
+        assertEquals(1, countFiles(tempDir.resolve("spill")));
+
+        Map<String, Object> stats = cache.stats();
+        assertEquals(1L, stats.get("heapHits"));
+        assertEquals(1L, stats.get("spillHits"));
+        assertEquals(1, stats.get("spillEntries"));
+        assertEquals(500L, stats.get("spillBytes"));
+    }
+
+    @Test
+    void testChangedOrInvalidatedFileMisses() throws IOException {
+        PlaintextCache cache = new PlaintextCache(1024, 100, 1000, tempDir.resolve("spill"));
+        cache.put("doc.txt", 10, 1, bytes(50, 'a'));
+        cache.put("big.txt", 20, 1, bytes(500, 'b'));
+
+        // 加密文件被替换后大小或修改时间不同
+        assertNull(cache.get("doc.txt", 10, 2));
+        assertNull(cache.get("big.txt", 21, 1));
+
+        cache.invalidate("doc.txt");
+        cache.invalidate("big.txt");
+        assertNull(cache.get("doc.txt", 10, 1));
+        assertNull(cache.get("big.txt", 20, 1));
+        assertEquals(0, countFiles(tempDir.resolve("spill")));
+        assertEquals(0.0, cache.stats().get("hitRate"));
+    }
+
+    @Test
+    void testSpillTierEvictsLeastRecentlyUsed() throws IOException {
+        PlaintextCache cache = new PlaintextCache(1024, 100, 1000, tempDir.resolve("spill"));
+        cache.put("a", 1, 1, bytes(400, 'a'));
+        cache.put("b", 1, 1, bytes(400, 'b'));
+        // 访问a，使b成为最久未使用的条目
+        assertNotNull(cache.get("a", 1, 1));
+        cache.put("c", 1, 1, bytes(400, 'c'));
+
+        assertNull(cache.get("b", 1, 1));
+        assertNotNull(cache.get("a", 1, 1));
+        assertNotNull(cache.get("c", 1, 1));
+        assertEquals(1L, cache.stats().get("spillEvictions"));
+        assertEquals(2, countFiles(tempDir.resolve("spill")));
+    }
+
+    @Test
+    void testRefusesSpillDirectoryOpenToOtherUsers() throws IOException {
+        assumeTrue(FileSystems.getDefault().supportedFileAttributeViews().contains("posix"));
+        Path shared = Files.createDirectory(tempDir.resolve("shared"),
+                PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+        Files.setPosixFilePermissions(shared, PosixFilePermissions.fromString("rwxr-xr-x"));
+        Path planted = Files.write(shared.resolve("1.bin"), bytes(10, 'x'));
+
+        assertThrows(IOException.class, () -> new PlaintextCache(1024, 100, 1000, shared));
+        // 拒绝使用时不删除目录中已有的文件
+        assertTrue(Files.exists(planted));
+    }
+
+    @Test
+    void testDefaultSpillDirectoryIsPrivateAndRemovedOnClose() throws IOException {
+        PlaintextCache cache = new PlaintextCache(1024, 100, 1000, null);
+        cache.put("large.txt", 20, 1, bytes(500, 'b'));
+        assertArrayEquals(bytes(500, 'b'), toArray(cache.get("large.txt", 20, 1)));
+
+        cache.close();
+        assertNull(cache.get("large.txt", 20, 1));
+    }
+
+    private static byte[] bytes(int length, char value) {
+        byte[] bytes = new byte[length];
+        Arrays.fill(bytes, (byte) value);
+        return bytes;
+    }
+
+    private static byte[] toArray(ByteBuffer buffer) {
+        assertNotNull(buffer);
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private static long countFiles(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.count();
+        }
+    }
+}